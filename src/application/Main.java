@@ -1,32 +1,136 @@
 package application;
 
+import java.lang.management.ManagementFactory;
+
+import application.controller.ChessBoardController;
+import application.controller.Screens;
+import application.log.GameLog;
+import application.log.LogLevel;
+import application.model.Game;
+import application.view.ImageCache;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
+import javafx.application.Platform;
+import javafx.scene.Parent;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
-import javafx.scene.layout.GridPane;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Font;
 
+/**
+ * Starts the application. A splash screen is shown straight away, while the
+ * piece images, the start menu and a first board are loaded on a startup
+ * thread; the start menu then replaces the splash, and the first game in
+ * the window reuses the preloaded board. When run with -Dchess.journal=dir
+ * and a game was left unfinished (e.g. by a crash), that game is shown
+ * instead of the start menu. If anything fails to load, the error is
+ * logged and shown, and the start menu is shown on its own (loading it
+ * again if need be); if even that fails, the application exits once the
+ * error has been read.
+ *
+ * The time from JVM start to the splash and to the start menu is logged as
+ * a "startup" event. Run with -Dchess.exitAfterStartup=true to exit as soon
+ * as the start menu is shown, e.g. to measure startup or to record a class
+ * data sharing archive (see the README).
+ */
 public class Main extends Application {
+	public static final String EXIT_AFTER_STARTUP_PROPERTY = "chess.exitAfterStartup";
 	public static Stage stage;
 	@Override
-	public void start(Stage primaryStage) {
+	public void start(final Stage primaryStage) {
+		final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+		final long startMillis = System.currentTimeMillis();
 		stage = primaryStage;
+
+		Label loading = new Label("Loading...");
+		loading.setFont(new Font(30));
+		primaryStage.setScene(new Scene(new StackPane(loading), 600, 600));
+		primaryStage.setTitle("Chess");
+		primaryStage.show();
+		final long splashMillis = System.currentTimeMillis();
+
+		Thread startup = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ImageCache.load(ChessBoardController.PIECE_SIZE);
+					final Game resumed = Screens.openJournal();
+					final Parent menu = Screens.loadMenu();
+					final ChessBoardController board = Screens.loadBoard(resumed != null ? resumed : new Game());
+					Platform.runLater(new Runnable() {
+						@Override
+						public void run() {
+							Main.showMenu(primaryStage, menu, board, resumed, jvmStart, startMillis, splashMillis);
+						}
+					});
+				} catch(final Exception e) {
+					Platform.runLater(new Runnable() {
+						@Override
+						public void run() {
+							Main.startupFailed(primaryStage, e);
+						}
+					});
+				}
+			}
+		}, "startup");
+		startup.setDaemon(true);
+		startup.start();
+	}
+
+	private static void showMenu(Stage stage, Parent menu, ChessBoardController board, Game resumed,
+			long jvmStart, long startMillis, long splashMillis) {
+		Screens.cacheMenu(stage, menu);
+		Screens.cacheBoard(stage, board);
+		try {
+			if(resumed != null) {
+				Screens.showBoard(resumed, stage);
+			} else {
+				Screens.showMenu(stage);
+			}
+		} catch(Exception e) {
+			Main.startupFailed(stage, e);
+			return;
+		}
+		long menuMillis = System.currentTimeMillis();
+		GameLog.info("startup", "jvmToStartMs", startMillis - jvmStart,
+				"jvmToSplashMs", splashMillis - jvmStart, "jvmToMenuMs", menuMillis - jvmStart);
+		if(Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+			GameLog.flush(1000);
+			Platform.exit();
+		}
+	}
+
+	/**
+	 * Reports a failure to start on the FX thread, instead of leaving the
+	 * splash screen up: falls back to the start menu, or exits if it cannot
+	 * be shown either.
+	 * @param stage The window.
+	 * @param error What failed.
+	 */
+	private static void startupFailed(Stage stage, Exception error) {
+		GameLog.log(LogLevel.ERROR, "startup-failed", "error", error);
+		Alert alert = new Alert(Alert.AlertType.ERROR, "Could not start: " + error);
+		alert.initOwner(stage);
+		alert.setHeaderText(null);
 		try {
-			GridPane root = new GridPane();
-			FXMLLoader loader = new FXMLLoader();
-			loader.setLocation(getClass().getResource("view/Main.fxml"));
-			root = (GridPane) loader.load();
-
-			Scene scene = new Scene(root, 600, 600);
-			primaryStage.setScene(scene);
-			primaryStage.show();
-			stage.setTitle("Chess");
+			Screens.showMenu(stage);
 		} catch(Exception e) {
-			e.printStackTrace();
+			GameLog.log(LogLevel.ERROR, "startup-failed", "error", e);
+			alert.showAndWait();
+			GameLog.flush(1000);
+			Platform.exit();
+			return;
+		}
+		if(Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+			GameLog.flush(1000);
+			Platform.exit();
+			return;
 		}
+		alert.show();
 	}
 
 	public static void main(String[] args) {
 		launch(args);
 	}
-}
\ No newline at end of file
+}
@@ -1,46 +1,157 @@
 package application.controller;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.geometry.Pos;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import application.Main;
+import javafx.scene.input.MouseEvent;
+import application.engine.Analysis;
+import application.engine.EngineConfig;
+import application.engine.EnginePlayer;
+import application.engine.SearchInfo;
+import application.event.Flow;
+import application.event.GameEvent;
+import application.journal.MoveJournal;
+import application.log.GameLog;
+import application.log.LogLevel;
 import application.model.*;
+import application.view.BoardCanvas;
+import application.view.ImageCache;
 import javafx.scene.layout.GridPane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Popup;
+import javafx.stage.Stage;
+import javafx.util.Duration;
 
 
 /**
  * this handles the ChessBoard and its related methods
+ * 
+ * The board is drawn either as a grid of 64 MyButtons (the default), or on a
+ * single BoardCanvas when started with -Dchess.renderer=canvas. Clicks from
+ * either are handled by squareClicked(int row, int col).
+ * 
+ * After each move, the legal moves of the new position (a LegalMoveIndex) are
+ * worked out on a background thread, on a copy of the game, so that the FX
+ * thread never waits on them. They are handed back with Platform.runLater, and
+ * dropped if another move has been played since. Clicks are then answered from
+ * the index with an array lookup. The board subscribes to its game's events
+ * (Game.getEvents()) and shows the result when it gets a GAME_OVER event.
+ * 
+ * With the chess.clock system property set to a TimeControl (e.g. 300+2), games
+ * are timed: the clock starts with the first move and the players' labels show
+ * the time left, refreshed every CLOCK_REFRESH_MILLIS. The clock notices a flag
+ * falling on its own thread and hands it to the FX thread, which ends the game.
+ * 
+ * With a journal (see Screens.openJournal()), each move is also recorded in it
+ * so that the game can be carried on after a crash. The FX thread does not wait
+ * for the journal to reach the disk, so a crash may lose the last few moves.
+ * 
+ * Moves are listed beside the board; clicking one shows the position after it,
+ * rebuilt from the nearest checkpoint of a MoveHistory, so jumping anywhere in
+ * a long game takes the same short time. Clicking the board while an earlier
+ * position is shown goes back to the current position.
+ * 
+ * The Analyse button searches the position shown on an Analysis thread, and
+ * restarts it whenever the position changes. The label is refreshed from the
+ * newest result by a Timeline every ANALYSIS_REFRESH_MILLIS, so however fast the
+ * search reports, it never queues more than that on the FX thread.
+ * 
+ * With the chess.engine system property set to an EngineConfig (e.g.
+ * movetime=1000), the engine plays one side (chess.engine.color, black unless
+ * it is white) on an EnginePlayer's thread, and its moves are played on the FX
+ * thread as they arrive. While the player thinks, the engine ponders the reply
+ * it expects, so when the player makes it the engine answers sooner.
+ * 
+ * Each board has its own game, squares, popup and worker thread, so any number
+ * of boards can be open at once; use Screens.showBoard(Game game, Stage stage)
+ * to open one. A window keeps its board when going back to the start menu, and
+ * the next game in that window reuses it through setGame(Game game). The worker
+ * thread exits when idle, so an idle board holds no thread.
  * @author Jack Nelson tge389
  *
  */
 public class ChessBoardController implements EventHandler<ActionEvent>, Initializable{
-	Game game = GameController.game;
-	public static MyButton[][] buttons = new MyButton[8][8];
-	private MyButton lastSquareClicked;
-	static Popup popup = new Popup();
+	public static final int SQUARE_SIZE = 52,
+							PIECE_SIZE = 45;
+	public static final String RENDERER_PROPERTY = "chess.renderer",
+							   CANVAS_RENDERER = "canvas",
+							   CLOCK_PROPERTY = "chess.clock",
+							   ENGINE_PROPERTY = "chess.engine",
+							   ENGINE_COLOR_PROPERTY = "chess.engine.color";
+	public static final long ANALYSIS_REFRESH_MILLIS = 100,
+							 CLOCK_REFRESH_MILLIS = 100;
+	private static final int ANALYSIS_LINE_MOVES = 8;
+	private static final ThreadFactory WORKER_THREAD_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "board-worker");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+	private static final AtomicInteger openBoards = new AtomicInteger();
+
+	private Game game;
+	// the position on the board: the game itself, or an earlier position from the move list
+	private Game shown;
+	private MoveHistory history;
+	private final ObservableList<String> moveTexts = FXCollections.observableArrayList();
+	private final MyButton[][] buttons = new MyButton[8][8];
+	private BoardCanvas boardCanvas;
+	private Coordinate lastSquareClicked;
+	private final List<Coordinate> highlightedSquares = new ArrayList<>();
+	// made when first needed, as windows can only be made on the FX thread
+	private Popup popup;
+	private final ThreadPoolExecutor worker = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), WORKER_THREAD_FACTORY);
+	// only read and written on the FX thread
+	private LegalMoveIndex legalMoves;
+	private int positionGeneration;
+	private Future<?> pendingAnalysis;
+	// made when the Analyse button is first pressed
+	private Analysis analysis;
+	private Timeline analysisRefresh;
+	private PieceColor analysedTurn;
+	// the subscription to the events of the game being played
+	private Flow.Subscription gameEvents;
+	// the game's id in the journal, or 0 until its first move is recorded
+	private long journalId;
+	// made when the first timed game is shown
+	private Timeline clockRefresh;
+	// made in initialize() if the engine plays a side
+	private EnginePlayer engine;
+	private PieceColor engineColor;
 	
 	@FXML
 	private Button homeButton;
 	@FXML
 	private Label player1Label;
 	@FXML
-	public static GridPane stageBase;
+	private GridPane stageBase;
 	@FXML
 	private Label player2Label;
 	@FXML
@@ -49,24 +160,146 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 	private Button showFenBtn;
 	@FXML
 	private TextField fenLabel;
+	@FXML
+	private ListView<String> moveList;
+	@FXML
+	private Button analysisBtn;
+	@FXML
+	private Label analysisLabel;
+
+
+	public ChessBoardController(Game game) {
+		this.game = game;
+		this.shown = game;
+		this.history = new MoveHistory(game);
+		this.journalId = ChessBoardController.getRecoveredId(game);
+		openBoards.incrementAndGet();
+	}
+
+	/**
+	 * gets the number of boards loaded and not yet closed, in all windows
+	 * @return the number of open boards (int)
+	 */
+	public static int getOpenBoards() {
+		return openBoards.get();
+	}
+
+	/**
+	 * gets the root of this board's scene graph, e.g. to put it in a Scene
+	 * @return the root node of the board (GridPane)
+	 */
+	public GridPane getRoot() {
+		return stageBase;
+	}
+
+	/**
+	 * starts a new game on this board, so that a board which has been shown once
+	 * can be shown again without loading ChessBoard.fxml again
+	 * @param game the game to play on the board (Game)
+	 */
+	public void setGame(Game game) {
+		if(game != this.game) {
+			endJournal();
+			journalId = getRecoveredId(game);
+		}
+		if(engine != null) {
+			engine.stop();
+		}
+		this.game = game;
+		this.shown = game;
+		this.history = new MoveHistory(game);
+		moveTexts.clear();
+		lastSquareClicked = null;
+		resetHighLightedSquares();
+		hideResult();
+		updatePlayerLabels();
+		fenLabel.setVisible(false);
+		redrawBoard();
+		subscribeToGame();
+		startClock();
+		analysePosition(game.copyRecent(0));
+		restartAnalysis();
+		askEngine();
+	}
 
+	/**
+	 * stops this board's background work while it is not shown, keeping it to be
+	 * reused by setGame(Game game)
+	 */
+	public void park() {
+		positionGeneration++;
+		if(pendingAnalysis != null) {
+			pendingAnalysis.cancel(true);
+			pendingAnalysis = null;
+		}
+		setAnalysing(false);
+		if(engine != null) {
+			engine.stop();
+		}
+		stopClock();
+		hideResult();
+	}
+
+	/**
+	 * closes this board: stops its background work and hides its popup
+	 */
+	public void close() {
+		if(worker.isShutdown()) {
+			return;
+		}
+		worker.shutdownNow();
+		if(gameEvents != null) {
+			gameEvents.cancel();
+		}
+		if(analysis != null) {
+			analysisRefresh.stop();
+			analysis.close();
+		}
+		if(engine != null) {
+			engine.close();
+		}
+		stopClock();
+		hideResult();
+		openBoards.decrementAndGet();
+	}
 
 	/**
 	 *initializes the board to its starting point
 	 */
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
+		updatePlayerLabels();
+		fenLabel.setVisible(false);
+		subscribeToGame();
+		startClock();
+		analysePosition(game.copyRecent(0));
+		createEngine();
+		askEngine();
+		moveList.setItems(moveTexts);
+		moveList.getSelectionModel().selectedIndexProperty().addListener(new ChangeListener<Number>() {
+			@Override
+			public void changed(ObservableValue<? extends Number> value, Number oldIndex, Number newIndex) {
+				// no selection means the current position
+				showPly(newIndex.intValue() < 0 ? history.size() : newIndex.intValue() + 1);
+			}
+		});
 
-		player2Label.setText(game.getBlackName());
-		player1Label.setText(game.getWhiteName());
-		if(game.getTurn() == PieceColor.WHITE) {
-			player1Label.setTextFill(Color.YELLOWGREEN);
-			player2Label.setTextFill(Color.BLACK);
-		} else {
-			player2Label.setTextFill(Color.YELLOWGREEN);
-			player1Label.setTextFill(Color.BLACK);
+		if(CANVAS_RENDERER.equals(System.getProperty(RENDERER_PROPERTY))) {
+			boardCanvas = new BoardCanvas(game, SQUARE_SIZE, PIECE_SIZE);
+			boardCanvas.setOnMouseClicked(new EventHandler<MouseEvent>() {
+				@Override
+				public void handle(MouseEvent e) {
+					int row = boardCanvas.getRow(e.getY());
+					int col = boardCanvas.getCol(e.getX());
+					if(row >= 0 && col >= 0) {
+						squareClicked(row, col);
+					}
+				}
+			});
+			ChessBoard.add(boardCanvas, 0, 0, 8, 8);
+			boardCanvas.draw();
+			return;
 		}
-		fenLabel.setVisible(false);
 
 		for (int row = 0; row < 8; row++) {
 			for (int col = 0; col < 8; col ++) {
@@ -77,7 +310,7 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 					public void handle(ActionEvent e) {
 						tile.handle(e);
 					}
-				}); //CHECK HERE FOR ERROR....Maybe should go into the handle method?
+				});
 				String color ;
 				if ((row + col) % 2 == 0) {
 					color = "white";
@@ -85,12 +318,12 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 					color = "grey";
 				}
 				tile.setStyle("-fx-background-color: "+color+";");
-				tile.setMaxHeight(52);
-				tile.setMaxWidth(52);
-				tile.setMinHeight(52);
-				tile.setMinWidth(52);
-				tile.setPrefHeight(52);
-				tile.setPrefWidth(52);
+				tile.setMaxHeight(SQUARE_SIZE);
+				tile.setMaxWidth(SQUARE_SIZE);
+				tile.setMinHeight(SQUARE_SIZE);
+				tile.setMinWidth(SQUARE_SIZE);
+				tile.setPrefHeight(SQUARE_SIZE);
+				tile.setPrefWidth(SQUARE_SIZE);
 				tile.updateImage();
 				ChessBoard.add(tile, col, row);
 			}
@@ -107,27 +340,634 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 		if(button.getId().equals("showFenBtn")) {
 			if(!fenLabel.isVisible()) {
 				fenLabel.setVisible(true);
-				fenLabel.setText(game.getFEN());
+				fenLabel.setText(shown.getFEN());
 			} else {
 				fenLabel.setVisible(false);
 			}
 			
 			return;
 		}
-		popup.getContent().clear();
-		popup.hide();
+		if(button.getId().equals("analysisBtn")) {
+			setAnalysing(!isAnalysing());
+			return;
+		}
+		park();
 		try {
-			FXMLLoader loader = new FXMLLoader();
-			loader.setLocation(getClass().getResource("../view/Main.fxml"));
-			Scene scene2;
-			scene2 = new Scene(loader.load());
-			Main.stage.setScene(scene2);
-			Main.stage.show();
+			Screens.showMenu((Stage) button.getScene().getWindow());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * shows the players' names, and their time left if the game is timed, with the
+	 * player to move in green
+	 */
+	private void updatePlayerLabels() {
+		showClocks();
+		if(game.getTurn() == PieceColor.WHITE) {
+			player1Label.setTextFill(Color.YELLOWGREEN);
+			player2Label.setTextFill(Color.BLACK);
+		} else {
+			player2Label.setTextFill(Color.YELLOWGREEN);
+			player1Label.setTextFill(Color.BLACK);
+		}
+	}
 	
+	/**
+	 * shows the players' names, followed by their time left if the game is timed
+	 */
+	private void showClocks() {
+		ChessClock clock = game.getClock();
+		player2Label.setText(game.getBlackName()
+				+ (clock == null ? "" : "  " + ChessClock.format(clock.getRemainingNanos(PieceColor.BLACK))));
+		player1Label.setText(game.getWhiteName()
+				+ (clock == null ? "" : "  " + ChessClock.format(clock.getRemainingNanos(PieceColor.WHITE))));
+	}
+
+	/**
+	 * gives the game on this board a clock, if games are timed, and starts showing its
+	 * time; a game which has already started (e.g. one recovered from the journal)
+	 * carries on with the side to move's clock running
+	 */
+	private void startClock() {
+		ChessClock clock = game.getClock();
+		String control = System.getProperty(CLOCK_PROPERTY);
+		if(clock == null && control != null) {
+			try {
+				clock = new ChessClock(TimeControl.parse(control));
+				game.setClock(clock);
+			}
+			catch(IllegalArgumentException e) {
+				GameLog.log(LogLevel.WARN, "bad-time-control", "error", e);
+			}
+		}
+		if(clock == null) {
+			if(clockRefresh != null) {
+				clockRefresh.stop();
+			}
+			return;
+		}
+		final Game clocked = game;
+		clock.setFlagListener(new ChessClock.FlagListener() {
+			@Override
+			public void flagFell(ChessClock clock, PieceColor color) {
+				// on the clock's thread; the game may only be used on the FX thread
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(game == clocked) {
+							game.publishFlagFall();
+							showClocks();
+						}
+					}
+				});
+			}
+		});
+		if(clock.getRunning() == null && clock.getFlagged() == null && (history.size() > 0 || journalId != 0)) {
+			clock.start(game.getTurn());
+		}
+		if(clockRefresh == null) {
+			clockRefresh = new Timeline(new KeyFrame(Duration.millis(CLOCK_REFRESH_MILLIS),
+					new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent e) {
+					showClocks();
+				}
+			}));
+			clockRefresh.setCycleCount(Animation.INDEFINITE);
+		}
+		clockRefresh.play();
+	}
+
+	/**
+	 * stops the clock of the game on this board, e.g. when it is over or put aside
+	 */
+	private void stopClock() {
+		if(game.getClock() != null) {
+			game.getClock().stop();
+		}
+		if(clockRefresh != null) {
+			clockRefresh.stop();
+		}
+	}
+
+	/**
+	 * returns whether a side has run out of time, checking the clock rather than
+	 * waiting for it to notice
+	 * @return true if the game is timed and a side has flagged (boolean)
+	 */
+	private boolean isOutOfTime() {
+		return game.getClock() != null && game.getClock().checkFlag() != null;
+	}
+
+	/**
+	 * this method handles a click on a square of the chess board: the first click
+	 * highlights the legal moves of a piece, and a click on one of those squares
+	 * plays the move
+	 * @param row the row of the square clicked (int)
+	 * @param col the column of the square clicked (int)
+	 */
+	void squareClicked(int row, int col) {
+		if(shown != game) {
+			moveList.getSelectionModel().clearSelection();
+			return;
+		}
+		Move move = lastSquareClicked == null ? null :
+				new Move(lastSquareClicked.getRow(), lastSquareClicked.getCol(), row, col);
+
+		if(move != null && legalMoves != null && legalMoves.isLegalMove(move) && !isOutOfTime() && !isEngineTurn()) {
+			playMove(move);
+		} else {
+			resetHighLightedSquares();
+			lastSquareClicked = new Coordinate(row, col);
+			if(GameLog.isEnabled(LogLevel.DEBUG)) {
+				GameLog.debug("select", "square", lastSquareClicked, "piece", game.getPieceAt(row, col));
+			}
+			// if the index is still being built, this is done when it arrives
+			highLightLegalMoves();
+		}
+		
+		// update FEN label if showing FEN
+		if(fenLabel.isVisible())
+			fenLabel.setText(game.getFEN());
+	}
+
+	/**
+	 * plays a legal move in the game on the board, by either side, and shows it
+	 * @param move the move to play (Move)
+	 */
+	private void playMove(Move move) {
+		// update player labels
+		if(game.getTurn() == PieceColor.WHITE) {
+			player2Label.setTextFill(Color.YELLOWGREEN);
+			player1Label.setTextFill(Color.BLACK);
+		} else {
+			player1Label.setTextFill(Color.YELLOWGREEN);
+			player2Label.setTextFill(Color.BLACK);
+		}
+
+		// only the squares the move changes need redrawing
+		List<Coordinate> changedSquares = game.getChangedSquares(move);
+		String moveNumber = game.getFullMoveCounter() + (game.getTurn() == PieceColor.WHITE ? ". " : "... ");
+		long start = System.nanoTime();
+		game.pushMove(move);
+		journalMove(move);
+		if(GameLog.isEnabled(LogLevel.INFO)) {
+			// pushMove has already worked out the new FEN
+			GameLog.info("move", "move", move, "fen", game.getPreviousFenStack().peek(),
+					"micros", (System.nanoTime() - start) / 1000);
+		}
+		if(GameLog.isEnabled(LogLevel.TRACE)) {
+			GameLog.log(LogLevel.TRACE, "board", "board", "\n" + game);
+		}
+		lastSquareClicked = null;
+		
+		resetHighLightedSquares();
+		showMove(move, changedSquares);
+		// one copy of the new position for the worker's tasks, which run one at a time
+		Game snapshot = game.copyRecent(1);
+		recordMove(move, moveNumber, snapshot);
+		analysePosition(snapshot);
+		restartAnalysis();
+		askEngine();
+	}
+
+	/**
+	 * makes the engine player, if the engine is to play a side: the chess.engine
+	 * property gives its EngineConfig (e.g. "movetime=1000", or with "ponder=false"
+	 * so that it does not think on the player's time), and chess.engine.color its
+	 * side, black unless it is "white"
+	 */
+	private void createEngine() {
+		String config = System.getProperty(ENGINE_PROPERTY);
+		if(config == null) {
+			return;
+		}
+		try {
+			engine = new EnginePlayer(EngineConfig.parse(config));
+			engineColor = "white".equalsIgnoreCase(System.getProperty(ENGINE_COLOR_PROPERTY)) ?
+					PieceColor.WHITE : PieceColor.BLACK;
+		}
+		catch(IllegalArgumentException e) {
+			GameLog.log(LogLevel.WARN, "bad-engine-config", "error", e);
+		}
+	}
+
+	/**
+	 * returns whether the engine plays the side to move
+	 * @return true if it is the engine's turn (boolean)
+	 */
+	private boolean isEngineTurn() {
+		return engine != null && game.getTurn() == engineColor;
+	}
+
+	/**
+	 * asks the engine for its move, if it is the engine's turn in a game that is not
+	 * over; the move is played once it arrives, unless the game has changed since, and
+	 * the engine then ponders the reply it expects while the player thinks
+	 */
+	private void askEngine() {
+		if(!isEngineTurn() || isOutOfTime() || !game.hasLegalMoves()) {
+			return;
+		}
+		final Game asked = game;
+		final int plies = history.size();
+		engine.play(game.copyRecent(0), new EnginePlayer.MoveListener() {
+			@Override
+			public void bestMove(final Move move, final SearchInfo info) {
+				// on the engine's thread; the game may only be used on the FX thread
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(game != asked || history.size() != plies || move == null || isOutOfTime()) {
+							return;
+						}
+						// checked like a click, against the index of the current position (built here if
+						// the worker has not sent it yet), as isLegalMove trusts the piece to move the right way
+						LegalMoveIndex index = legalMoves != null ? legalMoves : new LegalMoveIndex(game);
+						if(!index.isLegalMove(move)) {
+							GameLog.log(LogLevel.WARN, "engine-illegal-move", "move", move, "fen", game.getFEN());
+							return;
+						}
+						// back to the current position, if an earlier one is shown
+						moveList.getSelectionModel().clearSelection();
+						playMove(move);
+						engine.ponder(game.copyRecent(0));
+						if(GameLog.isEnabled(LogLevel.INFO)) {
+							GameLog.info("engine-move", "move", move, "depth", info == null ? 0 : info.getDepth(),
+									"hits", engine.getPonderHits(), "misses", engine.getPonderMisses(),
+									"savedMillis", engine.getTimeSavedNanos() / 1000000,
+									"responseMillis", engine.getResponseStats().getAverageNanos() / 1e6,
+									"bookLookups", engine.getSearch().getOpeningBook() == null ? "none"
+											: engine.getSearch().getOpeningBook().getLookupStats());
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * highlights the destination squares of the legal moves from the last square clicked
+	 */
+	private void highLightLegalMoves() {
+		if(legalMoves == null || lastSquareClicked == null) {
+			return;
+		}
+		for(Move move : legalMoves.getMoves(lastSquareClicked.getRow(), lastSquareClicked.getCol())) {
+			highLightSquare(move.getToRow(), move.getToCol());
+		}
+	}
+
+	/**
+	 * adds a move that was just played to the history and the move list; the move
+	 * is listed as e.g. "e2e4" at first, and in SAN once the worker has worked it out
+	 * @param move the move played (Move)
+	 * @param moveNumber the move number to list it under, e.g. "1. " or "1... " (String)
+	 * @param snapshot a copy of the game after the move that can take it back, left
+	 * as it was for the worker's next task (Game)
+	 */
+	private void recordMove(final Move move, final String moveNumber, final Game snapshot) {
+		history.add(move, game);
+		moveTexts.add(moveNumber + move);
+		final int index = moveTexts.size() - 1;
+		final MoveHistory moveHistory = history;
+		// not cancelled by later moves, unlike the analysis, so every move gets its SAN
+		worker.submit(new Runnable() {
+			@Override
+			public void run() {
+				snapshot.popMove();
+				final String san = Notation.toSAN(snapshot, move);
+				snapshot.pushMove(move);
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(moveHistory == history && index < moveTexts.size()) {
+							moveTexts.set(index, moveNumber + san);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * shows the position after a ply on the board: the current position for the
+	 * last ply, otherwise a position rebuilt from the move history
+	 * @param ply the number of moves played to reach the position (int)
+	 */
+	private void showPly(int ply) {
+		long start = System.nanoTime();
+		shown = ply == history.size() ? game : history.getPosition(ply);
+		lastSquareClicked = null;
+		resetHighLightedSquares();
+		redrawBoard();
+		restartAnalysis();
+		if(fenLabel.isVisible()) {
+			fenLabel.setText(shown.getFEN());
+		}
+		if(GameLog.isEnabled(LogLevel.DEBUG)) {
+			GameLog.debug("show-ply", "ply", ply, "plies", history.size(),
+					"micros", (System.nanoTime() - start) / 1000);
+		}
+	}
+
+	/**
+	 * turns the analysis of the position shown on or off
+	 * @param analysing whether to analyse (boolean)
+	 */
+	private void setAnalysing(boolean analysing) {
+		if(analysing) {
+			if(analysis == null) {
+				analysis = new Analysis();
+				analysisRefresh = new Timeline(new KeyFrame(Duration.millis(ANALYSIS_REFRESH_MILLIS),
+						new EventHandler<ActionEvent>() {
+					@Override
+					public void handle(ActionEvent e) {
+						showAnalysis();
+					}
+				}));
+				analysisRefresh.setCycleCount(Animation.INDEFINITE);
+			}
+			analysisRefresh.play();
+			analysisBtn.setText("Stop");
+			analysisLabel.setVisible(true);
+			restartAnalysis();
+		} else {
+			if(analysis != null) {
+				analysisRefresh.stop();
+				analysis.stop();
+			}
+			analysisBtn.setText("Analyse");
+			analysisLabel.setVisible(false);
+		}
+	}
+
+	/**
+	 * returns whether the position shown is being analysed
+	 * @return true if the analysis is on (boolean)
+	 */
+	private boolean isAnalysing() {
+		return analysisRefresh != null && analysisRefresh.getStatus() == Animation.Status.RUNNING;
+	}
+
+	/**
+	 * starts analysing the position shown, if the analysis is on
+	 */
+	private void restartAnalysis() {
+		if(!isAnalysing()) {
+			return;
+		}
+		analysedTurn = shown.getTurn();
+		analysis.analyse(shown.copyRecent(0));
+		analysisLabel.setText("Analysing...");
+	}
+
+	/**
+	 * shows the newest analysis result, if there is one: the depth, the score from
+	 * white's point of view, the speed and the start of the principal variation
+	 */
+	private void showAnalysis() {
+		SearchInfo info = analysis.poll();
+		if(info == null) {
+			return;
+		}
+		int sign = analysedTurn == PieceColor.WHITE ? 1 : -1;
+		String score = info.isMate() ? "#" + sign * info.getMateIn() :
+				String.format("%+.2f", sign * info.getScore() / 100.0);
+		StringBuilder text = new StringBuilder();
+		text.append("depth ").append(info.getDepth()).append("   ").append(score)
+			.append("   ").append(info.getNodesPerSecond()).append(" nodes/s\n");
+		List<Move> line = info.getPrincipalVariation();
+		for(int i=0; i<line.size() && i<ANALYSIS_LINE_MOVES; i++) {
+			text.append(line.get(i)).append(' ');
+		}
+		analysisLabel.setText(text.toString());
+	}
+
+	/**
+	 * redraws every square from the position shown
+	 */
+	private void redrawBoard() {
+		if(boardCanvas != null) {
+			boardCanvas.setGame(shown);
+		} else {
+			for(MyButton[] row : buttons) {
+				for(MyButton tile : row) {
+					tile.updateImage();
+				}
+			}
+		}
+	}
+
+	/**
+	 * subscribes to the events of the game being played, in place of the last
+	 * game's, and shows the result when the game ends
+	 */
+	private void subscribeToGame() {
+		if(gameEvents != null) {
+			gameEvents.cancel();
+		}
+		final Game subscribed = game;
+		game.getEvents().subscribe(new Flow.Subscriber<GameEvent>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				gameEvents = subscription;
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(final GameEvent event) {
+				if(event.getType() != GameEvent.Type.GAME_OVER) {
+					return;
+				}
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(game == subscribed) {
+							showResult(event.getResult());
+							if(engine != null) {
+								engine.stop();
+							}
+							stopClock();
+							showClocks();
+							endJournal();
+						}
+					}
+				});
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				GameLog.log(LogLevel.WARN, "game-events-failed", "error", error);
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+	}
+
+	/**
+	 * gets the id a game was recorded under in the journal, if it was recovered from it
+	 * @param game the game (Game)
+	 * @return the id of the game in the journal, or 0 (long)
+	 */
+	private static long getRecoveredId(Game game) {
+		MoveJournal journal = Screens.getJournal();
+		return journal == null ? 0 : journal.getRecoveredId(game);
+	}
+
+	/**
+	 * records a move that was just played in the journal, if there is one, without
+	 * waiting for it to reach the disk
+	 * @param move the move played (Move)
+	 */
+	private void journalMove(Move move) {
+		MoveJournal journal = Screens.getJournal();
+		if(journal == null) {
+			return;
+		}
+		try {
+			if(journalId == 0) {
+				journalId = journal.newGameId();
+			}
+			journal.recordMove(journalId, game, move);
+		}
+		catch(IOException e) {
+			GameLog.log(LogLevel.WARN, "journal-failed", "error", e);
+		}
+	}
+
+	/**
+	 * records in the journal that the game on this board is over or abandoned, so
+	 * that it is not resumed
+	 */
+	private void endJournal() {
+		MoveJournal journal = Screens.getJournal();
+		if(journal == null || journalId == 0) {
+			return;
+		}
+		try {
+			journal.recordEnd(journalId);
+		}
+		catch(IOException e) {
+			GameLog.log(LogLevel.WARN, "journal-failed", "error", e);
+		}
+		journalId = 0;
+	}
+
+	/**
+	 * builds the legal move index of the current position on the background
+	 * thread, then hands it back to the FX thread, unless another move has been
+	 * played in the meantime
+	 * @param snapshot a copy of the current position, only used on the worker (Game)
+	 */
+	private void analysePosition(final Game snapshot) {
+		legalMoves = null;
+		positionGeneration++;
+		if(pendingAnalysis != null) {
+			pendingAnalysis.cancel(true);
+		}
+		final int generation = positionGeneration;
+		pendingAnalysis = worker.submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				final LegalMoveIndex index = new LegalMoveIndex(snapshot);
+				if(GameLog.isEnabled(LogLevel.DEBUG)) {
+					GameLog.debug("analysis", "moves", index.size(),
+							"micros", (System.nanoTime() - start) / 1000);
+				}
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(generation != positionGeneration) {
+							return;
+						}
+						legalMoves = index;
+						highLightLegalMoves();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * redraws the squares changed by a move that was just played
+	 * @param move the move played (Move)
+	 * @param changedSquares the squares the move changed, from Game.getChangedSquares(Move move)
+	 */
+	private void showMove(Move move, List<Coordinate> changedSquares) {
+		for(Coordinate square : changedSquares) {
+			if(boardCanvas != null) {
+				boardCanvas.drawSquare(square.getRow(), square.getCol());
+			} else {
+				buttons[square.getRow()][square.getCol()].updateImage();
+			}
+		}
+		if(boardCanvas != null) {
+			boardCanvas.animateMove(move);
+		}
+	}
+
+	/**
+	 * shows the result of the game in a popup
+	 * @param text the result (String)
+	 */
+	private void showResult(String text) {
+		Label label = new Label(text);
+		label.setPrefWidth(400);
+		label.setPrefHeight(200);
+		label.setAlignment(Pos.BOTTOM_CENTER);
+		label.setFont(new Font(50));
+		label.setStyle("-fx-text-fill: red");
+		if(popup == null) {
+			popup = new Popup();
+		}
+		popup.getContent().add(label);
+		popup.show(ChessBoard.getScene().getWindow());
+	}
+
+	/**
+	 * hides the result popup, if it is showing
+	 */
+	private void hideResult() {
+		if(popup != null) {
+			popup.hide();
+			popup.getContent().clear();
+		}
+	}
+
+	/**
+	 * resets the squares highlighted by the last click back to their default color
+	 */
+	private void resetHighLightedSquares() {
+		for(Coordinate square : highlightedSquares) {
+			if(boardCanvas != null) {
+				boardCanvas.setHighlighted(square.getRow(), square.getCol(), false);
+			} else {
+				buttons[square.getRow()][square.getCol()].setHighLighted(false);
+			}
+		}
+		highlightedSquares.clear();
+	}
+
+	/**
+	 * highlights spaces of legal moves based on piece selected
+	 * @param r the row of the square to be highlighted (int)
+	 * @param c the column of the square to be highlighted(int)
+	 */
+	private void highLightSquare(int r, int c) {
+		if(boardCanvas != null) {
+			boardCanvas.setHighlighted(r, c, true);
+		} else {
+			buttons[r][c].setHighLighted(true);
+		}
+		highlightedSquares.add(new Coordinate(r, c));
+	}
+
 	/**
 	 * creates and handles the MyButton objects and their methods
 	 * @author Jack Nelson tge389
@@ -135,12 +975,12 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 	 */
 	class MyButton extends Button implements EventHandler<ActionEvent>{
 
-		Game game = GameController.game;
 		private final int r;
 		private final int c;
 
 		private boolean isHighlighted;
 		private boolean hasPiece;
+		private final ImageView imageView = new ImageView();
 
 		public MyButton(int r,int c) {
 			this.r = r;
@@ -151,11 +991,11 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 		 * updates the image to its new location and removes the graphic from buttons where the piece has moved away from
 		 */
 		public void updateImage() {
-			Piece piece = game.getPieceAt(this.getRow(),this.getCol());
+			Piece piece = shown.getPieceAt(this.getRow(),this.getCol());
 			if(piece != null) {
 				this.hasPiece = true;
-				ImageView imageView = getImageFromPiece(piece);
-				this.setGraphic(imageView);
+				this.imageView.setImage(ImageCache.getImage(piece));
+				this.setGraphic(this.imageView);
 			}
 			else {
 				this.setGraphic(null);
@@ -166,98 +1006,21 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 		/**
 		 * returns the proper ImageView depending on the piece selected
 		 * @param piece the piece on the board(Piece)
-		 * @return ImageView(image) the image of the selected piece
+		 * @return ImageView(image) the image of the selected piece, from the ImageCache
 		 */
 		public ImageView getImageFromPiece(Piece piece) {
 			if(piece != null) {
-				try {
-					return new ImageView(new Image(new FileInputStream(piece.getImageURL())));
-				} catch(FileNotFoundException e) {
-					e.printStackTrace();
-				}
+				return new ImageView(ImageCache.getImage(piece));
 			}
 			return null;
 		}
 
 		/**
-		 * this method handles the actions performed on the chess board
-		 * @param event the event that a piece is selected(ActionEvent)
+		 * passes a click on this square to the controller
+		 * @param event the event that a square is clicked(ActionEvent)
 		 */
 		public void handle(ActionEvent event) {
-			int row = this.getRow();
-			int col = this.getCol();
-
-			if(this.isHighLighted()) {
-				Move move = new Move(lastSquareClicked.getRow(),
-										lastSquareClicked.getCol(),
-										this.getRow(),
-										this.getCol());
-				
-				// update player labels
-				if(game.getTurn() == PieceColor.WHITE) {
-					player2Label.setTextFill(Color.YELLOWGREEN);
-					player1Label.setTextFill(Color.BLACK);
-				} else {
-					player1Label.setTextFill(Color.YELLOWGREEN);
-					player2Label.setTextFill(Color.BLACK);
-				}
-
-				game.pushMove(move);
-				System.out.println();
-				System.out.println(game);
-				lastSquareClicked = null;
-				
-				// definitely a more efficient way to do this
-				// update graphics
-				for(int r = 0; r < 8; r++) {
-					for(int c = 0; c < 8; c++) {
-						ChessBoardController.buttons[r][c].updateImage();
-					}
-				}
-
-				if(game.isCheckmate()) {
-					Label label = new Label("Checkmate");
-					label.setPrefWidth(400);
-					label.setPrefHeight(200);
-					label.setAlignment(Pos.BOTTOM_CENTER);
-					label.setFont(new Font(50));
-					label.setStyle("-fx-text-fill: red");
-					ChessBoardController.popup.getContent().add(label);
-					ChessBoardController.popup.show(Main.stage);
-				} else if(game.isDraw()) {
-					Label label = new Label("Draw");
-					label.setPrefWidth(400);
-					label.setPrefHeight(200);
-					label.setAlignment(Pos.BOTTOM_CENTER);
-					label.setFont(new Font(50));
-					label.setStyle("-fx-text-fill: red");
-					ChessBoardController.popup.getContent().add(label);
-					ChessBoardController.popup.show(Main.stage);
-				}
-				resetHighLightedSquares();
-			} else {
-				resetHighLightedSquares();
-				System.out.println();
-				System.out.println(this);
-
-				if(this.hasPiece) {
-					Piece piece = game.getPieceAt(row, col);
-					Coordinate cord = new Coordinate(row,col);
-					List<Move> legalMoves = piece.getLegalMoves(game, cord);
-					for(Move move: legalMoves){
-						int r = move.getToRow();
-						int c = move.getToCol();
-
-						highLightSquare(r,c);
-					}
-
-				}
-				lastSquareClicked = this;
-			}
-			
-			// update FEN label if showing FEN
-			if(fenLabel.isVisible())
-				fenLabel.setText(game.getFEN());
+			squareClicked(this.getRow(), this.getCol());
 		}
 
 		public int getRow() {
@@ -269,41 +1032,22 @@ public class ChessBoardController implements EventHandler<ActionEvent>, Initiali
 		}
 
 		public boolean isHighLighted() {
-			//System.out.println("Checking highlighted status: " + this.isHighlighted);
 			return this.isHighlighted;
 		}
-		
-		public void hasPiece(boolean bool) {
-			this.hasPiece = bool;
-		}
 
-		/**
-		 * iterates through entire board resetting all values effect values on buttons to default value(null)
-		 * @return boolean the new isHighlighted value for each button
-		 */
-		public boolean resetHighLightedSquares() {
-			//System.out.println("highlight is reset");
-			for(int r = 0; r< 8; r++) {
-				for(int c = 0; c < 8; c++) {
-					MyButton button = ChessBoardController.buttons[r][c];
-					button.setStyle("-fx-background-color: " + ((r + c) % 2 == 0 ? "white;" : "grey"));
-					button.isHighlighted = false;
-				}
+		public void setHighLighted(boolean isHighlighted) {
+			int r = this.getRow();
+			int c = this.getCol();
+			if(isHighlighted) {
+				this.setStyle("-fx-background-color: " + ((r + c) % 2 == 0 ? "lemonchiffon;" : "khaki;"));
+			} else {
+				this.setStyle("-fx-background-color: " + ((r + c) % 2 == 0 ? "white;" : "grey"));
 			}
-			
-			return this.isHighlighted = false;
+			this.isHighlighted = isHighlighted;
 		}
-
-		/**
-		 * highlights spaces of legal moves based on piece selected
-		 * @param r the row of the square to be highlighted (int)
-		 * @param c the column of the square to be highlighted(int)
-		 * @return boolean  the isHighlighted boolean value now set to true
-		 */
-		public boolean highLightSquare(int r, int c) {
-			MyButton button = ChessBoardController.buttons[r][c];
-			button.setStyle("-fx-background-color: " + ((r + c) % 2 == 0 ? "lemonchiffon;" : "khaki;"));
-			return button.isHighlighted = true;
+		
+		public void hasPiece(boolean bool) {
+			this.hasPiece = bool;
 		}
 
 		@Override
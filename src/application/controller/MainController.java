@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ResourceBundle;
 
-import application.Main;
 import application.model.Game;
 import application.model.PositionIsCheckmateException;
 import application.model.PositionIsDrawException;
@@ -12,14 +11,9 @@ import application.model.PositionIsInsufficientMaterial;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
-
-class GameController{
-	public static Game game;
-}
+import javafx.stage.Stage;
 
 public class MainController implements EventHandler<ActionEvent>, Initializable {
 	@FXML
@@ -31,6 +25,8 @@ public class MainController implements EventHandler<ActionEvent>, Initializable
 	@FXML
 	private Button startButton;
 	@FXML
+	private Button newWindowButton;
+	@FXML
 	private Label gameTitle;
 	@FXML
 	private Label player2Label;
@@ -52,6 +48,7 @@ public class MainController implements EventHandler<ActionEvent>, Initializable
 		String player1Name;
 		String player2Name;
 		String fenText = fenTextField.getText();
+		boolean newWindow = event.getSource() == newWindowButton;
 		
 		// ensure playerName labels are not empty
 		if(player1.getText().replaceAll(" ", "").equals("")) player1Name = "Player1";
@@ -60,18 +57,18 @@ public class MainController implements EventHandler<ActionEvent>, Initializable
 		else player2Name = player2.getText();
 		
 		if(fenText.equals("")) {
-				GameController.game = new Game(player1Name, player2Name);
+				Game game = new Game(player1Name, player2Name);
 				errorLabel.setText("");
-				this.loadBoardScene();
+				this.loadBoardScene(game, newWindow);
 		} else {
 			// check if fen is valid/legal
 			// TODO: isCheckmate only checks current turn
 			//			i.e. if black king is checkmate but
 			//			fen shows it is white turn, isCheckmate == false
 			try {
-				GameController.game = new Game(fenText, player1Name, player2Name);
+				Game game = new Game(fenText, player1Name, player2Name);
 				errorLabel.setText("");
-				this.loadBoardScene();
+				this.loadBoardScene(game, newWindow);
 			} catch (PositionIsCheckmateException e) {
 				System.out.println("CheckmateException");
 				errorLabel.setText("FEN entered is Checkmate");
@@ -87,14 +84,18 @@ public class MainController implements EventHandler<ActionEvent>, Initializable
 		}
 	}
 	
-	public void loadBoardScene() {
+	/**
+	 * shows a board for a game, either in place of this menu or in a new window
+	 * @param game the game to play (Game)
+	 * @param newWindow whether to open the board in a new window (boolean)
+	 */
+	public void loadBoardScene(Game game, boolean newWindow) {
 		try {
-			FXMLLoader loader = new FXMLLoader();
-			loader.setLocation(getClass().getResource("../view/ChessBoard.fxml"));
-			Scene scene2;
-			scene2 = new Scene(loader.load());
-			Main.stage.setScene(scene2);
-			Main.stage.show();
+			Stage stage = newWindow ? new Stage() : (Stage) startButton.getScene().getWindow();
+			if(newWindow) {
+				stage.setTitle("Chess - " + game.getWhiteName() + " vs " + game.getBlackName());
+			}
+			Screens.showBoard(game, stage);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
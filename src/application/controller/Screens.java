@@ -0,0 +1,191 @@
+package application.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import application.journal.MoveJournal;
+import application.log.GameLog;
+import application.log.LogLevel;
+import application.model.Game;
+import javafx.event.EventHandler;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Callback;
+
+/**
+ * The Screens class switches a window between the start menu and a board.
+ *
+ * Parsing FXML and building the scene graph is the slow part of switching
+ * screens, so each window keeps the screens it has shown (in its
+ * properties, so they go away with the window) and shows them again
+ * instead of loading them again. A cached board is given the new game
+ * with ChessBoardController.setGame(Game game).
+ *
+ * When run with -Dchess.journal=dir, boards save their games' moves in a
+ * MoveJournal in that directory, and openJournal() finds the game to carry
+ * on with after a crash.
+ *
+ * loadMenu(), loadBoard(Game game) and openJournal() do not touch the
+ * scene, so they may be called on a background thread, e.g. while a splash
+ * screen is showing; everything else must be called on the FX thread.
+ */
+public class Screens {
+
+	public static final String JOURNAL_PROPERTY = "chess.journal";
+	private static final String MENU_KEY = "chess.screen.menu",
+								BOARD_KEY = "chess.screen.board";
+	private static final double MENU_WIDTH = 600,
+								MENU_HEIGHT = 600;
+	private static volatile MoveJournal journal;
+
+	private Screens() {
+	}
+
+	/**
+	 * Opens the journal named by -Dchess.journal, if there is one, and gets
+	 * the game to carry on with: the newest game in it which had not ended.
+	 * Any older unfinished games are ended, as only one is resumed.
+	 * @return The game to resume, or null if there is none.
+	 * @throws IOException If the journal cannot be opened.
+	 */
+	public static Game openJournal() throws IOException {
+		String directory = System.getProperty(JOURNAL_PROPERTY);
+		if(directory == null) {
+			return null;
+		}
+		MoveJournal opened = new MoveJournal(new File(directory));
+		long resumedId = 0;
+		for(long id : opened.getRecoveredGames().keySet()) {
+			resumedId = Math.max(resumedId, id);
+		}
+		for(Map.Entry<Long, Game> game : opened.getRecoveredGames().entrySet()) {
+			if(game.getKey() != resumedId) {
+				opened.recordEnd(game.getKey());
+			}
+		}
+		journal = opened;
+		return opened.getRecoveredGames().get(resumedId);
+	}
+
+	/**
+	 * Gets the journal boards save their games in.
+	 * @return The journal, or null if games are not saved.
+	 */
+	static MoveJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Loads the start menu from Main.fxml.
+	 * @return The root of the start menu.
+	 * @throws IOException If Main.fxml cannot be loaded.
+	 */
+	public static Parent loadMenu() throws IOException {
+		FXMLLoader loader = new FXMLLoader();
+		loader.setLocation(Screens.class.getResource("../view/Main.fxml"));
+		return loader.load();
+	}
+
+	/**
+	 * Loads a new board from ChessBoard.fxml.
+	 * @param game The game to play on the board.
+	 * @return The controller of the new board.
+	 * @throws IOException If ChessBoard.fxml cannot be loaded.
+	 */
+	public static ChessBoardController loadBoard(final Game game) throws IOException {
+		Runtime runtime = Runtime.getRuntime();
+		long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+		FXMLLoader loader = new FXMLLoader();
+		loader.setLocation(Screens.class.getResource("../view/ChessBoard.fxml"));
+		loader.setControllerFactory(new Callback<Class<?>, Object>() {
+			@Override
+			public Object call(Class<?> type) {
+				return new ChessBoardController(game);
+			}
+		});
+		loader.load();
+		if(GameLog.isEnabled(LogLevel.DEBUG)) {
+			// a rough figure, as it includes any garbage made while loading
+			long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+			GameLog.debug("board-opened", "boards", ChessBoardController.getOpenBoards(),
+					"heapKB", (usedAfter - usedBefore) / 1024);
+		}
+		return loader.getController();
+	}
+
+	/**
+	 * Keeps a loaded start menu for a window, to be shown by showMenu(Stage stage).
+	 * @param stage The window.
+	 * @param menu The root of the start menu, from loadMenu().
+	 */
+	public static void cacheMenu(Stage stage, Parent menu) {
+		stage.getProperties().put(MENU_KEY, new Scene(menu, MENU_WIDTH, MENU_HEIGHT));
+	}
+
+	/**
+	 * Keeps a loaded board for a window, to be reused by showBoard(Game game, Stage stage).
+	 * @param stage The window.
+	 * @param board The controller of the board, from loadBoard(Game game).
+	 */
+	public static void cacheBoard(final Stage stage, final ChessBoardController board) {
+		stage.getProperties().put(BOARD_KEY, new Scene(board.getRoot()));
+		stage.getProperties().put(BOARD_KEY + ".controller", board);
+		stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, new EventHandler<WindowEvent>() {
+			@Override
+			public void handle(WindowEvent e) {
+				board.close();
+			}
+		});
+	}
+
+	/**
+	 * Shows the start menu in a window, loading it if the window has not shown it before.
+	 * @param stage The window.
+	 * @throws IOException If Main.fxml cannot be loaded.
+	 */
+	public static void showMenu(Stage stage) throws IOException {
+		long start = System.nanoTime();
+		boolean cached = stage.getProperties().containsKey(MENU_KEY);
+		if(!cached) {
+			Screens.cacheMenu(stage, Screens.loadMenu());
+		}
+		stage.setScene((Scene) stage.getProperties().get(MENU_KEY));
+		stage.show();
+		Screens.logSwitch("menu", cached, start);
+	}
+
+	/**
+	 * Shows a board for a game in a window. The window's board is reused if
+	 * it has shown one before; otherwise a new board is loaded.
+	 * @param game The game to play on the board.
+	 * @param stage The window.
+	 * @return The controller of the board.
+	 * @throws IOException If ChessBoard.fxml cannot be loaded.
+	 */
+	public static ChessBoardController showBoard(Game game, Stage stage) throws IOException {
+		long start = System.nanoTime();
+		ChessBoardController board = (ChessBoardController) stage.getProperties().get(BOARD_KEY + ".controller");
+		boolean cached = board != null;
+		if(cached) {
+			board.setGame(game);
+		} else {
+			board = Screens.loadBoard(game);
+			Screens.cacheBoard(stage, board);
+		}
+		stage.setScene((Scene) stage.getProperties().get(BOARD_KEY));
+		stage.show();
+		Screens.logSwitch("board", cached, start);
+		return board;
+	}
+
+	private static void logSwitch(String screen, boolean cached, long start) {
+		if(GameLog.isEnabled(LogLevel.INFO)) {
+			GameLog.info("screen", "screen", screen, "cached", cached,
+					"micros", (System.nanoTime() - start) / 1000);
+		}
+	}
+}
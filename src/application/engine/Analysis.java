@@ -0,0 +1,149 @@
+package application.engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import application.model.Game;
+
+/**
+ * The Analysis class searches a position on a background thread, with no
+ * depth or time limit, until it is given another position, stopped or
+ * closed. It is meant for views that show a live evaluation.
+ *
+ * Only the latest result is kept: each completed iteration replaces the
+ * one before, and poll() takes whichever is newest. A view can poll on a
+ * timer at whatever rate it wants to redraw, so a fast search never
+ * queues up more updates than the view can show.
+ *
+ * Giving a new position with analyse(Game game) stops the current search
+ * at once, and results for the old position are never returned after it.
+ */
+public class Analysis {
+
+	private final Search search;
+	private final Object lock = new Object();
+	private final AtomicReference<Result> latest = new AtomicReference<>();
+	// guarded by lock
+	private Game pending;
+	private boolean closed;
+	private Thread thread;
+	private volatile long generation;
+
+	public Analysis() {
+		this(new Search());
+	}
+
+	public Analysis(Search search) {
+		this.search = search;
+	}
+
+	/**
+	 * Starts analysing a position, stopping the analysis of any other.
+	 * @param game The position to analyse. It is searched on another
+	 * thread, so it must not be used by anything else afterwards; pass
+	 * a Game.copy().
+	 */
+	public void analyse(Game game) {
+		synchronized(this.lock) {
+			if(this.closed) {
+				return;
+			}
+			this.generation++;
+			this.pending = game;
+			if(this.thread == null) {
+				this.thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Analysis.this.run();
+					}
+				}, "analysis");
+				this.thread.setDaemon(true);
+				this.thread.start();
+			}
+			this.lock.notifyAll();
+		}
+		this.search.stop();
+	}
+
+	/**
+	 * Stops analysing. The thread waits for the next position.
+	 */
+	public void stop() {
+		synchronized(this.lock) {
+			this.generation++;
+			this.pending = null;
+		}
+		this.search.stop();
+	}
+
+	/**
+	 * Stops analysing for good and lets the thread exit.
+	 */
+	public void close() {
+		synchronized(this.lock) {
+			this.generation++;
+			this.pending = null;
+			this.closed = true;
+			this.lock.notifyAll();
+		}
+		this.search.stop();
+	}
+
+	/**
+	 * Takes the newest result for the current position, if there is one
+	 * that has not been taken yet.
+	 * @return The newest result, or null if there is none.
+	 */
+	public SearchInfo poll() {
+		Result result = this.latest.getAndSet(null);
+		return result != null && result.generation == this.generation ? result.info : null;
+	}
+
+	/**
+	 * Runs on the analysis thread: waits for a position, searches it until
+	 * stopped, and repeats.
+	 */
+	private void run() {
+		while(true) {
+			Game game;
+			final long searchGeneration;
+			synchronized(this.lock) {
+				while(this.pending == null && !this.closed) {
+					try {
+						this.lock.wait();
+					}
+					catch(InterruptedException e) {
+						return;
+					}
+				}
+				if(this.closed) {
+					return;
+				}
+				game = this.pending;
+				this.pending = null;
+				searchGeneration = this.generation;
+			}
+			this.search.search(game, new SearchLimits(), new SearchListener() {
+				@Override
+				public void onInfo(SearchInfo info) {
+					if(searchGeneration != Analysis.this.generation) {
+						// A stop sent just before search() started is lost, as
+						// search() clears it, so stop a stale search here.
+						Analysis.this.search.stop();
+						return;
+					}
+					Analysis.this.latest.set(new Result(searchGeneration, info));
+				}
+			});
+		}
+	}
+
+	private static class Result {
+		private final long generation;
+		private final SearchInfo info;
+
+		private Result(long generation, SearchInfo info) {
+			this.generation = generation;
+			this.info = info;
+		}
+	}
+}
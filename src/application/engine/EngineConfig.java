@@ -0,0 +1,147 @@
+package application.engine;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import application.model.Zobrist;
+
+/**
+ * The EngineConfig class describes one engine player: how long it may
+ * search each move. It is written as a comma-separated list of options,
+ * e.g. "depth=3" or "nodes=5000,movetime=200", with an optional
+ * "name=..." to label it in results, and "ponder=false" to stop an
+ * EnginePlayer thinking on its opponent's time. The selective search
+ * techniques of Search are on unless turned off with "nullmove=false",
+ * "lmr=false", "futility=false" or "razoring=false". "tablebase=<dir>"
+ * probes the Tablebase in a directory, shared by every search the
+ * configuration creates. "book=<file>" plays moves from an OpeningBook
+ * while the position is in it; "bookkeys=<file>" reads the book's keys
+ * from a Polyglot Random64 table (781 big-endian 64-bit values) instead
+ * of using Zobrist.DEFAULT. The book too is shared by every search.
+ */
+public class EngineConfig {
+
+	private String name;
+	private int depth = SearchLimits.MAX_DEPTH;
+	private long nodes = Long.MAX_VALUE;
+	private long moveTime = 0;
+	private boolean ponder = true;
+	private boolean nullMovePruning = true,
+					lateMoveReductions = true,
+					futilityPruning = true,
+					razoring = true;
+	private Tablebase tablebase;
+	private OpeningBook openingBook;
+
+	/**
+	 * Parses a configuration.
+	 * @param text The options, e.g. "depth=3,name=shallow".
+	 * @return The configuration.
+	 * @throws IllegalArgumentException If an option is unknown or malformed.
+	 */
+	public static EngineConfig parse(String text) {
+		EngineConfig config = new EngineConfig();
+		config.name = text;
+		String book = null,
+			   bookKeys = null;
+		for(String option : text.split(",")) {
+			String[] parts = option.split("=", 2);
+			if(parts.length != 2) {
+				throw new IllegalArgumentException("Bad engine option: " + option);
+			}
+			try {
+				switch(parts[0]) {
+				case "name": config.name = parts[1]; break;
+				case "depth": config.depth = Integer.parseInt(parts[1]); break;
+				case "nodes": config.nodes = Long.parseLong(parts[1]); break;
+				case "movetime": config.moveTime = Long.parseLong(parts[1]); break;
+				case "ponder": config.ponder = Boolean.parseBoolean(parts[1]); break;
+				case "nullmove": config.nullMovePruning = Boolean.parseBoolean(parts[1]); break;
+				case "lmr": config.lateMoveReductions = Boolean.parseBoolean(parts[1]); break;
+				case "futility": config.futilityPruning = Boolean.parseBoolean(parts[1]); break;
+				case "razoring": config.razoring = Boolean.parseBoolean(parts[1]); break;
+				case "tablebase": config.tablebase = new Tablebase(parts[1]); break;
+				case "book": book = parts[1]; break;
+				case "bookkeys": bookKeys = parts[1]; break;
+				default: throw new IllegalArgumentException("Unknown engine option: " + parts[0]);
+				}
+			}
+			catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Bad engine option: " + option, e);
+			}
+		}
+		if(book != null) {
+			try {
+				config.openingBook = new OpeningBook(book, bookKeys == null ? Zobrist.DEFAULT : EngineConfig.loadKeys(bookKeys));
+			}
+			catch(IOException e) {
+				throw new IllegalArgumentException("Bad opening book: " + book, e);
+			}
+		}
+		return config;
+	}
+
+	private static Zobrist loadKeys(String path) throws IOException {
+		try(InputStream in = new FileInputStream(path)) {
+			return Zobrist.load(in);
+		}
+	}
+
+	/**
+	 * Creates a new search for this engine. Searches are not thread-safe,
+	 * so each game gets its own.
+	 * @return A new search.
+	 */
+	public Search createSearch() {
+		Search search = new Search();
+		search.setNullMovePruning(this.nullMovePruning);
+		search.setLateMoveReductions(this.lateMoveReductions);
+		search.setFutilityPruning(this.futilityPruning);
+		search.setRazoring(this.razoring);
+		search.setTablebase(this.tablebase);
+		search.setOpeningBook(this.openingBook);
+		return search;
+	}
+
+	/**
+	 * Creates the limits for searching one move.
+	 * @return New search limits.
+	 */
+	public SearchLimits createLimits() {
+		SearchLimits limits = new SearchLimits();
+		limits.setDepth(this.depth);
+		limits.setNodes(this.nodes);
+		limits.setMoveTime(this.moveTime);
+		return limits;
+	}
+
+	/**
+	 * Returns whether this engine thinks on its opponent's time when it is
+	 * an EnginePlayer.
+	 * @return true if it ponders.
+	 */
+	public boolean isPonder() {
+		return this.ponder;
+	}
+
+	/**
+	 * Gets the opening book of this engine.
+	 * @return The opening book, or null if there is none.
+	 */
+	public OpeningBook getOpeningBook() {
+		return this.openingBook;
+	}
+
+	/**
+	 * Gets the name of this engine.
+	 * @return The name of this engine.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public String toString() {
+		return this.getName();
+	}
+}
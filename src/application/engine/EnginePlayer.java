@@ -0,0 +1,357 @@
+package application.engine;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import application.model.Game;
+import application.model.Move;
+import application.util.LatencyStats;
+
+/**
+ * The EnginePlayer class is the engine playing one side of a game, e.g.
+ * against a person at the board. It searches on its own thread and
+ * hands its moves to a listener, and it thinks on the opponent's time
+ * ("pondering").
+ *
+ * Once its move has been played, ponder(Game game) plays the reply it
+ * expects (the second move of its principal variation) and searches the
+ * position after it, with no node or time limit, while the opponent
+ * thinks. If the opponent then plays that move (a ponder hit),
+ * play(Game game, MoveListener listener) lets the running search go on,
+ * with its limits counted from when pondering started, so the move comes
+ * sooner by the time already spent. If the opponent plays anything else
+ * (a ponder miss), the search is stopped and a new one started. Either
+ * way the search reuses the TranspositionTable of the last, so the best
+ * moves it remembers are tried first.
+ *
+ * If the game has a clock, each search is given the engine's time left
+ * on it, and a TimeManager decides how long to search.
+ *
+ * The hit rate, the time saved by hits and the time from being asked for
+ * a move to giving it are counted. Methods may be called from any thread,
+ * and the listener is told on the engine's thread.
+ */
+public class EnginePlayer {
+
+	/**
+	 * Told the engine's move.
+	 */
+	public interface MoveListener {
+		/**
+		 * Called on the engine's thread once it has chosen a move.
+		 * @param move The move, or null if there are no legal moves.
+		 * @param info The last completed iteration of the search, or null.
+		 */
+		void bestMove(Move move, SearchInfo info);
+	}
+
+	private final EngineConfig config;
+	private final Search search;
+	private final ExecutorService thread;
+	// guarded by this; a job whose generation is not the latest is stale
+	private long generation;
+	private boolean pondering;
+	private Job ponderJob;
+	private Move expectedReply;
+	private long ponders,
+				 hits,
+				 misses,
+				 savedNanos;
+	private final LatencyStats responseStats = new LatencyStats();
+
+	/**
+	 * Creates a player searching as a configuration says, which ponders
+	 * unless the configuration says "ponder=false".
+	 * @param config The configuration.
+	 */
+	public EnginePlayer(EngineConfig config) {
+		this.config = config;
+		this.search = config.createSearch();
+		this.pondering = config.isPonder();
+		this.thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "engine");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Asks for a move in a position. If the engine has been pondering this
+	 * position, its search carries on; otherwise any pondering is stopped and
+	 * a new search started.
+	 * @param game The position, which is searched on the engine's thread, so
+	 * it must not be used by anything else afterwards; pass a Game.copy().
+	 * @param listener Told the move.
+	 */
+	public void play(Game game, MoveListener listener) {
+		long now = System.nanoTime();
+		synchronized(this) {
+			Job job = this.ponderJob;
+			this.ponderJob = null;
+			if(job != null && job.generation == this.generation && job.position.equals(game.getFenFor3FoldRepetition())) {
+				this.hits++;
+				job.listener = listener;
+				job.requestNanos = now;
+				// the node and time limits now apply, counted from when pondering started
+				job.limits.setPonder(false);
+				if(job.done) {
+					this.thread.execute(this.newDelivery(job));
+				}
+				return;
+			}
+			if(job != null) {
+				this.misses++;
+			}
+			job = new Job(++this.generation, game, this.createLimits(game));
+			job.listener = listener;
+			job.requestNanos = now;
+			// stops the stale search running, if any, before the new one can start and clear it
+			this.search.stop();
+			this.thread.execute(job);
+		}
+	}
+
+	/**
+	 * Starts pondering after the engine's move has been played: plays the
+	 * reply the engine expects, and searches the position after it until
+	 * play(Game game, MoveListener listener) is called. Does nothing if
+	 * pondering is off or no reply is expected.
+	 * @param game The position after the engine's move. It is searched on
+	 * the engine's thread, so pass a Game.copy().
+	 */
+	public void ponder(Game game) {
+		synchronized(this) {
+			Move reply = this.expectedReply;
+			if(!this.pondering || reply == null || !game.isLegalMove(reply)) {
+				return;
+			}
+			game.pushMove(reply);
+			SearchLimits limits = this.createLimits(game);
+			limits.setPonder(true);
+			Job job = new Job(++this.generation, game, limits);
+			this.ponderJob = job;
+			this.ponders++;
+			this.thread.execute(job);
+		}
+	}
+
+	/**
+	 * Stops searching, e.g. when the game ends or is taken back. A move
+	 * asked for is never given.
+	 */
+	public void stop() {
+		synchronized(this) {
+			this.generation++;
+			this.ponderJob = null;
+		}
+		this.search.stop();
+	}
+
+	/**
+	 * Stops searching for good and lets the engine's thread exit.
+	 */
+	public void close() {
+		this.stop();
+		this.thread.shutdownNow();
+	}
+
+	/**
+	 * Creates the limits of a search from the configuration and, if the game
+	 * has one, its clock.
+	 */
+	private SearchLimits createLimits(Game game) {
+		SearchLimits limits = this.config.createLimits();
+		if(game.getClock() != null) {
+			limits.setClock(game.getClock(), game.getTurn());
+		}
+		return limits;
+	}
+
+	/**
+	 * Runs on the engine's thread when a search has finished: gives the move
+	 * if it has been asked for, or keeps it for a ponder hit.
+	 */
+	private void finished(Job job, Move best, SearchInfo info) {
+		Runnable delivery = null;
+		synchronized(this) {
+			job.done = true;
+			job.doneNanos = System.nanoTime();
+			job.best = best;
+			job.info = info;
+			if(job.generation == this.generation && job.listener != null) {
+				delivery = this.newDelivery(job);
+			}
+		}
+		if(delivery != null) {
+			delivery.run();
+		}
+	}
+
+	/**
+	 * Returns what tells a job's listener its move, and counts it. Called
+	 * holding the lock, once the job is done and its move asked for.
+	 */
+	private Runnable newDelivery(final Job job) {
+		long now = System.nanoTime();
+		this.responseStats.record(now - job.requestNanos);
+		if(job.ponder) {
+			// searched from when pondering started until it ended or the move was asked for
+			this.savedNanos += Math.max(0, Math.min(job.requestNanos, job.doneNanos) - job.startNanos);
+		}
+		this.expectedReply = null;
+		List<Move> line = job.info == null ? null : job.info.getPrincipalVariation();
+		if(line != null && line.size() > 1 && line.get(0).equals(job.best)) {
+			this.expectedReply = line.get(1);
+		}
+		return new Runnable() {
+			@Override
+			public void run() {
+				job.listener.bestMove(job.best, job.info);
+			}
+		};
+	}
+
+	/**
+	 * Sets whether the engine ponders. Turning it off stops any pondering.
+	 * @param pondering true to ponder.
+	 */
+	public void setPondering(boolean pondering) {
+		synchronized(this) {
+			this.pondering = pondering;
+			if(pondering || this.ponderJob == null) {
+				return;
+			}
+		}
+		this.stop();
+	}
+
+	/**
+	 * Returns whether the engine ponders.
+	 * @return true if it ponders.
+	 */
+	public synchronized boolean isPondering() {
+		return this.pondering;
+	}
+
+	/**
+	 * Gets the number of positions pondered.
+	 * @return The number of ponder searches.
+	 */
+	public synchronized long getPonderCount() {
+		return this.ponders;
+	}
+
+	/**
+	 * Gets the number of times the opponent played the expected reply.
+	 * @return The number of ponder hits.
+	 */
+	public synchronized long getPonderHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Gets the number of times the opponent played another move.
+	 * @return The number of ponder misses.
+	 */
+	public synchronized long getPonderMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Gets the share of replies the engine expected.
+	 * @return The hits over the hits and misses, or 0 if there were none.
+	 */
+	public synchronized double getHitRate() {
+		return this.hits + this.misses == 0 ? 0 : (double) this.hits / (this.hits + this.misses);
+	}
+
+	/**
+	 * Gets the time searched before moves were asked for, on ponder hits,
+	 * which is the time by which those moves came sooner.
+	 * @return The time saved, in nanoseconds.
+	 */
+	public synchronized long getTimeSavedNanos() {
+		return this.savedNanos;
+	}
+
+	/**
+	 * Gets the time from each move being asked for to it being given.
+	 * @return The response timings.
+	 */
+	public LatencyStats getResponseStats() {
+		return this.responseStats;
+	}
+
+	/**
+	 * Gets the search, e.g. to set a Tablebase.
+	 * @return The search.
+	 */
+	public Search getSearch() {
+		return this.search;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ponders=" + this.ponders + " hits=" + this.hits + " misses=" + this.misses
+				+ String.format(" hitRate=%.0f%% saved=%.0fms", this.getHitRate() * 100, this.savedNanos / 1e6)
+				+ " response: " + this.responseStats;
+	}
+
+	/**
+	 * One search, for a move asked for or for pondering.
+	 */
+	private class Job implements Runnable {
+		private final long generation;
+		private final Game game;
+		private final String position;
+		private final SearchLimits limits;
+		private final boolean ponder;
+		// guarded by the EnginePlayer
+		private MoveListener listener;
+		private long requestNanos,
+					 startNanos,
+					 doneNanos;
+		private boolean done;
+		private Move best;
+		private SearchInfo info;
+
+		private Job(long generation, Game game, SearchLimits limits) {
+			this.generation = generation;
+			this.game = game;
+			this.position = game.getFenFor3FoldRepetition();
+			this.limits = limits;
+			this.ponder = limits.isPonder();
+		}
+
+		@Override
+		public void run() {
+			final EnginePlayer player = EnginePlayer.this;
+			synchronized(player) {
+				if(this.generation != player.generation) {
+					return;
+				}
+				this.startNanos = System.nanoTime();
+			}
+			final SearchInfo[] last = new SearchInfo[1];
+			Move best = player.search.search(this.game, this.limits, new SearchListener() {
+				@Override
+				public void onInfo(SearchInfo info) {
+					synchronized(player) {
+						if(Job.this.generation != player.generation) {
+							// a stop sent just before search() started is lost, as it clears it
+							player.search.stop();
+							return;
+						}
+					}
+					last[0] = info;
+				}
+			});
+			player.finished(this, best, last[0]);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package application.engine;
+
+import static application.model.PieceColor.*;
+
+import application.model.Game;
+import application.model.Piece;
+
+/**
+ * The Evaluator class gives a static score to a position: the material
+ * of each side, plus a bonus or penalty for the square each piece
+ * stands on (a "piece-square table").
+ *
+ * Scores are in centipawns (a pawn is worth 100) and are from the
+ * point of view of the side to move.
+ * @see https://www.chessprogramming.org/Simplified_Evaluation_Function
+ */
+public class Evaluator {
+
+	public static final int PAWN_VALUE = 100,
+							KNIGHT_VALUE = 320,
+							BISHOP_VALUE = 330,
+							ROOK_VALUE = 500,
+							QUEEN_VALUE = 900;
+
+	/*
+	 * Piece-square tables, from White's point of view: row 0 is
+	 * the eighth rank. Black's tables are the same, flipped.
+	 */
+	private static final int[][] PAWN_TABLE = {
+			{  0,  0,  0,  0,  0,  0,  0,  0},
+			{ 50, 50, 50, 50, 50, 50, 50, 50},
+			{ 10, 10, 20, 30, 30, 20, 10, 10},
+			{  5,  5, 10, 25, 25, 10,  5,  5},
+			{  0,  0,  0, 20, 20,  0,  0,  0},
+			{  5, -5,-10,  0,  0,-10, -5,  5},
+			{  5, 10, 10,-20,-20, 10, 10,  5},
+			{  0,  0,  0,  0,  0,  0,  0,  0}};
+	private static final int[][] KNIGHT_TABLE = {
+			{-50,-40,-30,-30,-30,-30,-40,-50},
+			{-40,-20,  0,  0,  0,  0,-20,-40},
+			{-30,  0, 10, 15, 15, 10,  0,-30},
+			{-30,  5, 15, 20, 20, 15,  5,-30},
+			{-30,  0, 15, 20, 20, 15,  0,-30},
+			{-30,  5, 10, 15, 15, 10,  5,-30},
+			{-40,-20,  0,  5,  5,  0,-20,-40},
+			{-50,-40,-30,-30,-30,-30,-40,-50}};
+	private static final int[][] BISHOP_TABLE = {
+			{-20,-10,-10,-10,-10,-10,-10,-20},
+			{-10,  0,  0,  0,  0,  0,  0,-10},
+			{-10,  0,  5, 10, 10,  5,  0,-10},
+			{-10,  5,  5, 10, 10,  5,  5,-10},
+			{-10,  0, 10, 10, 10, 10,  0,-10},
+			{-10, 10, 10, 10, 10, 10, 10,-10},
+			{-10,  5,  0,  0,  0,  0,  5,-10},
+			{-20,-10,-10,-10,-10,-10,-10,-20}};
+	private static final int[][] ROOK_TABLE = {
+			{  0,  0,  0,  0,  0,  0,  0,  0},
+			{  5, 10, 10, 10, 10, 10, 10,  5},
+			{ -5,  0,  0,  0,  0,  0,  0, -5},
+			{ -5,  0,  0,  0,  0,  0,  0, -5},
+			{ -5,  0,  0,  0,  0,  0,  0, -5},
+			{ -5,  0,  0,  0,  0,  0,  0, -5},
+			{ -5,  0,  0,  0,  0,  0,  0, -5},
+			{  0,  0,  0,  5,  5,  0,  0,  0}};
+	private static final int[][] QUEEN_TABLE = {
+			{-20,-10,-10, -5, -5,-10,-10,-20},
+			{-10,  0,  0,  0,  0,  0,  0,-10},
+			{-10,  0,  5,  5,  5,  5,  0,-10},
+			{ -5,  0,  5,  5,  5,  5,  0, -5},
+			{  0,  0,  5,  5,  5,  5,  0, -5},
+			{-10,  5,  5,  5,  5,  5,  0,-10},
+			{-10,  0,  5,  0,  0,  0,  0,-10},
+			{-20,-10,-10, -5, -5,-10,-10,-20}};
+	private static final int[][] KING_TABLE = {
+			{-30,-40,-40,-50,-50,-40,-40,-30},
+			{-30,-40,-40,-50,-50,-40,-40,-30},
+			{-30,-40,-40,-50,-50,-40,-40,-30},
+			{-30,-40,-40,-50,-50,-40,-40,-30},
+			{-20,-30,-30,-40,-40,-30,-30,-20},
+			{-10,-20,-20,-20,-20,-20,-20,-10},
+			{ 20, 20,  0,  0,  0,  0, 20, 20},
+			{ 20, 30, 10,  0,  0, 10, 30, 20}};
+
+	/**
+	 * Returns the static score of the current position.
+	 * @param game The game to evaluate.
+	 * @return The score in centipawns, from the point of view
+	 * of the side to move.
+	 */
+	public int evaluate(Game game) {
+		int score = 0;
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				Piece piece = game.getPieceAt(r, c);
+				if(piece == null) {
+					continue;
+				}
+				boolean white = piece.getColor() == WHITE;
+				int row = white ? r : Game.BOARD_ROWS - 1 - r;
+				int value = Evaluator.getValue(piece) + Evaluator.getTable(piece)[row][c];
+				score += white ? value : -value;
+			}
+		}
+		return game.getTurn() == WHITE ? score : -score;
+	}
+
+	/**
+	 * Returns the material value of a piece.
+	 * @param piece The piece.
+	 * @return The value of the piece in centipawns. Kings are worth 0.
+	 */
+	public static int getValue(Piece piece) {
+		switch(piece) {
+		case WHITE_PAWN: case BLACK_PAWN: return PAWN_VALUE;
+		case WHITE_KNIGHT: case BLACK_KNIGHT: return KNIGHT_VALUE;
+		case WHITE_BISHOP: case BLACK_BISHOP: return BISHOP_VALUE;
+		case WHITE_ROOK: case BLACK_ROOK: return ROOK_VALUE;
+		case WHITE_QUEEN: case BLACK_QUEEN: return QUEEN_VALUE;
+		default: return 0;
+		}
+	}
+
+	private static int[][] getTable(Piece piece) {
+		switch(piece) {
+		case WHITE_PAWN: case BLACK_PAWN: return PAWN_TABLE;
+		case WHITE_KNIGHT: case BLACK_KNIGHT: return KNIGHT_TABLE;
+		case WHITE_BISHOP: case BLACK_BISHOP: return BISHOP_TABLE;
+		case WHITE_ROOK: case BLACK_ROOK: return ROOK_TABLE;
+		case WHITE_QUEEN: case BLACK_QUEEN: return QUEEN_TABLE;
+		default: return KING_TABLE;
+		}
+	}
+}
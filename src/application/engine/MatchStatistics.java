@@ -0,0 +1,151 @@
+package application.engine;
+
+/**
+ * The MatchStatistics class keeps the score of a match between two
+ * engines, from the first engine's point of view, and estimates the
+ * Elo difference between them.
+ *
+ * It also runs a sequential probability ratio test (SPRT), which decides
+ * as early as possible whether the first engine is better by at least
+ * elo1 (hypothesis H1) or by at most elo0 (hypothesis H0). The
+ * log-likelihood ratio uses the usual normal approximation of the
+ * trinomial (win/draw/loss) model.
+ * @see https://www.chessprogramming.org/Sequential_Probability_Ratio_Test
+ */
+public class MatchStatistics {
+
+	public static final int CONTINUE = 0,
+							ACCEPT_H0 = -1,
+							ACCEPT_H1 = 1;
+
+	private int wins,
+				draws,
+				losses;
+
+	/**
+	 * Adds the result of a game.
+	 * @param score 1 for a win, 0.5 for a draw, 0 for a loss,
+	 * for the first engine.
+	 */
+	public synchronized void add(double score) {
+		if(score > 0.5) {
+			this.wins++;
+		} else if(score < 0.5) {
+			this.losses++;
+		} else {
+			this.draws++;
+		}
+	}
+
+	/**
+	 * Gets the number of games played.
+	 * @return The number of games played.
+	 */
+	public synchronized int getGames() {
+		return this.wins + this.draws + this.losses;
+	}
+
+	/**
+	 * Gets the average score of the first engine.
+	 * @return The score per game, between 0 and 1.
+	 */
+	public synchronized double getScore() {
+		int games = this.getGames();
+		return games == 0 ? 0.5 : (this.wins + this.draws / 2.0) / games;
+	}
+
+	/**
+	 * Gets the estimated Elo difference.
+	 * @return The Elo difference; positive if the first engine is stronger.
+	 */
+	public synchronized double getElo() {
+		return MatchStatistics.scoreToElo(this.getScore());
+	}
+
+	/**
+	 * Gets the 95% confidence margin of the Elo difference.
+	 * @return The margin; the true difference is within getElo() plus or
+	 * minus this, 95% of the time.
+	 */
+	public synchronized double getEloError() {
+		int games = this.getGames();
+		if(games == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double score = this.getScore();
+		double deviation = Math.sqrt(this.getVariance() / games);
+		return (MatchStatistics.scoreToElo(score + 1.96 * deviation) -
+				MatchStatistics.scoreToElo(score - 1.96 * deviation)) / 2;
+	}
+
+	/**
+	 * Gets the log-likelihood ratio of H1 (elo1) against H0 (elo0).
+	 * @param elo0 The Elo difference of H0.
+	 * @param elo1 The Elo difference of H1.
+	 * @return The log-likelihood ratio.
+	 */
+	public synchronized double getLLR(double elo0, double elo1) {
+		double variance = this.getVariance();
+		if(this.getGames() == 0 || variance <= 0) {
+			return 0;
+		}
+		double score0 = MatchStatistics.eloToScore(elo0),
+			   score1 = MatchStatistics.eloToScore(elo1);
+		return this.getGames() * (score1 - score0) * (2 * this.getScore() - score0 - score1) / (2 * variance);
+	}
+
+	/**
+	 * Decides the SPRT.
+	 * @param elo0 The Elo difference of H0.
+	 * @param elo1 The Elo difference of H1.
+	 * @param alpha The chance of accepting H1 when H0 is true.
+	 * @param beta The chance of accepting H0 when H1 is true.
+	 * @return ACCEPT_H0, ACCEPT_H1 or CONTINUE.
+	 */
+	public synchronized int getSPRTResult(double elo0, double elo1, double alpha, double beta) {
+		double llr = this.getLLR(elo0, elo1);
+		if(llr >= Math.log((1 - beta) / alpha)) {
+			return ACCEPT_H1;
+		}
+		if(llr <= Math.log(beta / (1 - alpha))) {
+			return ACCEPT_H0;
+		}
+		return CONTINUE;
+	}
+
+	/**
+	 * Gets the variance of the score of a single game.
+	 */
+	private double getVariance() {
+		int games = this.getGames();
+		double score = this.getScore();
+		return ((double) this.wins / games + this.draws / 4.0 / games) - score * score;
+	}
+
+	private static double scoreToElo(double score) {
+		score = Math.max(1e-6, Math.min(1 - 1e-6, score));
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	private static double eloToScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	public synchronized int getWins() {
+		return this.wins;
+	}
+
+	public synchronized int getDraws() {
+		return this.draws;
+	}
+
+	public synchronized int getLosses() {
+		return this.losses;
+	}
+
+	public synchronized String toString() {
+		return String.format("Games: %d (+%d =%d -%d)  Score: %.1f%%  Elo: %+.1f +/- %.1f",
+				this.getGames(), this.wins, this.draws, this.losses,
+				100 * this.getScore(), this.getElo(), this.getEloError());
+	}
+}
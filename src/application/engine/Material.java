@@ -0,0 +1,189 @@
+package application.engine;
+
+import static application.model.PieceColor.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import application.model.Piece;
+
+/**
+ * The Material class describes the set of pieces on the board, such as
+ * "KQvKR" (White has a king and queen, Black has a king and rook).
+ * Each material signature owns one endgame table.
+ *
+ * Pieces are kept in a fixed order: White's pieces before Black's, and
+ * within each color king, queen, rook, bishop, knight, pawn. A position
+ * with this material is indexed by the squares of the pieces in that
+ * order, 6 bits each, followed by 1 bit for the side to move.
+ *
+ * Only one of a signature and its color-swapped mirror (e.g. "KvKQ"
+ * and "KQvK") is stored; the canonical one gives White the stronger
+ * pieces. Mirrored positions are flipped top to bottom and have their
+ * colors swapped before they are looked up.
+ */
+class Material {
+
+	private static final String ORDER = "KQRBNP";
+	private static final int[] VALUES = {0, 9, 5, 3, 3, 1};
+	private static final Comparator<Piece> PIECE_ORDER = new Comparator<Piece>() {
+		@Override
+		public int compare(Piece a, Piece b) {
+			if(a.getColor() != b.getColor()) {
+				return a.getColor() == WHITE ? -1 : 1;
+			}
+			return ORDER.indexOf(Character.toUpperCase(a.getCharacter())) -
+					ORDER.indexOf(Character.toUpperCase(b.getCharacter()));
+		}
+	};
+
+	private final Piece[] pieces;
+	private final String name;
+
+	Material(Piece... pieces) {
+		this.pieces = pieces.clone();
+		Arrays.sort(this.pieces, PIECE_ORDER);
+		StringBuilder name = new StringBuilder();
+		for(int i=0; i<this.pieces.length; i++) {
+			if(this.pieces[i].getColor() == BLACK && (i == 0 || this.pieces[i - 1].getColor() == WHITE)) {
+				name.append('v');
+			}
+			name.append(Character.toUpperCase(this.pieces[i].getCharacter()));
+		}
+		this.name = name.toString();
+	}
+
+	/**
+	 * Parses a signature such as "KQvKR".
+	 * @param name The signature to parse.
+	 * @return The material described by the signature.
+	 */
+	static Material parse(String name) {
+		String[] sides = name.toUpperCase().split("V");
+		if(sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K")) {
+			throw new IllegalArgumentException("Bad material signature: " + name);
+		}
+		Piece[] pieces = new Piece[sides[0].length() + sides[1].length()];
+		int i = 0;
+		for(char ch : sides[0].toCharArray()) {
+			pieces[i++] = Material.toPiece(ch);
+		}
+		for(char ch : sides[1].toCharArray()) {
+			pieces[i++] = Material.toPiece(Character.toLowerCase(ch));
+		}
+		return new Material(pieces);
+	}
+
+	private static Piece toPiece(char ch) {
+		Piece piece = Piece.CHAR_TO_PIECE.get(ch);
+		if(piece == null) {
+			throw new IllegalArgumentException("Bad piece: " + ch);
+		}
+		return piece;
+	}
+
+	/**
+	 * Returns the piece of the same type but the opposite color.
+	 * @param piece The piece to swap.
+	 * @return The piece with its color swapped.
+	 */
+	static Piece swapColor(Piece piece) {
+		char ch = piece.getCharacter();
+		return Piece.CHAR_TO_PIECE.get(Character.isUpperCase(ch) ?
+				Character.toLowerCase(ch) : Character.toUpperCase(ch));
+	}
+
+	/**
+	 * Returns this material with the colors swapped.
+	 * @return The mirror of this material.
+	 */
+	Material getMirror() {
+		Piece[] mirror = new Piece[this.pieces.length];
+		for(int i=0; i<mirror.length; i++) {
+			mirror[i] = Material.swapColor(this.pieces[i]);
+		}
+		return new Material(mirror);
+	}
+
+	/**
+	 * Returns whether this signature is the one stored on disk,
+	 * rather than its mirror. White must have more pieces, or as many
+	 * pieces of more value, or (if both are equal) the signature must
+	 * sort first.
+	 * @return true if this is the canonical signature. false otherwise.
+	 */
+	boolean isCanonical() {
+		int white = 0, black = 0, whiteValue = 0, blackValue = 0;
+		for(Piece piece : this.pieces) {
+			if(piece.getColor() == WHITE) {
+				white++;
+				whiteValue += Material.getValue(piece);
+			} else {
+				black++;
+				blackValue += Material.getValue(piece);
+			}
+		}
+		if(white != black) return white > black;
+		if(whiteValue != blackValue) return whiteValue > blackValue;
+		return this.name.compareTo(this.getMirror().getName()) <= 0;
+	}
+
+	/**
+	 * Returns the canonical signature for this material.
+	 * @return this, or its mirror if this is not canonical.
+	 */
+	Material getCanonical() {
+		return this.isCanonical() ? this : this.getMirror();
+	}
+
+	private static int getValue(Piece piece) {
+		return VALUES[ORDER.indexOf(Character.toUpperCase(piece.getCharacter()))];
+	}
+
+	/**
+	 * Returns whether no checkmate can be constructed with this material.
+	 * This matches Game.isInsufficientMaterial(): no pawns, rooks or
+	 * queens, and at most one knight or bishop in total.
+	 * @return true if this material is a draw by insufficient material.
+	 */
+	boolean isInsufficient() {
+		int minors = 0;
+		for(Piece piece : this.pieces) {
+			switch(Character.toUpperCase(piece.getCharacter())) {
+			case 'P': case 'R': case 'Q': return false;
+			case 'B': case 'N': minors++; break;
+			default: break;
+			}
+		}
+		return minors <= 1;
+	}
+
+	/**
+	 * Returns the number of entries in a table for this material:
+	 * 64 squares for each piece, times 2 sides to move.
+	 * @return The size of the table.
+	 */
+	int getSize() {
+		return 2 << (6 * this.pieces.length);
+	}
+
+	/**
+	 * Returns the pieces, in index order.
+	 * @return The pieces, in index order.
+	 */
+	Piece[] getPieces() {
+		return this.pieces;
+	}
+
+	int getPieceCount() {
+		return this.pieces.length;
+	}
+
+	String getName() {
+		return this.name;
+	}
+
+	public String toString() {
+		return this.getName();
+	}
+}
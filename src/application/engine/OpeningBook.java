@@ -0,0 +1,251 @@
+package application.engine;
+
+import static application.model.Piece.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import application.model.Game;
+import application.model.Move;
+import application.model.Piece;
+import application.model.Zobrist;
+import application.util.LatencyStats;
+
+/**
+ * The OpeningBook class reads an opening book in the Polyglot (.bin)
+ * format. A book is a file of 16-byte entries sorted by position key:
+ *
+ * 1. key (8 bytes): The Zobrist key of the position.
+ * 2. move (2 bytes): The move, packed as to-file, to-rank, from-file,
+ * from-rank and promotion piece, 3 bits each.
+ * 3. weight (2 bytes): How often the move should be played,
+ * relative to the other moves of the position.
+ * 4. learn (4 bytes): Unused.
+ *
+ * The file is memory-mapped and searched with a binary search, so even
+ * a very large book costs no heap and is never read into memory as a
+ * whole. Books must be smaller than 2GB.
+ *
+ * Lookups may be made from several threads at once.
+ * @see http://hgm.nubati.net/book_format.html
+ */
+public class OpeningBook implements Closeable {
+
+	private static final int ENTRY_SIZE = 16;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int entryCount;
+	private final Zobrist zobrist;
+	private final LatencyStats lookupStats = new LatencyStats();
+
+	/**
+	 * Opens a book whose keys were built with the default Zobrist keys.
+	 * @param path The path of the book file.
+	 * @throws IOException If the book cannot be opened.
+	 * @see Zobrist.DEFAULT
+	 */
+	public OpeningBook(String path) throws IOException {
+		this(path, Zobrist.DEFAULT);
+	}
+
+	/**
+	 * Opens a book whose keys were built with the given Zobrist keys.
+	 * Pass the Polyglot Random64 table to read standard Polyglot books.
+	 * @param path The path of the book file.
+	 * @param zobrist The keys used to hash positions.
+	 * @throws IOException If the book cannot be opened.
+	 * @see Zobrist.load(InputStream in)
+	 */
+	public OpeningBook(String path, Zobrist zobrist) throws IOException {
+		this.file = new RandomAccessFile(path, "r");
+		long length = this.file.length();
+		if(length % ENTRY_SIZE != 0 || length > Integer.MAX_VALUE) {
+			this.file.close();
+			throw new IOException("Not a Polyglot book: " + path);
+		}
+		this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+		this.entryCount = (int) (length / ENTRY_SIZE);
+		this.zobrist = zobrist;
+	}
+
+	/**
+	 * Returns the book moves for the current position of the game,
+	 * along with their weights. Moves that are not legal in the
+	 * current position are left out, checked against the full list of
+	 * legal moves: a book built with other keys, or a key collision, can
+	 * hold moves that Game.isLegalMove(Move move) lets through, such as a
+	 * rook moving through a piece.
+	 * @param game The game to look up.
+	 * @return The list of book entries; empty if the position is
+	 * not in the book.
+	 */
+	public List<Entry> getEntries(Game game) {
+		long start = System.nanoTime();
+		long key = this.zobrist.hash(game);
+		List<Entry> entries = new ArrayList<>();
+		// only generated if the position is in the book
+		List<Move> legalMoves = null;
+		for(int i = this.findFirst(key); i < this.entryCount && this.getKey(i) == key; i++) {
+			int offset = i * ENTRY_SIZE;
+			Move move = OpeningBook.decodeMove(game, this.buffer.getShort(offset + 8) & 0xffff);
+			int weight = this.buffer.getShort(offset + 10) & 0xffff;
+			if(legalMoves == null) {
+				legalMoves = game.getLegalMoves();
+			}
+			if(OpeningBook.contains(legalMoves, move)) {
+				entries.add(new Entry(move, weight));
+			}
+		}
+		this.lookupStats.recordSince(start);
+		return entries;
+	}
+
+	// Move overloads equals(Move) rather than overriding equals(Object), so List.contains cannot be used
+	private static boolean contains(List<Move> moves, Move move) {
+		for(Move other : moves) {
+			if(other.equals(move)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Picks a book move for the current position of the game.
+	 * Moves are picked at random, in proportion to their weights.
+	 * @param game The game to look up.
+	 * @param random The source of randomness.
+	 * @return A legal book move, or null if the position is not in the book.
+	 */
+	public Move getBookMove(Game game, Random random) {
+		List<Entry> entries = this.getEntries(game);
+		if(entries.isEmpty()) {
+			return null;
+		}
+		int totalWeight = 0;
+		for(Entry entry : entries) {
+			totalWeight += entry.getWeight();
+		}
+		if(totalWeight == 0) {
+			return entries.get(random.nextInt(entries.size())).getMove();
+		}
+		int pick = random.nextInt(totalWeight);
+		for(Entry entry : entries) {
+			pick -= entry.getWeight();
+			if(pick < 0) {
+				return entry.getMove();
+			}
+		}
+		return entries.get(entries.size() - 1).getMove();
+	}
+
+	/**
+	 * Finds the index of the first entry whose key is not less than
+	 * the given key (comparing keys as unsigned numbers).
+	 * @param key The key to search for.
+	 * @return The index of the first matching entry, or entryCount
+	 * if all keys are smaller.
+	 */
+	private int findFirst(long key) {
+		int low = 0,
+			high = this.entryCount;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(Long.compareUnsigned(this.getKey(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long getKey(int index) {
+		return this.buffer.getLong(index * ENTRY_SIZE);
+	}
+
+	/**
+	 * Converts a Polyglot move into a Move. Polyglot writes castling
+	 * as the king capturing its own rook (e1h1), which is converted
+	 * to the king moving two squares (e1g1). Promotions are always
+	 * to a queen in this app, so the promotion piece is ignored.
+	 * @param game The game the move is played in.
+	 * @param move The packed Polyglot move.
+	 * @return The decoded Move.
+	 */
+	static Move decodeMove(Game game, int move) {
+		int toCol = move & 7;
+		int toRow = Game.BOARD_ROWS - 1 - ((move >> 3) & 7);
+		int fromCol = (move >> 6) & 7;
+		int fromRow = Game.BOARD_ROWS - 1 - ((move >> 9) & 7);
+
+		Piece piece = game.getPieceAt(fromRow, fromCol);
+		if((piece == WHITE_KING || piece == BLACK_KING) && fromCol == 4 && fromRow == toRow) {
+			if(toCol == 7) toCol = 6;
+			else if(toCol == 0) toCol = 2;
+		}
+		return new Move(fromRow, fromCol, toRow, toCol);
+	}
+
+	/**
+	 * Gets the number of entries in the book.
+	 * @return The number of entries in the book.
+	 */
+	public int getEntryCount() {
+		return this.entryCount;
+	}
+
+	/**
+	 * Gets the timings of every lookup made in this book.
+	 * @return The lookup latency of this book.
+	 */
+	public LatencyStats getLookupStats() {
+		return this.lookupStats;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+	}
+
+	/**
+	 * A book move along with its weight.
+	 */
+	public static class Entry {
+
+		private final Move move;
+		private final int weight;
+
+		public Entry(Move move, int weight) {
+			this.move = move;
+			this.weight = weight;
+		}
+
+		/**
+		 * Gets the book move.
+		 * @return The book move.
+		 */
+		public Move getMove() {
+			return this.move;
+		}
+
+		/**
+		 * Gets the weight of the book move.
+		 * @return The weight of the book move.
+		 */
+		public int getWeight() {
+			return this.weight;
+		}
+
+		public String toString() {
+			return this.getMove() + " (" + this.getWeight() + ")";
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package application.engine;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import application.model.Game;
+import application.model.Move;
+import application.model.PieceColor;
+import application.util.LatencyStats;
+
+/**
+ * The PonderBench class measures what pondering saves an EnginePlayer
+ * playing against someone who takes a while over each move, as a person
+ * at the board does.
+ *
+ * The opponent is a Search with its own configuration, which finds its
+ * move and then waits out the rest of its thinking time, so the engine
+ * has that time to ponder. The same games (from the same random openings,
+ * with the engine taking each colour in turn) are played with pondering
+ * on and then off, and for both the ponder hit rate, the time saved and
+ * the time the engine took to answer each move are printed.
+ *
+ * Usage: java application.engine.PonderBench [-games n] [-maxplies n]
+ * [-think ms] [-seed n] [-opponent config] engine
+ */
+public class PonderBench {
+
+	private static final int OPENING_PLIES = 4;
+
+	private final EngineConfig engine,
+							   opponent;
+	private int games = 10;
+	private int maxPlies = 60;
+	private long thinkMillis = 500;
+	private long seed = 1;
+
+	public PonderBench(EngineConfig engine, EngineConfig opponent) {
+		this.engine = engine;
+		this.opponent = opponent;
+	}
+
+	/**
+	 * Plays every game with one engine player.
+	 * @param pondering Whether the engine ponders.
+	 * @return The engine player, for its statistics.
+	 * @throws InterruptedException If interrupted while waiting for a move.
+	 */
+	public EnginePlayer run(boolean pondering) throws InterruptedException {
+		EnginePlayer player = new EnginePlayer(this.engine);
+		player.setPondering(pondering);
+		try {
+			for(int round=0; round<this.games; round++) {
+				this.playGame(player, round);
+			}
+		}
+		finally {
+			player.close();
+		}
+		return player;
+	}
+
+	private void playGame(EnginePlayer player, int round) throws InterruptedException {
+		Game game = new Game();
+		playOpening(game, new Random(this.seed + round));
+		boolean engineIsWhite = round % 2 == 0;
+		Search opponentSearch = this.opponent.createSearch();
+		final BlockingQueue<Move> engineMoves = new ArrayBlockingQueue<>(1);
+		for(int ply=0; ply<this.maxPlies && game.hasLegalMoves() && !game.isDraw(); ply++) {
+			if((game.getTurn() == PieceColor.WHITE) == engineIsWhite) {
+				player.play(game.copy(), new EnginePlayer.MoveListener() {
+					@Override
+					public void bestMove(Move move, SearchInfo info) {
+						engineMoves.add(move);
+					}
+				});
+				game.pushMove(engineMoves.take());
+				player.ponder(game.copy());
+			} else {
+				long start = System.nanoTime();
+				Move move = opponentSearch.search(game.copy(), this.opponent.createLimits(), null);
+				long left = TimeUnit.MILLISECONDS.toNanos(this.thinkMillis) - (System.nanoTime() - start);
+				if(left > 0) {
+					TimeUnit.NANOSECONDS.sleep(left);
+				}
+				game.pushMove(move);
+			}
+		}
+		player.stop();
+	}
+
+	/**
+	 * Plays random legal moves to start a game, trying again if they end it.
+	 */
+	static void playOpening(Game game, Random random) {
+		while(true) {
+			int plies = 0;
+			for(; plies<OPENING_PLIES; plies++) {
+				List<Move> legalMoves = game.getLegalMoves();
+				if(legalMoves.isEmpty()) {
+					break;
+				}
+				game.pushMove(legalMoves.get(random.nextInt(legalMoves.size())));
+			}
+			if(!game.isCheckmate() && !game.isDraw()) {
+				return;
+			}
+			for(; plies>0; plies--) {
+				game.popMove();
+			}
+		}
+	}
+
+	public void setGames(int games) {
+		this.games = games;
+	}
+
+	public void setMaxPlies(int maxPlies) {
+		this.maxPlies = maxPlies;
+	}
+
+	public void setThinkMillis(long thinkMillis) {
+		this.thinkMillis = thinkMillis;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int games = 10, maxPlies = 60;
+		long think = 500, seed = 1;
+		String opponent = "depth=2", engine = null;
+		for(int i=0; i<args.length; i++) {
+			switch(args[i]) {
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-maxplies": maxPlies = Integer.parseInt(args[++i]); break;
+			case "-think": think = Long.parseLong(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-opponent": opponent = args[++i]; break;
+			default: engine = args[i]; break;
+			}
+		}
+		if(engine == null) {
+			System.out.println("Usage: java application.engine.PonderBench [-games n] [-maxplies n] [-think ms]"
+					+ " [-seed n] [-opponent config] engine");
+			System.out.println("Engines are written as options, e.g. movetime=300 or depth=4");
+			return;
+		}
+
+		PonderBench bench = new PonderBench(EngineConfig.parse(engine), EngineConfig.parse(opponent));
+		bench.setGames(games);
+		bench.setMaxPlies(maxPlies);
+		bench.setThinkMillis(think);
+		bench.setSeed(seed);
+		System.out.println(engine + " vs " + opponent + ", " + think + "ms per opponent move");
+		for(boolean pondering : new boolean[] {true, false}) {
+			EnginePlayer player = bench.run(pondering);
+			LatencyStats response = player.getResponseStats();
+			System.out.printf("Pondering %s: moves %d  hits %d  misses %d  hit rate %.0f%%  saved %.1fs%n",
+					pondering ? "on " : "off", response.getCount(), player.getPonderHits(), player.getPonderMisses(),
+					player.getHitRate() * 100, player.getTimeSavedNanos() / 1e9);
+			System.out.printf("  Response: avg %.1fms  p50 %.1fms  p99 %.1fms  max %.1fms%n",
+					response.getAverageNanos() / 1e6, response.getPercentileNanos(50) / 1e6,
+					response.getPercentileNanos(99) / 1e6, response.getMaxNanos() / 1e6);
+		}
+	}
+}
@@ -0,0 +1,630 @@
+package application.engine;
+
+import static application.model.Piece.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import application.model.Coordinate;
+import application.model.Game;
+import application.model.Move;
+import application.model.Piece;
+
+/**
+ * The Search class finds the best move in a position. It is an
+ * alpha-beta search over Game.pushMove(Move move) and Game.popMove(),
+ * deepened one ply at a time ("iterative deepening"), with a
+ * quiescence search of captures at the leaves. Each move after the first
+ * is searched with a null window, only to prove it no better than the
+ * best so far, and searched again with the full window if it is (a
+ * "principal variation search").
+ *
+ * The search is selective: lines unlikely to matter are searched less
+ * deeply or not at all. Each technique can be turned off, e.g. to measure
+ * it with SearchBench:
+ * - Null-move pruning: if passing the turn (Game.pushNullMove()) still
+ *   scores at least beta in a shallower search, so will a real move.
+ *   Skipped in check and when the side to move has only pawns, where
+ *   passing may be better than any move (zugzwang).
+ * - Late move reductions: quiet moves ordered late are searched less
+ *   deeply, and searched again in full if they beat alpha after all.
+ * - Futility pruning: one or two plies from the leaves, quiet moves are
+ *   skipped if the static score plus a margin cannot reach alpha.
+ * - Razoring: one or two plies from the leaves, if the static score plus a
+ *   margin is below alpha, a quiescence search decides whether the
+ *   position is as bad as it looks, and if so it is not searched further.
+ * None of them apply in check or at nodes of the principal variation
+ * (those with a window wider than a null window), and moves that capture,
+ * promote or give check are never reduced or skipped.
+ *
+ * Results are remembered in a TranspositionTable, whose best moves
+ * are tried first on the next iteration. If a Tablebase is set,
+ * positions it covers are scored exactly without searching further (a
+ * win or loss too far from conversion for the fifty-move rule is scored
+ * as a draw), and
+ * if the root is covered the move is chosen from the tables alone: the
+ * win that converts (captures, promotes or mates) soonest, or else a
+ * draw, or else the loss that holds out longest. Searching by win/draw/
+ * loss alone would find a won position won after every winning move, and
+ * could wander until the fifty-move rule.
+ *
+ * If an OpeningBook is set and the root is in it, a book move is played
+ * without searching, picked at random in proportion to its weight.
+ *
+ * Under a clock (SearchLimits.getTimeLeft()), a TimeManager decides
+ * whether to start each iteration and when to stop mid-iteration, and a
+ * move that is the only legal one is played without searching. The clock
+ * is read only every TIME_CHECK_NODES nodes rather than at every node, so
+ * a time limit is noticed a few milliseconds late at most.
+ *
+ * A Search may be stopped from another thread with stop(); the best
+ * move of the last completed iteration is then returned. The Game
+ * being searched must not be used by anything else until the search
+ * returns.
+ */
+public class Search {
+
+	public static final int MATE_SCORE = 100000,
+							TABLEBASE_WIN = MATE_SCORE - 1000,
+							INFINITY = 1000000;
+	// a power of two; the clock is read when the node count is a multiple of it
+	public static final int TIME_CHECK_NODES = 256;
+	private static final int MAX_PLY = 128;
+	private static final int NULL_MOVE_MIN_DEPTH = 3,
+							 LATE_MOVE_MIN_DEPTH = 3,
+							 LATE_MOVE_INDEX = 3;
+	// indexed by the depth left: frontier (1) and pre-frontier (2) nodes
+	private static final int[] FUTILITY_MARGINS = {0, 200, 500},
+							   RAZOR_MARGINS = {0, 300, 550};
+
+	private final TranspositionTable table;
+	private final Evaluator evaluator = new Evaluator();
+	private Tablebase tablebase;
+	private OpeningBook openingBook;
+	private final Random random = new Random();
+	private boolean nullMovePruning = true,
+					lateMoveReductions = true,
+					futilityPruning = true,
+					razoring = true;
+
+	private volatile boolean stopped;
+	private SearchLimits limits;
+	private long startNanos;
+	private long stopNanos;
+	private TimeManager timeManager;
+	private long nodes;
+	private final Move[][] principalVariation = new Move[MAX_PLY][MAX_PLY];
+	private final int[] principalVariationLength = new int[MAX_PLY];
+
+	public Search() {
+		this(new TranspositionTable(1 << 16));
+	}
+
+	public Search(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Searches the current position of a game.
+	 * @param game The game to search. It is left as it was found.
+	 * @param limits When to stop searching.
+	 * @param listener Told about each completed iteration; may be null.
+	 * @return The best move found, or null if there are no legal moves.
+	 */
+	public Move search(Game game, SearchLimits limits, SearchListener listener) {
+		this.stopped = false;
+		this.limits = limits;
+		this.startNanos = System.nanoTime();
+		this.nodes = 0;
+		this.timeManager = limits.getTimeLeft() > 0 ? new TimeManager(limits.getTimeLeft() * 1_000_000,
+				limits.getIncrement() * 1_000_000, limits.getMovesToGo()) : null;
+		this.stopNanos = this.getStopNanos();
+
+		List<Move> rootMoves = game.getLegalMoves();
+		if(rootMoves.isEmpty()) {
+			return null;
+		}
+		if(this.openingBook != null) {
+			Move bookMove = this.openingBook.getBookMove(game, this.random);
+			if(bookMove != null) {
+				return bookMove;
+			}
+		}
+		Move tablebaseMove = this.probeRoot(game, rootMoves, listener);
+		if(tablebaseMove != null) {
+			return tablebaseMove;
+		}
+		Move bestMove = rootMoves.get(0);
+		if(this.timeManager != null && rootMoves.size() == 1) {
+			// a forced move; the time is better kept for later
+			return bestMove;
+		}
+		for(int depth=1; depth<=limits.getDepth(); depth++) {
+			int score = this.alphaBeta(game, depth, -INFINITY, INFINITY, 0, false);
+			if(this.stopped) {
+				// Moves that improved on the last iteration were fully searched.
+				if(this.principalVariationLength[0] > 0) {
+					bestMove = this.principalVariation[0][0];
+				}
+				break;
+			}
+			List<Move> line = new ArrayList<>();
+			for(int i=0; i<this.principalVariationLength[0]; i++) {
+				line.add(this.principalVariation[0][i]);
+			}
+			if(!line.isEmpty()) {
+				bestMove = line.get(0);
+			}
+			if(listener != null) {
+				listener.onInfo(new SearchInfo(depth, score, this.nodes,
+						(System.nanoTime() - this.startNanos) / 1_000_000, line));
+			}
+			if(Math.abs(score) > MATE_SCORE - MAX_PLY) {
+				break;
+			}
+			if(this.timeManager != null) {
+				this.timeManager.update(bestMove, score, System.nanoTime() - this.startNanos);
+				if(!limits.isPonder() && !this.timeManager.canStartIteration()) {
+					break;
+				}
+			}
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Chooses a move at the root from the tablebase, by the distance to
+	 * conversion (DTZ) of the position after each move.
+	 * @return The move, or null if the root cannot be probed or no move
+	 * leads to a position the tablebase covers.
+	 */
+	private Move probeRoot(Game game, List<Move> rootMoves, SearchListener listener) {
+		if(this.tablebase == null || !this.tablebase.canProbe(game)) {
+			return null;
+		}
+		Move bestMove = null;
+		int bestScore = -INFINITY;
+		for(Move move : rootMoves) {
+			boolean conversion = Search.isCapture(game, move) || Search.isPromotion(game, move);
+			game.pushMove(move);
+			int score;
+			if(!game.hasLegalMoves()) {
+				score = game.isInCheck(game.getTurn()) ? MATE_SCORE - 1 : 0;
+			} else if(!this.tablebase.canProbe(game)) {
+				// e.g. a pawn moved two squares, leaving an en passant square
+				score = -INFINITY;
+			} else {
+				// plies to conversion from the opponent's point of view, after the move
+				int dtz = this.tablebase.probeDTZ(game);
+				if(dtz == 0) {
+					score = 0;
+				} else if(dtz < 0) {
+					// a win; one that converts now is as soon as can be
+					score = TABLEBASE_WIN - (conversion ? 1 : 1 - dtz);
+				} else {
+					score = -TABLEBASE_WIN + 1 + dtz;
+				}
+			}
+			game.popMove();
+			if(score > bestScore) {
+				bestScore = score;
+				bestMove = move;
+			}
+		}
+		if(bestMove == null) {
+			return null;
+		}
+		if(listener != null) {
+			listener.onInfo(new SearchInfo(1, bestScore, this.nodes,
+					(System.nanoTime() - this.startNanos) / 1_000_000, Collections.singletonList(bestMove)));
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Stops the search as soon as possible. May be called from any thread.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * Returns whether the search has been stopped, either by stop()
+	 * or by reaching its limits.
+	 * @return true if the search has been stopped.
+	 */
+	public boolean isStopped() {
+		return this.stopped;
+	}
+
+	/**
+	 * Gets the time at which the search stops: the earlier of the move time
+	 * and the time manager's hard limit.
+	 */
+	private long getStopNanos() {
+		long stopNanos = Long.MAX_VALUE;
+		if(this.limits.getMoveTime() > 0) {
+			stopNanos = this.startNanos + this.limits.getMoveTime() * 1_000_000;
+		}
+		if(this.timeManager != null) {
+			stopNanos = Math.min(stopNanos, this.startNanos + this.timeManager.getHardNanos());
+		}
+		return stopNanos;
+	}
+
+	/**
+	 * Checks whether the node or time limit has been reached, unless the
+	 * search is pondering. The clock is only read every TIME_CHECK_NODES
+	 * nodes.
+	 */
+	private void checkLimits() {
+		if(this.limits.isPonder()) {
+			return;
+		}
+		if(this.nodes >= this.limits.getNodes() ||
+				(this.nodes & (TIME_CHECK_NODES - 1)) == 0 && this.stopNanos != Long.MAX_VALUE &&
+				System.nanoTime() - this.stopNanos >= 0) {
+			this.stopped = true;
+		}
+	}
+
+	/**
+	 * Searches a node, returning its score from the point of view of the
+	 * side to move.
+	 * @param nullMoveAllowed false just after a null move, so that two are
+	 * never played in a row.
+	 */
+	private int alphaBeta(Game game, int depth, int alpha, int beta, int ply, boolean nullMoveAllowed) {
+		this.principalVariationLength[ply] = 0;
+		if(ply > 0) {
+			if(game.is50MoveRule() || game.isInsufficientMaterial() || game.is3FoldRepetition()) {
+				return 0;
+			}
+			if(this.tablebase != null && this.tablebase.canProbe(game)) {
+				int wdl = this.tablebase.probeWDL(game);
+				// a win or loss that cannot convert before the fifty-move rule is a draw
+				if(wdl == 0 || game.getHalfMoveCounter() + Math.abs(this.tablebase.probeDTZ(game)) > 100) {
+					return 0;
+				}
+				return wdl * (TABLEBASE_WIN - ply);
+			}
+		}
+		if(depth <= 0 || ply >= MAX_PLY - 1) {
+			return this.quiesce(game, alpha, beta, ply);
+		}
+
+		this.nodes++;
+		this.checkLimits();
+		if(this.stopped) {
+			return 0;
+		}
+
+		long key = game.getZobristKey();
+		int slot = this.table.probe(key);
+		Move hashMove = null;
+		if(slot >= 0) {
+			hashMove = this.table.getMove(slot);
+			if(ply > 0 && this.table.getDepth(slot) >= depth) {
+				int score = Search.fromTable(this.table.getScore(slot), ply);
+				int bound = this.table.getBound(slot);
+				if(bound == TranspositionTable.EXACT ||
+						bound == TranspositionTable.LOWER_BOUND && score >= beta ||
+						bound == TranspositionTable.UPPER_BOUND && score <= alpha) {
+					return score;
+				}
+			}
+		}
+
+		boolean inCheck = game.isInCheck(game.getTurn());
+		boolean principalVariationNode = beta - alpha > 1;
+		boolean selective = !inCheck && !principalVariationNode;
+		int staticScore = selective ? this.evaluator.evaluate(game) : 0;
+
+		if(this.razoring && selective && depth < RAZOR_MARGINS.length && staticScore + RAZOR_MARGINS[depth] <= alpha) {
+			int threshold = alpha - RAZOR_MARGINS[depth];
+			int score = this.quiesce(game, threshold, threshold + 1, ply);
+			if(this.stopped) {
+				return 0;
+			}
+			if(score <= threshold) {
+				return score;
+			}
+		}
+
+		if(this.nullMovePruning && selective && nullMoveAllowed && depth >= NULL_MOVE_MIN_DEPTH
+				&& staticScore >= beta && Math.abs(beta) < MATE_SCORE - MAX_PLY && Search.hasPieces(game)) {
+			int reduction = depth >= 6 ? 3 : 2;
+			game.pushNullMove();
+			int score = -this.alphaBeta(game, depth - 1 - reduction, -beta, -beta + 1, ply + 1, false);
+			game.popMove();
+			if(this.stopped) {
+				return 0;
+			}
+			if(score >= beta) {
+				// not a mate score, as passing is not a legal move
+				return beta;
+			}
+		}
+
+		List<Move> moves = game.getLegalMoves();
+		if(moves.isEmpty()) {
+			return inCheck ? -MATE_SCORE + ply : 0;
+		}
+		this.orderMoves(game, moves, hashMove);
+
+		boolean futile = this.futilityPruning && selective && depth < FUTILITY_MARGINS.length
+				&& Math.abs(alpha) < MATE_SCORE - MAX_PLY && staticScore + FUTILITY_MARGINS[depth] <= alpha;
+		int originalAlpha = alpha;
+		int bestScore = -INFINITY;
+		Move bestMove = null;
+		int searched = 0;
+		for(Move move : moves) {
+			boolean quiet = !Search.isCapture(game, move) && !Search.isPromotion(game, move);
+			boolean late = this.lateMoveReductions && selective && depth >= LATE_MOVE_MIN_DEPTH
+					&& searched >= LATE_MOVE_INDEX;
+			game.pushMove(move);
+			boolean check = quiet && (futile || late) && game.isInCheck(game.getTurn());
+			if(futile && quiet && !check) {
+				game.popMove();
+				bestScore = Math.max(bestScore, staticScore + FUTILITY_MARGINS[depth]);
+				continue;
+			}
+			int score;
+			if(searched == 0) {
+				score = -this.alphaBeta(game, depth - 1, -beta, -alpha, ply + 1, true);
+			} else {
+				int reduction = late && quiet && !check ? (searched >= 2 * LATE_MOVE_INDEX && depth >= 6 ? 2 : 1) : 0;
+				score = -this.alphaBeta(game, depth - 1 - reduction, -alpha - 1, -alpha, ply + 1, true);
+				if(score > alpha && reduction > 0 && !this.stopped) {
+					score = -this.alphaBeta(game, depth - 1, -alpha - 1, -alpha, ply + 1, true);
+				}
+				if(score > alpha && score < beta && !this.stopped) {
+					score = -this.alphaBeta(game, depth - 1, -beta, -alpha, ply + 1, true);
+				}
+			}
+			game.popMove();
+			searched++;
+			if(this.stopped) {
+				return 0;
+			}
+			if(score > bestScore) {
+				bestScore = score;
+				bestMove = move;
+				if(score > alpha) {
+					alpha = score;
+					this.updatePrincipalVariation(ply, move);
+				}
+			}
+			if(alpha >= beta) {
+				break;
+			}
+		}
+
+		int bound = bestScore >= beta ? TranspositionTable.LOWER_BOUND :
+				bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+		this.table.store(key, depth, Search.toTable(bestScore, ply), bound, bestMove);
+		return bestScore;
+	}
+
+	/**
+	 * Searches captures only, until the position is quiet, so that
+	 * positions are not evaluated in the middle of an exchange.
+	 */
+	private int quiesce(Game game, int alpha, int beta, int ply) {
+		this.nodes++;
+		this.checkLimits();
+		if(this.stopped) {
+			return 0;
+		}
+		int standPat = this.evaluator.evaluate(game);
+		if(standPat >= beta || ply >= MAX_PLY - 1) {
+			return standPat;
+		}
+		if(standPat > alpha) {
+			alpha = standPat;
+		}
+
+		List<Move> captures = new ArrayList<>();
+		for(Move move : game.getPseudoLegalMoves(game.getTurn())) {
+			if(Search.isCapture(game, move) && game.isLegalMove(move)) {
+				captures.add(move);
+			}
+		}
+		this.orderMoves(game, captures, null);
+		for(Move move : captures) {
+			game.pushMove(move);
+			int score = -this.quiesce(game, -beta, -alpha, ply + 1);
+			game.popMove();
+			if(this.stopped) {
+				return 0;
+			}
+			if(score >= beta) {
+				return score;
+			}
+			if(score > alpha) {
+				alpha = score;
+			}
+		}
+		return alpha;
+	}
+
+	private void updatePrincipalVariation(int ply, Move move) {
+		this.principalVariation[ply][0] = move;
+		int length = this.principalVariationLength[ply + 1];
+		System.arraycopy(this.principalVariation[ply + 1], 0, this.principalVariation[ply], 1, length);
+		this.principalVariationLength[ply] = length + 1;
+	}
+
+	/**
+	 * Sorts moves so the most promising are searched first: the move
+	 * from the transposition table, then captures of the most valuable
+	 * piece by the least valuable piece, then everything else.
+	 */
+	private void orderMoves(final Game game, List<Move> moves, final Move hashMove) {
+		Collections.sort(moves, new Comparator<Move>() {
+			@Override
+			public int compare(Move a, Move b) {
+				return Search.orderingScore(game, b, hashMove) - Search.orderingScore(game, a, hashMove);
+			}
+		});
+	}
+
+	private static int orderingScore(Game game, Move move, Move hashMove) {
+		if(move.equals(hashMove)) {
+			return INFINITY;
+		}
+		Piece captured = game.getPieceAt(move.getToCoordinate());
+		if(captured == null) {
+			return Search.isCapture(game, move) ? Evaluator.PAWN_VALUE : 0;
+		}
+		return 10 * Evaluator.getValue(captured) - Evaluator.getValue(game.getPieceAt(move.getFromCoordinate())) / 10;
+	}
+
+	/**
+	 * Returns whether a move is a pawn reaching the last rank.
+	 */
+	private static boolean isPromotion(Game game, Move move) {
+		Piece moved = game.getPieceAt(move.getFromCoordinate());
+		return moved == WHITE_PAWN && move.getToRow() == 0
+				|| moved == BLACK_PAWN && move.getToRow() == Game.BOARD_ROWS - 1;
+	}
+
+	/**
+	 * Returns whether the side to move has a piece other than its king
+	 * and pawns, so that it is unlikely to be in zugzwang.
+	 */
+	private static boolean hasPieces(Game game) {
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				Piece piece = game.getPieceAt(r, c);
+				if(piece != null && piece.getColor() == game.getTurn() && piece != WHITE_KING && piece != BLACK_KING
+						&& piece != WHITE_PAWN && piece != BLACK_PAWN) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether a move captures an enemy piece (including en passant).
+	 */
+	static boolean isCapture(Game game, Move move) {
+		if(!move.isInBounds()) {
+			return false;
+		}
+		Piece moved = game.getPieceAt(move.getFromCoordinate());
+		Piece captured = game.getPieceAt(move.getToCoordinate());
+		if(moved == null) {
+			return false;
+		}
+		if(captured != null) {
+			return !captured.isAlliedWith(moved);
+		}
+		Coordinate enPassant = game.getEnPassantTargetSquare();
+		return (moved == WHITE_PAWN || moved == BLACK_PAWN) && move.getColDifference() != 0 &&
+				move.getToCoordinate().equals(enPassant);
+	}
+
+	/*
+	 * Mate scores are stored relative to the position rather than the
+	 * root, so they stay correct when the position is reached at
+	 * another ply.
+	 */
+	private static int toTable(int score, int ply) {
+		if(score > MATE_SCORE - MAX_PLY) return score + ply;
+		if(score < -MATE_SCORE + MAX_PLY) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if(score > MATE_SCORE - MAX_PLY) return score - ply;
+		if(score < -MATE_SCORE + MAX_PLY) return score + ply;
+		return score;
+	}
+
+	/**
+	 * Sets whether to prune with null moves.
+	 * @param nullMovePruning true to prune with null moves.
+	 */
+	public void setNullMovePruning(boolean nullMovePruning) {
+		this.nullMovePruning = nullMovePruning;
+	}
+
+	/**
+	 * Sets whether to search late quiet moves less deeply.
+	 * @param lateMoveReductions true to reduce late moves.
+	 */
+	public void setLateMoveReductions(boolean lateMoveReductions) {
+		this.lateMoveReductions = lateMoveReductions;
+	}
+
+	/**
+	 * Sets whether to skip futile quiet moves near the leaves.
+	 * @param futilityPruning true to prune futile moves.
+	 */
+	public void setFutilityPruning(boolean futilityPruning) {
+		this.futilityPruning = futilityPruning;
+	}
+
+	/**
+	 * Sets whether to cut nodes near the leaves whose static score is far
+	 * below alpha, if a quiescence search agrees.
+	 * @param razoring true to razor.
+	 */
+	public void setRazoring(boolean razoring) {
+		this.razoring = razoring;
+	}
+
+	/**
+	 * Gets the time manager of the last search.
+	 * @return The time manager, or null if the last search was not under a
+	 * clock.
+	 */
+	public TimeManager getTimeManager() {
+		return this.timeManager;
+	}
+
+	/**
+	 * Gets the number of nodes searched by the last search.
+	 * @return The number of nodes searched.
+	 */
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * Gets the transposition table used by this search.
+	 * @return The transposition table.
+	 */
+	public TranspositionTable getTable() {
+		return this.table;
+	}
+
+	/**
+	 * Sets the tablebase to probe during the search.
+	 * @param tablebase The tablebase, or null to not probe one.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Gets the opening book whose moves are played at the root.
+	 * @return The opening book, or null if there is none.
+	 */
+	public OpeningBook getOpeningBook() {
+		return this.openingBook;
+	}
+
+	/**
+	 * Sets the opening book whose moves are played at the root.
+	 * @param openingBook The opening book, or null to always search.
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
+}
@@ -0,0 +1,160 @@
+package application.engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import application.model.Game;
+import application.model.Move;
+
+/**
+ * The SearchBench class measures what each selective search technique
+ * of Search saves, by searching a fixed set of positions to a fixed depth
+ * with each technique alone, with none (a plain alpha-beta search) and
+ * with all of them.
+ *
+ * For each configuration it prints the nodes needed to complete each
+ * depth, summed over the positions, the time taken, the effective
+ * branching factor (how many times more nodes each extra ply costs,
+ * taken over the last two plies to even out odd and even depths) and how
+ * many positions get the same best move as the plain search.
+ *
+ * Usage: java application.engine.SearchBench [-depth n] [-fens file]
+ */
+public class SearchBench {
+
+	// a mix of openings, middlegames, endgames and a mate in one
+	public static final String[] POSITIONS = {
+		Game.STARTING_FEN,
+		"r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+		"r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"4k3/8/8/8/8/8/4P3/4K3 w - - 0 1",
+		"6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1"
+	};
+	public static final String[] CONFIGS = {
+		"name=plain,nullmove=false,lmr=false,futility=false,razoring=false",
+		"name=nullmove,lmr=false,futility=false,razoring=false",
+		"name=lmr,nullmove=false,futility=false,razoring=false",
+		"name=futility,nullmove=false,lmr=false,razoring=false",
+		"name=razoring,nullmove=false,lmr=false,futility=false",
+		"name=all"
+	};
+
+	private final List<String> positions;
+	private final int depth;
+
+	public SearchBench(List<String> positions, int depth) {
+		this.positions = positions;
+		this.depth = depth;
+	}
+
+	/**
+	 * Searches every position with one configuration.
+	 * @param config The configuration.
+	 * @param nodes Filled with the nodes to complete each depth (index 0 is
+	 * depth 1), summed over the positions.
+	 * @return The best move found in each position.
+	 */
+	public Move[] run(EngineConfig config, final long[] nodes) {
+		Move[] bestMoves = new Move[this.positions.size()];
+		for(int i=0; i<bestMoves.length; i++) {
+			Game game;
+			try {
+				game = new Game(this.positions.get(i));
+			}
+			catch(Exception e) {
+				throw new IllegalArgumentException("Bad position: " + this.positions.get(i), e);
+			}
+			// each position gets a new search, so no TranspositionTable is shared
+			final long[] reached = new long[this.depth];
+			bestMoves[i] = config.createSearch().search(game, SearchLimits.depth(this.depth), new SearchListener() {
+				@Override
+				public void onInfo(SearchInfo info) {
+					reached[info.getDepth() - 1] = info.getNodes();
+				}
+			});
+			// a mate found early ends the search; its last count stands for the deeper plies
+			for(int d=1; d<this.depth; d++) {
+				if(reached[d] == 0) {
+					reached[d] = reached[d - 1];
+				}
+			}
+			for(int d=0; d<this.depth; d++) {
+				nodes[d] += reached[d];
+			}
+		}
+		return bestMoves;
+	}
+
+	/**
+	 * Gets the effective branching factor over the last two plies.
+	 * @param nodes The nodes to complete each depth.
+	 * @return The factor, or 0 if there are too few plies.
+	 */
+	public static double getBranchingFactor(long[] nodes) {
+		int last = nodes.length - 1;
+		return last < 2 || nodes[last - 2] == 0 ? 0 : Math.sqrt((double) nodes[last] / nodes[last - 2]);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int depth = 5;
+		List<String> positions = Arrays.asList(POSITIONS);
+		for(int i=0; i<args.length; i++) {
+			switch(args[i]) {
+			case "-depth": depth = Integer.parseInt(args[++i]); break;
+			case "-fens":
+				positions = new ArrayList<>();
+				for(String line : Files.readAllLines(Paths.get(args[++i]), StandardCharsets.UTF_8)) {
+					if(!line.trim().isEmpty()) {
+						positions.add(line.trim());
+					}
+				}
+				break;
+			default:
+				System.out.println("Usage: java application.engine.SearchBench [-depth n] [-fens file]");
+				return;
+			}
+		}
+
+		SearchBench bench = new SearchBench(positions, depth);
+		System.out.println(positions.size() + " positions to depth " + depth);
+		StringBuilder header = new StringBuilder(String.format("%-10s", "config"));
+		for(int d=1; d<=depth; d++) {
+			header.append(String.format(" %9s", "d" + d));
+		}
+		System.out.println(header.append(String.format(" %8s %6s %6s", "time", "EBF", "same")));
+		Move[] plain = null;
+		long plainNodes = 0;
+		for(String text : CONFIGS) {
+			EngineConfig config = EngineConfig.parse(text);
+			long[] nodes = new long[depth];
+			long start = System.nanoTime();
+			Move[] bestMoves = bench.run(config, nodes);
+			long nanos = System.nanoTime() - start;
+			if(plain == null) {
+				plain = bestMoves;
+				plainNodes = nodes[depth - 1];
+			}
+			int same = 0;
+			for(int i=0; i<bestMoves.length; i++) {
+				if(bestMoves[i] != null && bestMoves[i].equals(plain[i])) {
+					same++;
+				}
+			}
+			StringBuilder line = new StringBuilder(String.format("%-10s", config.getName()));
+			for(long n : nodes) {
+				line.append(String.format(" %9d", n));
+			}
+			System.out.println(line.append(String.format(" %7.1fs %6.2f %3d/%d  (%.0f%% of plain nodes)",
+					nanos / 1e9, getBranchingFactor(nodes), same, bestMoves.length,
+					100.0 * nodes[depth - 1] / Math.max(1, plainNodes))));
+		}
+	}
+}
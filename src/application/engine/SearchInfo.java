@@ -0,0 +1,117 @@
+package application.engine;
+
+import java.util.List;
+
+import application.model.Move;
+
+/**
+ * The SearchInfo class is the result of one iteration of a search:
+ * the depth reached, the score, the principal variation (the line
+ * both sides are expected to play) and how much work it took.
+ */
+public class SearchInfo {
+
+	private final int depth;
+	private final int score;
+	private final long nodes;
+	private final long timeMillis;
+	private final List<Move> principalVariation;
+
+	public SearchInfo(int depth, int score, long nodes, long timeMillis, List<Move> principalVariation) {
+		this.depth = depth;
+		this.score = score;
+		this.nodes = nodes;
+		this.timeMillis = timeMillis;
+		this.principalVariation = principalVariation;
+	}
+
+	/**
+	 * Gets the depth completed.
+	 * @return The depth completed.
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Gets the score, in centipawns from the point of view of the side
+	 * to move. Mates are scored close to Search.MATE_SCORE.
+	 * @return The score.
+	 */
+	public int getScore() {
+		return this.score;
+	}
+
+	/**
+	 * Returns whether the score is a forced mate.
+	 * @return true if the score is a mate score.
+	 */
+	public boolean isMate() {
+		return Math.abs(this.score) > Search.MATE_SCORE - SearchLimits.MAX_DEPTH * 2;
+	}
+
+	/**
+	 * Gets the number of moves to mate, if the score is a mate score.
+	 * @return The number of full moves to mate: positive if the side to
+	 * move mates, negative if it is mated.
+	 */
+	public int getMateIn() {
+		int plies = Search.MATE_SCORE - Math.abs(this.score);
+		return (this.score > 0 ? 1 : -1) * (plies + 1) / 2;
+	}
+
+	/**
+	 * Gets the number of nodes searched.
+	 * @return The number of nodes searched.
+	 */
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * Gets the time spent searching.
+	 * @return The time spent searching, in milliseconds.
+	 */
+	public long getTimeMillis() {
+		return this.timeMillis;
+	}
+
+	/**
+	 * Gets the number of nodes searched per second.
+	 * @return The number of nodes searched per second.
+	 */
+	public long getNodesPerSecond() {
+		return this.timeMillis == 0 ? this.nodes * 1000 : this.nodes * 1000 / this.timeMillis;
+	}
+
+	/**
+	 * Gets the principal variation.
+	 * @return The line both sides are expected to play, starting with
+	 * the best move.
+	 */
+	public List<Move> getPrincipalVariation() {
+		return this.principalVariation;
+	}
+
+	/**
+	 * Gets the best move.
+	 * @return The first move of the principal variation, or null.
+	 */
+	public Move getBestMove() {
+		return this.principalVariation.isEmpty() ? null : this.principalVariation.get(0);
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append("depth ").append(this.getDepth())
+		 .append(this.isMate() ? " score mate " + this.getMateIn() : " score cp " + this.getScore())
+		 .append(" nodes ").append(this.getNodes())
+		 .append(" nps ").append(this.getNodesPerSecond())
+		 .append(" time ").append(this.getTimeMillis())
+		 .append(" pv");
+		for(Move move : this.getPrincipalVariation()) {
+			s.append(' ').append(move);
+		}
+		return s.toString();
+	}
+}
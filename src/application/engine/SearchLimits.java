@@ -0,0 +1,200 @@
+package application.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import application.model.ChessClock;
+import application.model.PieceColor;
+import application.model.TimeControl;
+
+/**
+ * The SearchLimits class says when a search should stop: after a
+ * depth, a number of nodes or an amount of time, whichever comes first.
+ * An infinite search only stops when it is told to.
+ *
+ * A search may instead be given the time on its side's clock, its
+ * increment and the moves to the next time control, from which a
+ * TimeManager decides how long to search.
+ *
+ * A pondering search (one on the opponent's time) ignores the node and
+ * time limits until the ponder flag is cleared, which may be done from
+ * another thread while it runs (a "ponder hit"). The limits then apply
+ * as if the search had started normally when it really started.
+ */
+public class SearchLimits {
+
+	public static final int MAX_DEPTH = 64;
+
+	private int depth = MAX_DEPTH;
+	private long nodes = Long.MAX_VALUE;
+	private long moveTime = 0;
+	private long timeLeft = 0;
+	private long increment = 0;
+	private int movesToGo = 0;
+	private boolean infinite = false;
+	private volatile boolean ponder = false;
+
+	/**
+	 * Creates limits which stop a search at a depth.
+	 * @param depth The depth to search to.
+	 * @return The limits.
+	 */
+	public static SearchLimits depth(int depth) {
+		SearchLimits limits = new SearchLimits();
+		limits.setDepth(depth);
+		return limits;
+	}
+
+	/**
+	 * Creates limits which stop a search after an amount of time.
+	 * @param moveTime The time to search for, in milliseconds.
+	 * @return The limits.
+	 */
+	public static SearchLimits moveTime(long moveTime) {
+		SearchLimits limits = new SearchLimits();
+		limits.setMoveTime(moveTime);
+		return limits;
+	}
+
+	/**
+	 * Gets the depth to search to.
+	 * @return The depth to search to.
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Sets the depth to search to.
+	 * @param depth The depth to search to; at most MAX_DEPTH.
+	 */
+	public void setDepth(int depth) {
+		this.depth = Math.max(1, Math.min(MAX_DEPTH, depth));
+	}
+
+	/**
+	 * Gets the number of nodes to search.
+	 * @return The number of nodes to search.
+	 */
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * Sets the number of nodes to search.
+	 * @param nodes The number of nodes to search.
+	 */
+	public void setNodes(long nodes) {
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Gets the time to search for.
+	 * @return The time to search for in milliseconds; 0 for no limit.
+	 */
+	public long getMoveTime() {
+		return this.moveTime;
+	}
+
+	/**
+	 * Sets the time to search for.
+	 * @param moveTime The time to search for in milliseconds; 0 for no limit.
+	 */
+	public void setMoveTime(long moveTime) {
+		this.moveTime = moveTime;
+	}
+
+	/**
+	 * Gets the time left on the clock of the side to move.
+	 * @return The time left in milliseconds; 0 if not under a clock.
+	 */
+	public long getTimeLeft() {
+		return this.timeLeft;
+	}
+
+	/**
+	 * Sets the time left on the clock of the side to move.
+	 * @param timeLeft The time left in milliseconds; 0 if not under a clock.
+	 */
+	public void setTimeLeft(long timeLeft) {
+		this.timeLeft = timeLeft;
+	}
+
+	/**
+	 * Gets the time added to the clock of the side to move after each move.
+	 * @return The increment in milliseconds.
+	 */
+	public long getIncrement() {
+		return this.increment;
+	}
+
+	/**
+	 * Sets the time added to the clock of the side to move after each move.
+	 * @param increment The increment in milliseconds.
+	 */
+	public void setIncrement(long increment) {
+		this.increment = increment;
+	}
+
+	/**
+	 * Gets the number of moves until the next time control.
+	 * @return The moves to go; 0 if not known.
+	 */
+	public int getMovesToGo() {
+		return this.movesToGo;
+	}
+
+	/**
+	 * Sets the number of moves until the next time control.
+	 * @param movesToGo The moves to go; 0 if not known.
+	 */
+	public void setMovesToGo(int movesToGo) {
+		this.movesToGo = movesToGo;
+	}
+
+	/**
+	 * Sets the time left and increment from a game's clock. A delay, being
+	 * time the side does not use on each move, counts as increment.
+	 * @param clock The clock.
+	 * @param color The side to move.
+	 */
+	public void setClock(ChessClock clock, PieceColor color) {
+		TimeControl control = clock.getTimeControl();
+		// a clock at or below zero still gets a minimal search
+		this.setTimeLeft(Math.max(1, TimeUnit.NANOSECONDS.toMillis(clock.getRemainingNanos(color))));
+		this.setIncrement(TimeUnit.NANOSECONDS.toMillis(control.getIncrementNanos() + control.getDelayNanos()));
+	}
+
+	/**
+	 * Returns whether the search only stops when it is told to.
+	 * @return true if the search is infinite.
+	 */
+	public boolean isInfinite() {
+		return this.infinite;
+	}
+
+	/**
+	 * Sets whether the search only stops when it is told to.
+	 * @param infinite true if the search is infinite.
+	 */
+	public void setInfinite(boolean infinite) {
+		this.infinite = infinite;
+	}
+
+	/**
+	 * Returns whether the search is pondering, so the node and time limits
+	 * are not yet checked.
+	 * @return true if the search is pondering.
+	 */
+	public boolean isPonder() {
+		return this.ponder;
+	}
+
+	/**
+	 * Sets whether the search is pondering. May be cleared from another
+	 * thread while the search runs.
+	 * @param ponder true if the search is pondering.
+	 */
+	public void setPonder(boolean ponder) {
+		this.ponder = ponder;
+	}
+}
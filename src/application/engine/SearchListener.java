@@ -0,0 +1,16 @@
+package application.engine;
+
+/**
+ * The SearchListener interface is told about the progress of a
+ * search, once for every depth completed.
+ */
+public interface SearchListener {
+
+	/**
+	 * Called after each iteration of the search.
+	 * This is called on the thread running the search.
+	 * @param info The result of the iteration.
+	 */
+	public void onInfo(SearchInfo info);
+
+}
@@ -0,0 +1,344 @@
+package application.engine;
+
+import static application.model.PieceColor.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import application.model.Game;
+import application.model.Move;
+import application.model.Notation;
+import application.util.LatencyStats;
+
+/**
+ * The SelfPlay class plays a match between two engine configurations
+ * without the GUI, writing the games as PGN and the result as Elo and
+ * SPRT statistics.
+ *
+ * Games are played in pairs from the same random opening, once with
+ * each engine as White, so neither side is favoured by the opening.
+ * Each game has its own Game and Search objects and runs on a pool of
+ * worker threads. A game ends when Game.isCheckmate() or Game.isDraw()
+ * is true, or is adjudicated a draw after a maximum number of plies. If a
+ * Tablebase is set, a game reaching a position it covers is adjudicated
+ * at once with the tablebase's result.
+ *
+ * It doubles as a load test of the model: games/hour, the time taken per
+ * ply and the garbage collection time are printed at the end, so a
+ * regression in Game's move generation shows up as a drop in throughput.
+ *
+ * Usage: java application.engine.SelfPlay [options] engineA engineB
+ * @see EngineConfig
+ */
+public class SelfPlay {
+
+	private final EngineConfig first,
+							   second;
+	private int games = 100;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int openingPlies = 8;
+	private int maxPlies = 400;
+	private long seed = 1;
+	private double elo0 = 0,
+				   elo1 = 5,
+				   alpha = 0.05,
+				   beta = 0.05;
+	private boolean sprt = false;
+	private PrintWriter pgn;
+	private Tablebase tablebase;
+
+	private final MatchStatistics statistics = new MatchStatistics();
+	private final LatencyStats plyStats = new LatencyStats();
+	private volatile boolean finished;
+
+	public SelfPlay(EngineConfig first, EngineConfig second) {
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * Plays the match.
+	 * @return The statistics of the match.
+	 * @throws InterruptedException If interrupted while waiting for games.
+	 */
+	public MatchStatistics run() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		for(int i=0; i<this.games; i++) {
+			final int round = i + 1;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					if(!SelfPlay.this.finished) {
+						SelfPlay.this.playGame(round);
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		return this.statistics;
+	}
+
+	/**
+	 * Plays one game, and records its result. Odd rounds have the first
+	 * engine as White; each even round replays the opening of the round
+	 * before it with colours reversed.
+	 * @param round The number of the game, starting at 1.
+	 */
+	void playGame(int round) {
+		boolean firstIsWhite = round % 2 == 1;
+		EngineConfig white = firstIsWhite ? this.first : this.second,
+					 black = firstIsWhite ? this.second : this.first;
+		Game game = new Game(white.getName(), black.getName());
+		Search whiteSearch = white.createSearch(),
+			   blackSearch = black.createSearch();
+		List<String> moves = new ArrayList<>();
+		this.playOpening(game, new Random(this.seed + (round + 1) / 2), moves);
+
+		String result = "1/2-1/2",
+			   termination = "normal";
+		while(true) {
+			if(game.isCheckmate()) {
+				result = game.getTurn() == WHITE ? "0-1" : "1-0";
+				break;
+			}
+			if(game.isDraw()) {
+				break;
+			}
+			if(this.tablebase != null && this.tablebase.canProbe(game)) {
+				int wdl = this.tablebase.probeWDL(game);
+				result = wdl == 0 ? "1/2-1/2" : (wdl > 0) == (game.getTurn() == WHITE) ? "1-0" : "0-1";
+				termination = "adjudication";
+				break;
+			}
+			if(moves.size() >= this.maxPlies) {
+				termination = "adjudication";
+				break;
+			}
+			boolean whiteToMove = game.getTurn() == WHITE;
+			long start = System.nanoTime();
+			Move move = (whiteToMove ? whiteSearch : blackSearch).search(game,
+					(whiteToMove ? white : black).createLimits(), null);
+			this.plyStats.recordSince(start);
+			moves.add(Notation.toSAN(game, move));
+			game.pushMove(move);
+		}
+
+		double whiteScore = result.equals("1-0") ? 1 : result.equals("0-1") ? 0 : 0.5;
+		this.statistics.add(firstIsWhite ? whiteScore : 1 - whiteScore);
+		this.writePGN(round, game, moves, result, termination);
+		if(this.sprt && this.statistics.getSPRTResult(this.elo0, this.elo1, this.alpha, this.beta)
+				!= MatchStatistics.CONTINUE) {
+			this.finished = true;
+		}
+	}
+
+	/**
+	 * Plays random legal moves to start a game, so that games between
+	 * the same deterministic engines differ. Openings which end the game
+	 * are thrown away and tried again.
+	 */
+	private void playOpening(Game game, Random random, List<String> moves) {
+		while(true) {
+			for(int ply=0; ply<this.openingPlies; ply++) {
+				List<Move> legalMoves = game.getLegalMoves();
+				if(legalMoves.isEmpty()) {
+					break;
+				}
+				Move move = legalMoves.get(random.nextInt(legalMoves.size()));
+				moves.add(Notation.toSAN(game, move));
+				game.pushMove(move);
+			}
+			if(!game.isCheckmate() && !game.isDraw()) {
+				return;
+			}
+			while(!moves.isEmpty()) {
+				moves.remove(moves.size() - 1);
+				game.popMove();
+			}
+		}
+	}
+
+	private void writePGN(int round, Game game, List<String> moves, String result, String termination) {
+		if(this.pgn == null) {
+			return;
+		}
+		StringBuilder s = new StringBuilder();
+		s.append("[Event \"Self-play\"]\n")
+		 .append("[Site \"?\"]\n")
+		 .append("[Date \"").append(new SimpleDateFormat("yyyy.MM.dd").format(new Date())).append("\"]\n")
+		 .append("[Round \"").append(round).append("\"]\n")
+		 .append("[White \"").append(game.getWhiteName()).append("\"]\n")
+		 .append("[Black \"").append(game.getBlackName()).append("\"]\n")
+		 .append("[Result \"").append(result).append("\"]\n")
+		 .append("[Termination \"").append(termination).append("\"]\n")
+		 .append("[PlyCount \"").append(moves.size()).append("\"]\n\n");
+		int lineStart = s.length();
+		for(int i=0; i<moves.size(); i++) {
+			String token = (i % 2 == 0 ? (i / 2 + 1) + ". " : "") + moves.get(i);
+			if(s.length() - lineStart + token.length() >= 80) {
+				s.append('\n');
+				lineStart = s.length();
+			} else if(s.length() > lineStart) {
+				s.append(' ');
+			}
+			s.append(token);
+		}
+		s.append(s.length() > lineStart ? " " : "").append(result).append("\n\n");
+		synchronized(this.pgn) {
+			this.pgn.print(s);
+			this.pgn.flush();
+		}
+	}
+
+	/**
+	 * Gets the time taken by each ply searched, over all games.
+	 * @return The ply time statistics.
+	 */
+	public LatencyStats getPlyStats() {
+		return this.plyStats;
+	}
+
+	public void setGames(int games) {
+		this.games = games;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public void setOpeningPlies(int openingPlies) {
+		this.openingPlies = openingPlies;
+	}
+
+	public void setMaxPlies(int maxPlies) {
+		this.maxPlies = maxPlies;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Stops the match early once the SPRT accepts either hypothesis.
+	 * @param elo0 The Elo difference of H0.
+	 * @param elo1 The Elo difference of H1.
+	 */
+	public void setSPRT(double elo0, double elo1) {
+		this.sprt = true;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+	}
+
+	/**
+	 * Sets where to write the games.
+	 * @param pgn The PGN output, or null to not write the games.
+	 */
+	public void setPGN(PrintWriter pgn) {
+		this.pgn = pgn;
+	}
+
+	/**
+	 * Sets the tablebase which adjudicates games reaching the positions it
+	 * covers.
+	 * @param tablebase The tablebase, or null to play games out.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	private static long[] getGarbageCollection() {
+		long count = 0,
+			 time = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return new long[] {count, time};
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<String> engines = new ArrayList<>();
+		int games = 100, threads = Runtime.getRuntime().availableProcessors(),
+			openingPlies = 8, maxPlies = 400;
+		long seed = 1;
+		String pgnPath = null,
+			   tablebase = null;
+		double[] sprt = null;
+		for(int i=0; i<args.length; i++) {
+			switch(args[i]) {
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-openingplies": openingPlies = Integer.parseInt(args[++i]); break;
+			case "-maxplies": maxPlies = Integer.parseInt(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-pgn": pgnPath = args[++i]; break;
+			case "-tablebase": tablebase = args[++i]; break;
+			case "-sprt": sprt = new double[] {Double.parseDouble(args[++i]), Double.parseDouble(args[++i])}; break;
+			default: engines.add(args[i]); break;
+			}
+		}
+		if(engines.size() != 2) {
+			System.out.println("Usage: java application.engine.SelfPlay [-games n] [-threads n] [-openingplies n]"
+					+ " [-maxplies n] [-seed n] [-pgn file] [-sprt elo0 elo1] [-tablebase dir] engineA engineB");
+			System.out.println("Engines are written as options, e.g. depth=3 or nodes=5000,name=fast");
+			return;
+		}
+
+		SelfPlay match = new SelfPlay(EngineConfig.parse(engines.get(0)), EngineConfig.parse(engines.get(1)));
+		match.setGames(games);
+		match.setThreads(threads);
+		match.setOpeningPlies(openingPlies);
+		match.setMaxPlies(maxPlies);
+		match.setSeed(seed);
+		if(tablebase != null) {
+			match.setTablebase(new Tablebase(tablebase));
+		}
+		if(sprt != null) {
+			match.setSPRT(sprt[0], sprt[1]);
+		}
+		PrintWriter pgn = pgnPath == null ? null : new PrintWriter(new FileWriter(pgnPath));
+		match.setPGN(pgn);
+
+		long[] gcBefore = SelfPlay.getGarbageCollection();
+		long start = System.nanoTime();
+		MatchStatistics statistics = match.run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long[] gcAfter = SelfPlay.getGarbageCollection();
+		if(pgn != null) {
+			pgn.close();
+		}
+
+		System.out.println(match.first + " vs " + match.second);
+		System.out.println(statistics);
+		if(sprt != null) {
+			int decision = statistics.getSPRTResult(match.elo0, match.elo1, match.alpha, match.beta);
+			System.out.printf("SPRT [%.1f, %.1f]: LLR %.2f (%.2f, %.2f) %s%n", match.elo0, match.elo1,
+					statistics.getLLR(match.elo0, match.elo1),
+					Math.log(match.beta / (1 - match.alpha)), Math.log((1 - match.beta) / match.alpha),
+					decision == MatchStatistics.ACCEPT_H1 ? "H1 accepted" :
+					decision == MatchStatistics.ACCEPT_H0 ? "H0 accepted" : "inconclusive");
+		}
+		System.out.printf("Time: %.1fs  Games/hour: %.0f  Threads: %d%n",
+				seconds, statistics.getGames() * 3600 / seconds, match.threads);
+		System.out.printf("Plies: %d  Average ply time: %.2fms  Max ply time: %.2fms%n",
+				match.plyStats.getCount(), match.plyStats.getAverageNanos() / 1e6, match.plyStats.getMaxNanos() / 1e6);
+		System.out.printf("GC: %d collections, %dms total%n", gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+		for(EngineConfig engine : new EngineConfig[] {match.first, match.second}) {
+			if(engine.getOpeningBook() != null) {
+				System.out.println("Book lookups (" + engine + "): " + engine.getOpeningBook().getLookupStats());
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package application.engine;
+
+import static application.model.PieceColor.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import application.model.Game;
+import application.model.Piece;
+
+/**
+ * The Tablebase class answers exact results for endgames with few
+ * pieces, using tables built by the TablebaseGenerator.
+ *
+ * There is one file per material signature (e.g. "KQvKR.ctb"). After
+ * an 8-byte header, it holds one byte for every position with that
+ * material, which is either:
+ * - 0: the position is a draw,
+ * - n > 0: the side to move wins, with a capture, promotion or mate
+ * n plies away,
+ * - n < 0: the side to move loses, with a capture, promotion or mate
+ * (-n - 1) plies away,
+ * - -128: the position is not legal.
+ *
+ * Distances count plies to the next conversion (capture or promotion)
+ * or mate, so for tables without pawns they are the same as
+ * distance-to-zero (DTZ) for the 50-move rule.
+ *
+ * Castling and en passant are not part of a table, so positions with
+ * castling rights or an en passant target square cannot be probed.
+ * Tables are memory-mapped on first use and may be probed from
+ * several threads at once.
+ * @see TablebaseGenerator
+ */
+public class Tablebase {
+
+	public static final int MAX_PIECES = 4;
+	public static final String EXTENSION = ".ctb";
+	static final int MAGIC = 0x43544231; // "CTB1"
+	static final int HEADER_SIZE = 8;
+	static final byte INVALID = Byte.MIN_VALUE;
+	static final int MAX_DISTANCE = 126;
+
+	private final File directory;
+	private final Map<String, MappedByteBuffer> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a tablebase reading tables from a directory.
+	 * @param directory The directory holding the .ctb files.
+	 */
+	public Tablebase(String directory) {
+		this.directory = new File(directory);
+	}
+
+	/**
+	 * Returns whether the current position of the game is covered by
+	 * this tablebase.
+	 * @param game The game to probe.
+	 * @return true if the game may be probed. false otherwise.
+	 */
+	public boolean canProbe(Game game) {
+		if(game.getEnPassantTargetSquare() != null ||
+				game.whiteCanCastleKingside() || game.whiteCanCastleQueenside() ||
+				game.blackCanCastleKingside() || game.blackCanCastleQueenside()) {
+			return false;
+		}
+		List<Piece> pieces = new ArrayList<>();
+		for(Piece piece : game.pieceIterator()) {
+			pieces.add(piece);
+			if(pieces.size() > MAX_PIECES) {
+				return false;
+			}
+		}
+		Material material = new Material(pieces.toArray(new Piece[pieces.size()]));
+		return material.isInsufficient() || this.getTable(material.getCanonical()) != null;
+	}
+
+	/**
+	 * Probes the win/draw/loss result of the current position.
+	 * @param game The game to probe.
+	 * @return 1 if the side to move wins, 0 if the position is a draw,
+	 * -1 if the side to move loses.
+	 * @throws IllegalArgumentException If the position cannot be probed.
+	 * @see Tablebase.canProbe(Game game)
+	 */
+	public int probeWDL(Game game) {
+		return Integer.signum(this.probe(game));
+	}
+
+	/**
+	 * Probes the distance to the next capture, promotion or mate
+	 * of the current position.
+	 * @param game The game to probe.
+	 * @return The number of plies to the next conversion: positive if
+	 * the side to move wins, negative if it loses, 0 if the position
+	 * is a draw or the side to move is already checkmated.
+	 * @throws IllegalArgumentException If the position cannot be probed.
+	 * @see Tablebase.canProbe(Game game)
+	 */
+	public int probeDTZ(Game game) {
+		int value = this.probe(game);
+		return value >= 0 ? value : value + 1;
+	}
+
+	/**
+	 * Looks up the table entry for the current position.
+	 * @param game The game to probe.
+	 * @return The table entry for the position.
+	 */
+	private int probe(Game game) {
+		if(!this.canProbe(game)) {
+			throw new IllegalArgumentException("Position is not in the tablebase: " + game.getFEN());
+		}
+		Piece[] pieces = new Piece[MAX_PIECES];
+		int[] squares = new int[MAX_PIECES];
+		int count = 0;
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				Piece piece = game.getPieceAt(r, c);
+				if(piece != null) {
+					pieces[count] = piece;
+					squares[count++] = r * Game.BOARD_COLS + c;
+				}
+			}
+		}
+		Material material = new Material(Arrays.copyOf(pieces, count));
+		if(material.isInsufficient()) {
+			return 0;
+		}
+		boolean mirror = !material.isCanonical();
+		Material canonical = mirror ? material.getMirror() : material;
+		int side = game.getTurn() == WHITE ? 0 : 1;
+		if(mirror) {
+			side ^= 1;
+			for(int i=0; i<count; i++) {
+				pieces[i] = Material.swapColor(pieces[i]);
+				squares[i] ^= 56;
+			}
+		}
+		int value = this.getTable(canonical).get(HEADER_SIZE +
+				Tablebase.indexOf(canonical, pieces, squares, count, side));
+		if(value == INVALID) {
+			throw new IllegalArgumentException("Position is not legal: " + game.getFEN());
+		}
+		return value;
+	}
+
+	/**
+	 * Computes the index of a position within the table of its material.
+	 * @param material The canonical material of the position.
+	 * @param pieces The pieces of the position, in any order.
+	 * @param squares The square of each piece (row * 8 + col).
+	 * @param count The number of pieces.
+	 * @param side 0 if White is to move, 1 if Black is to move.
+	 * @return The index of the position.
+	 */
+	static int indexOf(Material material, Piece[] pieces, int[] squares, int count, int side) {
+		Piece[] slots = material.getPieces();
+		boolean[] used = new boolean[count];
+		int index = side << (6 * slots.length);
+		for(int slot=0; slot<slots.length; slot++) {
+			for(int i=0; i<count; i++) {
+				if(!used[i] && pieces[i] == slots[slot]) {
+					used[i] = true;
+					index |= squares[i] << (6 * slot);
+					break;
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the memory-mapped table for a material signature.
+	 * @param material The canonical material.
+	 * @return The table, or null if there is no (readable) file for it.
+	 */
+	private MappedByteBuffer getTable(Material material) {
+		MappedByteBuffer table = this.tables.get(material.getName());
+		if(table != null) {
+			return table;
+		}
+		File file = new File(this.directory, material.getName() + EXTENSION);
+		if(!file.isFile()) {
+			return null;
+		}
+		try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			table = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+			if(table.getInt(0) != MAGIC || table.capacity() != HEADER_SIZE + material.getSize()) {
+				return null;
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		this.tables.put(material.getName(), table);
+		return table;
+	}
+
+	/**
+	 * Encodes a win for the side to move.
+	 * @param plies The number of plies to the conversion, at least 1.
+	 * @return The table entry.
+	 */
+	static byte win(int plies) {
+		return (byte) plies;
+	}
+
+	/**
+	 * Encodes a loss for the side to move.
+	 * @param plies The number of plies to the conversion, at least 0.
+	 * @return The table entry.
+	 */
+	static byte loss(int plies) {
+		return (byte) (-plies - 1);
+	}
+}
@@ -0,0 +1,714 @@
+package application.engine;
+
+import static application.model.PieceColor.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import application.model.Piece;
+
+/**
+ * The TablebaseGenerator builds the endgame tables read by the
+ * Tablebase, by retrograde analysis.
+ *
+ * Pieces move by the same steps as in the rest of the app (see
+ * MoveGenerator.getSteps()), pawns always promote to a queen as in
+ * Game.pushMove(Move move), and a capture into insufficient material
+ * is a draw as in Game.isInsufficientMaterial(). Castling and en
+ * passant are left out.
+ *
+ * A table is built in rounds:
+ * 1. Every position is set up. Positions where the side to move is
+ * checkmated are lost in 0 plies, and captures and promotions are looked
+ * up in the (smaller) table they convert to, building it first if needed.
+ * 2. In round d, every position lost in d plies makes each position that
+ * can move into it won in d + 1 plies, and every position won in d plies
+ * takes one move away from each position that can move into it. A
+ * position with no moves left is lost in d + 1 plies. The positions that
+ * can move into a position are found by moving its pieces backwards
+ * ("unmoves").
+ * 3. Positions left over once a round finds nothing are draws.
+ *
+ * Each pass is split by index into chunks which are run on a pool of
+ * worker threads. Workers share the table without locks: a position is
+ * claimed by setting its bit in a resolved bitset with compare-and-set,
+ * and move counters are packed four to an int and decremented atomically.
+ * Only the worker that claims a position writes its entry, and a round
+ * only reads entries written by earlier rounds.
+ *
+ * Usage: java application.engine.TablebaseGenerator [-threads n] directory KQvK KRvK ...
+ * @see Tablebase
+ */
+public class TablebaseGenerator {
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final File directory;
+	private final Map<String, byte[]> tables = new HashMap<>();
+	private final int threads;
+
+	/**
+	 * Creates a generator which writes tables into a directory,
+	 * using one worker thread per processor.
+	 * Tables already in the directory are reused.
+	 * @param directory The directory to write .ctb files to.
+	 */
+	public TablebaseGenerator(String directory) {
+		this(directory, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a generator which writes tables into a directory.
+	 * Tables already in the directory are reused.
+	 * @param directory The directory to write .ctb files to.
+	 * @param threads The number of worker threads.
+	 */
+	public TablebaseGenerator(String directory, int threads) {
+		this.directory = new File(directory);
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Generates the table for a material signature such as "KQvKR",
+	 * along with every table it converts to.
+	 * @param signature The material signature to generate.
+	 * @throws IOException If a table cannot be read or written.
+	 */
+	public void generate(String signature) throws IOException {
+		Material material = Material.parse(signature).getCanonical();
+		if(material.getPieceCount() > Tablebase.MAX_PIECES) {
+			throw new IllegalArgumentException("At most " + Tablebase.MAX_PIECES + " pieces are supported: " + signature);
+		}
+		this.getTable(material);
+	}
+
+	/**
+	 * Gets the entries of a table, reading it from disk or building
+	 * it if it does not exist yet.
+	 * @param material The canonical material of the table.
+	 * @return The entries of the table, or null if the material
+	 * is insufficient (every position is a draw).
+	 * @throws IOException If the table cannot be read or written.
+	 */
+	byte[] getTable(Material material) throws IOException {
+		if(material.isInsufficient()) {
+			return null;
+		}
+		byte[] table = this.tables.get(material.getName());
+		if(table != null) {
+			return table;
+		}
+		File file = new File(this.directory, material.getName() + Tablebase.EXTENSION);
+		if(file.isFile()) {
+			table = TablebaseGenerator.read(file, material);
+		} else {
+			table = new Builder(material).build();
+			this.directory.mkdirs();
+			TablebaseGenerator.write(file, material, table);
+		}
+		this.tables.put(material.getName(), table);
+		return table;
+	}
+
+	private static byte[] read(File file, Material material) throws IOException {
+		try(DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			if(in.readInt() != Tablebase.MAGIC || in.readInt() != material.getPieceCount()) {
+				throw new IOException("Not a table for " + material + ": " + file);
+			}
+			byte[] table = new byte[material.getSize()];
+			in.readFully(table);
+			return table;
+		}
+	}
+
+	private static void write(File file, Material material, byte[] table) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(material.getPieceCount());
+			out.write(table);
+		}
+	}
+
+	/**
+	 * Where a capture or promotion leads: the table of the new
+	 * material, and where each piece goes in that table's index.
+	 */
+	private static class Conversion {
+
+		final byte[] table;
+		final boolean mirror;
+		final int[] slots;
+		final int pieceCount;
+
+		Conversion(byte[] table, boolean mirror, int[] slots, int pieceCount) {
+			this.table = table;
+			this.mirror = mirror;
+			this.slots = slots;
+			this.pieceCount = pieceCount;
+		}
+
+		/**
+		 * Looks up the position after the conversion.
+		 * @param squares The squares of the pieces after the move.
+		 * @param side The side to move after the move.
+		 * @return The table entry of the position after the move,
+		 * from the point of view of the side to move then.
+		 */
+		byte probe(int[] squares, int side) {
+			if(this.table == null) {
+				return 0;
+			}
+			int index = (this.mirror ? side ^ 1 : side) << (6 * this.pieceCount);
+			for(int i=0; i<this.slots.length; i++) {
+				if(this.slots[i] >= 0) {
+					index |= (this.mirror ? squares[i] ^ 56 : squares[i]) << (6 * this.slots[i]);
+				}
+			}
+			return this.table[index];
+		}
+	}
+
+	/**
+	 * Builds the table of one material signature.
+	 */
+	private class Builder {
+
+		private final Material material;
+		private final int pieceCount;
+		private final boolean[] white;
+		private final boolean[] pawn;
+		private final boolean[] rider;
+		private final int[][][] steps;
+		private final int[] kings = new int[2];
+		private final Conversion[] captures;
+		private final Conversion[] promotions;
+		private final Conversion[][] promotionCaptures;
+
+		private byte[] values;
+		private AtomicLongArray resolved;
+		private AtomicIntegerArray counters;
+
+		Builder(Material material) throws IOException {
+			this.material = material;
+			Piece[] pieces = material.getPieces();
+			this.pieceCount = pieces.length;
+			this.white = new boolean[this.pieceCount];
+			this.pawn = new boolean[this.pieceCount];
+			this.rider = new boolean[this.pieceCount];
+			this.steps = new int[this.pieceCount][][];
+			this.captures = new Conversion[this.pieceCount];
+			this.promotions = new Conversion[this.pieceCount];
+			this.promotionCaptures = new Conversion[this.pieceCount][this.pieceCount];
+			for(int i=0; i<this.pieceCount; i++) {
+				char ch = Character.toUpperCase(pieces[i].getCharacter());
+				this.white[i] = pieces[i].getColor() == WHITE;
+				this.pawn[i] = ch == 'P';
+				this.rider[i] = pieces[i].getMoveGenerator().isRider();
+				this.steps[i] = pieces[i].getMoveGenerator().getSteps();
+				if(ch == 'K') {
+					this.kings[this.white[i] ? 0 : 1] = i;
+				}
+			}
+
+			// Build the tables captures and promotions lead to first.
+			for(int i=0; i<this.pieceCount; i++) {
+				if(i != this.kings[0] && i != this.kings[1]) {
+					this.captures[i] = this.convert(-1, i);
+				}
+				if(this.pawn[i]) {
+					this.promotions[i] = this.convert(i, -1);
+					for(int j=0; j<this.pieceCount; j++) {
+						if(this.white[j] != this.white[i] && j != this.kings[0] && j != this.kings[1]) {
+							this.promotionCaptures[i][j] = this.convert(i, j);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Works out where a promotion and/or capture leads.
+		 * @param promoted The slot of the pawn promoting, or -1.
+		 * @param captured The slot of the piece captured, or -1.
+		 * @return The conversion.
+		 */
+		private Conversion convert(int promoted, int captured) throws IOException {
+			Piece[] pieces = this.material.getPieces();
+			List<Piece> remaining = new ArrayList<>();
+			for(int i=0; i<this.pieceCount; i++) {
+				if(i == captured) continue;
+				Piece piece = pieces[i];
+				if(i == promoted) {
+					piece = this.white[i] ? Piece.WHITE_QUEEN : Piece.BLACK_QUEEN;
+				}
+				remaining.add(piece);
+			}
+			Material child = new Material(remaining.toArray(new Piece[remaining.size()]));
+			boolean mirror = !child.isCanonical();
+			Material canonical = mirror ? child.getMirror() : child;
+
+			int[] slots = new int[this.pieceCount];
+			boolean[] used = new boolean[canonical.getPieceCount()];
+			for(int i=0; i<this.pieceCount; i++) {
+				slots[i] = -1;
+				if(i == captured) continue;
+				Piece piece = i == promoted ? (this.white[i] ? Piece.WHITE_QUEEN : Piece.BLACK_QUEEN) : pieces[i];
+				if(mirror) {
+					piece = Material.swapColor(piece);
+				}
+				for(int slot=0; slot<used.length; slot++) {
+					if(!used[slot] && canonical.getPieces()[slot] == piece) {
+						used[slot] = true;
+						slots[i] = slot;
+						break;
+					}
+				}
+			}
+			return new Conversion(TablebaseGenerator.this.getTable(canonical), mirror, slots, canonical.getPieceCount());
+		}
+
+		/**
+		 * Builds the table, printing its statistics when done.
+		 * @return The entries of the table.
+		 */
+		byte[] build() throws IOException {
+			List<MemoryPoolMXBean> pools = new ArrayList<>();
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if(pool.getType() == MemoryType.HEAP) {
+					pool.resetPeakUsage();
+					pools.add(pool);
+				}
+			}
+			long start = System.nanoTime();
+
+			int size = this.material.getSize();
+			this.values = new byte[size];
+			this.resolved = new AtomicLongArray((size + 63) / 64);
+			this.counters = new AtomicIntegerArray((size + 3) / 4);
+			ExecutorService pool = Executors.newFixedThreadPool(TablebaseGenerator.this.threads);
+			int rounds = 0;
+			try {
+				this.runPass(pool, -1);
+				for(int distance=0; distance < Tablebase.MAX_DISTANCE; distance++, rounds++) {
+					if(!this.runPass(pool, distance) && distance > 0) {
+						break;
+					}
+				}
+			} finally {
+				pool.shutdown();
+			}
+			this.resolved = null;
+			this.counters = null;
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+			long peakBytes = 0;
+			for(MemoryPoolMXBean heapPool : pools) {
+				peakBytes += heapPool.getPeakUsage().getUsed();
+			}
+			int wins = 0, losses = 0;
+			for(byte value : this.values) {
+				if(value == Tablebase.INVALID) continue;
+				if(value > 0) wins++;
+				else if(value < 0) losses++;
+			}
+			System.out.println(String.format(
+					"%s: %d positions, %d won, %d lost, %d rounds in %.2f s (%.0f positions/s, %d threads, peak heap %d MB)",
+					this.material, size, wins, losses, rounds, seconds, size / seconds,
+					TablebaseGenerator.this.threads, peakBytes >> 20));
+			return this.values;
+		}
+
+		/**
+		 * Runs one pass over the whole table, split into chunks
+		 * across the worker pool.
+		 * @param pool The worker pool.
+		 * @param distance The round to run, or -1 to set up positions.
+		 * @return true if any chunk found positions won or lost
+		 * in the given number of plies.
+		 */
+		private boolean runPass(ExecutorService pool, final int distance) throws IOException {
+			List<Callable<Boolean>> chunks = new ArrayList<>();
+			for(int start=0; start<this.values.length; start+=CHUNK_SIZE) {
+				final int from = start,
+						  to = Math.min(this.values.length, start + CHUNK_SIZE);
+				chunks.add(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						Worker worker = new Worker();
+						if(distance < 0) {
+							for(int index=from; index<to; index++) {
+								worker.setUp(index);
+							}
+							return true;
+						}
+						return worker.round(distance, from, to);
+					}
+				});
+			}
+			boolean found = false;
+			try {
+				for(Future<Boolean> result : pool.invokeAll(chunks)) {
+					found |= result.get();
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while building " + this.material, e);
+			} catch(ExecutionException e) {
+				throw new IOException("Failed to build " + this.material, e.getCause());
+			}
+			return found;
+		}
+
+		/**
+		 * Marks a position as resolved, unless another worker got there first.
+		 * @param index The position to claim.
+		 * @return true if this call claimed the position.
+		 */
+		private boolean claim(int index) {
+			long bit = 1L << index;
+			int word = index >>> 6;
+			long old;
+			do {
+				old = this.resolved.get(word);
+				if((old & bit) != 0) {
+					return false;
+				}
+			} while(!this.resolved.compareAndSet(word, old, old | bit));
+			return true;
+		}
+
+		private boolean isResolved(int index) {
+			return (this.resolved.get(index >>> 6) & 1L << index) != 0;
+		}
+
+		/**
+		 * Adds to the move counter of a position.
+		 * @param index The position.
+		 * @param delta The amount to add.
+		 * @return The new value of the counter.
+		 */
+		private int addToCounter(int index, int delta) {
+			int shift = (index & 3) * 8;
+			return (this.counters.addAndGet(index >>> 2, delta << shift) >>> shift) & 0xff;
+		}
+
+		/**
+		 * The scratch space and passes run by one worker thread.
+		 */
+		private class Worker {
+
+			private final int[] squares = new int[Builder.this.pieceCount];
+			private final int[] board = new int[64];
+			private final int[] moves = new int[256];
+
+			Worker() {
+				Arrays.fill(this.board, -1);
+			}
+
+			/**
+			 * Decodes an index into the squares of each piece.
+			 * @param index The index to decode.
+			 * @return The side to move: 0 for White, 1 for Black.
+			 */
+			private int decode(int index) {
+				for(int i=0; i<Builder.this.pieceCount; i++) {
+					this.squares[i] = (index >>> (6 * i)) & 63;
+				}
+				return index >>> (6 * Builder.this.pieceCount);
+			}
+
+			/**
+			 * Sets up the entry for one position: marks it illegal, checkmate,
+			 * or won by a conversion, or otherwise counts its moves.
+			 * @param index The index of the position.
+			 */
+			void setUp(int index) {
+				Builder builder = Builder.this;
+				int side = this.decode(index);
+				int[] squares = this.squares;
+				if(!this.isLegal(squares, side)) {
+					builder.values[index] = Tablebase.INVALID;
+					builder.claim(index);
+					return;
+				}
+
+				for(int i=0; i<builder.pieceCount; i++) this.board[squares[i]] = i;
+				int moveCount = this.generateMoves(squares, side);
+				for(int i=0; i<builder.pieceCount; i++) this.board[squares[i]] = -1;
+
+				int legalMoves = 0,
+					counter = 0;
+				boolean winsByConversion = false;
+				for(int m=0; m<moveCount; m++) {
+					int move = this.moves[m];
+					int slot = move & 3,
+						to = (move >>> 2) & 63,
+						captured = ((move >>> 8) & 7) - 1;
+					boolean promotion = (move >>> 11) != 0;
+
+					int from = squares[slot];
+					squares[slot] = to;
+					if(captured >= 0) squares[captured] = -1;
+					boolean legal = !this.isAttacked(squares, squares[builder.kings[side]], side ^ 1);
+					if(legal) {
+						legalMoves++;
+						if(captured >= 0 || promotion) {
+							Conversion conversion = promotion ?
+									(captured >= 0 ? builder.promotionCaptures[slot][captured] : builder.promotions[slot]) :
+									builder.captures[captured];
+							byte value = conversion.probe(squares, side ^ 1);
+							if(value < 0) {
+								winsByConversion = true;
+							} else if(value == 0) {
+								counter++; // a draw; can never be taken away
+							}
+						} else {
+							counter++;
+						}
+					}
+					squares[slot] = from;
+					if(captured >= 0) squares[captured] = (index >>> (6 * captured)) & 63;
+				}
+
+				if(legalMoves == 0) {
+					boolean inCheck = this.isAttacked(squares, squares[builder.kings[side]], side ^ 1);
+					builder.values[index] = inCheck ? Tablebase.loss(0) : 0;
+					builder.claim(index);
+				} else if(winsByConversion) {
+					builder.values[index] = Tablebase.win(1);
+					builder.claim(index);
+				} else if(counter == 0) {
+					builder.values[index] = Tablebase.loss(1);
+					builder.claim(index);
+				} else {
+					builder.addToCounter(index, counter);
+				}
+			}
+
+			/**
+			 * Runs one round over a chunk of the table: resolves the positions
+			 * which move into positions won or lost in the given number of plies.
+			 * @param distance The number of plies.
+			 * @param from The first index of the chunk.
+			 * @param to The index after the last index of the chunk.
+			 * @return true if any position in the chunk was won or lost
+			 * in that many plies.
+			 */
+			boolean round(int distance, int from, int to) {
+				byte[] values = Builder.this.values;
+				byte won = Tablebase.win(distance),
+					 lost = Tablebase.loss(distance);
+				boolean found = false;
+				for(int index=from; index<to; index++) {
+					byte value = values[index];
+					if(value == lost || (value == won && distance > 0)) {
+						found = true;
+						this.unmove(index, value == lost, distance + 1);
+					}
+				}
+				return found;
+			}
+
+			/**
+			 * Visits every position that can move into the given position.
+			 * @param index The index of the position.
+			 * @param lost Whether the side to move loses the position.
+			 * @param distance The distance of a position resolved by this one.
+			 */
+			private void unmove(int index, boolean lost, int distance) {
+				Builder builder = Builder.this;
+				int side = this.decode(index);
+				int[] squares = this.squares;
+				long occupied = 0;
+				for(int i=0; i<builder.pieceCount; i++) occupied |= 1L << squares[i];
+
+				for(int i=0; i<builder.pieceCount; i++) {
+					if(builder.white[i] == (side == 0)) continue; // only the side that just moved
+					int row = squares[i] >> 3,
+						col = squares[i] & 7;
+					int clear = index & ~(63 << (6 * i)) ^ (1 << (6 * builder.pieceCount));
+					if(builder.pawn[i]) {
+						int back = builder.white[i] ? 1 : -1;
+						int fromRow = row + back;
+						if(fromRow >= 1 && fromRow <= 6 && (occupied & 1L << (fromRow * 8 + col)) == 0) {
+							this.resolve(clear | (fromRow * 8 + col) << (6 * i), lost, distance);
+							fromRow += back;
+							if(fromRow == (builder.white[i] ? 6 : 1) && (occupied & 1L << (fromRow * 8 + col)) == 0) {
+								this.resolve(clear | (fromRow * 8 + col) << (6 * i), lost, distance);
+							}
+						}
+						continue;
+					}
+					for(int[] step : builder.steps[i]) {
+						for(int r = row + step[0], c = col + step[1];
+								r >= 0 && r < 8 && c >= 0 && c < 8 && (occupied & 1L << (r * 8 + c)) == 0;
+								r += step[0], c += step[1]) {
+							this.resolve(clear | (r * 8 + c) << (6 * i), lost, distance);
+							if(!builder.rider[i]) break;
+						}
+					}
+				}
+			}
+
+			/**
+			 * Updates a position which can move into a resolved position.
+			 * @param index The position which can move into the resolved one.
+			 * @param lost Whether the side to move in the resolved position loses.
+			 * @param distance The distance of the position, if resolved.
+			 */
+			private void resolve(int index, boolean lost, int distance) {
+				Builder builder = Builder.this;
+				if(builder.isResolved(index)) {
+					return; // resolved already, or not legal
+				}
+				if(lost) {
+					if(builder.claim(index)) {
+						builder.values[index] = Tablebase.win(distance);
+					}
+				} else if(builder.addToCounter(index, -1) == 0 && builder.claim(index)) {
+					builder.values[index] = Tablebase.loss(distance);
+				}
+			}
+
+			/**
+			 * Returns whether a position can occur in a game: no two pieces on
+			 * the same square, no pawns on the first or last row, and the side
+			 * that just moved is not in check.
+			 */
+			private boolean isLegal(int[] squares, int side) {
+				long occupied = 0;
+				for(int i=0; i<Builder.this.pieceCount; i++) {
+					long bit = 1L << squares[i];
+					if((occupied & bit) != 0) return false;
+					occupied |= bit;
+					if(Builder.this.pawn[i] && (squares[i] < 8 || squares[i] >= 56)) return false;
+				}
+				return !this.isAttacked(squares, squares[Builder.this.kings[side ^ 1]], side);
+			}
+
+			/**
+			 * Returns whether a square is attacked by a side.
+			 * @param squares The squares of each piece; -1 for captured pieces.
+			 * @param target The square which may be attacked.
+			 * @param side The attacking side: 0 for White, 1 for Black.
+			 */
+			private boolean isAttacked(int[] squares, int target, int side) {
+				Builder builder = Builder.this;
+				long occupied = 0;
+				for(int i=0; i<builder.pieceCount; i++) {
+					if(squares[i] >= 0) occupied |= 1L << squares[i];
+				}
+				int targetRow = target >> 3,
+					targetCol = target & 7;
+				for(int i=0; i<builder.pieceCount; i++) {
+					if(squares[i] < 0 || builder.white[i] != (side == 0)) continue;
+					int row = squares[i] >> 3,
+						col = squares[i] & 7;
+					if(builder.pawn[i]) {
+						if(targetRow == row + (builder.white[i] ? -1 : 1) && Math.abs(targetCol - col) == 1) return true;
+						continue;
+					}
+					for(int[] step : builder.steps[i]) {
+						for(int r = row + step[0], c = col + step[1];
+								r >= 0 && r < 8 && c >= 0 && c < 8;
+								r += step[0], c += step[1]) {
+							if(r == targetRow && c == targetCol) return true;
+							if(!builder.rider[i] || (occupied & 1L << (r * 8 + c)) != 0) break;
+						}
+					}
+				}
+				return false;
+			}
+
+			/**
+			 * Generates the pseudo-legal moves of a side into this.moves.
+			 * Each move is packed as the slot of the moving piece (2 bits),
+			 * the destination square (6 bits), the captured slot + 1 (3 bits)
+			 * and whether the move promotes (1 bit).
+			 * this.board must hold the slot on each square.
+			 * @return The number of moves generated.
+			 */
+			private int generateMoves(int[] squares, int side) {
+				Builder builder = Builder.this;
+				int count = 0;
+				for(int i=0; i<builder.pieceCount; i++) {
+					if(builder.white[i] != (side == 0)) continue;
+					int row = squares[i] >> 3,
+						col = squares[i] & 7;
+					if(builder.pawn[i]) {
+						int direction = builder.white[i] ? -1 : 1;
+						int toRow = row + direction;
+						int promotion = (toRow == 0 || toRow == 7) ? 1 << 11 : 0;
+						if(this.board[toRow * 8 + col] < 0) {
+							this.moves[count++] = i | (toRow * 8 + col) << 2 | promotion;
+							if(row == (builder.white[i] ? 6 : 1) && this.board[(toRow + direction) * 8 + col] < 0) {
+								this.moves[count++] = i | ((toRow + direction) * 8 + col) << 2;
+							}
+						}
+						for(int c = col - 1; c <= col + 1; c += 2) {
+							if(c < 0 || c > 7) continue;
+							int captured = this.board[toRow * 8 + c];
+							if(captured >= 0 && builder.white[captured] != builder.white[i]) {
+								this.moves[count++] = i | (toRow * 8 + c) << 2 | (captured + 1) << 8 | promotion;
+							}
+						}
+						continue;
+					}
+					for(int[] step : builder.steps[i]) {
+						for(int r = row + step[0], c = col + step[1];
+								r >= 0 && r < 8 && c >= 0 && c < 8;
+								r += step[0], c += step[1]) {
+							int captured = this.board[r * 8 + c];
+							if(captured >= 0) {
+								if(builder.white[captured] != builder.white[i]) {
+									this.moves[count++] = i | (r * 8 + c) << 2 | (captured + 1) << 8;
+								}
+								break;
+							}
+							this.moves[count++] = i | (r * 8 + c) << 2;
+							if(!builder.rider[i]) break;
+						}
+					}
+				}
+				return count;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int first = 0;
+		if(args.length > 1 && args[0].equals("-threads")) {
+			threads = Integer.parseInt(args[1]);
+			first = 2;
+		}
+		if(args.length - first < 2) {
+			System.out.println("Usage: java application.engine.TablebaseGenerator [-threads n] directory KQvK KRvK ...");
+			return;
+		}
+		TablebaseGenerator generator = new TablebaseGenerator(args[first], threads);
+		for(int i=first+1; i<args.length; i++) {
+			generator.generate(args[i]);
+		}
+	}
+}
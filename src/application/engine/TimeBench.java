@@ -0,0 +1,178 @@
+package application.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import application.model.ChessClock;
+import application.model.Game;
+import application.model.Move;
+import application.model.PieceColor;
+import application.model.TimeControl;
+import application.util.LatencyStats;
+
+/**
+ * The TimeBench class measures how well the TimeManager keeps to the
+ * time it allocates, in games played under a real ChessClock.
+ *
+ * The engine plays both sides of each game (from random openings), each
+ * with its own Search, and each move is searched with the mover's time
+ * left, charged to its clock when it is played. For every move the time
+ * taken is compared with the time allocated (the soft limit as stretched
+ * by the search) and with the hard limit, which the search may only pass
+ * by as long as it takes to notice it, polling the clock every
+ * Search.TIME_CHECK_NODES nodes. Forced moves, flag falls and the time
+ * left when each game ends are counted too.
+ *
+ * Usage: java application.engine.TimeBench [-games n] [-tc base+inc]
+ * [-maxplies n] [-seed n] [engine]
+ */
+public class TimeBench {
+
+	private final EngineConfig engine;
+	private final TimeControl control;
+	private int games = 4;
+	private int maxPlies = 80;
+	private long seed = 1;
+
+	// results
+	private final LatencyStats used = new LatencyStats(),
+							   forced = new LatencyStats(),
+							   overshoot = new LatencyStats();
+	private double[] ratios = new double[256];
+	private int moves;
+	private int overHard;
+	private int flags;
+	private long nodes,
+				 searchNanos;
+	private double leftShare;
+
+	public TimeBench(EngineConfig engine, TimeControl control) {
+		this.engine = engine;
+		this.control = control;
+	}
+
+	/**
+	 * Plays every game.
+	 */
+	public void run() {
+		for(int round=0; round<this.games; round++) {
+			this.playGame(round);
+		}
+	}
+
+	private void playGame(int round) {
+		Game game = new Game();
+		PonderBench.playOpening(game, new Random(this.seed + round));
+		// attached after the opening, so that it is not charged
+		ChessClock clock = new ChessClock(this.control);
+		game.setClock(clock);
+		clock.start(game.getTurn());
+		Search white = this.engine.createSearch(),
+			   black = this.engine.createSearch();
+		for(int ply=0; ply<this.maxPlies && game.hasLegalMoves() && !game.isDraw(); ply++) {
+			PieceColor turn = game.getTurn();
+			Search search = turn == PieceColor.WHITE ? white : black;
+			SearchLimits limits = this.engine.createLimits();
+			limits.setClock(clock, turn);
+			long start = System.nanoTime();
+			// a copy's clock is a snapshot, which the search's moves do not charge
+			Move move = search.search(game.copy(), limits, null);
+			long nanos = System.nanoTime() - start;
+			if(clock.checkFlag() != null) {
+				this.flags++;
+				break;
+			}
+			game.pushMove(move);
+			this.record(search, nanos);
+		}
+		clock.stop();
+		for(PieceColor color : PieceColor.values()) {
+			this.leftShare += (double) clock.getRemainingNanos(color) / this.control.getBaseNanos() / 2;
+		}
+	}
+
+	private void record(Search search, long nanos) {
+		TimeManager manager = search.getTimeManager();
+		this.nodes += search.getNodes();
+		this.searchNanos += nanos;
+		if(search.getNodes() == 0) {
+			this.forced.record(nanos);
+			return;
+		}
+		this.used.record(nanos);
+		if(this.moves == this.ratios.length) {
+			this.ratios = Arrays.copyOf(this.ratios, this.moves * 2);
+		}
+		this.ratios[this.moves++] = (double) nanos / Math.max(1, manager.getAllocatedNanos());
+		if(nanos > manager.getHardNanos()) {
+			this.overHard++;
+			this.overshoot.record(nanos - manager.getHardNanos());
+		}
+	}
+
+	/**
+	 * Gets a percentile of the time taken over the time allocated, across
+	 * the moves searched.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The ratio, or 0 if no moves were searched.
+	 */
+	public double getRatioPercentile(double percentile) {
+		if(this.moves == 0) {
+			return 0;
+		}
+		double[] sorted = Arrays.copyOf(this.ratios, this.moves);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * this.moves) - 1;
+		return sorted[Math.max(0, Math.min(this.moves - 1, index))];
+	}
+
+	public void setGames(int games) {
+		this.games = games;
+	}
+
+	public void setMaxPlies(int maxPlies) {
+		this.maxPlies = maxPlies;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) {
+		int games = 4, maxPlies = 80;
+		long seed = 1;
+		String control = "60+0.6", engine = "name=engine";
+		for(int i=0; i<args.length; i++) {
+			switch(args[i]) {
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-tc": control = args[++i]; break;
+			case "-maxplies": maxPlies = Integer.parseInt(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-help":
+				System.out.println("Usage: java application.engine.TimeBench [-games n] [-tc base+inc] [-maxplies n]"
+						+ " [-seed n] [engine]");
+				System.out.println("Engines are written as options, e.g. depth=12; the clock limits them anyway");
+				return;
+			default: engine = args[i]; break;
+			}
+		}
+
+		TimeBench bench = new TimeBench(EngineConfig.parse(engine), TimeControl.parse(control));
+		bench.setGames(games);
+		bench.setMaxPlies(maxPlies);
+		bench.setSeed(seed);
+		bench.run();
+		System.out.println(engine + " at " + control + ", " + games + " games");
+		System.out.printf("Moves searched %d  forced %d  flags %d  time left at the end %.0f%% of base%n",
+				bench.moves, bench.forced.getCount(), bench.flags, bench.leftShare / games * 100);
+		System.out.printf("  Used: avg %.1fms  p50 %.1fms  max %.1fms   forced avg %.2fms%n",
+				bench.used.getAverageNanos() / 1e6, bench.used.getPercentileNanos(50) / 1e6,
+				bench.used.getMaxNanos() / 1e6, bench.forced.getAverageNanos() / 1e6);
+		System.out.printf("  Used/allocated: p10 %.2f  p50 %.2f  p90 %.2f  max %.2f%n",
+				bench.getRatioPercentile(10), bench.getRatioPercentile(50),
+				bench.getRatioPercentile(90), bench.getRatioPercentile(100));
+		System.out.printf("  Past the hard limit: %d moves, by avg %.2fms  max %.2fms   (%.0f nodes/s)%n",
+				bench.overHard, bench.overshoot.getAverageNanos() / 1e6, bench.overshoot.getMaxNanos() / 1e6,
+				bench.nodes / Math.max(1e-9, bench.searchNanos / 1e9));
+	}
+}
@@ -0,0 +1,136 @@
+package application.engine;
+
+import application.model.Move;
+
+/**
+ * The TimeManager class decides how long a search under a clock may take,
+ * from the time the side to move has left, its increment and, if known,
+ * the number of moves until the time control adds more.
+ *
+ * It sets two limits. The soft limit is the time the move is meant to take:
+ * an even share of the time left over the moves to go, plus most of the
+ * increment. The hard limit, a few times longer but never more than a
+ * share of the time left, stops the search even in the middle of an
+ * iteration. Between iterations, the soft limit is stretched while the
+ * search is unsure: each change of best move adds to it (less with each
+ * iteration the move then holds), and so does a drop in score. A search
+ * whose best move has held for several iterations stops sooner, and one
+ * with a single legal move is not searched at all.
+ *
+ * A new iteration takes several times as long as the one before, so one
+ * is only started if it is expected to be at least half done by the
+ * (stretched) soft limit; how long it will take is guessed from how the
+ * last iterations grew. Waiting for a whole iteration to fit would leave
+ * most moves well short of the limit, and starting any iteration under it
+ * would leave many cut short by the hard limit. (Half an iteration is not
+ * wasted: a better move found in it is still played.)
+ */
+public class TimeManager {
+
+	// assumed when the moves to the next time control are not known
+	public static final int DEFAULT_MOVES_TO_GO = 30;
+	// kept back from every move for the time taken to send it
+	public static final long OVERHEAD_NANOS = 20_000_000;
+	// how many times longer each iteration is guessed to take than the last
+	private static final double MIN_GROWTH = 2,
+								MAX_GROWTH = 12;
+	// iterations shorter than this are too noisy to guess growth from
+	private static final long MIN_TIMED_NANOS = 1_000_000;
+	private static final int MAX_MOVES_TO_GO = 50,
+							 HARD_LIMIT_FACTOR = 4,
+							 STABLE_ITERATIONS = 4,
+							 SCORE_DROP = 30;
+
+	private final long softNanos,
+					   hardNanos;
+	private double instability;
+	private double scale = 1;
+	private Move bestMove;
+	private int bestScore;
+	private int stableIterations;
+	private long elapsedNanos,
+				 iterationNanos;
+	private double growth = MIN_GROWTH;
+
+	/**
+	 * Allocates the time for one move.
+	 * @param timeLeftNanos The time the side to move has left.
+	 * @param incrementNanos The time added after each of its moves.
+	 * @param movesToGo The moves until the next time control, or 0 if there
+	 * is none (or it is not known).
+	 */
+	public TimeManager(long timeLeftNanos, long incrementNanos, int movesToGo) {
+		long left = Math.max(0, timeLeftNanos - OVERHEAD_NANOS);
+		int moves = movesToGo > 0 ? Math.min(movesToGo, MAX_MOVES_TO_GO) : DEFAULT_MOVES_TO_GO;
+		this.softNanos = Math.min(left / moves + incrementNanos * 3 / 4, left / 2);
+		this.hardNanos = Math.max(this.softNanos, Math.min(this.softNanos * HARD_LIMIT_FACTOR, left * 3 / 4));
+	}
+
+	/**
+	 * Takes in the result of an iteration, stretching or shrinking the
+	 * soft limit.
+	 * @param bestMove The best move found.
+	 * @param score Its score.
+	 * @param elapsedNanos The time searched so far.
+	 */
+	public void update(Move bestMove, int score, long elapsedNanos) {
+		long iterationNanos = elapsedNanos - this.elapsedNanos;
+		if(this.iterationNanos >= MIN_TIMED_NANOS) {
+			this.growth = Math.max(MIN_GROWTH, Math.min(MAX_GROWTH, (double) iterationNanos / this.iterationNanos));
+		}
+		this.elapsedNanos = elapsedNanos;
+		this.iterationNanos = iterationNanos;
+
+		this.instability /= 2;
+		boolean changed = this.bestMove != null && !this.bestMove.equals(bestMove);
+		if(changed) {
+			this.instability += 1;
+		}
+		this.stableIterations = changed || this.bestMove == null ? 0 : this.stableIterations + 1;
+		int drop = this.bestMove == null ? 0 : this.bestScore - score;
+		this.bestMove = bestMove;
+		this.bestScore = score;
+
+		double scale = 1 + this.instability;
+		if(drop >= SCORE_DROP) {
+			scale *= drop >= SCORE_DROP * 3 ? 2 : 1.5;
+		} else if(this.stableIterations >= STABLE_ITERATIONS) {
+			scale *= 0.7;
+		}
+		this.scale = scale;
+	}
+
+	/**
+	 * Returns whether to start another iteration, after update(Move
+	 * bestMove, int score, long elapsedNanos).
+	 * @return true if the next iteration is expected to finish in time.
+	 */
+	public boolean canStartIteration() {
+		return this.elapsedNanos + this.iterationNanos * this.growth / 2 <= this.getAllocatedNanos();
+	}
+
+	/**
+	 * Gets the time the move is meant to take, before it is stretched.
+	 * @return The soft limit, in nanoseconds.
+	 */
+	public long getSoftNanos() {
+		return this.softNanos;
+	}
+
+	/**
+	 * Gets the time after which the search stops, even mid-iteration.
+	 * @return The hard limit, in nanoseconds.
+	 */
+	public long getHardNanos() {
+		return this.hardNanos;
+	}
+
+	/**
+	 * Gets the soft limit as stretched by the iterations so far, which is
+	 * never more than the hard limit.
+	 * @return The time allocated, in nanoseconds.
+	 */
+	public long getAllocatedNanos() {
+		return Math.min(this.hardNanos, (long) (this.softNanos * this.scale));
+	}
+}
@@ -0,0 +1,131 @@
+package application.engine;
+
+import java.util.Arrays;
+
+import application.model.Move;
+
+/**
+ * The TranspositionTable class remembers the results of positions
+ * already searched, keyed by their Zobrist key. Each entry holds the
+ * depth searched, the score, whether the score is exact or only a bound,
+ * and the best move found.
+ *
+ * The table has a fixed number of entries (a power of two); a new entry
+ * replaces whatever was stored in its slot before. Entries are stored in
+ * parallel arrays rather than as objects, so a large table costs no
+ * garbage collection work. A table should be used by one search at a time.
+ */
+public class TranspositionTable {
+
+	public static final int EXACT = 0,
+							LOWER_BOUND = 1,
+							UPPER_BOUND = 2;
+
+	private final long[] keys;
+	private final int[] scores;
+	private final int[] data;
+	private final int mask;
+
+	/**
+	 * Creates a table.
+	 * @param size The number of entries; rounded down to a power of two.
+	 */
+	public TranspositionTable(int size) {
+		int entries = Integer.highestOneBit(Math.max(1, size));
+		this.keys = new long[entries];
+		this.scores = new int[entries];
+		this.data = new int[entries];
+		this.mask = entries - 1;
+	}
+
+	/**
+	 * Stores the result of a search.
+	 * @param key The Zobrist key of the position.
+	 * @param depth The depth searched.
+	 * @param score The score found.
+	 * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+	 * @param move The best move found, or null.
+	 */
+	public void store(long key, int depth, int score, int bound, Move move) {
+		int slot = (int) key & this.mask;
+		this.keys[slot] = key;
+		this.scores[slot] = score;
+		this.data[slot] = TranspositionTable.encodeMove(move) | (depth & 0xff) << 13 | bound << 21 | 1 << 23;
+	}
+
+	/**
+	 * Finds the slot holding a position.
+	 * @param key The Zobrist key of the position.
+	 * @return The slot holding the position, or -1 if it is not stored.
+	 */
+	public int probe(long key) {
+		int slot = (int) key & this.mask;
+		return this.keys[slot] == key && this.data[slot] != 0 ? slot : -1;
+	}
+
+	/**
+	 * Gets the depth searched for the position in a slot.
+	 * @param slot The slot, as returned by probe(long key).
+	 * @return The depth searched.
+	 */
+	public int getDepth(int slot) {
+		return (this.data[slot] >>> 13) & 0xff;
+	}
+
+	/**
+	 * Gets the score stored in a slot.
+	 * @param slot The slot, as returned by probe(long key).
+	 * @return The score stored.
+	 */
+	public int getScore(int slot) {
+		return this.scores[slot];
+	}
+
+	/**
+	 * Gets whether the score in a slot is exact or a bound.
+	 * @param slot The slot, as returned by probe(long key).
+	 * @return EXACT, LOWER_BOUND or UPPER_BOUND.
+	 */
+	public int getBound(int slot) {
+		return (this.data[slot] >>> 21) & 3;
+	}
+
+	/**
+	 * Gets the best move stored in a slot.
+	 * @param slot The slot, as returned by probe(long key).
+	 * @return The best move stored, or null.
+	 */
+	public Move getMove(int slot) {
+		return TranspositionTable.decodeMove(this.data[slot] & 0x1fff);
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		Arrays.fill(this.keys, 0);
+		Arrays.fill(this.data, 0);
+	}
+
+	/**
+	 * Packs a move into 13 bits: 1 bit for whether there is a move,
+	 * then 6 bits each for the source and destination squares.
+	 * @param move The move to pack, or null.
+	 * @return The packed move.
+	 */
+	static int encodeMove(Move move) {
+		if(move == null) {
+			return 0;
+		}
+		return 1 << 12 | (move.getFromRow() * 8 + move.getFromCol()) << 6 | (move.getToRow() * 8 + move.getToCol());
+	}
+
+	static Move decodeMove(int move) {
+		if((move & 1 << 12) == 0) {
+			return null;
+		}
+		int from = (move >>> 6) & 63,
+			to = move & 63;
+		return new Move(from >> 3, from & 7, to >> 3, to & 7);
+	}
+}
@@ -0,0 +1,80 @@
+package application.event;
+
+/**
+ * The Flow class holds the interfaces of a reactive stream: a Publisher
+ * sends items to each Subscriber only as fast as the Subscriber asks for
+ * them through its Subscription ("backpressure").
+ *
+ * These are the same interfaces, with the same rules, as
+ * java.util.concurrent.Flow, which only exists from Java 9. On Java 9 and
+ * later they can be swapped for those by changing the imports.
+ * @see https://github.com/reactive-streams/reactive-streams-jvm
+ */
+public final class Flow {
+
+	private Flow() {
+	}
+
+	/**
+	 * A source of items for any number of Subscribers.
+	 * @param <T> The type of item published.
+	 */
+	public interface Publisher<T> {
+
+		/**
+		 * Adds a Subscriber. Its onSubscribe(Subscription subscription)
+		 * is called before any other method.
+		 * @param subscriber The Subscriber.
+		 */
+		public void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	/**
+	 * A receiver of items. Its methods are called one at a time, and
+	 * onNext(T item) is only called as many times as requested.
+	 * @param <T> The type of item received.
+	 */
+	public interface Subscriber<T> {
+
+		/**
+		 * Called once, before anything else.
+		 * @param subscription The subscription, used to request items
+		 * or cancel.
+		 */
+		public void onSubscribe(Subscription subscription);
+
+		/**
+		 * Called with the next item.
+		 * @param item The item.
+		 */
+		public void onNext(T item);
+
+		/**
+		 * Called if the subscription fails; nothing is called after it.
+		 * @param throwable The cause.
+		 */
+		public void onError(Throwable throwable);
+
+		/**
+		 * Called when there will be no more items; nothing is called after it.
+		 */
+		public void onComplete();
+	}
+
+	/**
+	 * The link between a Publisher and one Subscriber.
+	 */
+	public interface Subscription {
+
+		/**
+		 * Asks for up to n more items.
+		 * @param n The number of items, greater than 0.
+		 */
+		public void request(long n);
+
+		/**
+		 * Stops sending items, possibly after a few already on their way.
+		 */
+		public void cancel();
+	}
+}
@@ -0,0 +1,114 @@
+package application.event;
+
+import application.model.Move;
+import application.model.Piece;
+import application.model.Position;
+
+/**
+ * The GameEvent class is something that happened in a game, as sent by a
+ * GameEventPublisher. A move is sent as a MOVE event, followed by CAPTURE,
+ * CHECK and GAME_OVER events as they apply. A flag falling is sent as a
+ * GAME_OVER event without a move. A RESET event means the
+ * position was replaced (e.g. by Game.loadFromFEN(String fen)), or that
+ * the subscriber (or the publisher) fell too far behind and skipped to the
+ * current position.
+ *
+ * Every event carries the position after it, as an immutable Position,
+ * and events about the same move share a sequence number.
+ */
+public class GameEvent {
+
+	public enum Type {
+		MOVE, CAPTURE, CHECK, GAME_OVER, RESET
+	}
+
+	public static final String CHECKMATE = "Checkmate",
+							   TIME_FORFEIT = "Time forfeit",
+							   DRAW = "Draw";
+
+	private final Type type;
+	private final long sequence;
+	private final Move move;
+	private final Piece capturedPiece;
+	private final Position position;
+	private final String result;
+	private final String reason;
+
+	GameEvent(Type type, long sequence, Move move, Piece capturedPiece, Position position,
+			String result, String reason) {
+		this.type = type;
+		this.sequence = sequence;
+		this.move = move;
+		this.capturedPiece = capturedPiece;
+		this.position = position;
+		this.result = result;
+		this.reason = reason;
+	}
+
+	/**
+	 * Gets the type of the event.
+	 * @return The type.
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Gets the sequence number of the event, which counts up with each
+	 * move or reset. Events about the same move have the same number.
+	 * @return The sequence number.
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Gets the move the event is about.
+	 * @return The move, or null for RESET events and flag fall.
+	 */
+	public Move getMove() {
+		return this.move;
+	}
+
+	/**
+	 * Gets the piece captured by the move.
+	 * @return The captured piece, or null if nothing was captured.
+	 */
+	public Piece getCapturedPiece() {
+		return this.capturedPiece;
+	}
+
+	/**
+	 * Gets the position after the event.
+	 * @return The position.
+	 */
+	public Position getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Gets the result of the game, for GAME_OVER events.
+	 * @return CHECKMATE, TIME_FORFEIT (lost by the side to move) or DRAW,
+	 * or null if the game is not over.
+	 */
+	public String getResult() {
+		return this.result;
+	}
+
+	/**
+	 * Gets why the game ended, for GAME_OVER events, e.g. "stalemate",
+	 * "threefold repetition" or "white ran out of time"; or "skipped" for RESET events sent to a
+	 * subscriber which fell behind.
+	 * @return The reason, or null.
+	 */
+	public String getReason() {
+		return this.reason;
+	}
+
+	@Override
+	public String toString() {
+		return this.type + " " + this.sequence + (this.move == null ? "" : " " + this.move)
+				+ (this.result == null ? "" : " " + this.result)
+				+ (this.reason == null ? "" : " (" + this.reason + ")") + " " + this.position;
+	}
+}
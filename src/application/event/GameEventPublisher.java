@@ -0,0 +1,381 @@
+package application.event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import application.model.Game;
+import application.model.Move;
+import application.model.Piece;
+import application.model.PieceColor;
+import application.model.Position;
+
+/**
+ * The GameEventPublisher class sends a game's events to its subscribers.
+ * Each Game makes one when it is first subscribed to (see Game.getEvents()).
+ *
+ * The thread playing the game does as little as possible: Game.pushMove
+ * hands over a copy of the new position and returns. Working out whether
+ * the move gave check or ended the game (which needs all the legal moves)
+ * is done afterwards on an executor, once for all subscribers, and the
+ * resulting events are then queued for each subscriber.
+ *
+ * Each subscriber has its own bounded queue and is sent events on the
+ * executor only as fast as it requests them, in batches of up to
+ * MAX_BATCH per task, so a slow subscriber never holds up the game or
+ * the other subscribers. If a subscriber falls more than the queue's
+ * capacity behind, its queued events are dropped and replaced by a single
+ * RESET event with the current position, from which it can carry on.
+ * Likewise, if moves are played faster than their events can be worked
+ * out, and more than the queue's capacity are waiting, they are skipped
+ * and all subscribers are sent one RESET with the latest position. Either
+ * way, if the latest position ended the game, the RESET is followed by
+ * its GAME_OVER, so that no subscriber misses the end of the game.
+ */
+public class GameEventPublisher implements Flow.Publisher<GameEvent> {
+
+	public static final int DEFAULT_BUFFER_CAPACITY = 256;
+	private static final int MAX_BATCH = 64;
+	private static final Executor DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "game-events");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Executor executor;
+	private final int bufferCapacity;
+	private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+	// moves waiting to be turned into events, in order; done on the executor one at a time
+	private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger changeCount = new AtomicInteger();
+	private final AtomicBoolean publishing = new AtomicBoolean();
+	private long sequence;
+	private volatile boolean closed;
+
+	public GameEventPublisher() {
+		this(DEFAULT_EXECUTOR, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	/**
+	 * Creates a publisher.
+	 * @param executor Runs the work of finding and sending events.
+	 * @param bufferCapacity The most events queued for one subscriber.
+	 */
+	public GameEventPublisher(Executor executor, int bufferCapacity) {
+		this.executor = executor;
+		this.bufferCapacity = Math.max(1, bufferCapacity);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super GameEvent> subscriber) {
+		EventSubscription subscription = new EventSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		if(this.closed) {
+			subscription.complete();
+		} else {
+			this.subscriptions.add(subscription);
+		}
+	}
+
+	/**
+	 * Returns whether anything is subscribed. Games skip publishing
+	 * entirely when nothing is.
+	 * @return true if there is at least one subscriber.
+	 */
+	public boolean hasSubscribers() {
+		return !this.subscriptions.isEmpty();
+	}
+
+	/**
+	 * Gets the number of subscribers.
+	 * @return The number of subscribers.
+	 */
+	public int getSubscriberCount() {
+		return this.subscriptions.size();
+	}
+
+	/**
+	 * Publishes a move. Called by Game.pushMove(Move move).
+	 * @param move The move.
+	 * @param capturedPiece The piece it captured, or null.
+	 * @param game A copy of the game after the move, which is not used
+	 * by anything else.
+	 */
+	public void movePlayed(Move move, Piece capturedPiece, Game game) {
+		this.publish(new Change(move, capturedPiece, game, null));
+	}
+
+	/**
+	 * Publishes a new position. Called by Game.loadFromFEN(String fen).
+	 * @param game A copy of the game in the new position, which is not
+	 * used by anything else.
+	 */
+	public void positionReset(Game game) {
+		this.publish(new Change(null, null, game, null));
+	}
+
+	/**
+	 * Publishes the fall of a flag. Called by Game.publishFlagFall().
+	 * @param game A copy of the game, whose clock has flagged, which is
+	 * not used by anything else.
+	 */
+	public void flagFell(Game game) {
+		this.publish(new Change(null, null, game, Change.FLAG));
+	}
+
+	/**
+	 * Ends the stream: every subscriber is sent onComplete() once all the
+	 * events published so far have been sent to it. Called by
+	 * Game.closeEvents().
+	 */
+	public void close() {
+		this.closed = true;
+		this.publish(Change.CLOSE);
+	}
+
+	private void publish(Change change) {
+		this.changes.add(change);
+		this.changeCount.incrementAndGet();
+		if(this.publishing.compareAndSet(false, true)) {
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					GameEventPublisher.this.drainChanges();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs on the executor, on one thread at a time: turns each change into
+	 * events and queues them for every subscriber.
+	 */
+	private void drainChanges() {
+		Change change;
+		while((change = this.changes.poll()) != null) {
+			if(this.changeCount.decrementAndGet() >= this.bufferCapacity && change != Change.CLOSE) {
+				// too far behind the game: skip to the newest change, but not past the end of the game
+				Change next;
+				while((next = this.changes.peek()) != null && next != Change.CLOSE && next.reason != Change.FLAG) {
+					change = this.changes.poll();
+					this.changeCount.decrementAndGet();
+				}
+				change = new Change(change.move, change.capturedPiece, change.game, Change.SKIPPED);
+			}
+			if(change == Change.CLOSE) {
+				for(EventSubscription subscription : this.subscriptions) {
+					subscription.complete();
+				}
+				this.subscriptions.clear();
+				continue;
+			}
+			List<GameEvent> events = this.toEvents(change);
+			for(EventSubscription subscription : this.subscriptions) {
+				subscription.offer(events);
+			}
+		}
+		this.publishing.set(false);
+		// a change added after the loop ended but before the flag was cleared
+		if(!this.changes.isEmpty() && this.publishing.compareAndSet(false, true)) {
+			this.drainChanges();
+		}
+	}
+
+	private List<GameEvent> toEvents(Change change) {
+		long sequence = ++this.sequence;
+		Game game = change.game;
+		Position position = game.getPosition();
+		List<GameEvent> events = new ArrayList<>(4);
+		if(change.reason == Change.FLAG) {
+			PieceColor loser = game.getClock().getFlagged();
+			boolean draw = game.hasOnlyKing(loser.invert());
+			events.add(new GameEvent(GameEvent.Type.GAME_OVER, sequence, null, null, position,
+					draw ? GameEvent.DRAW : GameEvent.TIME_FORFEIT,
+					loser.toString().toLowerCase() + " ran out of time" + (draw ? " against a lone king" : "")));
+			return events;
+		}
+		// a skipped move is sent as a RESET, but whether it ended the game is still worked out
+		boolean skipped = change.reason == Change.SKIPPED;
+		if(change.move == null || skipped) {
+			events.add(new GameEvent(GameEvent.Type.RESET, sequence, null, null, position, null, change.reason));
+			if(change.move == null) {
+				return events;
+			}
+		} else {
+			events.add(new GameEvent(GameEvent.Type.MOVE, sequence, change.move, change.capturedPiece, position, null, null));
+			if(change.capturedPiece != null) {
+				events.add(new GameEvent(GameEvent.Type.CAPTURE, sequence, change.move, change.capturedPiece, position, null, null));
+			}
+		}
+		boolean inCheck = game.isInCheck(game.getTurn());
+		if(inCheck && !skipped) {
+			events.add(new GameEvent(GameEvent.Type.CHECK, sequence, change.move, change.capturedPiece, position, null, null));
+		}
+		String reason = !game.hasLegalMoves() ? (inCheck ? "checkmate" : "stalemate") :
+				game.isInsufficientMaterial() ? "insufficient material" :
+				game.is50MoveRule() ? "fifty-move rule" :
+				game.is3FoldRepetition() ? "threefold repetition" : null;
+		if(reason != null) {
+			String result = reason.equals("checkmate") ? GameEvent.CHECKMATE : GameEvent.DRAW;
+			events.add(new GameEvent(GameEvent.Type.GAME_OVER, sequence, change.move, change.capturedPiece, position, result, reason));
+		}
+		return events;
+	}
+
+	private static class Change {
+		// published by close(), after every other change
+		private static final Change CLOSE = new Change(null, null, null, null);
+		// the reason of changes published by flagFell(Game game)
+		private static final String FLAG = "flag";
+		// the reason of a change standing for the changes skipped before it
+		private static final String SKIPPED = "skipped";
+
+		private final Move move;
+		private final Piece capturedPiece;
+		private final Game game;
+		private final String reason;
+
+		private Change(Move move, Piece capturedPiece, Game game, String reason) {
+			this.move = move;
+			this.capturedPiece = capturedPiece;
+			this.game = game;
+			this.reason = reason;
+		}
+	}
+
+	/**
+	 * One subscriber's queue of events and outstanding requests.
+	 */
+	private class EventSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super GameEvent> subscriber;
+		// guarded by this
+		private final ArrayDeque<GameEvent> buffer = new ArrayDeque<>();
+		private long demand;
+		private boolean cancelled;
+		private boolean completing;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		private EventSubscription(Flow.Subscriber<? super GameEvent> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		private void offer(List<GameEvent> events) {
+			synchronized(this) {
+				if(this.cancelled || this.completing) {
+					return;
+				}
+				if(this.buffer.size() + events.size() > GameEventPublisher.this.bufferCapacity) {
+					// too far behind: skip to the current position, keeping the end of the game
+					GameEvent last = events.get(events.size() - 1);
+					this.buffer.clear();
+					this.buffer.add(new GameEvent(GameEvent.Type.RESET, last.getSequence(), null, null,
+							last.getPosition(), null, Change.SKIPPED));
+					if(last.getType() == GameEvent.Type.GAME_OVER) {
+						this.buffer.add(last);
+					}
+				} else {
+					this.buffer.addAll(events);
+				}
+			}
+			this.schedule();
+		}
+
+		@Override
+		public void request(long n) {
+			if(n <= 0) {
+				this.cancel();
+				this.subscriber.onError(new IllegalArgumentException("request must be positive: " + n));
+				return;
+			}
+			synchronized(this) {
+				this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+			}
+			this.schedule();
+		}
+
+		@Override
+		public void cancel() {
+			synchronized(this) {
+				this.cancelled = true;
+				this.buffer.clear();
+			}
+			GameEventPublisher.this.subscriptions.remove(this);
+		}
+
+		private void complete() {
+			synchronized(this) {
+				this.completing = true;
+			}
+			this.schedule();
+		}
+
+		private void schedule() {
+			if(this.scheduled.compareAndSet(false, true)) {
+				GameEventPublisher.this.executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						EventSubscription.this.drain();
+					}
+				});
+			}
+		}
+
+		/**
+		 * Runs on the executor: sends up to MAX_BATCH requested events, then
+		 * schedules itself again if there are more, so that one busy
+		 * subscriber cannot keep a thread to itself.
+		 */
+		private void drain() {
+			for(int i=0; i<MAX_BATCH; i++) {
+				GameEvent event;
+				synchronized(this) {
+					if(this.cancelled || this.demand == 0 || this.buffer.isEmpty()) {
+						break;
+					}
+					event = this.buffer.poll();
+					this.demand--;
+				}
+				try {
+					this.subscriber.onNext(event);
+				}
+				catch(RuntimeException e) {
+					this.cancel();
+					this.subscriber.onError(e);
+					return;
+				}
+			}
+			boolean done;
+			synchronized(this) {
+				done = !this.cancelled && this.completing && this.buffer.isEmpty();
+				if(done) {
+					this.cancelled = true;
+				}
+			}
+			if(done) {
+				this.subscriber.onComplete();
+			}
+			this.scheduled.set(false);
+			// more to send, including anything offered after the loop ended but
+			// before the flag was cleared, whose own schedule() found it still set
+			if(this.hasWork()) {
+				this.schedule();
+			}
+		}
+
+		private synchronized boolean hasWork() {
+			return !this.cancelled && (this.demand > 0 && !this.buffer.isEmpty() || this.completing && this.buffer.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package application.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import application.model.Game;
+import application.model.Move;
+import application.util.LatencyStats;
+
+/**
+ * The JournalBench class measures a MoveJournal: how fast moves can be
+ * appended by several threads at once, each waiting for its moves to be
+ * durable as GameServer does, and how long the journal then takes to
+ * recover its games.
+ *
+ * Every game plays the same line of random legal moves, worked out once
+ * beforehand, so the time measured is the journal's and not move
+ * generation's. After recovery each game is checked against the position
+ * the line ends in.
+ *
+ * Usage: java application.journal.JournalBench [-dir d] [-threads n]
+ * [-games n] [-moves n] [-segmentmb n] [-nowait] [-seed n]. Without -dir a
+ * temporary directory is used and deleted afterwards.
+ */
+public class JournalBench {
+
+	public static void main(String[] args) throws Exception {
+		File dir = null;
+		int threads = 8, games = 1000, moves = 100;
+		long segmentBytes = MoveJournal.DEFAULT_SEGMENT_BYTES, seed = 1;
+		boolean wait = true;
+		for(int i=0; i<args.length; i++) {
+			switch(args[i]) {
+			case "-dir": dir = new File(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-moves": moves = Integer.parseInt(args[++i]); break;
+			case "-segmentmb": segmentBytes = Long.parseLong(args[++i]) * 1024 * 1024; break;
+			case "-nowait": wait = false; break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			default:
+				System.out.println("Usage: java application.journal.JournalBench [-dir d] [-threads n] [-games n]"
+						+ " [-moves n] [-segmentmb n] [-nowait] [-seed n]");
+				return;
+			}
+		}
+		boolean temporary = dir == null;
+		if(temporary) {
+			dir = File.createTempFile("journal", "");
+			dir.delete();
+		}
+
+		final List<Move> line = JournalBench.randomLine(moves, new Random(seed));
+		Game end = new Game();
+		for(Move move : line) {
+			end.pushMove(move);
+		}
+		String endFen = end.getFEN();
+
+		// append
+		final MoveJournal journal = new MoveJournal(dir, segmentBytes);
+		final LatencyStats appendStats = new LatencyStats();
+		final boolean awaitDurable = wait;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Void>> results = new ArrayList<>();
+		long start = System.nanoTime();
+		for(int t=0; t<threads; t++) {
+			final int count = games / threads + (t < games % threads ? 1 : 0);
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					JournalBench.play(journal, count, line, appendStats, awaitDurable);
+					return null;
+				}
+			}));
+		}
+		try {
+			for(Future<Void> result : results) {
+				result.get();
+			}
+		}
+		catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+		journal.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long records = journal.getRecordCount();
+		System.out.printf("Threads: %d  Games: %d  Plies: %d  Records: %d  Time: %.2fs%n",
+				threads, games, line.size(), records, seconds);
+		System.out.printf("Appends/s: %.0f  MB/s: %.2f  fsyncs: %d  Records per fsync: %.1f%n",
+				records / seconds, journal.getBytesWritten() / seconds / 1e6, journal.getSyncs(),
+				(double) records / Math.max(1, journal.getSyncs()));
+		System.out.printf("Move latency%s: p50 %.3fms  p99 %.3fms  max %.3fms%n", wait ? " (until durable)" : "",
+				appendStats.getPercentileNanos(50) / 1e6, appendStats.getPercentileNanos(99) / 1e6,
+				appendStats.getMaxNanos() / 1e6);
+
+		// recover
+		MoveJournal recovered = new MoveJournal(dir, segmentBytes);
+		Map<Long, Game> recoveredGames = recovered.getRecoveredGames();
+		int wrong = 0;
+		for(Game game : recoveredGames.values()) {
+			if(!game.getFEN().equals(endFen)) {
+				wrong++;
+			}
+		}
+		double recoverySeconds = recovered.getRecoveryNanos() / 1e9;
+		System.out.printf("Recovered: %d games  %d records in %.1fms (%.0f records/s)  Wrong positions: %d%n",
+				recoveredGames.size(), recovered.getRecoveredRecords(), recoverySeconds * 1e3,
+				recovered.getRecoveredRecords() / recoverySeconds, wrong);
+		recovered.close();
+
+		if(temporary) {
+			File[] files = dir.listFiles();
+			if(files != null) {
+				for(File file : files) {
+					file.delete();
+				}
+			}
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Runs on a bench thread: plays the line in each of its games in
+	 * turn, one ply per game per round, recording every move.
+	 */
+	private static void play(MoveJournal journal, int count, List<Move> line, LatencyStats stats,
+			boolean awaitDurable) throws Exception {
+		long[] ids = new long[count];
+		Game[] games = new Game[count];
+		for(int i=0; i<count; i++) {
+			ids[i] = journal.newGameId();
+			games[i] = new Game();
+			journal.recordStart(ids[i], games[i]);
+		}
+		for(Move move : line) {
+			for(int i=0; i<count; i++) {
+				long start = System.nanoTime();
+				games[i].pushMove(move);
+				long ticket = journal.recordMove(ids[i], games[i], move);
+				if(awaitDurable) {
+					journal.awaitDurable(ticket);
+				}
+				stats.recordSince(start);
+			}
+		}
+	}
+
+	/**
+	 * Picks random legal moves from the starting position, stopping early
+	 * if the game ends.
+	 */
+	private static List<Move> randomLine(int plies, Random random) throws Exception {
+		Game game = new Game();
+		List<Move> line = new ArrayList<>();
+		for(int i=0; i<plies; i++) {
+			List<Move> legal = game.getLegalMoves();
+			if(legal.isEmpty() || game.isDraw()) {
+				break;
+			}
+			Move move = legal.get(random.nextInt(legal.size()));
+			game.pushMove(move);
+			line.add(move);
+		}
+		return line;
+	}
+}
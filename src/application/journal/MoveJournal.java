@@ -0,0 +1,711 @@
+package application.journal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import application.log.GameLog;
+import application.log.LogLevel;
+import application.model.ChessClock;
+import application.model.Game;
+import application.model.Move;
+import application.model.PieceColor;
+import application.model.TimeControl;
+
+/**
+ * The MoveJournal class saves games to disk as they are played, so that
+ * they can be carried on after a crash. Any number of games share one
+ * journal, which is only ever appended to, so writing it is sequential
+ * however many games are being played.
+ *
+ * Each move is appended as a record of the game's id, a sequence number
+ * counting the game's records, and the move. A game's first record, and
+ * one every SNAPSHOT_INTERVAL plies after that, is a snapshot of its
+ * position (its FEN) instead, and an ended game gets an END record. Every
+ * record has a CRC, so a record torn by a crash is found and ignored.
+ *
+ * Records are not written by the threads playing the games. They are
+ * added to a buffer, and a writer thread writes everything buffered and
+ * then forces it to disk, so many moves share one fsync ("group commit").
+ * record...() returns a ticket, and awaitDurable(long ticket) waits until
+ * the record is on disk; a caller which can afford to lose the last few
+ * moves in a crash need not wait.
+ *
+ * The journal is split into segment files. When a segment grows past its
+ * limit a new one is started, and each game snapshots its position again
+ * with its next move. Older segments are deleted once no game still
+ * being played has its latest snapshot in them. (A game which stops
+ * moving without being ended keeps its segment.)
+ *
+ * The records of a game with a ChessClock also hold its clock: a
+ * snapshot holds the time control and both sides' time left (and which
+ * side has flagged, if one has), and a move (a TIMED_MOVE record) the
+ * time the mover had left after it.
+ *
+ * Opening a journal recovers its games: for each game not yet ended, its
+ * latest snapshot is loaded and the moves after it are replayed. As
+ * snapshots only hold the position, a recovered game only remembers
+ * repeated positions since its last snapshot. A recovered clock is
+ * stopped, with the times of the last record: the time the side to move
+ * had used since then is not charged. New records then go into a new
+ * segment.
+ */
+public class MoveJournal implements Closeable {
+
+	public static final int SNAPSHOT_INTERVAL = 64;
+	public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+	private static final byte MOVE = 1,
+							  SNAPSHOT = 2,
+							  END = 3,
+							  TIMED_MOVE = 4;
+	private static final String SEGMENT_PREFIX = "journal-",
+								SEGMENT_SUFFIX = ".log";
+	// type, game id, sequence number
+	private static final int HEADER_BYTES = 1 + 8 + 4;
+	// base, increment, delay, white's and black's time left, flagged side
+	private static final int CLOCK_BYTES = 5 * 8 + 1;
+	private static final byte NOT_FLAGGED = 0,
+							  WHITE_FLAGGED = 1,
+							  BLACK_FLAGGED = 2;
+
+	private final File directory;
+	private final long segmentBytes;
+	private final Thread writer;
+	private final CRC32 crc = new CRC32();
+
+	// guarded by lock
+	private final Object lock = new Object();
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+	private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+	private final Map<Long, GameState> games = new HashMap<>();
+	private long appended;
+	private long durable;
+	private int segment;
+	private long maxGameId;
+	private IOException failure;
+	private boolean closed;
+
+	// only used by the writer thread
+	private FileChannel channel;
+
+	// set while opening
+	private final Map<Long, Game> recovered = new LinkedHashMap<>();
+	private long recoveredRecords;
+	private long recoveryNanos;
+
+	// counters
+	private volatile long syncs;
+	private volatile long bytesWritten;
+
+	/**
+	 * Opens the journal in a directory, with the default segment size.
+	 * @param directory The directory, which is made if it does not exist.
+	 * @throws IOException If the journal cannot be read or written.
+	 * @see MoveJournal(File directory, long segmentBytes)
+	 */
+	public MoveJournal(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * Opens the journal in a directory, recovers the games in it, and
+	 * starts the writer thread.
+	 * @param directory The directory, which is made if it does not exist.
+	 * @param segmentBytes The size a segment may grow to before the next
+	 * is started.
+	 * @throws IOException If the journal cannot be read or written.
+	 */
+	public MoveJournal(File directory, long segmentBytes) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot make " + directory);
+		}
+		long start = System.nanoTime();
+		this.recover();
+		this.recoveryNanos = System.nanoTime() - start;
+		if(GameLog.isEnabled(LogLevel.INFO)) {
+			GameLog.info("journal-recovered", "games", this.recovered.size(), "records", this.recoveredRecords,
+					"millis", this.recoveryNanos / 1000000);
+		}
+		this.channel = this.openSegment(++this.segment);
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				MoveJournal.this.write();
+			}
+		}, "journal-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Gets the games recovered when the journal was opened, which had not
+	 * been ended, by id in the order they were first recorded.
+	 * @return The recovered games.
+	 */
+	public Map<Long, Game> getRecoveredGames() {
+		return Collections.unmodifiableMap(this.recovered);
+	}
+
+	/**
+	 * Gets the id a recovered game was recorded under.
+	 * @param game A game from getRecoveredGames().
+	 * @return The game's id, or 0 if it was not recovered.
+	 */
+	public long getRecoveredId(Game game) {
+		for(Map.Entry<Long, Game> entry : this.recovered.entrySet()) {
+			if(entry.getValue() == game) {
+				return entry.getKey();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets a new game id, higher than any in the journal.
+	 * @return The new id.
+	 */
+	public long newGameId() {
+		synchronized(this.lock) {
+			return ++this.maxGameId;
+		}
+	}
+
+	/**
+	 * Gets the highest game id in the journal, e.g. so that new ids
+	 * handed out elsewhere do not reuse them.
+	 * @return The highest id, or 0 if there are none.
+	 */
+	public long getMaxGameId() {
+		synchronized(this.lock) {
+			return this.maxGameId;
+		}
+	}
+
+	/**
+	 * Records a game's current position and clock, e.g. when it starts or
+	 * a flag falls. Games are also started by their first
+	 * recordMove(long id, Game game, Move move).
+	 * @param id The id of the game.
+	 * @param game The game.
+	 * @return The ticket of the record, for awaitDurable(long ticket).
+	 * @throws IOException If the journal has failed or is closed.
+	 */
+	public long recordStart(long id, Game game) throws IOException {
+		byte[] fen = game.getFEN().getBytes(StandardCharsets.US_ASCII);
+		long[] clock = MoveJournal.getClock(game);
+		synchronized(this.lock) {
+			GameState state = this.getState(id);
+			return this.append(SNAPSHOT, id, state, null, fen, clock);
+		}
+	}
+
+	/**
+	 * Records a move which has just been played. Must be called in the
+	 * order the game's moves are played, and before the next is played.
+	 * @param id The id of the game.
+	 * @param game The game, after the move.
+	 * @param move The move.
+	 * @return The ticket of the record, for awaitDurable(long ticket).
+	 * @throws IOException If the journal has failed or is closed.
+	 */
+	public long recordMove(long id, Game game, Move move) throws IOException {
+		boolean snapshot;
+		synchronized(this.lock) {
+			GameState state = this.games.get(id);
+			snapshot = state == null || state.snapshotSegment != this.segment
+					|| state.sequence - state.snapshotSequence >= SNAPSHOT_INTERVAL;
+		}
+		// worked out outside the lock, as no other thread changes this game
+		byte[] fen = snapshot ? game.getFEN().getBytes(StandardCharsets.US_ASCII) : null;
+		ChessClock gameClock = game.getClock();
+		long[] clock = snapshot ? MoveJournal.getClock(game) : gameClock == null ? null :
+			new long[] {gameClock.getRemainingNanos(game.getTurn().invert())};
+		synchronized(this.lock) {
+			GameState state = this.getState(id);
+			if(snapshot) {
+				return this.append(SNAPSHOT, id, state, null, fen, clock);
+			}
+			return this.append(clock == null ? MOVE : TIMED_MOVE, id, state, move, null, clock);
+		}
+	}
+
+	/**
+	 * Records that a game has ended, so that it is not recovered.
+	 * @param id The id of the game.
+	 * @return The ticket of the record, for awaitDurable(long ticket).
+	 * @throws IOException If the journal has failed or is closed.
+	 */
+	public long recordEnd(long id) throws IOException {
+		synchronized(this.lock) {
+			GameState state = this.games.remove(id);
+			if(state == null) {
+				return this.appended;
+			}
+			return this.append(END, id, state, null, null, null);
+		}
+	}
+
+	/**
+	 * Waits until a record, and every record before it, is on disk.
+	 * @param ticket The ticket of the record.
+	 * @throws IOException If the journal failed before writing it, or
+	 * the thread was interrupted.
+	 */
+	public void awaitDurable(long ticket) throws IOException {
+		synchronized(this.lock) {
+			while(this.durable < ticket) {
+				if(this.failure != null) {
+					throw this.failure;
+				}
+				if(this.closed && !this.writer.isAlive()) {
+					throw new IOException("journal closed");
+				}
+				try {
+					this.lock.wait();
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+
+	private GameState getState(long id) {
+		GameState state = this.games.get(id);
+		if(state == null) {
+			state = new GameState();
+			this.games.put(id, state);
+			this.maxGameId = Math.max(this.maxGameId, id);
+		}
+		return state;
+	}
+
+	/**
+	 * Gets what a snapshot records of a game's clock.
+	 * @return The time control, both sides' time left and the flagged
+	 * side, or null if the game has no clock.
+	 */
+	private static long[] getClock(Game game) {
+		ChessClock clock = game.getClock();
+		if(clock == null) {
+			return null;
+		}
+		TimeControl control = clock.getTimeControl();
+		PieceColor flagged = clock.getFlagged();
+		return new long[] {control.getBaseNanos(), control.getIncrementNanos(), control.getDelayNanos(),
+				clock.getRemainingNanos(PieceColor.WHITE), clock.getRemainingNanos(PieceColor.BLACK),
+				flagged == null ? NOT_FLAGGED : flagged == PieceColor.WHITE ? WHITE_FLAGGED : BLACK_FLAGGED};
+	}
+
+	/**
+	 * Adds a record to the buffer for the writer thread. Called with the
+	 * lock held.
+	 * @param move The move of a MOVE or TIMED_MOVE record.
+	 * @param fen The FEN of a SNAPSHOT.
+	 * @param clock The clock of a SNAPSHOT (see getClock(Game game)), or
+	 * the mover's time left for a TIMED_MOVE.
+	 */
+	private long append(byte type, long id, GameState state, Move move, byte[] fen, long[] clock) throws IOException {
+		if(this.failure != null) {
+			throw this.failure;
+		}
+		if(this.closed) {
+			throw new IOException("journal closed");
+		}
+		int length = HEADER_BYTES + (type == MOVE ? 2 : type == TIMED_MOVE ? 2 + 8 :
+			type == SNAPSHOT ? 2 + fen.length + (clock == null ? 0 : CLOCK_BYTES) : 0);
+		if(this.pending.remaining() < 4 + length + 4) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(this.pending.capacity() * 2, 4 + length + 4));
+			this.pending.flip();
+			bigger.put(this.pending);
+			this.pending = bigger;
+		}
+		int sequence = ++state.sequence;
+		ByteBuffer out = this.pending;
+		out.putInt(length);
+		int start = out.position();
+		out.put(type);
+		out.putLong(id);
+		out.putInt(sequence);
+		if(type == MOVE || type == TIMED_MOVE) {
+			out.putShort((short) (move.getFromRow() * Game.BOARD_COLS + move.getFromCol()
+					| (move.getToRow() * Game.BOARD_COLS + move.getToCol()) << 6));
+			if(type == TIMED_MOVE) {
+				out.putLong(clock[0]);
+			}
+		} else if(type == SNAPSHOT) {
+			out.putShort((short) fen.length);
+			out.put(fen);
+			if(clock != null) {
+				for(int i=0; i<5; i++) {
+					out.putLong(clock[i]);
+				}
+				out.put((byte) clock[5]);
+			}
+			state.snapshotSequence = sequence;
+			state.snapshotSegment = this.segment;
+		}
+		this.crc.reset();
+		this.crc.update(out.array(), start, length);
+		out.putInt((int) this.crc.getValue());
+		if(this.appended++ == this.durable) {
+			// the writer may be waiting for something to write
+			this.lock.notifyAll();
+		}
+		return this.appended;
+	}
+
+	/**
+	 * Runs on the writer thread: writes and forces whatever has been
+	 * buffered, over and over, until the journal is closed.
+	 */
+	private void write() {
+		try {
+			while(true) {
+				long batch;
+				ByteBuffer buffer;
+				synchronized(this.lock) {
+					while(this.appended == this.durable && !this.closed) {
+						this.lock.wait();
+					}
+					if(this.appended == this.durable) {
+						break;
+					}
+					// swap buffers, so moves can be added while this batch is written
+					buffer = this.pending;
+					this.pending = this.writing;
+					this.writing = buffer;
+					batch = this.appended;
+				}
+				buffer.flip();
+				while(buffer.hasRemaining()) {
+					this.bytesWritten += this.channel.write(buffer);
+				}
+				this.channel.force(false);
+				this.syncs++;
+				buffer.clear();
+				synchronized(this.lock) {
+					this.durable = batch;
+					this.lock.notifyAll();
+				}
+				if(this.channel.size() >= this.segmentBytes) {
+					this.nextSegment();
+				}
+			}
+			this.channel.close();
+		}
+		catch(IOException e) {
+			GameLog.log(LogLevel.ERROR, "journal-failed", "error", e);
+			synchronized(this.lock) {
+				this.failure = e;
+				this.lock.notifyAll();
+			}
+		}
+		catch(InterruptedException e) {
+			// closed without waiting
+		}
+	}
+
+	/**
+	 * Runs on the writer thread: starts a new segment, and deletes the
+	 * segments which no game still being played needs.
+	 */
+	private void nextSegment() throws IOException {
+		int oldest;
+		int next;
+		synchronized(this.lock) {
+			next = ++this.segment;
+			oldest = next;
+			for(GameState state : this.games.values()) {
+				oldest = Math.min(oldest, state.snapshotSegment);
+			}
+		}
+		this.channel.close();
+		this.channel = this.openSegment(next);
+		for(Map.Entry<Integer, File> segment : this.listSegments().entrySet()) {
+			if(segment.getKey() < oldest && !segment.getValue().delete()) {
+				GameLog.log(LogLevel.WARN, "journal-delete-failed", "file", segment.getValue());
+			}
+		}
+	}
+
+	private FileChannel openSegment(int number) throws IOException {
+		File file = new File(this.directory, String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	private TreeMap<Integer, File> listSegments() {
+		TreeMap<Integer, File> segments = new TreeMap<>();
+		File[] files = this.directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				String name = file.getName();
+				if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					try {
+						segments.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+								name.length() - SEGMENT_SUFFIX.length())), file);
+					}
+					catch(NumberFormatException e) {
+						// not a segment
+					}
+				}
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Reads every segment in order, keeping each game's latest snapshot
+	 * and the moves after it, then rebuilds the games not yet ended.
+	 */
+	private void recover() throws IOException {
+		Map<Long, Replay> replays = new LinkedHashMap<>();
+		for(Map.Entry<Integer, File> segment : this.listSegments().entrySet()) {
+			this.segment = segment.getKey();
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.getValue())))) {
+				this.readSegment(in, replays);
+			}
+		}
+		for(Map.Entry<Long, Replay> entry : replays.entrySet()) {
+			Replay replay = entry.getValue();
+			Game game = replay.rebuild();
+			this.recovered.put(entry.getKey(), game);
+			GameState state = new GameState();
+			state.sequence = replay.sequence;
+			state.snapshotSequence = replay.snapshotSequence;
+			state.snapshotSegment = replay.snapshotSegment;
+			this.games.put(entry.getKey(), state);
+		}
+	}
+
+	private void readSegment(DataInputStream in, Map<Long, Replay> replays) throws IOException {
+		byte[] record = new byte[256];
+		while(true) {
+			int length;
+			try {
+				length = in.readInt();
+				if(length < HEADER_BYTES || length > 0xffff) {
+					return;
+				}
+				if(record.length < length) {
+					record = new byte[length];
+				}
+				in.readFully(record, 0, length);
+				this.crc.reset();
+				this.crc.update(record, 0, length);
+				if(in.readInt() != (int) this.crc.getValue()) {
+					// torn by a crash: nothing after it was made durable
+					return;
+				}
+			}
+			catch(EOFException e) {
+				return;
+			}
+			this.recoveredRecords++;
+			ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+			byte type = buffer.get();
+			long id = buffer.getLong();
+			int sequence = buffer.getInt();
+			this.maxGameId = Math.max(this.maxGameId, id);
+			Replay replay = replays.get(id);
+			if(type == SNAPSHOT) {
+				byte[] fen = new byte[buffer.getShort() & 0xffff];
+				buffer.get(fen);
+				if(replay == null) {
+					replay = new Replay();
+					replays.put(id, replay);
+				}
+				long[] clock = null;
+				if(buffer.remaining() >= CLOCK_BYTES) {
+					clock = new long[6];
+					for(int i=0; i<5; i++) {
+						clock[i] = buffer.getLong();
+					}
+					clock[5] = buffer.get();
+				}
+				replay.snapshot(new String(fen, StandardCharsets.US_ASCII), clock, sequence, this.segment);
+			} else if((type == MOVE || type == TIMED_MOVE) && replay != null && sequence == replay.sequence + 1) {
+				int move = buffer.getShort();
+				replay.moves.add(new Move(
+						(move & 63) / Game.BOARD_COLS, (move & 63) % Game.BOARD_COLS,
+						(move >> 6 & 63) / Game.BOARD_COLS, (move >> 6 & 63) % Game.BOARD_COLS));
+				replay.moverNanos.add(type == TIMED_MOVE ? buffer.getLong() : -1);
+				replay.sequence = sequence;
+			} else if(type == END) {
+				replays.remove(id);
+			}
+			// a move with no snapshot before it belongs to a game ended in a deleted segment
+		}
+	}
+
+	/**
+	 * Gets the number of records read while recovering.
+	 * @return The number of records.
+	 */
+	public long getRecoveredRecords() {
+		return this.recoveredRecords;
+	}
+
+	/**
+	 * Gets the time taken to read the journal and rebuild its games.
+	 * @return The recovery time, in nanoseconds.
+	 */
+	public long getRecoveryNanos() {
+		return this.recoveryNanos;
+	}
+
+	/**
+	 * Gets the number of times the journal has been forced to disk.
+	 * @return The number of fsyncs.
+	 */
+	public long getSyncs() {
+		return this.syncs;
+	}
+
+	/**
+	 * Gets the number of records appended since the journal was opened.
+	 * @return The number of records.
+	 */
+	public long getRecordCount() {
+		synchronized(this.lock) {
+			return this.appended;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes written since the journal was opened.
+	 * @return The number of bytes.
+	 */
+	public long getBytesWritten() {
+		return this.bytesWritten;
+	}
+
+	@Override
+	public String toString() {
+		synchronized(this.lock) {
+			return "games=" + this.games.size() + " records=" + this.appended + " bytes=" + this.bytesWritten
+					+ " syncs=" + this.syncs;
+		}
+	}
+
+	/**
+	 * Writes and forces every record so far, then stops the writer thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this.lock) {
+			this.closed = true;
+			this.lock.notifyAll();
+		}
+		try {
+			this.writer.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		synchronized(this.lock) {
+			if(this.failure != null) {
+				throw this.failure;
+			}
+		}
+	}
+
+	/**
+	 * What the journal knows of a game being played.
+	 */
+	private static class GameState {
+		private int sequence;
+		private int snapshotSequence;
+		private int snapshotSegment;
+	}
+
+	/**
+	 * A game being recovered: its latest snapshot and the moves after it.
+	 */
+	private static class Replay {
+		private String fen;
+		private long[] clock;
+		private int sequence;
+		private int snapshotSequence;
+		private int snapshotSegment;
+		private final List<Move> moves = new ArrayList<>();
+		// the mover's time left after each move, or -1 if not timed
+		private final List<Long> moverNanos = new ArrayList<>();
+
+		private void snapshot(String fen, long[] clock, int sequence, int segment) {
+			this.fen = fen;
+			this.clock = clock;
+			this.sequence = sequence;
+			this.snapshotSequence = sequence;
+			this.snapshotSegment = segment;
+			this.moves.clear();
+			this.moverNanos.clear();
+		}
+
+		/**
+		 * Loads the snapshot into a new game and replays the moves. The
+		 * moves were legal when they were recorded, so are not checked.
+		 * The clock is attached afterwards, stopped, so that replaying
+		 * does not charge it.
+		 */
+		private Game rebuild() {
+			Game game;
+			try {
+				game = new Game();
+			}
+			catch(Exception e) {
+				// the starting position is always legal
+				throw new IllegalStateException(e);
+			}
+			// loaded directly, as the position may be already checkmate or drawn
+			game.loadFromFEN(this.fen);
+			Stack<String> fens = new Stack<>();
+			fens.push(this.fen);
+			game.setPreviousFenStack(fens);
+			Map<String, Integer> repetitions = new HashMap<>();
+			repetitions.put(game.getFenFor3FoldRepetition(), 1);
+			game.setPreviousFensFor3FoldRepetition(repetitions);
+			long whiteNanos = this.clock == null ? 0 : this.clock[3],
+				 blackNanos = this.clock == null ? 0 : this.clock[4];
+			for(int i=0; i<this.moves.size(); i++) {
+				PieceColor mover = game.getTurn();
+				game.pushMove(this.moves.get(i));
+				long nanos = this.moverNanos.get(i);
+				if(nanos >= 0 && mover == PieceColor.WHITE) {
+					whiteNanos = nanos;
+				} else if(nanos >= 0) {
+					blackNanos = nanos;
+				}
+			}
+			if(this.clock != null) {
+				game.setClock(ChessClock.restore(new TimeControl(this.clock[0], this.clock[1], this.clock[2]),
+						whiteNanos, blackNanos, this.clock[5] == WHITE_FLAGGED ? PieceColor.WHITE :
+							this.clock[5] == BLACK_FLAGGED ? PieceColor.BLACK : null));
+			}
+			return game;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package application.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The GameLog class records game events (moves, positions, timings) to a
+ * file without slowing down the thread that logs them.
+ *
+ * Each event is written as one line of space-separated key=value fields,
+ * e.g. "2026-01-31 12:00:00.000 INFO move move=e2e4 micros=85". Callers
+ * only put the event into a fixed-size ring buffer; a background thread
+ * turns it into text and writes it to the file. When the file grows past
+ * a maximum size it is rolled over to chess.log.1, chess.log.2 and so on.
+ *
+ * The ring buffer takes no locks: each caller claims a slot by advancing
+ * the head with compare-and-set, and the writer frees it by advancing the
+ * tail. If the buffer is full the event is dropped (and counted) rather
+ * than making the caller wait. The writer sleeps (parks) while the buffer
+ * is empty, and a caller that finds it asleep wakes it after putting an
+ * event in, so an idle log takes no CPU time.
+ *
+ * Logging below the current level costs a single volatile read, so
+ * callers which need to do work to build a field (e.g. Game.getFEN())
+ * should check isEnabled(LogLevel level) first.
+ *
+ * Settings are read from system properties when the class is loaded:
+ * chess.log.level (default WARN, so that nothing is written while all is
+ * well; INFO adds every move and screen switch), chess.log.file (default logs/chess.log),
+ * chess.log.maxBytes (default 10 MB) and chess.log.files (default 5).
+ */
+public class GameLog {
+
+	public static final String LEVEL_PROPERTY = "chess.log.level",
+							   FILE_PROPERTY = "chess.log.file",
+							   MAX_BYTES_PROPERTY = "chess.log.maxBytes",
+							   FILES_PROPERTY = "chess.log.files";
+	private static final int CAPACITY = 1 << 13;
+	// how often flush(long timeoutMillis) checks whether the writer has caught up
+	private static final long FLUSH_POLL_NANOS = 1_000_000L;
+
+	private static volatile LogLevel level =
+			LogLevel.parse(System.getProperty(LEVEL_PROPERTY), LogLevel.WARN);
+	private static final File file = new File(System.getProperty(FILE_PROPERTY, "logs/chess.log"));
+	private static final long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, 10L << 20);
+	private static final int maxFiles = Integer.getInteger(FILES_PROPERTY, 5);
+
+	private static final AtomicReferenceArray<LogEvent> buffer = new AtomicReferenceArray<>(CAPACITY);
+	private static final AtomicLong head = new AtomicLong();
+	private static final AtomicLong tail = new AtomicLong();
+	private static final AtomicLong flushed = new AtomicLong();
+	private static final LongAdder dropped = new LongAdder();
+	private static volatile Thread writerThread;
+	// set by the writer before it parks on an empty buffer
+	private static volatile boolean writerParked;
+
+	private GameLog() {
+	}
+
+	/**
+	 * Returns whether events of a level are recorded.
+	 * @param level The level.
+	 * @return true if events of the level are recorded. false otherwise.
+	 */
+	public static boolean isEnabled(LogLevel level) {
+		return level != LogLevel.OFF && level.compareTo(GameLog.level) <= 0;
+	}
+
+	/**
+	 * Records an event, if its level is enabled.
+	 * @param level The level of the event.
+	 * @param event The name of the event, e.g. "move".
+	 * @param fields Alternating keys and values, e.g. "move", move, "micros", 85.
+	 * Values must not change after being logged.
+	 */
+	public static void log(LogLevel level, String event, Object... fields) {
+		if(!GameLog.isEnabled(level)) {
+			return;
+		}
+		LogEvent logEvent = new LogEvent(System.currentTimeMillis(), level, event, fields);
+		while(true) {
+			long slot = head.get();
+			if(slot - tail.get() >= CAPACITY) {
+				dropped.increment();
+				return;
+			}
+			if(head.compareAndSet(slot, slot + 1)) {
+				buffer.set((int) slot & (CAPACITY - 1), logEvent);
+				break;
+			}
+		}
+		Thread writer = writerThread;
+		if(writer == null) {
+			GameLog.startWriter();
+		} else if(writerParked) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/**
+	 * Records an event at the INFO level.
+	 * @param event The name of the event.
+	 * @param fields Alternating keys and values.
+	 */
+	public static void info(String event, Object... fields) {
+		GameLog.log(LogLevel.INFO, event, fields);
+	}
+
+	/**
+	 * Records an event at the DEBUG level.
+	 * @param event The name of the event.
+	 * @param fields Alternating keys and values.
+	 */
+	public static void debug(String event, Object... fields) {
+		GameLog.log(LogLevel.DEBUG, event, fields);
+	}
+
+	/**
+	 * Gets the level of events recorded.
+	 * @return The current level.
+	 */
+	public static LogLevel getLevel() {
+		return GameLog.level;
+	}
+
+	/**
+	 * Sets the level of events recorded.
+	 * @param level The new level. OFF records nothing.
+	 */
+	public static void setLevel(LogLevel level) {
+		GameLog.level = level;
+	}
+
+	/**
+	 * Gets the number of events dropped because the buffer was full.
+	 * @return The number of events dropped.
+	 */
+	public static long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Waits until every event logged so far has been written.
+	 * @param timeoutMillis The longest time to wait.
+	 * @return true if everything was written. false if timed out.
+	 */
+	public static boolean flush(long timeoutMillis) {
+		long target = head.get();
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(flushed.get() < target) {
+			if(System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			LockSupport.parkNanos(FLUSH_POLL_NANOS);
+		}
+		return true;
+	}
+
+	private static synchronized void startWriter() {
+		if(writerThread != null) {
+			return;
+		}
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				GameLog.drain();
+			}
+		}, "game-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				GameLog.flush(1000);
+			}
+		}));
+	}
+
+	/**
+	 * Runs on the writer thread: takes events from the buffer in order and
+	 * writes them, flushing the file whenever the buffer runs empty and then
+	 * parking until log(LogLevel level, String event, Object... fields)
+	 * wakes it.
+	 */
+	private static void drain() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		StringBuilder line = new StringBuilder();
+		Writer writer = null;
+		long bytes = 0;
+		while(true) {
+			long slot = tail.get();
+			int index = (int) slot & (CAPACITY - 1);
+			LogEvent event = buffer.get(index);
+			if(event == null) {
+				// either empty, or a caller has claimed the slot but not filled it yet
+				if(flushed.get() < slot) {
+					try {
+						if(writer != null) {
+							writer.flush();
+						}
+					} catch(IOException e) {
+						writer = GameLog.close(writer);
+					}
+					flushed.set(slot);
+				}
+				// A caller fills its slot before checking writerParked, so
+				// either the check below sees the event or the caller sees
+				// the flag and unparks this thread.
+				writerParked = true;
+				if(buffer.get(index) == null) {
+					LockSupport.park(GameLog.class);
+				}
+				writerParked = false;
+				continue;
+			}
+			buffer.set(index, null);
+			tail.lazySet(slot + 1);
+
+			line.setLength(0);
+			GameLog.format(line, dateFormat, event);
+			try {
+				if(writer == null || bytes >= maxBytes) {
+					GameLog.close(writer);
+					writer = GameLog.open(writer != null);
+					bytes = file.length();
+				}
+				writer.write(line.toString());
+				bytes += line.length();
+			} catch(IOException e) {
+				writer = GameLog.close(writer);
+			}
+		}
+	}
+
+	private static void format(StringBuilder line, SimpleDateFormat dateFormat, LogEvent event) {
+		line.append(dateFormat.format(new Date(event.timeMillis)))
+			.append(' ').append(event.level)
+			.append(' ').append(event.event);
+		Object[] fields = event.fields;
+		for(int i=0; i + 1 < fields.length; i += 2) {
+			line.append(' ').append(fields[i]).append('=');
+			String value = String.valueOf(fields[i + 1]);
+			if(value.indexOf(' ') >= 0) {
+				line.append('"').append(value).append('"');
+			} else {
+				line.append(value);
+			}
+		}
+		line.append('\n');
+	}
+
+	/**
+	 * Opens the log file for appending, first rolling over the old files
+	 * if asked to.
+	 */
+	private static Writer open(boolean roll) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		if(roll || file.length() >= maxBytes) {
+			new File(file.getPath() + "." + maxFiles).delete();
+			for(int i=maxFiles - 1; i>=1; i--) {
+				new File(file.getPath() + "." + i).renameTo(new File(file.getPath() + "." + (i + 1)));
+			}
+			file.renameTo(new File(file.getPath() + ".1"));
+		}
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+	}
+
+	private static Writer close(Writer writer) {
+		if(writer != null) {
+			try {
+				writer.close();
+			} catch(IOException e) {
+				// nothing else to do with a log that cannot be written
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,22 @@
+package application.log;
+
+/**
+ * The LogEvent class is one message waiting in the GameLog's ring buffer.
+ * The fields are kept as objects and only turned into text by the
+ * writer thread, so logging costs the caller little more than an
+ * allocation. Fields must therefore be immutable (Strings, Moves, numbers).
+ */
+class LogEvent {
+
+	final long timeMillis;
+	final LogLevel level;
+	final String event;
+	final Object[] fields;
+
+	LogEvent(long timeMillis, LogLevel level, String event, Object[] fields) {
+		this.timeMillis = timeMillis;
+		this.level = level;
+		this.event = event;
+		this.fields = fields;
+	}
+}
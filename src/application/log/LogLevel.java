@@ -0,0 +1,28 @@
+package application.log;
+
+/**
+ * The LogLevel enum is how detailed a log message is. A GameLog set to a
+ * level records messages of that level and the levels before it, so
+ * OFF records nothing and TRACE records everything.
+ */
+public enum LogLevel {
+
+	OFF, ERROR, WARN, INFO, DEBUG, TRACE;
+
+	/**
+	 * Parses a level, ignoring case.
+	 * @param name The name of the level, e.g. "debug".
+	 * @param defaultLevel The level to return if the name is null or unknown.
+	 * @return The level.
+	 */
+	public static LogLevel parse(String name, LogLevel defaultLevel) {
+		if(name == null) {
+			return defaultLevel;
+		}
+		try {
+			return LogLevel.valueOf(name.trim().toUpperCase());
+		} catch(IllegalArgumentException e) {
+			return defaultLevel;
+		}
+	}
+}
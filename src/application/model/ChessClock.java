@@ -0,0 +1,341 @@
+package application.model;
+
+import application.util.TimerWheel;
+
+/**
+ * The ChessClock class is a game's pair of clocks. Attached to a Game
+ * with Game.setClock(ChessClock clock), it is charged by Game.pushMove:
+ * the mover's clock stops, less any delay, plus any increment, and the
+ * other side's starts.
+ *
+ * Time is kept with System.nanoTime(), which never jumps when the
+ * system clock is changed, and nothing runs while a side is thinking:
+ * a clock stores only the time left when the running side's turn
+ * started, and works out the time left now when asked. To notice a flag
+ * falling when nobody moves, each clock keeps one task on a TimerWheel
+ * shared by all clocks, due when the running side's time runs out,
+ * and moved with each move.
+ *
+ * A side whose time runs out has flagged, after which the clock is
+ * stopped for good. The flag listener is told once, on whichever thread
+ * noticed it: the wheel's, or the one which moved too late. Clocks may
+ * be used from any thread.
+ */
+public class ChessClock {
+
+	/**
+	 * Told when a side's flag falls.
+	 */
+	public interface FlagListener {
+		/**
+		 * Called once, when a side runs out of time. Must be quick, as it
+		 * may be called on the TimerWheel's thread.
+		 * @param clock The clock.
+		 * @param color The side which ran out of time.
+		 */
+		void flagFell(ChessClock clock, PieceColor color);
+	}
+
+	private final TimeControl control;
+	// null for a snapshot, which never runs
+	private final TimerWheel wheel;
+	// guarded by this; the running side's time is as at turnStartNanos
+	private long whiteNanos,
+				 blackNanos;
+	private PieceColor running;
+	private long turnStartNanos;
+	private PieceColor flagged;
+	private TimerWheel.Timeout timeout;
+	private FlagListener listener;
+
+	/**
+	 * Creates a stopped clock giving both sides the base time, which
+	 * uses the shared TimerWheel.
+	 * @param control The time control.
+	 */
+	public ChessClock(TimeControl control) {
+		this(control, TimerWheel.getDefault());
+	}
+
+	/**
+	 * Creates a stopped clock giving both sides the base time.
+	 * @param control The time control.
+	 * @param wheel The wheel which notices flag fall.
+	 */
+	public ChessClock(TimeControl control, TimerWheel wheel) {
+		this.control = control;
+		this.wheel = wheel;
+		this.whiteNanos = this.blackNanos = control.getBaseNanos();
+	}
+
+	/**
+	 * Creates a snapshot of another clock.
+	 */
+	private ChessClock(ChessClock other, long now) {
+		this.control = other.control;
+		this.wheel = null;
+		this.whiteNanos = other.getRemainingNanos(PieceColor.WHITE, now);
+		this.blackNanos = other.getRemainingNanos(PieceColor.BLACK, now);
+		this.running = other.running;
+		this.turnStartNanos = now;
+		this.flagged = other.flagged;
+	}
+
+	/**
+	 * Creates a stopped clock with saved times, e.g. for a game loaded from
+	 * disk, which uses the shared TimerWheel.
+	 * @param control The time control.
+	 * @param whiteNanos White's time left.
+	 * @param blackNanos Black's time left.
+	 * @param flagged The side which had run out of time, or null.
+	 * @return The clock.
+	 */
+	public static ChessClock restore(TimeControl control, long whiteNanos, long blackNanos, PieceColor flagged) {
+		ChessClock clock = new ChessClock(control);
+		clock.whiteNanos = flagged == PieceColor.WHITE ? 0 : Math.max(1, whiteNanos);
+		clock.blackNanos = flagged == PieceColor.BLACK ? 0 : Math.max(1, blackNanos);
+		clock.flagged = flagged;
+		return clock;
+	}
+
+	/**
+	 * Sets what is told when a side's flag falls.
+	 * @param listener The listener, or null.
+	 */
+	public synchronized void setFlagListener(FlagListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts a side's clock, e.g. White's when the game starts. If it is
+	 * not called, the clock starts with the first move, which is then
+	 * free.
+	 * @param color The side to move.
+	 */
+	public synchronized void start(PieceColor color) {
+		if(this.wheel == null || this.flagged != null || this.running == color) {
+			return;
+		}
+		long now = System.nanoTime();
+		if(this.running != null) {
+			this.setNanos(this.running, this.getRemainingNanos(this.running, now));
+		}
+		this.running = color;
+		this.turnStartNanos = now;
+		this.schedule();
+	}
+
+	/**
+	 * Stops the clock, e.g. when the game ends or is adjourned. The
+	 * running side is charged up to now, and nothing else is charged
+	 * until start(PieceColor color) or the next move.
+	 */
+	public synchronized void stop() {
+		if(this.running == null) {
+			return;
+		}
+		this.setNanos(this.running, this.getRemainingNanos(this.running, System.nanoTime()));
+		this.running = null;
+		this.cancel();
+	}
+
+	/**
+	 * Charges a move, stopping the mover's clock and starting the other
+	 * side's. Called by Game.pushMove(Move move). If the mover has run out
+	 * of time, their flag falls instead, even if the wheel has not yet
+	 * noticed. Snapshots and flagged clocks are not changed.
+	 * @param mover The side which moved.
+	 */
+	public void moveMade(PieceColor mover) {
+		FlagListener listener = null;
+		synchronized(this) {
+			if(this.wheel == null || this.flagged != null) {
+				return;
+			}
+			long now = System.nanoTime();
+			if(this.running == mover) {
+				long left = this.getRemainingNanos(mover, now);
+				if(left <= 0) {
+					listener = this.flag(mover);
+				} else {
+					this.setNanos(mover, left + this.control.getIncrementNanos());
+				}
+			} else if(this.running != null) {
+				// the other side's clock was running, e.g. it was started for the wrong side
+				this.setNanos(this.running, this.getRemainingNanos(this.running, now));
+			}
+			if(this.flagged == null) {
+				this.running = mover.invert();
+				this.turnStartNanos = now;
+				this.schedule();
+			}
+		}
+		if(listener != null) {
+			listener.flagFell(this, mover);
+		}
+	}
+
+	/**
+	 * Checks whether the running side has run out of time, as the
+	 * wheel does. Callers about to accept a move may use this to refuse
+	 * it without waiting up to a tick for the wheel.
+	 * @return The side which has flagged, or null if neither has.
+	 */
+	public PieceColor checkFlag() {
+		FlagListener listener = null;
+		PieceColor flagged;
+		synchronized(this) {
+			if(this.flagged == null && this.running != null
+					&& this.getRemainingNanos(this.running, System.nanoTime()) <= 0) {
+				listener = this.flag(this.running);
+			}
+			flagged = this.flagged;
+		}
+		if(listener != null) {
+			listener.flagFell(this, flagged);
+		}
+		return flagged;
+	}
+
+	/**
+	 * Gets the time a side has left. While the side's clock runs, the
+	 * delay is not counted as time left, though it has not been charged.
+	 * @param color The side.
+	 * @return The time left, in nanoseconds, never less than 0.
+	 */
+	public synchronized long getRemainingNanos(PieceColor color) {
+		return this.getRemainingNanos(color, System.nanoTime());
+	}
+
+	private long getRemainingNanos(PieceColor color, long now) {
+		long nanos = color == PieceColor.WHITE ? this.whiteNanos : this.blackNanos;
+		if(color == this.running && this.wheel != null) {
+			nanos -= Math.max(0, now - this.turnStartNanos - this.control.getDelayNanos());
+		}
+		return Math.max(0, nanos);
+	}
+
+	/**
+	 * Sets the time a side has left, e.g. when restoring a saved game.
+	 * A side with no time left has flagged (without telling the listener).
+	 * @param color The side.
+	 * @param nanos The time left, in nanoseconds.
+	 */
+	public synchronized void setRemainingNanos(PieceColor color, long nanos) {
+		if(color == this.running) {
+			this.turnStartNanos = System.nanoTime();
+		}
+		this.setNanos(color, Math.max(0, nanos));
+		if(nanos <= 0 && this.flagged == null) {
+			this.flag(color);
+		} else if(color == this.running) {
+			this.schedule();
+		}
+	}
+
+	private void setNanos(PieceColor color, long nanos) {
+		if(color == PieceColor.WHITE) {
+			this.whiteNanos = nanos;
+		} else {
+			this.blackNanos = nanos;
+		}
+	}
+
+	/**
+	 * Gets the side whose clock is running.
+	 * @return The side, or null if the clock is stopped.
+	 */
+	public synchronized PieceColor getRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Gets the side which ran out of time.
+	 * @return The side, or null if neither has.
+	 */
+	public synchronized PieceColor getFlagged() {
+		return this.flagged;
+	}
+
+	/**
+	 * Gets the time control.
+	 * @return The time control.
+	 */
+	public TimeControl getTimeControl() {
+		return this.control;
+	}
+
+	/**
+	 * Returns a copy of the clock as it is now, which never runs, e.g. for
+	 * a Position or a copy of the game.
+	 * @return The snapshot.
+	 */
+	public synchronized ChessClock snapshot() {
+		return new ChessClock(this, System.nanoTime());
+	}
+
+	/**
+	 * Flags a side and stops the clock.
+	 * @return The listener to tell once the lock is released.
+	 */
+	private FlagListener flag(PieceColor color) {
+		this.setNanos(color, 0);
+		this.flagged = color;
+		this.running = null;
+		this.cancel();
+		return this.listener;
+	}
+
+	/**
+	 * Moves the wheel's task to when the running side's time runs out.
+	 */
+	private void schedule() {
+		this.cancel();
+		if(this.running == null || this.wheel == null) {
+			return;
+		}
+		long nanos = this.running == PieceColor.WHITE ? this.whiteNanos : this.blackNanos;
+		long deadline = this.turnStartNanos + this.control.getDelayNanos() + nanos;
+		this.timeout = this.wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if(ChessClock.this.checkFlag() == null) {
+					// a move was made as the task came due
+					synchronized(ChessClock.this) {
+						if(ChessClock.this.timeout != null && ChessClock.this.timeout.isExpired()) {
+							ChessClock.this.schedule();
+						}
+					}
+				}
+			}
+		}, deadline);
+	}
+
+	private void cancel() {
+		if(this.timeout != null) {
+			this.timeout.cancel();
+			this.timeout = null;
+		}
+	}
+
+	/**
+	 * Formats a time left as minutes and seconds, with tenths under 20
+	 * seconds, e.g. "4:59" or "0:07.3".
+	 * @param nanos The time, in nanoseconds.
+	 * @return The formatted time.
+	 */
+	public static String format(long nanos) {
+		long tenths = Math.max(0, nanos) / 100_000_000;
+		long seconds = tenths / 10;
+		String text = seconds / 60 + ":" + (seconds % 60 < 10 ? "0" : "") + seconds % 60;
+		return seconds < 20 ? text + "." + tenths % 10 : text;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long now = System.nanoTime();
+		return ChessClock.format(this.getRemainingNanos(PieceColor.WHITE, now)) + " - "
+				+ ChessClock.format(this.getRemainingNanos(PieceColor.BLACK, now))
+				+ (this.flagged != null ? " (" + this.flagged.toString().toLowerCase() + " flagged)" : "");
+	}
+}
@@ -11,6 +11,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
+import application.event.Flow;
+import application.event.GameEvent;
+import application.event.GameEventPublisher;
+
 /**
  * The Game class contains all the information relevant to a game of chess.
  * For example, it has a 2d array of pieces, and contains information on
@@ -42,6 +46,16 @@ public class Game {
 				fullMoveCounter;
 	private Map<String, Integer> previousFensFor3FoldRepetition;
 	private Stack<String> previousFenStack;
+	// true while the history above is shared with a copy; see copy()
+	private boolean historyShared;
+	// the index in previousFenStack of each null move not yet taken back
+	private Stack<Integer> nullMoves = new Stack<>();
+	// made when first asked for, perhaps on another thread; not copied
+	private volatile GameEventPublisher events;
+	// > 0 while a move is only being tried, e.g. by isLegalMove(Move move)
+	private int trialMoves;
+	// null if the game is not timed; copies have a snapshot, which never runs
+	private ChessClock clock;
 
 	private String whiteName,
 				   blackName;
@@ -72,6 +86,239 @@ public class Game {
 		this.isLegalPosition();
 	}
 
+	/**
+	 * Creates a copy of another game's position, with its own board, so
+	 * that it can be read or changed on another thread without affecting
+	 * the original. The history is left for the caller to set.
+	 * @param other The game to copy.
+	 */
+	private Game(Game other) {
+		this.board = new Piece[Game.BOARD_ROWS][];
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			this.board[r] = other.board[r].clone();
+		}
+		this.turn = other.turn;
+		this.whiteCanCastleKingside = other.whiteCanCastleKingside;
+		this.whiteCanCastleQueenside = other.whiteCanCastleQueenside;
+		this.blackCanCastleKingside = other.blackCanCastleKingside;
+		this.blackCanCastleQueenside = other.blackCanCastleQueenside;
+		this.enPassantTargetSquare = other.enPassantTargetSquare;
+		this.halfMoveCounter = other.halfMoveCounter;
+		this.fullMoveCounter = other.fullMoveCounter;
+		this.whiteName = other.whiteName;
+		this.blackName = other.blackName;
+		this.clock = other.clock == null ? null : other.clock.snapshot();
+	}
+
+	/**
+	 * Returns a copy of this game, including its history. Unlike
+	 * creating a game from getFEN(), this also works for positions
+	 * which are already checkmate or drawn.
+	 *
+	 * Only the board is copied straight away. The history (one FEN per
+	 * ply) is shared, and whichever game next changes it or asks for it,
+	 * e.g. by pushing a move, first takes its own copy, which takes
+	 * longer the longer the game is. So each copy costs this game a
+	 * copy of its whole history at its next move; to hand the position
+	 * to another thread after every move, use copyRecent(int plies).
+	 * Must be called on the thread using this game.
+	 * @return A copy of this game.
+	 */
+	public Game copy() {
+		Game copy = new Game(this);
+		copy.previousFensFor3FoldRepetition = this.previousFensFor3FoldRepetition;
+		copy.previousFenStack = this.previousFenStack;
+		copy.historyShared = true;
+		this.historyShared = true;
+		copy.nullMoves.addAll(this.nullMoves);
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of this game with only the end of its history: the
+	 * positions since the last capture or pawn move, which are the only
+	 * ones the current position or a later one can repeat, and at least
+	 * the last plies, so that they can be taken back with popMove().
+	 * Nothing is shared with this game, so unlike copy(), neither game
+	 * has to copy its whole history when it next changes, and the copy
+	 * takes no longer however long the game is (the fifty-move rule
+	 * keeps the positions since a capture or pawn move few). Must be
+	 * called on the thread using this game.
+	 * @param plies The number of moves the copy must be able to take back.
+	 * @return A copy of this game.
+	 */
+	public Game copyRecent(int plies) {
+		Game copy = new Game(this);
+		int size = this.previousFenStack.size(),
+			kept = Math.min(size, Math.max(this.halfMoveCounter, plies) + 1);
+		copy.previousFenStack = new Stack<>();
+		copy.previousFensFor3FoldRepetition = new HashMap<>();
+		for(int i=size - kept; i<size; i++) {
+			String fen = this.previousFenStack.get(i);
+			copy.previousFenStack.push(fen);
+			if(this.nullMoves.contains(i)) {
+				// not counted, as in pushNullMove()
+				copy.nullMoves.push(i - (size - kept));
+				continue;
+			}
+			// the first 4 parts of the FEN, as getFenFor3FoldRepetition()
+			int end = fen.indexOf(' ');
+			for(int part=1; part<4 && end >= 0; part++) {
+				end = fen.indexOf(' ', end + 1);
+			}
+			String fen3Fold = end < 0 ? fen : fen.substring(0, end);
+			Integer repetitions = copy.previousFensFor3FoldRepetition.get(fen3Fold);
+			copy.previousFensFor3FoldRepetition.put(fen3Fold, repetitions == null ? 1 : repetitions + 1);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the current position with only as much history
+	 * as is needed to tell whether it is drawn by threefold repetition,
+	 * for handing to event subscribers. Cheaper than copy() to use
+	 * afterwards, as changing it never has to copy the whole history.
+	 * @param fen The FEN of the current position.
+	 * @param fen3Fold The current position's getFenFor3FoldRepetition().
+	 * @return A copy of the position.
+	 */
+	private Game copyPosition(String fen, String fen3Fold) {
+		Game copy = new Game(this);
+		copy.previousFenStack = new Stack<>();
+		copy.previousFenStack.push(fen);
+		copy.previousFensFor3FoldRepetition = new HashMap<>();
+		Integer repetitions = this.previousFensFor3FoldRepetition == null ? null :
+			this.previousFensFor3FoldRepetition.get(fen3Fold);
+		copy.previousFensFor3FoldRepetition.put(fen3Fold, repetitions == null ? 1 : repetitions);
+		return copy;
+	}
+
+	/**
+	 * Gets the stream of this game's events: every move played, with
+	 * captures, checks and the end of the game, and every position
+	 * loaded with loadFromFEN(String fen) or popMove(). Moves which are
+	 * only tried, e.g. by isLegalMove(Move move), are not sent.
+	 *
+	 * Subscribers are sent events on other threads, so they never slow
+	 * down the game. While nothing is subscribed, the game does no
+	 * extra work at all.
+	 * @return The publisher of this game's events.
+	 * @see GameEventPublisher
+	 */
+	public synchronized Flow.Publisher<GameEvent> getEvents() {
+		if(this.events == null) {
+			this.events = new GameEventPublisher();
+		}
+		return this.events;
+	}
+
+	/**
+	 * Ends this game's event stream, e.g. when the game is over and is
+	 * being discarded. Subscribers are sent onComplete() after every
+	 * event so far, and later changes to the game are not sent.
+	 */
+	public synchronized void closeEvents() {
+		if(this.events != null) {
+			this.events.close();
+		}
+	}
+
+	/**
+	 * Returns whether anything is subscribed to this game's events, e.g.
+	 * so that a game being watched is kept in memory.
+	 * @return true if the game has at least one subscriber.
+	 */
+	public boolean hasEventSubscribers() {
+		GameEventPublisher events = this.events;
+		return events != null && events.hasSubscribers();
+	}
+
+	/**
+	 * Returns whether a change to this game should be sent to event
+	 * subscribers.
+	 */
+	private boolean isPublishing() {
+		GameEventPublisher events = this.events;
+		return events != null && this.trialMoves == 0 && events.hasSubscribers();
+	}
+
+	/**
+	 * Marks the start of a move which is only being tried and will be
+	 * popped again, so that it is not sent to event subscribers.
+	 */
+	void beginTrial() {
+		this.trialMoves++;
+	}
+
+	/**
+	 * Marks the end of a move started with beginTrial().
+	 */
+	void endTrial() {
+		this.trialMoves--;
+	}
+
+	/**
+	 * Gets the game's clock.
+	 * @return The clock, or null if the game is not timed.
+	 */
+	public ChessClock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Sets the game's clock, which pushMove(Move move) then charges for
+	 * every move played (but not for moves only tried). Taking a move back
+	 * with popMove() does not give its time back.
+	 * @param clock The clock, or null to stop timing the game.
+	 */
+	public void setClock(ChessClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns whether a side has run out of time. Unlike the other ways a
+	 * game ends, this depends on the clock and not the position, so it is
+	 * not found by isCheckmate() or isDraw().
+	 * @return true if the game has a clock and a side has flagged.
+	 */
+	public boolean isFlagFall() {
+		return this.clock != null && this.clock.getFlagged() != null;
+	}
+
+	/**
+	 * Sends the fall of a flag to event subscribers, as a GAME_OVER event.
+	 * The clock notices it on its own thread (see ChessClock.FlagListener),
+	 * so the game's owner calls this on the thread using the game.
+	 */
+	public void publishFlagFall() {
+		if(this.isFlagFall() && this.isPublishing()) {
+			this.events.flagFell(this.copyPosition(this.getFEN(), this.getFenFor3FoldRepetition()));
+		}
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current position, which
+	 * may be read from any thread without locking.
+	 * @return The current position.
+	 */
+	public Position getPosition() {
+		return new Position(this);
+	}
+
+	/**
+	 * Takes this game's own copy of its history, if it is shared with
+	 * a copy of the game, before the history is changed.
+	 */
+	private void ownHistory() {
+		if(this.historyShared) {
+			this.previousFensFor3FoldRepetition = new HashMap<>(this.previousFensFor3FoldRepetition);
+			Stack<String> previousFenStack = new Stack<>();
+			previousFenStack.addAll(this.previousFenStack);
+			this.previousFenStack = previousFenStack;
+			this.historyShared = false;
+		}
+	}
+
 	/**
 	 * Tests whether a given coordinate lies within the board.
 	 * @param coordinate The coordinate to test.
@@ -190,6 +437,27 @@ public class Game {
 		return moves;
 	}
 
+	/**
+	 * Returns whether the side to move has any legal move. Stops at the
+	 * first one found, so is much quicker than getLegalMoves() when only
+	 * checking for checkmate or stalemate.
+	 * @return true if there is a legal move. false otherwise.
+	 */
+	public boolean hasLegalMoves() {
+		for(Coordinate coordinate : Game.coordinateIterator()) {
+			Piece piece = this.getPieceAt(coordinate);
+			if(piece == null || piece.getColor() != this.getTurn()) {
+				continue;
+			}
+			for(Move move : piece.getPseudoLegalMoves(this, coordinate)) {
+				if(this.isLegalMove(move)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns an Iterable which iterates over each of the 64 squares,
 	 * in order from left to right, then top to bottom.
@@ -259,14 +527,14 @@ public class Game {
 
 					@Override
 					public Piece next() {
-						Piece piece = Game.this.getPieceAt(r, c++);
-						while(this.hasNext() && 
-								Game.this.getPieceAt(r, c) == null) {
+						Piece piece = Game.this.getPieceAt(r, c);
+						do {
 							if(++c >= Game.BOARD_COLS) {
 								c -= Game.BOARD_COLS;
 								r++;
 							}
-						}
+						} while(this.hasNext() && 
+								Game.this.getPieceAt(r, c) == null);
 						return piece;
 					}
 				};
@@ -282,7 +550,13 @@ public class Game {
 	 */
 	public boolean isInCheck(PieceColor color) {
 		Coordinate kingLocation = this.getKingLocation(color);
+		Piece enemyKing = color == WHITE ? BLACK_KING : WHITE_KING;
 		for(Move move : this.getPseudoLegalMoves(color.invert())) {
+			// A king's castling move does not attack the square it lands on.
+			if(Math.abs(move.getColDifference()) == 2 &&
+					this.getPieceAt(move.getFromCoordinate()) == enemyKing) {
+				continue;
+			}
 			if(move.getToCoordinate().equals(kingLocation)) {
 				return true;
 			}
@@ -306,6 +580,31 @@ public class Game {
 		return null;
 	}
 
+	/**
+	 * Returns whether a move is one of the legal moves generated for the
+	 * piece it moves. Unlike isLegalMove(Move move), this checks that the
+	 * piece moves the right way and that nothing is in its path, so it is
+	 * the check for moves that come from outside the program, e.g. from a
+	 * client or a GUI. Only the moving piece's moves are generated.
+	 * @param move The move to check.
+	 * @return true if the move is legal. false otherwise.
+	 */
+	public boolean isGeneratedMove(Move move) {
+		if(move == null || !move.getFromCoordinate().isInBounds() || !move.getToCoordinate().isInBounds()) {
+			return false;
+		}
+		Piece piece = this.getPieceAt(move.getFromCoordinate());
+		if(piece == null || piece.getColor() != this.getTurn()) {
+			return false;
+		}
+		for(Move legal : piece.getLegalMoves(this, move.getFromCoordinate())) {
+			if(legal.equals(move)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 *  Returns whether or not the given move is legal for this game.
 	 *  There are several things which may make a move illegal.
@@ -321,6 +620,8 @@ public class Game {
 	 *  9. A pawn tries to capture with no target
 	 *  (the target for en-passant is not on the square the
 	 *  pawn moves to.)
+	 *  Moves from outside the program, which may be anything,
+	 *  should be checked with isGeneratedMove(Move move) instead.
 	 */
 	public boolean isLegalMove(Move move) {
 		// Check coordinates are in bounds
@@ -423,17 +724,53 @@ public class Game {
 		 * king would be in check and thus the move is not legal. In either case,
 		 * undo the move (we are only trying to test the moves, not play them).
 		 */
-		this.pushMove(move);
-		if(this.isInCheck(this.getTurn().invert())) {
+		this.beginTrial();
+		try {
+			this.pushMove(move);
+			boolean inCheck = this.isInCheck(this.getTurn().invert());
 			this.popMove();
-			return false;
+			if(inCheck) {
+				return false;
+			}
+		}
+		finally {
+			this.endTrial();
 		}
-		this.popMove();
 
 		// Everything passed, move is legal.
 		return true;
 	}
 
+	/**
+	 * Returns the squares whose contents will change when a move is
+	 * pushed: the source and destination squares, plus the rook's
+	 * squares when castling and the captured pawn's square when
+	 * capturing en passant. Views can use this to redraw only those
+	 * squares. It must be called before the move is pushed.
+	 * @param move The legal move about to be pushed.
+	 * @return The squares that the move changes.
+	 * @see Game.pushMove(Move move)
+	 */
+	public List<Coordinate> getChangedSquares(Move move) {
+		List<Coordinate> squares = new LinkedList<>();
+		Coordinate source = move.getFromCoordinate();
+		Coordinate destination = move.getToCoordinate();
+		squares.add(source);
+		squares.add(destination);
+
+		Piece movedPiece = this.getPieceAt(source);
+		int colDifference = move.getColDifference();
+		if((movedPiece == WHITE_KING || movedPiece == BLACK_KING) && Math.abs(colDifference) == 2) {
+			// The rook moves from the corner to the square the king passed over
+			squares.add(new Coordinate(source.getRow(), colDifference > 0 ? Game.BOARD_COLS - 1 : 0));
+			squares.add(source.offset(0, colDifference / 2));
+		} else if((movedPiece == WHITE_PAWN || movedPiece == BLACK_PAWN) &&
+				destination.equals(this.getEnPassantTargetSquare())) {
+			squares.add(destination.offset(movedPiece == WHITE_PAWN ? 1 : -1, 0));
+		}
+		return squares;
+	}
+
 	/**
 	 * This method puts a legal move onto the board and handles all
 	 * special moves such as en passant and castling.
@@ -442,11 +779,17 @@ public class Game {
 	 * @param move The legal move to push onto the board.
 	 */
 	public void pushMove(Move move) {
+		// Charge the move to the mover's clock
+		if(this.clock != null && this.trialMoves == 0) {
+			this.clock.moveMade(this.getTurn());
+		}
+
 		// Update the board
 		Coordinate source = move.getFromCoordinate();
 		Coordinate destination = move.getToCoordinate();
 		Piece movedPiece = this.getPieceAt(source);
 		Piece capturedPiece = this.getPieceAt(destination);
+		Coordinate enPassantTargetSquare = this.getEnPassantTargetSquare();
 		this.setPieceAt(source, null);
 		this.setPieceAt(destination, movedPiece);
 		this.setEnPassantTargetSquare(null);
@@ -457,7 +800,7 @@ public class Game {
 		// Check pawn moves
 		if(movedPiece == WHITE_PAWN || movedPiece == BLACK_PAWN) {
 			// Check captures en passant
-			if(destination.equals(this.getEnPassantTargetSquare())) {
+			if(destination.equals(enPassantTargetSquare)) {
 				Coordinate capturedCoordinate = destination.offset(movedPiece == WHITE_PAWN ? 1 : -1, 0);
 				capturedPiece = this.getPieceAt(capturedCoordinate);
 				this.setPieceAt(capturedCoordinate, null);
@@ -517,7 +860,7 @@ public class Game {
 			this.setWhiteCanCastleKingside(false);
 		} else if(source.equals(a8) || destination.equals(a8)) {
 			this.setBlackCanCastleQueenside(false);
-		} else if(source.equals(h8) || source.equals(h8)) {
+		} else if(source.equals(h8) || destination.equals(h8)) {
 			this.setBlackCanCastleKingside(false);
 		}
 
@@ -535,7 +878,33 @@ public class Game {
 		Map<String, Integer> fen3FoldMap = this.getPreviousFensFor3FoldRepetition();
 		String fen3Fold = this.getFenFor3FoldRepetition();
 		fen3FoldMap.put(fen3Fold, fen3FoldMap.containsKey(fen3Fold) ? fen3FoldMap.get(fen3Fold) + 1 : 1);
-		this.getPreviousFenStack().push(this.getFEN());
+		String fen = this.getFEN();
+		this.getPreviousFenStack().push(fen);
+
+		if(this.isPublishing()) {
+			this.events.movePlayed(move, capturedPiece, this.copyPosition(fen, fen3Fold));
+		}
+	}
+
+	/**
+	 * Passes the turn to the other side without moving (a "null move"),
+	 * e.g. so that a search can see whether a position is good even if its
+	 * side to move does nothing. The en passant target square is cleared,
+	 * as after any move. It is not charged to the clock or sent to event
+	 * subscribers, and is undone with popMove().
+	 *
+	 * Positions reached through a null move cannot come up on the board,
+	 * so they are not counted towards threefold repetition, and
+	 * is3FoldRepetition() is false until the null move is taken back.
+	 */
+	public void pushNullMove() {
+		this.setEnPassantTargetSquare(null);
+		this.changeTurn();
+
+		// Update the FEN list, for popMove(); the 3fold repetition counters are left alone
+		Stack<String> fenStack = this.getPreviousFenStack();
+		fenStack.push(this.getFEN());
+		this.nullMoves.push(fenStack.size() - 1);
 	}
 
 	/**
@@ -545,18 +914,23 @@ public class Game {
 	 * previous moves and for checking threefold repetition.
 	 */
 	public void popMove() {
-		// Update 3fold repetition counters
-		String fen3Fold = this.getFenFor3FoldRepetition();
-		Map<String, Integer> fen3FoldMap = this.getPreviousFensFor3FoldRepetition();
-		int repetitions = fen3FoldMap.get(fen3Fold);
-		if(repetitions == 1) {
-			fen3FoldMap.remove(fen3Fold);
+		Stack<String> fenStack = this.getPreviousFenStack();
+		if(!this.nullMoves.isEmpty() && this.nullMoves.peek() == fenStack.size() - 1) {
+			// a null move, which was not counted
+			this.nullMoves.pop();
 		} else {
-			fen3FoldMap.put(fen3Fold, repetitions - 1);
+			// Update 3fold repetition counters
+			String fen3Fold = this.getFenFor3FoldRepetition();
+			Map<String, Integer> fen3FoldMap = this.getPreviousFensFor3FoldRepetition();
+			int repetitions = fen3FoldMap.get(fen3Fold);
+			if(repetitions == 1) {
+				fen3FoldMap.remove(fen3Fold);
+			} else {
+				fen3FoldMap.put(fen3Fold, repetitions - 1);
+			}
 		}
 
 		// Update the previous fen lists
-		Stack<String> fenStack = this.getPreviousFenStack();
 		fenStack.pop();
 		this.loadFromFEN(fenStack.peek());
 	}
@@ -575,6 +949,17 @@ public class Game {
 		return fenParts[0] + ' ' + fenParts[1] + ' ' + fenParts[2] + ' ' + fenParts[3];
 	}
 
+	/**
+	 * Returns a 64-bit hash of the current position. Positions that
+	 * are the same for the purposes of threefold repetition have
+	 * the same key.
+	 * @return The Zobrist key of the current position.
+	 * @see Zobrist
+	 */
+	public long getZobristKey() {
+		return Zobrist.DEFAULT.hash(this);
+	}
+
 	/**
 	 * This method changes the piece at a given coordinate.
 	 * TODO make this private?
@@ -698,7 +1083,9 @@ public class Game {
 	 * do not have to be consecutive. ("3-fold repetition").
 	 * 
 	 * 6. One side runs out of time, but the other side has
-	 * only a king left. (There are no clocks in this app.)
+	 * only a king left. (This depends on the clock, not the
+	 * position, so this method does not handle this case;
+	 * see isFlagFall() and hasOnlyKing(PieceColor color).)
 	 * @return true if game is a draw, otherwise, false.
 	 */
 	public boolean isDraw() {
@@ -749,13 +1136,16 @@ public class Game {
 	 * 3) Castling rights have not changed.
 	 * 4) The en-passant target square has not changed.
 	 * Thus only the first 4 parts of a FEN need to be considered.
+	 * Repetitions are not looked for after a null move (see
+	 * pushNullMove()), as positions reached through one are not real.
 	 * @return true, if the game is a draw by threefold repetition.
 	 * false otherwise.
 	 * @see Game.getPreviousFensFor3FoldRepetition()
 	 * @see Game.getFenFor3FoldRepetition()
 	 */
 	public boolean is3FoldRepetition(){
-		return this.getPreviousFensFor3FoldRepetition().get(this.getFenFor3FoldRepetition()) >= 3;
+		return this.nullMoves.isEmpty()
+				&& this.previousFensFor3FoldRepetition.get(this.getFenFor3FoldRepetition()) >= 3;
 	}
 
 	/**
@@ -794,6 +1184,21 @@ public class Game {
 		return total <= 1;
 	}
 
+	/**
+	 * Returns whether a side has nothing left but its king, in which
+	 * case it cannot win even if the other side runs out of time.
+	 * @param color The side.
+	 * @return true if the side has only a king. false otherwise.
+	 */
+	public boolean hasOnlyKing(PieceColor color) {
+		for(Piece piece : this.pieceIterator()) {
+			if(piece.getColor() == color && piece != WHITE_KING && piece != BLACK_KING) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Sets Game's object attributes based on the String describing
 	 * the Forsyth-Edwards Notation of the position.
@@ -851,6 +1256,10 @@ public class Game {
 
 		// Get fullmove counter
 		this.setFullMoveCounter(Integer.parseInt(parts[5]));
+
+		if(this.isPublishing()) {
+			this.events.positionReset(this.copyPosition(this.getFEN(), this.getFenFor3FoldRepetition()));
+		}
 	}
 
 	/**
@@ -906,7 +1315,7 @@ public class Game {
 	 * @see https://en.wikipedia.org/wiki/Forsyth%E2%80%93Edwards_Notation
 	 */
 	public String getFEN() {
-		String fen = "";
+		StringBuilder fen = new StringBuilder(90);
 
 		// Iterate through the board
 		Piece[][] board = this.getBoard();
@@ -917,44 +1326,43 @@ public class Game {
 				if(piece == null) {
 					consecutiveBlankSquares++;
 				} else if(consecutiveBlankSquares != 0) {
-					fen += consecutiveBlankSquares;
-					fen += piece.getCharacter();
+					fen.append(consecutiveBlankSquares);
+					fen.append(piece.getCharacter());
 					consecutiveBlankSquares = 0;
 				} else {
-					fen += piece.getCharacter();
+					fen.append(piece.getCharacter());
 				}
 			}
 			if(consecutiveBlankSquares != 0) {
-				fen += consecutiveBlankSquares;
+				fen.append(consecutiveBlankSquares);
 				consecutiveBlankSquares = 0;
 			}
-			if(r + 1 != board.length) fen += '/';
+			if(r + 1 != board.length) fen.append('/');
 		}
 
+		// Add the other fields to the FEN
+		fen.append(' ').append(this.getTurn() == WHITE ? 'w' : 'b').append(' ');
+
 		// Determine castling rights
-		String castlingRights = 
-				(this.whiteCanCastleKingside() ? "K" : "") + 
-				(this.whiteCanCastleQueenside() ? "Q" : "") + 
-				(this.blackCanCastleKingside() ? "k" : "") +
-				(this.blackCanCastleQueenside() ? "q" : "");
-		if(castlingRights.equals("")) {
-			castlingRights += '-';
+		int castlingStart = fen.length();
+		if(this.whiteCanCastleKingside()) fen.append('K');
+		if(this.whiteCanCastleQueenside()) fen.append('Q');
+		if(this.blackCanCastleKingside()) fen.append('k');
+		if(this.blackCanCastleQueenside()) fen.append('q');
+		if(fen.length() == castlingStart) {
+			fen.append('-');
 		}
 
-		// Add the other fields to the FEN
-		fen += " " + 
-				(this.getTurn() == WHITE ? 'w' : 'b') + 
-				' ' +
-				castlingRights +
-				' ' +
-				(this.getEnPassantTargetSquare() == null ? '-'
-						: this.getEnPassantTargetSquare().getAlgebraicNotation()) +
-				' ' +
-				this.getHalfMoveCounter() +
-				' ' +
-				this.getFullMoveCounter();
+		fen.append(' ');
+		if(this.getEnPassantTargetSquare() == null) {
+			fen.append('-');
+		} else {
+			fen.append(this.getEnPassantTargetSquare().getAlgebraicNotation());
+		}
+		fen.append(' ').append(this.getHalfMoveCounter())
+			.append(' ').append(this.getFullMoveCounter());
 
-		return fen;
+		return fen.toString();
 	}
 
 
@@ -1264,6 +1672,7 @@ public class Game {
 	 * @see Game.getFEN()
 	 */
 	public Stack<String> getPreviousFenStack() {
+		this.ownHistory();
 		return previousFenStack;
 	}
 
@@ -1275,7 +1684,14 @@ public class Game {
 	 * @see Game.getFEN()
 	 */
 	public void setPreviousFenStack(Stack<String> previousFenStack) {
+		if(this.historyShared) {
+			// only the map is still shared; the stack being replaced needs no copy
+			this.previousFensFor3FoldRepetition = new HashMap<>(this.previousFensFor3FoldRepetition);
+			this.historyShared = false;
+		}
 		this.previousFenStack = previousFenStack;
+		// the indices of any null moves are meaningless in another stack
+		this.nullMoves.clear();
 	}
 
 	/**
@@ -1288,6 +1704,7 @@ public class Game {
 	 * @see Game.getFenFor3FoldRepetition()
 	 */
 	public Map<String, Integer> getPreviousFensFor3FoldRepetition() {
+		this.ownHistory();
 		return previousFensFor3FoldRepetition;
 	}
 
@@ -1301,6 +1718,13 @@ public class Game {
 	 * @see Game.getFenFor3FoldRepetition()
 	 */
 	public void setPreviousFensFor3FoldRepetition(Map<String, Integer> previousFensFor3FoldRepetition) {
+		if(this.historyShared) {
+			// only the stack is still shared; the map being replaced needs no copy
+			Stack<String> previousFenStack = new Stack<>();
+			previousFenStack.addAll(this.previousFenStack);
+			this.previousFenStack = previousFenStack;
+			this.historyShared = false;
+		}
 		this.previousFensFor3FoldRepetition = previousFensFor3FoldRepetition;
 	}
 }
@@ -0,0 +1,96 @@
+package application.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The LegalMoveIndex class holds all the legal moves of one position,
+ * indexed by source square. Finding the legal moves of a position is
+ * slow (every pseudo-legal move is pushed and popped to see whether it
+ * leaves the king in check), so views can build the index once per
+ * position and then answer every click with an array lookup.
+ *
+ * For each of the 64 source squares (row * 8 + col), the index stores
+ * a bitmask of destination squares, with bit (row * 8 + col) set if the
+ * move to that square is legal.
+ */
+public class LegalMoveIndex {
+
+	private final long[] targets = new long[Game.BOARD_ROWS * Game.BOARD_COLS];
+	private final int size;
+
+	/**
+	 * Builds the index for the current position of a game.
+	 * @param game The game. It is left as it was found.
+	 */
+	public LegalMoveIndex(Game game) {
+		int size = 0;
+		for(Move move : game.getLegalMoves()) {
+			long bit = 1L << LegalMoveIndex.getSquare(move.getToRow(), move.getToCol());
+			int from = LegalMoveIndex.getSquare(move.getFromRow(), move.getFromCol());
+			if((this.targets[from] & bit) == 0) {
+				this.targets[from] |= bit;
+				size++;
+			}
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Gets the destination squares of the legal moves from a square.
+	 * @param row The row of the source square.
+	 * @param col The column of the source square.
+	 * @return A bitmask with bit (row * 8 + col) set for each destination square.
+	 */
+	public long getTargets(int row, int col) {
+		return this.targets[LegalMoveIndex.getSquare(row, col)];
+	}
+
+	/**
+	 * Gets the legal moves from a square.
+	 * @param row The row of the source square.
+	 * @param col The column of the source square.
+	 * @return The legal moves from the square.
+	 */
+	public List<Move> getMoves(int row, int col) {
+		List<Move> moves = new ArrayList<>();
+		for(long targets = this.getTargets(row, col); targets != 0; targets &= targets - 1) {
+			int to = Long.numberOfTrailingZeros(targets);
+			moves.add(new Move(row, col, to / Game.BOARD_COLS, to % Game.BOARD_COLS));
+		}
+		return moves;
+	}
+
+	/**
+	 * Returns whether a move is legal in the indexed position.
+	 * @param move The move.
+	 * @return true if the move is legal. false otherwise.
+	 */
+	public boolean isLegalMove(Move move) {
+		if(!move.isInBounds()) {
+			return false;
+		}
+		long bit = 1L << LegalMoveIndex.getSquare(move.getToRow(), move.getToCol());
+		return (this.getTargets(move.getFromRow(), move.getFromCol()) & bit) != 0;
+	}
+
+	/**
+	 * Gets the number of legal moves.
+	 * @return The number of legal moves.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns whether there are no legal moves (checkmate or stalemate).
+	 * @return true if there are no legal moves. false otherwise.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	private static int getSquare(int row, int col) {
+		return row * Game.BOARD_COLS + col;
+	}
+}
@@ -67,6 +67,28 @@ implements BiFunction<Game, Coordinate, List<Move>> {
 			return moves;
 		}
 	};
+
+	/**
+	 * Gets the (row, col) steps this generator moves a piece by.
+	 * Column 0 represents the y/row direction,
+	 * Column 1 represents the x/col direction.
+	 * Castling is not included in the king's steps.
+	 * @return The steps of this generator, or null if the piece
+	 * does not move by fixed steps (i.e. pawns).
+	 */
+	public int[][] getSteps() {
+		return null;
+	}
+
+	/**
+	 * Returns whether the piece may repeat its steps until it hits
+	 * another piece or a bound.
+	 * @return true if the piece is a Rider. false otherwise.
+	 * @see Rider
+	 */
+	public boolean isRider() {
+		return false;
+	}
 }
 
 /**
@@ -113,6 +135,16 @@ class Rider extends MoveGenerator {
 	public int[][] getDirections() {
 		return directions;
 	}
+
+	@Override
+	public int[][] getSteps() {
+		return this.getDirections();
+	}
+
+	@Override
+	public boolean isRider() {
+		return true;
+	}
 }
 
 /**
@@ -156,4 +188,9 @@ class Hopper extends MoveGenerator {
 	public int[][] getOffsets() {
 		return offsets;
 	}
+
+	@Override
+	public int[][] getSteps() {
+		return this.getOffsets();
+	}
 }
@@ -0,0 +1,197 @@
+package application.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * The MoveHistory class records the moves of a game so that the position
+ * after any ply can be rebuilt quickly, e.g. when a move list is clicked.
+ *
+ * Undoing moves one at a time with Game.popMove() re-parses a FEN per ply,
+ * so going back to the start of a long game takes longer the longer the
+ * game is. Instead, a compact snapshot of the position is kept every few
+ * plies (a checkpoint), and a position is rebuilt by restoring the nearest
+ * checkpoint at or before it and replaying the few moves since. Every jump
+ * therefore costs at most one restore and interval - 1 moves, however long
+ * the game is, and the snapshots take about 38 bytes per interval.
+ *
+ * Ply 0 is the starting position; ply n is the position after n moves.
+ * Rebuilt positions have no history before their checkpoint, so they are
+ * meant for viewing (threefold repetition is not tracked across it).
+ */
+public class MoveHistory {
+
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+	public static final int SNAPSHOT_BYTES = 38;
+
+	private final Game start;
+	private final int interval;
+	private final List<Move> moves = new ArrayList<>();
+	private final List<byte[]> checkpoints = new ArrayList<>();
+
+	/**
+	 * Creates an empty history, with a checkpoint every
+	 * DEFAULT_CHECKPOINT_INTERVAL plies.
+	 * @param game The game, in its starting position.
+	 */
+	public MoveHistory(Game game) {
+		this(game, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Creates an empty history.
+	 * @param game The game, in its starting position.
+	 * @param interval The number of plies between checkpoints. Smaller
+	 * intervals make jumps faster and use more memory.
+	 */
+	public MoveHistory(Game game, int interval) {
+		if(interval < 1) {
+			throw new IllegalArgumentException("interval must be at least 1: " + interval);
+		}
+		// only the position is needed, so the game's history is not shared
+		this.start = game.copyRecent(0);
+		this.interval = interval;
+		this.checkpoints.add(MoveHistory.encode(game));
+	}
+
+	/**
+	 * Records a move that has just been played.
+	 * @param move The move.
+	 * @param game The game, in the position after the move.
+	 */
+	public void add(Move move, Game game) {
+		this.moves.add(move);
+		if(this.moves.size() % this.interval == 0) {
+			this.checkpoints.add(MoveHistory.encode(game));
+		}
+	}
+
+	/**
+	 * Gets the number of moves recorded.
+	 * @return The number of plies played.
+	 */
+	public int size() {
+		return this.moves.size();
+	}
+
+	/**
+	 * Gets the move that led to a ply.
+	 * @param ply The ply, from 1 to size().
+	 * @return The move played to reach the ply.
+	 */
+	public Move getMove(int ply) {
+		return this.moves.get(ply - 1);
+	}
+
+	/**
+	 * Gets the number of plies between checkpoints.
+	 * @return The checkpoint interval.
+	 */
+	public int getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * Rebuilds the position after a ply, from the nearest checkpoint.
+	 * @param ply The ply, from 0 (the starting position) to size().
+	 * @return A new game in the position after the ply.
+	 */
+	public Game getPosition(int ply) {
+		if(ply < 0 || ply > this.moves.size()) {
+			throw new IndexOutOfBoundsException("ply " + ply + " of " + this.moves.size());
+		}
+		int checkpoint = ply / this.interval;
+		Game game = this.start.copyRecent(0);
+		MoveHistory.decode(this.checkpoints.get(checkpoint), game);
+		for(int i=checkpoint * this.interval; i<ply; i++) {
+			game.pushMove(this.moves.get(i));
+		}
+		return game;
+	}
+
+	/**
+	 * Packs a position into SNAPSHOT_BYTES bytes: one nibble per square
+	 * (0 for empty, otherwise 1 + the index in Piece.ALL_PIECES), then the
+	 * side to move and castling rights, the en passant square and the move
+	 * counters. Also used to store games compactly elsewhere (e.g. by
+	 * application.server.GameArchive).
+	 * @param game The game.
+	 * @return The packed position.
+	 */
+	public static byte[] encode(Game game) {
+		byte[] snapshot = new byte[SNAPSHOT_BYTES];
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				int square = r * Game.BOARD_COLS + c;
+				int code = MoveHistory.getCode(game.getPieceAt(r, c));
+				snapshot[square / 2] |= square % 2 == 0 ? code : code << 4;
+			}
+		}
+		snapshot[32] = (byte) ((game.getTurn() == PieceColor.WHITE ? 1 : 0)
+				| (game.whiteCanCastleKingside() ? 2 : 0)
+				| (game.whiteCanCastleQueenside() ? 4 : 0)
+				| (game.blackCanCastleKingside() ? 8 : 0)
+				| (game.blackCanCastleQueenside() ? 16 : 0));
+		Coordinate enPassant = game.getEnPassantTargetSquare();
+		snapshot[33] = (byte) (enPassant == null ? -1 : enPassant.getRow() * Game.BOARD_COLS + enPassant.getCol());
+		MoveHistory.putShort(snapshot, 34, game.getHalfMoveCounter());
+		MoveHistory.putShort(snapshot, 36, game.getFullMoveCounter());
+		return snapshot;
+	}
+
+	/**
+	 * Sets a game to a packed position, with a fresh history starting there.
+	 * @param snapshot A position packed by encode(Game game).
+	 * @param game The game to set.
+	 */
+	public static void decode(byte[] snapshot, Game game) {
+		Piece[][] board = new Piece[Game.BOARD_ROWS][Game.BOARD_COLS];
+		for(int square=0; square<Game.BOARD_ROWS * Game.BOARD_COLS; square++) {
+			int code = (snapshot[square / 2] >> (square % 2 == 0 ? 0 : 4)) & 0xF;
+			board[square / Game.BOARD_COLS][square % Game.BOARD_COLS] = code == 0 ? null : Piece.ALL_PIECES[code - 1];
+		}
+		game.setBoard(board);
+		int flags = snapshot[32];
+		game.setTurn((flags & 1) != 0 ? PieceColor.WHITE : PieceColor.BLACK);
+		game.setWhiteCanCastleKingside((flags & 2) != 0);
+		game.setWhiteCanCastleQueenside((flags & 4) != 0);
+		game.setBlackCanCastleKingside((flags & 8) != 0);
+		game.setBlackCanCastleQueenside((flags & 16) != 0);
+		int enPassant = snapshot[33];
+		game.setEnPassantTargetSquare(enPassant < 0 ? null :
+				new Coordinate(enPassant / Game.BOARD_COLS, enPassant % Game.BOARD_COLS));
+		game.setHalfMoveCounter(MoveHistory.getShort(snapshot, 34));
+		game.setFullMoveCounter(MoveHistory.getShort(snapshot, 36));
+
+		Stack<String> fenStack = new Stack<>();
+		fenStack.push(game.getFEN());
+		game.setPreviousFenStack(fenStack);
+		Map<String, Integer> fen3FoldMap = new HashMap<>();
+		fen3FoldMap.put(game.getFenFor3FoldRepetition(), 1);
+		game.setPreviousFensFor3FoldRepetition(fen3FoldMap);
+	}
+
+	private static int getCode(Piece piece) {
+		if(piece == null) {
+			return 0;
+		}
+		for(int i=0; i<Piece.ALL_PIECES.length; i++) {
+			if(Piece.ALL_PIECES[i] == piece) {
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("unknown piece: " + piece);
+	}
+
+	private static void putShort(byte[] bytes, int index, int value) {
+		bytes[index] = (byte) (value >> 8);
+		bytes[index + 1] = (byte) value;
+	}
+
+	private static int getShort(byte[] bytes, int index) {
+		return ((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF);
+	}
+}
@@ -0,0 +1,99 @@
+package application.model;
+
+import static application.model.Piece.*;
+
+/**
+ * The Notation class writes moves in Standard Algebraic Notation (SAN),
+ * the notation used by scoresheets and PGN files, e.g. "Nf3", "exd5",
+ * "Raxe1+", "O-O" or "e8=Q#".
+ *
+ * Pawns always promote to a queen in this app (see Game.pushMove(Move move)),
+ * so promotions are always written "=Q".
+ * @see https://en.wikipedia.org/wiki/Algebraic_notation_(chess)
+ */
+public class Notation {
+
+	private Notation() {
+	}
+
+	/**
+	 * Returns the SAN of a move. The move is played and taken back to
+	 * find whether it gives check, so the game is left as it was found.
+	 * @param game The game, in the position before the move.
+	 * @param move A legal move in the current position.
+	 * @return The move in Standard Algebraic Notation.
+	 */
+	public static String toSAN(Game game, Move move) {
+		Piece piece = game.getPieceAt(move.getFromCoordinate());
+		Piece captured = game.getPieceAt(move.getToCoordinate());
+		boolean pawn = piece == WHITE_PAWN || piece == BLACK_PAWN;
+		boolean king = piece == WHITE_KING || piece == BLACK_KING;
+		StringBuilder san = new StringBuilder();
+
+		if(king && Math.abs(move.getColDifference()) == 2) {
+			san.append(move.getColDifference() > 0 ? "O-O" : "O-O-O");
+		}
+		else if(pawn) {
+			boolean capture = move.getColDifference() != 0;
+			if(capture) {
+				san.append(move.getFromCoordinate().getAlgebraicNotation().charAt(0)).append('x');
+			}
+			san.append(move.getToCoordinate().getAlgebraicNotation());
+			if(move.getToRow() == 0 || move.getToRow() == Game.BOARD_ROWS - 1) {
+				san.append("=Q");
+			}
+		}
+		else {
+			san.append(Character.toUpperCase(piece.getCharacter()));
+			san.append(Notation.getDisambiguation(game, move, piece));
+			if(captured != null) {
+				san.append('x');
+			}
+			san.append(move.getToCoordinate().getAlgebraicNotation());
+		}
+
+		game.beginTrial();
+		try {
+			game.pushMove(move);
+			if(game.isInCheck(game.getTurn())) {
+				san.append(game.getLegalMoves().isEmpty() ? '#' : '+');
+			}
+			game.popMove();
+		}
+		finally {
+			game.endTrial();
+		}
+		return san.toString();
+	}
+
+	/**
+	 * Returns the file, rank or square of the moving piece, when another
+	 * piece of the same kind could also move to the same square.
+	 */
+	private static String getDisambiguation(Game game, Move move, Piece piece) {
+		boolean ambiguous = false,
+				sameFile = false,
+				sameRank = false;
+		for(Move other : game.getLegalMoves()) {
+			if(!other.getToCoordinate().equals(move.getToCoordinate()) ||
+					other.getFromCoordinate().equals(move.getFromCoordinate()) ||
+					game.getPieceAt(other.getFromCoordinate()) != piece) {
+				continue;
+			}
+			ambiguous = true;
+			sameFile |= other.getFromCol() == move.getFromCol();
+			sameRank |= other.getFromRow() == move.getFromRow();
+		}
+		String from = move.getFromCoordinate().getAlgebraicNotation();
+		if(!ambiguous) {
+			return "";
+		}
+		if(!sameFile) {
+			return from.substring(0, 1);
+		}
+		if(!sameRank) {
+			return from.substring(1);
+		}
+		return from;
+	}
+}
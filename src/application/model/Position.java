@@ -0,0 +1,160 @@
+package application.model;
+
+/**
+ * The Position class is an immutable snapshot of a game's position: the
+ * pieces, the side to move, the castling rights, the en passant square,
+ * the move counters, the time left on the game's clock (if any) and the
+ * FEN.
+ *
+ * A Game may only be used by one thread at a time, as even reading it
+ * (e.g. Game.isLegalMove(Move move)) can change it for a moment. A
+ * Position never changes, so the thread playing a game can hand one to
+ * any number of other threads (e.g. for rendering, analysis or sending
+ * to spectators) without locking or copying.
+ *
+ * Positions are made with Game.getPosition().
+ */
+public final class Position {
+
+	private final Piece[] squares = new Piece[Game.BOARD_ROWS * Game.BOARD_COLS];
+	private final PieceColor turn;
+	private final boolean whiteCanCastleKingside,
+						  whiteCanCastleQueenside,
+						  blackCanCastleKingside,
+						  blackCanCastleQueenside;
+	private final Coordinate enPassantTargetSquare;
+	private final int halfMoveCounter,
+					  fullMoveCounter;
+	private final String fen;
+	// -1 if the game has no clock
+	private final long whiteClockNanos,
+					   blackClockNanos;
+
+	Position(Game game) {
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				this.squares[r * Game.BOARD_COLS + c] = game.getPieceAt(r, c);
+			}
+		}
+		this.turn = game.getTurn();
+		this.whiteCanCastleKingside = game.whiteCanCastleKingside();
+		this.whiteCanCastleQueenside = game.whiteCanCastleQueenside();
+		this.blackCanCastleKingside = game.blackCanCastleKingside();
+		this.blackCanCastleQueenside = game.blackCanCastleQueenside();
+		this.enPassantTargetSquare = game.getEnPassantTargetSquare();
+		this.halfMoveCounter = game.getHalfMoveCounter();
+		this.fullMoveCounter = game.getFullMoveCounter();
+		this.fen = game.getFEN();
+		ChessClock clock = game.getClock();
+		this.whiteClockNanos = clock == null ? -1 : clock.getRemainingNanos(PieceColor.WHITE);
+		this.blackClockNanos = clock == null ? -1 : clock.getRemainingNanos(PieceColor.BLACK);
+	}
+
+	/**
+	 * Gets the piece on a square.
+	 * @param row The row of the square.
+	 * @param col The column of the square.
+	 * @return The piece on the square, or null if it is empty.
+	 */
+	public Piece getPieceAt(int row, int col) {
+		return this.squares[row * Game.BOARD_COLS + col];
+	}
+
+	/**
+	 * Gets the piece on a square.
+	 * @param coordinate The square.
+	 * @return The piece on the square, or null if it is empty.
+	 */
+	public Piece getPieceAt(Coordinate coordinate) {
+		return this.getPieceAt(coordinate.getRow(), coordinate.getCol());
+	}
+
+	/**
+	 * Gets the side to move.
+	 * @return The side to move.
+	 */
+	public PieceColor getTurn() {
+		return this.turn;
+	}
+
+	/**
+	 * Returns whether a side may still castle on a side of the board.
+	 * @param color The side.
+	 * @param side The side of the board.
+	 * @return true if the side has the castling right. false otherwise.
+	 */
+	public boolean hasCastlingRights(PieceColor color, Side side) {
+		if(color == PieceColor.WHITE) {
+			return side == Side.KINGSIDE ? this.whiteCanCastleKingside : this.whiteCanCastleQueenside;
+		}
+		return side == Side.KINGSIDE ? this.blackCanCastleKingside : this.blackCanCastleQueenside;
+	}
+
+	/**
+	 * Gets the square a pawn may capture en passant on.
+	 * @return The en passant target square, or null if there is none.
+	 */
+	public Coordinate getEnPassantTargetSquare() {
+		return this.enPassantTargetSquare;
+	}
+
+	/**
+	 * Gets the number of plies since the last capture or pawn move.
+	 * @return The half-move counter.
+	 */
+	public int getHalfMoveCounter() {
+		return this.halfMoveCounter;
+	}
+
+	/**
+	 * Gets the number of the current full move.
+	 * @return The full-move counter.
+	 */
+	public int getFullMoveCounter() {
+		return this.fullMoveCounter;
+	}
+
+	/**
+	 * Returns whether the game had a clock.
+	 * @return true if the position has the time left on the clock.
+	 */
+	public boolean hasClock() {
+		return this.whiteClockNanos >= 0;
+	}
+
+	/**
+	 * Gets the time a side had left when the snapshot was taken.
+	 * @param color The side.
+	 * @return The time left, in nanoseconds, or -1 if the game had no
+	 * clock.
+	 */
+	public long getRemainingNanos(PieceColor color) {
+		return color == PieceColor.WHITE ? this.whiteClockNanos : this.blackClockNanos;
+	}
+
+	/**
+	 * Gets the FEN of the position.
+	 * @return The FEN.
+	 */
+	public String getFEN() {
+		return this.fen;
+	}
+
+	/**
+	 * Returns whether another object is a position with the same FEN.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Position && ((Position) other).fen.equals(this.fen);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.fen.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.fen;
+	}
+}
@@ -0,0 +1,122 @@
+package application.model;
+
+/**
+ * The TimeControl class is how much time each side is given: a base
+ * time for the game, plus an increment added after every move (Fischer
+ * increment), and/or a delay at the start of every move before the clock
+ * starts counting down (simple or US delay). Immutable.
+ *
+ * Written as seconds, e.g. "300+2" is 5 minutes with a 2 second
+ * increment, "300d5" 5 minutes with a 5 second delay.
+ */
+public final class TimeControl {
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000;
+
+	private final long baseNanos,
+					   incrementNanos,
+					   delayNanos;
+
+	/**
+	 * Creates a time control.
+	 * @param baseNanos The time each side starts with.
+	 * @param incrementNanos The time added after each move.
+	 * @param delayNanos The time at the start of each move which is not
+	 * charged.
+	 */
+	public TimeControl(long baseNanos, long incrementNanos, long delayNanos) {
+		if(baseNanos <= 0 || incrementNanos < 0 || delayNanos < 0) {
+			throw new IllegalArgumentException("invalid time control");
+		}
+		this.baseNanos = baseNanos;
+		this.incrementNanos = incrementNanos;
+		this.delayNanos = delayNanos;
+	}
+
+	/**
+	 * Parses a time control written as base seconds, optionally followed
+	 * by "+" and increment seconds and/or "d" and delay seconds,
+	 * e.g. "300", "180+2", "300d5" or "0.5+0.1".
+	 * @param text The time control.
+	 * @return The time control.
+	 * @throws IllegalArgumentException If the text is not a time control.
+	 */
+	public static TimeControl parse(String text) {
+		try {
+			String base = text.trim(), increment = "0", delay = "0";
+			int d = base.indexOf('d');
+			if(d >= 0) {
+				delay = base.substring(d + 1);
+				base = base.substring(0, d);
+			}
+			int plus = base.indexOf('+');
+			if(plus >= 0) {
+				increment = base.substring(plus + 1);
+				base = base.substring(0, plus);
+			}
+			return new TimeControl(TimeControl.toNanos(base), TimeControl.toNanos(increment), TimeControl.toNanos(delay));
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("invalid time control: " + text);
+		}
+	}
+
+	private static long toNanos(String seconds) {
+		return Math.round(Double.parseDouble(seconds) * NANOS_PER_SECOND);
+	}
+
+	/**
+	 * Gets the time each side starts with.
+	 * @return The base time, in nanoseconds.
+	 */
+	public long getBaseNanos() {
+		return this.baseNanos;
+	}
+
+	/**
+	 * Gets the time added to a side's clock after each of its moves.
+	 * @return The increment, in nanoseconds.
+	 */
+	public long getIncrementNanos() {
+		return this.incrementNanos;
+	}
+
+	/**
+	 * Gets the time at the start of each move which is not charged.
+	 * @return The delay, in nanoseconds.
+	 */
+	public long getDelayNanos() {
+		return this.delayNanos;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof TimeControl)) {
+			return false;
+		}
+		TimeControl control = (TimeControl) other;
+		return control.baseNanos == this.baseNanos && control.incrementNanos == this.incrementNanos
+				&& control.delayNanos == this.delayNanos;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(this.baseNanos) * 31 * 31 + Long.hashCode(this.incrementNanos) * 31
+				+ Long.hashCode(this.delayNanos);
+	}
+
+	/**
+	 * Returns the time control in the form parse(String text) reads.
+	 */
+	@Override
+	public String toString() {
+		return TimeControl.toSeconds(this.baseNanos)
+				+ (this.incrementNanos > 0 ? "+" + TimeControl.toSeconds(this.incrementNanos) : "")
+				+ (this.delayNanos > 0 ? "d" + TimeControl.toSeconds(this.delayNanos) : "");
+	}
+
+	private static String toSeconds(long nanos) {
+		return nanos % NANOS_PER_SECOND == 0 ? Long.toString(nanos / NANOS_PER_SECOND) :
+			Double.toString((double) nanos / NANOS_PER_SECOND);
+	}
+}
@@ -0,0 +1,149 @@
+package application.model;
+
+import static application.model.Piece.*;
+import static application.model.PieceColor.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Zobrist class computes a 64-bit hash of a position. Two positions
+ * that are the same for the purposes of threefold repetition (same
+ * pieces on the same squares, same side to move, same castling rights
+ * and same en passant capture) always hash to the same key.
+ *
+ * The layout of the key table follows the Polyglot opening book format:
+ * 768 keys for each (piece, square) pair, 4 keys for castling rights,
+ * 8 keys for the en passant file and 1 key for White to move. A table
+ * with Polyglot's own Random64 values may be loaded with
+ * Zobrist.load(InputStream) so that keys match Polyglot books exactly.
+ * @see https://www.chessprogramming.org/Zobrist_Hashing
+ * @see http://hgm.nubati.net/book_format.html
+ */
+public class Zobrist {
+
+	public static final int KEY_COUNT = 781;
+	private static final int CASTLING_OFFSET = 768,
+							 EN_PASSANT_OFFSET = 772,
+							 TURN_OFFSET = 780;
+
+	/**
+	 * Keys generated from a fixed seed. These are stable between runs,
+	 * so hashes may be stored on disk.
+	 */
+	public static final Zobrist DEFAULT = new Zobrist(Zobrist.generateKeys(0x43484553534b4559L));
+
+	private final long[] keys;
+
+	public Zobrist(long[] keys) {
+		if(keys.length != KEY_COUNT) {
+			throw new IllegalArgumentException("Expected " + KEY_COUNT + " keys, got " + keys.length);
+		}
+		this.keys = keys.clone();
+	}
+
+	/**
+	 * Reads a key table of 781 big-endian 64-bit values, in the
+	 * same order as Polyglot's Random64 array.
+	 * @param in The stream to read the keys from.
+	 * @return A Zobrist hasher using the keys read.
+	 * @throws IOException If the stream ends early or cannot be read.
+	 */
+	public static Zobrist load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		long[] keys = new long[KEY_COUNT];
+		for(int i=0; i<keys.length; i++) {
+			keys[i] = data.readLong();
+		}
+		return new Zobrist(keys);
+	}
+
+	/**
+	 * Generates a table of keys using the SplitMix64 generator.
+	 * @param seed The seed for the generator.
+	 * @return A table of 781 keys.
+	 */
+	private static long[] generateKeys(long seed) {
+		long[] keys = new long[KEY_COUNT];
+		for(int i=0; i<keys.length; i++) {
+			long z = (seed += 0x9e3779b97f4a7c15L);
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			keys[i] = z ^ (z >>> 31);
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the hash of the current position of a game.
+	 * @param game The game to hash.
+	 * @return The 64-bit hash of the game's current position.
+	 */
+	public long hash(Game game) {
+		long key = 0;
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				Piece piece = game.getPieceAt(r, c);
+				if(piece != null) {
+					key ^= this.getPieceKey(piece, r, c);
+				}
+			}
+		}
+
+		if(game.whiteCanCastleKingside()) key ^= this.keys[CASTLING_OFFSET];
+		if(game.whiteCanCastleQueenside()) key ^= this.keys[CASTLING_OFFSET + 1];
+		if(game.blackCanCastleKingside()) key ^= this.keys[CASTLING_OFFSET + 2];
+		if(game.blackCanCastleQueenside()) key ^= this.keys[CASTLING_OFFSET + 3];
+
+		/*
+		 * The en passant file is only hashed if a pawn of the side to
+		 * move actually stands next to the pawn that just moved.
+		 */
+		Coordinate enPassant = game.getEnPassantTargetSquare();
+		if(enPassant != null) {
+			Piece capturingPawn = game.getTurn() == WHITE ? WHITE_PAWN : BLACK_PAWN;
+			int pawnRow = enPassant.getRow() + (game.getTurn() == WHITE ? 1 : -1);
+			if(game.getPieceAt(pawnRow, enPassant.getCol() - 1) == capturingPawn ||
+					game.getPieceAt(pawnRow, enPassant.getCol() + 1) == capturingPawn) {
+				key ^= this.keys[EN_PASSANT_OFFSET + enPassant.getCol()];
+			}
+		}
+
+		if(game.getTurn() == WHITE) {
+			key ^= this.keys[TURN_OFFSET];
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the key for a piece standing on a square.
+	 * @param piece The piece.
+	 * @param row The row the piece sits on. 0 is the top row (rank 8).
+	 * @param col The col the piece sits on. 0 is the a-file.
+	 * @return The key for the piece on the square.
+	 */
+	public long getPieceKey(Piece piece, int row, int col) {
+		return this.keys[64 * Zobrist.getPieceKind(piece) + 8 * (Game.BOARD_ROWS - 1 - row) + col];
+	}
+
+	/**
+	 * Returns the Polyglot "kind" of a piece: black pawn is 0,
+	 * white pawn is 1, black knight is 2, and so on up to
+	 * white king, which is 11.
+	 * @param piece The piece.
+	 * @return The Polyglot kind of the piece.
+	 */
+	private static int getPieceKind(Piece piece) {
+		int kind;
+		switch(piece) {
+		case WHITE_PAWN: case BLACK_PAWN: kind = 0; break;
+		case WHITE_KNIGHT: case BLACK_KNIGHT: kind = 2; break;
+		case WHITE_BISHOP: case BLACK_BISHOP: kind = 4; break;
+		case WHITE_ROOK: case BLACK_ROOK: kind = 6; break;
+		case WHITE_QUEEN: case BLACK_QUEEN: kind = 8; break;
+		default: kind = 10; break;
+		}
+		return kind + (piece.getColor() == WHITE ? 1 : 0);
+	}
+}
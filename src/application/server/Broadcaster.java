@@ -0,0 +1,545 @@
+package application.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import application.event.Flow;
+import application.event.GameEvent;
+import application.log.GameLog;
+import application.log.LogLevel;
+import application.model.Game;
+import application.model.Move;
+import application.model.PieceColor;
+import application.model.Position;
+
+/**
+ * The Broadcaster class sends the moves of games to spectators. Each game
+ * being watched is subscribed to through Game.getEvents(), and its moves
+ * are encoded as small binary frames:
+ *
+ *   DELTA     1 byte type, 2 bytes move (from square | to square << 6,
+ *             where square = row * 8 + col)
+ *   KEYFRAME  1 byte type, 2 bytes length, the FEN in ASCII
+ *   END       1 byte type, 1 byte result (END_WHITE_WINS, END_BLACK_WINS
+ *             or END_DRAW)
+ *
+ * A spectator is first sent a KEYFRAME of the current position and then
+ * a DELTA per ply, with a KEYFRAME every KEYFRAME_INTERVAL plies and
+ * whenever the position is loaded or a move is undone.
+ * When the game's events are closed (Game.closeEvents()), its spectators
+ * are sent the last frames and disconnected.
+ *
+ * Frames are not written as they happen. They are collected per game and,
+ * every flush interval, one thread writes each game's new frames to all
+ * its spectators as one shared buffer, with a gathering write per
+ * spectator of everything it has not yet taken. Sockets are non-blocking,
+ * so a slow spectator never holds up the others: its frames wait in its
+ * own queue, and if that grows past the backlog limit it is resynced by
+ * replacing the queue with a single KEYFRAME of the latest position. A
+ * spectator which has taken nothing at all since its last resync is
+ * dropped.
+ */
+public class Broadcaster implements Closeable {
+
+	public static final byte DELTA = 1,
+							 KEYFRAME = 2,
+							 END = 3;
+	public static final byte END_WHITE_WINS = 0,
+							 END_BLACK_WINS = 1,
+							 END_DRAW = 2;
+	public static final int KEYFRAME_INTERVAL = 32;
+	public static final long DEFAULT_FLUSH_MILLIS = 50;
+	public static final int DEFAULT_MAX_BACKLOG_BYTES = 64 * 1024;
+	// the most buffers handed to one gathering write
+	private static final int MAX_GATHER = 64;
+
+	private final int maxBacklogBytes;
+	// guarded by itself
+	private final Map<Long, GameChannel> channels = new HashMap<>();
+	private final ScheduledExecutorService flusher;
+	private final LongAdder messagesSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder resyncs = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	public Broadcaster() {
+		this(DEFAULT_FLUSH_MILLIS, DEFAULT_MAX_BACKLOG_BYTES);
+	}
+
+	/**
+	 * Creates a broadcaster and starts its flush thread.
+	 * @param flushMillis How often frames are written to spectators.
+	 * @param maxBacklogBytes The most bytes queued for one spectator
+	 * before it is resynced.
+	 */
+	public Broadcaster(long flushMillis, int maxBacklogBytes) {
+		this.maxBacklogBytes = maxBacklogBytes;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "broadcast");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.flusher.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				Broadcaster.this.flush();
+			}
+		}, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Adds a spectator to a game. The channel is made non-blocking and is
+	 * only written to by the broadcaster from now on, until it is closed.
+	 * Must be called while holding the lock the game's moves are played
+	 * under (its GameSession), so that no move is played between taking
+	 * the position and subscribing.
+	 * @param id The id of the game.
+	 * @param game The game.
+	 * @param channel The spectator's connection.
+	 * @throws IOException If the channel cannot be made non-blocking.
+	 */
+	public void watch(long id, Game game, SocketChannel channel) throws IOException {
+		channel.configureBlocking(false);
+		GameChannel gameChannel;
+		synchronized(this.channels) {
+			gameChannel = this.channels.get(id);
+			if(gameChannel == null) {
+				gameChannel = new GameChannel(game.getPosition());
+				game.getEvents().subscribe(gameChannel);
+				this.channels.put(id, gameChannel);
+			}
+			gameChannel.join(new Spectator(channel));
+		}
+	}
+
+	/**
+	 * Runs on the flush thread: writes every game's new frames.
+	 */
+	private void flush() {
+		List<GameChannel> channels;
+		synchronized(this.channels) {
+			channels = new ArrayList<>(this.channels.values());
+		}
+		for(GameChannel channel : channels) {
+			try {
+				if(channel.flush()) {
+					// nobody is watching: stop listening to the game
+					synchronized(this.channels) {
+						if(channel.endIfIdle()) {
+							this.channels.values().remove(channel);
+						}
+					}
+				}
+			}
+			catch(RuntimeException e) {
+				// an exception would stop all later flushes
+				GameLog.log(LogLevel.WARN, "broadcast-failed", "error", e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of games being watched.
+	 * @return The number of games.
+	 */
+	public int getGameCount() {
+		synchronized(this.channels) {
+			return this.channels.size();
+		}
+	}
+
+	/**
+	 * Gets the number of spectators connected, over all games.
+	 * @return The number of spectators.
+	 */
+	public int getSpectatorCount() {
+		int count = 0;
+		synchronized(this.channels) {
+			for(GameChannel channel : this.channels.values()) {
+				count += channel.spectatorCount;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the number of frames written to spectators, counting a frame
+	 * once per spectator.
+	 * @return The number of frames sent.
+	 */
+	public long getMessagesSent() {
+		return this.messagesSent.sum();
+	}
+
+	/**
+	 * Gets the number of bytes written to spectators.
+	 * @return The number of bytes sent.
+	 */
+	public long getBytesSent() {
+		return this.bytesSent.sum();
+	}
+
+	/**
+	 * Gets the number of times a spectator fell too far behind and was
+	 * sent a KEYFRAME in place of its queued frames.
+	 * @return The number of resyncs.
+	 */
+	public long getResyncs() {
+		return this.resyncs.sum();
+	}
+
+	/**
+	 * Gets the number of spectators disconnected for not keeping up, or
+	 * because writing to them failed.
+	 * @return The number of spectators dropped.
+	 */
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "games=" + this.getGameCount() + " spectators=" + this.getSpectatorCount()
+				+ " messages=" + this.getMessagesSent() + " bytes=" + this.getBytesSent()
+				+ " resyncs=" + this.getResyncs() + " dropped=" + this.getDropped();
+	}
+
+	/**
+	 * Stops the flush thread and disconnects every spectator.
+	 */
+	@Override
+	public void close() {
+		this.flusher.shutdownNow();
+		synchronized(this.channels) {
+			for(GameChannel channel : this.channels.values()) {
+				channel.end();
+				channel.closeAll();
+			}
+			this.channels.clear();
+		}
+	}
+
+	/**
+	 * Encodes a move as a DELTA frame.
+	 * @param out Where to write the frame.
+	 * @param move The move.
+	 */
+	static void writeDelta(ByteArrayOutputStream out, Move move) {
+		int encoded = move.getFromRow() * Game.BOARD_COLS + move.getFromCol()
+				| (move.getToRow() * Game.BOARD_COLS + move.getToCol()) << 6;
+		out.write(DELTA);
+		out.write(encoded >>> 8);
+		out.write(encoded);
+	}
+
+	/**
+	 * Encodes a position as a KEYFRAME frame.
+	 * @param out Where to write the frame.
+	 * @param position The position.
+	 */
+	static void writeKeyframe(ByteArrayOutputStream out, Position position) {
+		byte[] fen = position.getFEN().getBytes(StandardCharsets.US_ASCII);
+		out.write(KEYFRAME);
+		out.write(fen.length >>> 8);
+		out.write(fen.length);
+		out.write(fen, 0, fen.length);
+	}
+
+	/**
+	 * The frames and spectators of one game. Events arrive on the game's
+	 * event threads and are only encoded into the pending frames; the
+	 * spectators are only touched by the flush thread.
+	 */
+	private class GameChannel implements Flow.Subscriber<GameEvent> {
+
+		// guarded by this
+		private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+		private int pendingFrames;
+		private Position latest;
+		private int pliesSinceKeyframe;
+		private final List<Spectator> joining = new ArrayList<>();
+		private boolean ended;
+		private Flow.Subscription subscription;
+
+		// only used by the flush thread
+		private final List<Spectator> spectators = new ArrayList<>();
+		private volatile int spectatorCount;
+
+		private GameChannel(Position position) {
+			this.latest = position;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			synchronized(this) {
+				this.subscription = subscription;
+			}
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public synchronized void onNext(GameEvent event) {
+			if(this.ended) {
+				return;
+			}
+			switch(event.getType()) {
+			case MOVE:
+				Broadcaster.writeDelta(this.pending, event.getMove());
+				this.pendingFrames++;
+				this.latest = event.getPosition();
+				if(++this.pliesSinceKeyframe >= KEYFRAME_INTERVAL) {
+					this.keyframe(event.getPosition());
+				}
+				break;
+			case RESET:
+				this.latest = event.getPosition();
+				this.keyframe(event.getPosition());
+				break;
+			case GAME_OVER:
+				this.pending.write(END);
+				this.pending.write(GameEvent.DRAW.equals(event.getResult()) ? END_DRAW :
+					event.getPosition().getTurn() == PieceColor.WHITE ? END_BLACK_WINS : END_WHITE_WINS);
+				this.pendingFrames++;
+				break;
+			default:
+				// captures and checks can be worked out from the moves
+				break;
+			}
+		}
+
+		private void keyframe(Position position) {
+			Broadcaster.writeKeyframe(this.pending, position);
+			this.pendingFrames++;
+			this.pliesSinceKeyframe = 0;
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			GameLog.log(LogLevel.WARN, "broadcast-events-failed", "error", error);
+			this.end();
+		}
+
+		@Override
+		public void onComplete() {
+			this.end();
+		}
+
+		private synchronized void join(Spectator spectator) {
+			if(this.ended) {
+				spectator.close();
+				return;
+			}
+			this.joining.add(spectator);
+		}
+
+		/**
+		 * Ends the channel if it has no spectators and none waiting to join.
+		 * Called with the broadcaster's channels locked, so none can join.
+		 * @return true if the channel has ended.
+		 */
+		private boolean endIfIdle() {
+			synchronized(this) {
+				if(!this.joining.isEmpty() || this.spectatorCount > 0) {
+					return false;
+				}
+			}
+			this.end();
+			return true;
+		}
+
+		private void end() {
+			Flow.Subscription subscription;
+			synchronized(this) {
+				this.ended = true;
+				subscription = this.subscription;
+			}
+			if(subscription != null) {
+				subscription.cancel();
+			}
+		}
+
+		/**
+		 * Runs on the flush thread: hands the frames made since the last
+		 * flush to every spectator, and a KEYFRAME of the latest position to
+		 * those who have just joined, then writes to them all.
+		 * @return true if the game has no spectators left.
+		 */
+		private boolean flush() {
+			ByteBuffer batch = null;
+			int frames;
+			Position latest;
+			List<Spectator> joined;
+			boolean ended;
+			synchronized(this) {
+				if(this.pending.size() > 0) {
+					batch = ByteBuffer.wrap(this.pending.toByteArray()).asReadOnlyBuffer();
+					this.pending.reset();
+				}
+				frames = this.pendingFrames;
+				this.pendingFrames = 0;
+				latest = this.latest;
+				joined = new ArrayList<>(this.joining);
+				this.joining.clear();
+				ended = this.ended;
+			}
+
+			ByteBuffer keyframe = null;
+			if(batch != null) {
+				for(Spectator spectator : this.spectators) {
+					// the spectators share the batch's bytes, each with its own position
+					spectator.enqueue(batch.duplicate(), frames);
+				}
+			}
+			if(!joined.isEmpty()) {
+				keyframe = Broadcaster.this.keyframeBuffer(latest);
+				for(Spectator spectator : joined) {
+					spectator.enqueue(keyframe.duplicate(), 1);
+					this.spectators.add(spectator);
+				}
+			}
+
+			for(Iterator<Spectator> i = this.spectators.iterator(); i.hasNext();) {
+				Spectator spectator = i.next();
+				boolean open = spectator.write();
+				if(open && spectator.queuedBytes > Broadcaster.this.maxBacklogBytes) {
+					if(keyframe == null) {
+						keyframe = Broadcaster.this.keyframeBuffer(latest);
+					}
+					open = spectator.resync(keyframe.duplicate());
+				}
+				if(!open || ended && spectator.queuedBytes == 0) {
+					spectator.close();
+					i.remove();
+				}
+			}
+			this.spectatorCount = this.spectators.size();
+			return this.spectators.isEmpty();
+		}
+
+		private void closeAll() {
+			for(Spectator spectator : this.spectators) {
+				spectator.close();
+			}
+			this.spectators.clear();
+			this.spectatorCount = 0;
+		}
+	}
+
+	private ByteBuffer keyframeBuffer(Position position) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(96);
+		Broadcaster.writeKeyframe(out, position);
+		return ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * One spectator's connection and the frames it has not yet taken. Only
+	 * used by the flush thread.
+	 */
+	private class Spectator {
+
+		private final SocketChannel channel;
+		private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+		private final ArrayDeque<Integer> queueFrames = new ArrayDeque<>();
+		private int queuedBytes;
+		private boolean resynced;
+		private boolean progressed;
+
+		private Spectator(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		private void enqueue(ByteBuffer buffer, int frames) {
+			this.queue.add(buffer);
+			this.queueFrames.add(frames);
+			this.queuedBytes += buffer.remaining();
+		}
+
+		/**
+		 * Writes as much of the queue as the socket will take without
+		 * blocking, in one gathering write.
+		 * @return false if the connection has failed.
+		 */
+		private boolean write() {
+			if(this.queue.isEmpty()) {
+				return true;
+			}
+			ByteBuffer[] buffers = new ByteBuffer[Math.min(this.queue.size(), MAX_GATHER)];
+			Iterator<ByteBuffer> queued = this.queue.iterator();
+			for(int i=0; i<buffers.length; i++) {
+				buffers[i] = queued.next();
+			}
+			long written;
+			try {
+				written = this.channel.write(buffers);
+			}
+			catch(IOException e) {
+				Broadcaster.this.dropped.increment();
+				return false;
+			}
+			if(written > 0) {
+				this.progressed = true;
+			}
+			this.queuedBytes -= written;
+			Broadcaster.this.bytesSent.add(written);
+			while(!this.queue.isEmpty() && !this.queue.peek().hasRemaining()) {
+				this.queue.poll();
+				Broadcaster.this.messagesSent.add(this.queueFrames.poll());
+			}
+			return true;
+		}
+
+		/**
+		 * Replaces the queue with a KEYFRAME, or gives up on the spectator if
+		 * it has taken nothing since it was last resynced.
+		 * @return false if the spectator should be dropped.
+		 */
+		private boolean resync(ByteBuffer keyframe) {
+			if(this.resynced && !this.progressed) {
+				Broadcaster.this.dropped.increment();
+				return false;
+			}
+			// a frame partly written must be finished, or the stream is corrupted
+			ByteBuffer partial = this.queue.peek();
+			boolean keepPartial = partial.position() > 0;
+			int partialFrames = this.queueFrames.peek();
+			this.queue.clear();
+			this.queueFrames.clear();
+			this.queuedBytes = 0;
+			if(keepPartial) {
+				this.enqueue(partial, partialFrames);
+			}
+			this.enqueue(keyframe, 1);
+			this.resynced = true;
+			this.progressed = false;
+			Broadcaster.this.resyncs.increment();
+			return true;
+		}
+
+		private void close() {
+			try {
+				this.channel.close();
+			}
+			catch(IOException e) {
+				// already gone
+			}
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package application.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import application.model.ChessClock;
+import application.model.Game;
+import application.model.MoveHistory;
+import application.model.PieceColor;
+import application.model.TimeControl;
+import application.util.LatencyStats;
+
+/**
+ * The GameArchive class keeps games evicted from memory by a
+ * GameScheduler, one small file per game, until they are used again.
+ *
+ * A game is stored compactly: its starting position packed into
+ * MoveHistory.SNAPSHOT_BYTES bytes, the players' names, the result if it
+ * is over, its clock, and every move in 2 bytes. Loading a game unpacks
+ * the starting position and replays the moves, which rebuilds its whole
+ * history (so threefold repetition still counts positions from before it
+ * was evicted). A typical 80-ply game takes about 230 bytes.
+ *
+ * Each file ends with a CRC, and is written to a temporary file, forced
+ * to disk and then renamed over the old one, so a crash leaves either the
+ * old or the new file, never half of one.
+ */
+public class GameArchive {
+
+	private static final int MAGIC = 0x43484741; // "CHGA"
+	private static final byte VERSION = 1;
+	private static final String FILE_PREFIX = "game-",
+								FILE_SUFFIX = ".bin",
+								TEMP_SUFFIX = ".tmp";
+
+	private final File directory;
+	private final LatencyStats loadStats = new LatencyStats();
+	private final AtomicLong saves = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	/**
+	 * Opens an archive in a directory.
+	 * @param directory The directory, which is made if it does not exist.
+	 * @throws IOException If the directory cannot be made.
+	 */
+	public GameArchive(File directory) throws IOException {
+		this.directory = directory;
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot make " + directory);
+		}
+	}
+
+	/**
+	 * Gets the ids of the games in the archive, e.g. when a server starts.
+	 * @return The ids.
+	 */
+	public List<Long> getIds() {
+		List<Long> ids = new ArrayList<>();
+		File[] files = this.directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				String name = file.getName();
+				if(name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+					try {
+						ids.add(Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+					}
+					catch(NumberFormatException e) {
+						// not a game
+					}
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Saves a session's game. Called with the session's lock held.
+	 */
+	void save(GameSession session) throws IOException {
+		Game game = session.getResidentGame();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + session.getPlies() * 2);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.write(session.getStart());
+		out.writeUTF(game.getWhiteName());
+		out.writeUTF(game.getBlackName());
+		String result = session.getResult();
+		out.writeBoolean(result != null);
+		if(result != null) {
+			out.writeUTF(result);
+			out.writeUTF(session.getReason());
+		}
+		ChessClock clock = game.getClock();
+		out.writeBoolean(clock != null);
+		if(clock != null) {
+			TimeControl control = clock.getTimeControl();
+			out.writeLong(control.getBaseNanos());
+			out.writeLong(control.getIncrementNanos());
+			out.writeLong(control.getDelayNanos());
+			out.writeLong(clock.getRemainingNanos(PieceColor.WHITE));
+			out.writeLong(clock.getRemainingNanos(PieceColor.BLACK));
+			PieceColor flagged = clock.getFlagged();
+			out.writeByte(flagged == null ? 0 : flagged == PieceColor.WHITE ? 1 : 2);
+		}
+		short[] moves = session.getMoves();
+		out.writeInt(session.getPlies());
+		for(int i=0; i<session.getPlies(); i++) {
+			out.writeShort(moves[i]);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		out.flush();
+
+		File file = this.getFile(session.getId());
+		File temp = new File(this.directory, file.getName() + TEMP_SUFFIX);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.saves.incrementAndGet();
+		this.bytesWritten.addAndGet(bytes.size());
+	}
+
+	/**
+	 * Loads a session's game back into it. Called with the session's lock
+	 * held. The game's clock is stopped, as it was when it was saved.
+	 */
+	void load(GameSession session) throws IOException {
+		long startNanos = System.nanoTime();
+		byte[] bytes = Files.readAllBytes(this.getFile(session.getId()).toPath());
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		if(bytes.length < 4 + 1 + MoveHistory.SNAPSHOT_BYTES + 4 || in.readInt() != MAGIC || in.readByte() != VERSION
+				|| ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt() != (int) crc.getValue()) {
+			throw new IOException("bad archive file for game " + session.getId());
+		}
+		byte[] start = new byte[MoveHistory.SNAPSHOT_BYTES];
+		in.readFully(start);
+		String whiteName = in.readUTF(),
+			   blackName = in.readUTF();
+		String result = null,
+			   reason = null;
+		if(in.readBoolean()) {
+			result = in.readUTF();
+			reason = in.readUTF();
+		}
+		ChessClock clock = null;
+		if(in.readBoolean()) {
+			TimeControl control = new TimeControl(in.readLong(), in.readLong(), in.readLong());
+			long whiteNanos = in.readLong(),
+				 blackNanos = in.readLong();
+			byte flagged = in.readByte();
+			clock = ChessClock.restore(control, whiteNanos, blackNanos,
+					flagged == 1 ? PieceColor.WHITE : flagged == 2 ? PieceColor.BLACK : null);
+		}
+		int plies = in.readInt();
+		short[] moves = new short[Math.max(16, plies)];
+		for(int i=0; i<plies; i++) {
+			moves[i] = in.readShort();
+		}
+
+		Game game;
+		try {
+			game = new Game(whiteName, blackName);
+		}
+		catch(Exception e) {
+			// the starting position is always legal
+			throw new IllegalStateException(e);
+		}
+		MoveHistory.decode(start, game);
+		// the moves were legal when they were played, so are not checked
+		for(int i=0; i<plies; i++) {
+			game.pushMove(GameSession.unpack(moves[i]));
+		}
+		// attached afterwards, so that replaying does not charge it
+		game.setClock(clock);
+		session.restore(game, start, moves, plies, result, reason);
+		this.loadStats.recordSince(startNanos);
+	}
+
+	/**
+	 * Deletes a game from the archive, e.g. once it is ended.
+	 * @param id The id of the game.
+	 */
+	public void delete(long id) {
+		this.getFile(id).delete();
+	}
+
+	private File getFile(long id) {
+		return new File(this.directory, FILE_PREFIX + id + FILE_SUFFIX);
+	}
+
+	/**
+	 * Gets the time taken to load each game back into memory.
+	 * @return The load timings.
+	 */
+	public LatencyStats getLoadStats() {
+		return this.loadStats;
+	}
+
+	/**
+	 * Gets the number of games saved.
+	 * @return The number of saves.
+	 */
+	public long getSaves() {
+		return this.saves.get();
+	}
+
+	/**
+	 * Gets the number of bytes saved.
+	 * @return The number of bytes.
+	 */
+	public long getBytesWritten() {
+		return this.bytesWritten.get();
+	}
+}
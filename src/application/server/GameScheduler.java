@@ -0,0 +1,612 @@
+package application.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import application.engine.Tablebase;
+import application.event.GameEvent;
+import application.journal.MoveJournal;
+import application.log.GameLog;
+import application.log.LogLevel;
+import application.model.ChessClock;
+import application.model.Game;
+import application.model.PieceColor;
+import application.model.TimeControl;
+import application.util.LatencyStats;
+
+/**
+ * The GameScheduler class runs the lifecycle of a GameServer's games:
+ * it pairs players who are seeking a game, ends games which are over,
+ * and keeps the memory taken by games bounded by evicting them to the
+ * GameTable's GameArchive.
+ *
+ * Players seek a game with a time control and are paired first come,
+ * first served with the longest waiting player seeking the same one, who
+ * plays White.
+ *
+ * A game is adjudicated after every move and when a flag falls. Checkmate,
+ * stalemate, insufficient material and running out of time end it at
+ * once; threefold repetition and the fifty-move rule only end it when a
+ * player claims the draw, as in over-the-board play. If a Tablebase is
+ * set, a game reaching a position it has as drawn also ends at once, as
+ * neither side can win it. A won position is played out, as a player
+ * may still fail to win it.
+ *
+ * Every second a sweep evicts games which are over, and games not used for
+ * the idle time, then, while the games in memory are estimated to take
+ * more than the size limit, the least recently used. Using a game only
+ * stamps its session with the time, so recency is taken from the stamps
+ * at each sweep rather than kept in a list every use would have to lock.
+ * A game whose clock is running, or which has spectators, is never
+ * evicted. An evicted game is loaded again the next time it is used.
+ */
+public class GameScheduler implements Closeable {
+
+	public static final long DEFAULT_MAX_RESIDENT_BYTES = 64L * 1024 * 1024;
+	public static final long DEFAULT_IDLE_MILLIS = 10 * 60 * 1000;
+	public static final long SWEEP_MILLIS = 1000;
+
+	/**
+	 * Starts the games made by pairing players, e.g. by saving them and
+	 * starting their clocks.
+	 */
+	public interface Starter {
+		/**
+		 * Called once for each game made, holding its session's lock,
+		 * before either player is told of it.
+		 * @param session The game's session.
+		 * @param game The game.
+		 * @throws IOException If the game cannot be started, in which case
+		 * both players are told so.
+		 */
+		void started(GameSession session, Game game) throws IOException;
+	}
+
+	/**
+	 * A player's seat in a game made by pairing.
+	 */
+	public static final class Seat {
+
+		private final GameSession session;
+		private final PieceColor color;
+		private final String opponent;
+
+		private Seat(GameSession session, PieceColor color, String opponent) {
+			this.session = session;
+			this.color = color;
+			this.opponent = opponent;
+		}
+
+		/**
+		 * Gets the game's session.
+		 * @return The session.
+		 */
+		public GameSession getSession() {
+			return this.session;
+		}
+
+		/**
+		 * Gets the side the player plays.
+		 * @return The player's color.
+		 */
+		public PieceColor getColor() {
+			return this.color;
+		}
+
+		/**
+		 * Gets the name of the other player.
+		 * @return The opponent's name.
+		 */
+		public String getOpponent() {
+			return this.opponent;
+		}
+	}
+
+	/**
+	 * A player waiting to be paired.
+	 */
+	private static class Seek {
+		private final String player;
+		// guarded by this
+		private Seat seat;
+		private IOException failure;
+
+		private Seek(String player) {
+			this.player = player;
+		}
+	}
+
+	private final GameTable games;
+	private final MoveJournal journal;
+	private volatile long maxResidentBytes = DEFAULT_MAX_RESIDENT_BYTES;
+	private volatile long idleMillis = DEFAULT_IDLE_MILLIS;
+	private volatile Starter starter;
+	private volatile Tablebase tablebase;
+	// the players waiting, by time control (null for untimed games)
+	private final Map<TimeControl, ArrayDeque<Seek>> seeks = new HashMap<>();
+	private final ScheduledExecutorService sweeper;
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong evictionFailures = new AtomicLong();
+	private final AtomicLong matches = new AtomicLong();
+	private final AtomicLong adjudications = new AtomicLong();
+
+	/**
+	 * Creates a scheduler for a table of games. Call start() to begin
+	 * evicting games.
+	 * @param games The games.
+	 * @param journal The journal the games are saved in, which is told
+	 * when a game is evicted so that it need not keep it, or null.
+	 */
+	public GameScheduler(GameTable games, MoveJournal journal) {
+		this.games = games;
+		this.journal = journal;
+		this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "game-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts sweeping for games to evict every SWEEP_MILLIS, if the table
+	 * has an archive to evict them to.
+	 */
+	public void start() {
+		if(this.games.getArchive() == null) {
+			return;
+		}
+		this.sweeper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					GameScheduler.this.sweep();
+				}
+				catch(RuntimeException e) {
+					GameLog.log(LogLevel.ERROR, "sweep-failed", "error", e);
+				}
+			}
+		}, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets what starts the games made by pairing players.
+	 * @param starter The starter, or null.
+	 */
+	public void setStarter(Starter starter) {
+		this.starter = starter;
+	}
+
+	/**
+	 * Sets roughly how much memory the games in memory may take before the
+	 * least recently used are evicted.
+	 * @param maxResidentBytes The size limit, in bytes.
+	 */
+	public void setMaxResidentBytes(long maxResidentBytes) {
+		this.maxResidentBytes = maxResidentBytes;
+	}
+
+	/**
+	 * Sets the tablebase which ends games reaching drawn positions.
+	 * @param tablebase The tablebase, or null.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Sets how long a game may go unused before it is evicted.
+	 * @param idleMillis The idle time, in milliseconds.
+	 */
+	public void setIdleMillis(long idleMillis) {
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Seeks a game, waiting until another player seeking the same time
+	 * control is found. The player who was waiting plays White.
+	 * @param player The player's name.
+	 * @param control The time control, or null for an untimed game.
+	 * @param timeoutMillis How long to wait for an opponent.
+	 * @return The player's seat in the new game, or null if no opponent
+	 * was found in time.
+	 * @throws IOException If the game could not be started, or the
+	 * thread was interrupted.
+	 */
+	public Seat seek(String player, TimeControl control, long timeoutMillis) throws IOException {
+		Seek opponent = null;
+		Seek seek = null;
+		synchronized(this.seeks) {
+			ArrayDeque<Seek> waiting = this.seeks.get(control);
+			if(waiting != null) {
+				for(Iterator<Seek> i = waiting.iterator(); i.hasNext();) {
+					Seek other = i.next();
+					if(!other.player.equals(player)) {
+						i.remove();
+						opponent = other;
+						break;
+					}
+				}
+			}
+			if(opponent == null) {
+				if(waiting == null) {
+					waiting = new ArrayDeque<>();
+					this.seeks.put(control, waiting);
+				}
+				seek = new Seek(player);
+				waiting.add(seek);
+			}
+		}
+		if(opponent != null) {
+			return this.pair(opponent, player, control);
+		}
+		return this.await(seek, control, timeoutMillis);
+	}
+
+	/**
+	 * Makes the game between a waiting player and the one who found them,
+	 * and tells the waiting player.
+	 */
+	private Seat pair(Seek waiting, String player, TimeControl control) throws IOException {
+		GameSession session = null;
+		IOException failure = null;
+		try {
+			session = this.newGame(waiting.player, player, control);
+		}
+		catch(IOException e) {
+			failure = e;
+		}
+		synchronized(waiting) {
+			waiting.failure = failure;
+			waiting.seat = session == null ? null : new Seat(session, PieceColor.WHITE, player);
+			waiting.notifyAll();
+		}
+		if(failure != null) {
+			throw failure;
+		}
+		this.matches.incrementAndGet();
+		return new Seat(session, PieceColor.BLACK, waiting.player);
+	}
+
+	private GameSession newGame(String white, String black, TimeControl control) throws IOException {
+		Game game;
+		try {
+			game = new Game(white, black);
+		}
+		catch(Exception e) {
+			// the starting position is always legal
+			throw new IllegalStateException(e);
+		}
+		if(control != null) {
+			game.setClock(new ChessClock(control));
+		}
+		GameSession session = this.games.add(game);
+		Starter starter = this.starter;
+		if(starter != null) {
+			synchronized(session) {
+				try {
+					starter.started(session, game);
+				}
+				catch(IOException e) {
+					this.games.remove(session.getId());
+					throw e;
+				}
+			}
+		}
+		return session;
+	}
+
+	/**
+	 * Waits for a seek to be paired, or withdraws it once the time is up.
+	 */
+	private Seat await(Seek seek, TimeControl control, long timeoutMillis) throws IOException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		boolean paired = false;
+		synchronized(seek) {
+			try {
+				long nanos;
+				while(seek.seat == null && seek.failure == null && (nanos = deadline - System.nanoTime()) > 0) {
+					TimeUnit.NANOSECONDS.timedWait(seek, nanos);
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			paired = seek.seat != null || seek.failure != null;
+		}
+		if(!paired) {
+			synchronized(this.seeks) {
+				ArrayDeque<Seek> waiting = this.seeks.get(control);
+				if(waiting != null && waiting.remove(seek)) {
+					if(waiting.isEmpty()) {
+						this.seeks.remove(control);
+					}
+					if(Thread.currentThread().isInterrupted()) {
+						throw new InterruptedIOException();
+					}
+					return null;
+				}
+			}
+			// taken by an opponent as the time ran out, so the game is about to be made
+			synchronized(seek) {
+				while(seek.seat == null && seek.failure == null) {
+					try {
+						seek.wait();
+					}
+					catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+		if(seek.failure != null) {
+			throw seek.failure;
+		}
+		return seek.seat;
+	}
+
+	/**
+	 * Gets the number of players waiting to be paired.
+	 * @return The number of players waiting.
+	 */
+	public int getWaitingCount() {
+		synchronized(this.seeks) {
+			int count = 0;
+			for(ArrayDeque<Seek> waiting : this.seeks.values()) {
+				count += waiting.size();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Ends a game if it is over: by checkmate, stalemate, insufficient
+	 * material, a tablebase draw or a fallen flag. Called holding the session's lock after
+	 * each move and when a flag falls. A game which ends has its clock
+	 * stopped.
+	 * @param session The game's session.
+	 * @param game The game.
+	 * @return The result, e.g. GameEvent.CHECKMATE, or null if the game is
+	 * not over.
+	 */
+	public String adjudicate(GameSession session, Game game) {
+		if(session.getResult() != null) {
+			return session.getResult();
+		}
+		String result = null,
+			   reason = null;
+		if(game.isFlagFall()) {
+			PieceColor loser = game.getClock().getFlagged();
+			boolean draw = game.hasOnlyKing(loser.invert());
+			result = draw ? GameEvent.DRAW : GameEvent.TIME_FORFEIT;
+			reason = loser.toString().toLowerCase() + " ran out of time" + (draw ? " against a lone king" : "");
+		} else if(!game.hasLegalMoves()) {
+			// as Game.isCheckmate() and Game.isStalemate(), for the side to move
+			boolean checkmate = game.isInCheck(game.getTurn());
+			result = checkmate ? GameEvent.CHECKMATE : GameEvent.DRAW;
+			reason = checkmate ? "checkmate" : "stalemate";
+		} else if(game.isInsufficientMaterial()) {
+			result = GameEvent.DRAW;
+			reason = "insufficient material";
+		} else if(this.tablebase != null && this.tablebase.canProbe(game) && this.tablebase.probeWDL(game) == 0) {
+			result = GameEvent.DRAW;
+			reason = "tablebase draw";
+		}
+		return result == null ? null : this.finish(session, game, result, reason);
+	}
+
+	/**
+	 * Ends a game as a draw if a player may claim one, by threefold
+	 * repetition or the fifty-move rule (or if it is drawn anyway, as by
+	 * Game.isDraw()). Called holding the session's lock.
+	 * @param session The game's session.
+	 * @param game The game.
+	 * @return The result, which is GameEvent.DRAW unless the game was
+	 * already over, or null if a draw may not be claimed.
+	 */
+	public String claimDraw(GameSession session, Game game) {
+		String result = this.adjudicate(session, game);
+		if(result != null || !game.isDraw()) {
+			return result;
+		}
+		return this.finish(session, game, GameEvent.DRAW,
+				game.is3FoldRepetition() ? "threefold repetition" : "fifty-move rule");
+	}
+
+	private String finish(GameSession session, Game game, String result, String reason) {
+		if(game.getClock() != null) {
+			game.getClock().stop();
+		}
+		session.finish(result, reason);
+		this.adjudications.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Evicts games: those which are over or idle, then the least recently
+	 * used until the rest fit in the size limit. Run every SWEEP_MILLIS once
+	 * started.
+	 */
+	public void sweep() {
+		if(this.games.getArchive() == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		long idleNanos = TimeUnit.MILLISECONDS.toNanos(this.idleMillis);
+		List<Candidate> resident = new ArrayList<>();
+		long residentBytes = 0;
+		for(GameSession session : this.games.getSessions()) {
+			if(!session.isResident()) {
+				continue;
+			}
+			// stamped once, as it changes while the games are sorted
+			long lastAccess = session.getLastAccessNanos();
+			if((now - lastAccess > idleNanos || session.getResult() != null) && this.evict(session)) {
+				continue;
+			}
+			resident.add(new Candidate(session, lastAccess));
+			residentBytes += session.getEstimatedBytes();
+		}
+		if(residentBytes <= this.maxResidentBytes) {
+			return;
+		}
+		Collections.sort(resident, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				return Long.compare(a.lastAccessNanos, b.lastAccessNanos);
+			}
+		});
+		for(Candidate candidate : resident) {
+			long bytes = candidate.session.getEstimatedBytes();
+			if(this.evict(candidate.session)) {
+				residentBytes -= bytes;
+				if(residentBytes <= this.maxResidentBytes) {
+					break;
+				}
+			}
+		}
+	}
+
+	private static class Candidate {
+		private final GameSession session;
+		private final long lastAccessNanos;
+
+		private Candidate(GameSession session, long lastAccessNanos) {
+			this.session = session;
+			this.lastAccessNanos = lastAccessNanos;
+		}
+	}
+
+	/**
+	 * Evicts a game, unless it has been evicted or ended since it was
+	 * picked, or is being watched or timed.
+	 * @return true if it was evicted.
+	 */
+	private boolean evict(GameSession session) {
+		synchronized(session) {
+			Game game = session.getResidentGame();
+			if(game == null || this.games.get(session.getId()) != session || game.hasEventSubscribers()
+					|| game.getClock() != null && game.getClock().getRunning() != null) {
+				return false;
+			}
+			try {
+				session.evict();
+			}
+			catch(IOException e) {
+				this.evictionFailures.incrementAndGet();
+				GameLog.log(LogLevel.ERROR, "archive-write-failed", "error", e);
+				return false;
+			}
+			this.evictions.incrementAndGet();
+			if(this.journal != null) {
+				try {
+					// the archive has it now, so the journal need not keep its segments
+					this.journal.recordEnd(session.getId());
+				}
+				catch(IOException e) {
+					GameLog.log(LogLevel.ERROR, "journal-write-failed", "error", e);
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the number of games in memory.
+	 * @return The number of resident games.
+	 */
+	public int getResidentCount() {
+		int count = 0;
+		for(GameSession session : this.games.getSessions()) {
+			if(session.isResident()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets roughly how much memory the games in memory take.
+	 * @return The estimated size, in bytes.
+	 */
+	public long getResidentBytes() {
+		long bytes = 0;
+		for(GameSession session : this.games.getSessions()) {
+			bytes += session.getEstimatedBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of games evicted.
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * Gets the number of games which could not be saved to be evicted.
+	 * @return The number of failed evictions.
+	 */
+	public long getEvictionFailures() {
+		return this.evictionFailures.get();
+	}
+
+	/**
+	 * Gets the time taken to load each evicted game back into memory.
+	 * @return The reload timings, which are empty without an archive.
+	 */
+	public LatencyStats getReloadStats() {
+		GameArchive archive = this.games.getArchive();
+		return archive == null ? new LatencyStats() : archive.getLoadStats();
+	}
+
+	/**
+	 * Gets the number of games made by pairing players.
+	 * @return The number of games made.
+	 */
+	public long getMatches() {
+		return this.matches.get();
+	}
+
+	/**
+	 * Gets the number of games ended by adjudication or a claimed draw.
+	 * @return The number of games ended.
+	 */
+	public long getAdjudications() {
+		return this.adjudications.get();
+	}
+
+	/**
+	 * Stops sweeping. Players still waiting are left to time out.
+	 */
+	@Override
+	public void close() {
+		this.sweeper.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "resident=" + this.getResidentCount() + " residentKB=" + this.getResidentBytes() / 1024
+				+ " evictions=" + this.getEvictions() + " matches=" + this.getMatches()
+				+ " adjudicated=" + this.getAdjudications() + " waiting=" + this.getWaitingCount()
+				+ " reloads: " + this.getReloadStats();
+	}
+}
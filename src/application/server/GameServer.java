@@ -0,0 +1,667 @@
+package application.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import application.engine.Tablebase;
+import application.journal.MoveJournal;
+import application.log.GameLog;
+import application.log.LogLevel;
+import application.model.ChessClock;
+import application.model.Game;
+import application.model.Move;
+import application.model.PieceColor;
+import application.model.TimeControl;
+import application.uci.Uci;
+import application.util.LatencyStats;
+
+/**
+ * The GameServer class hosts games for clients over TCP. Clients send
+ * one command per line and get one reply per line:
+ *
+ *   new [clock tc] [fen]  ok id              starts a game, timed by a
+ *                                            TimeControl such as 300+2
+ *   move id e2e4          ok id plies        plays a move, if it is legal
+ *                         illegal id e2e4    otherwise
+ *                         flag id color      or if a side ran out of time
+ *                         over id R reason   or if the game is over
+ *   fen id                fen id FEN         gets the position
+ *   clock id              clock id w b       gets the time left, in ms
+ *                         clock id w b color and the side which flagged
+ *   result id             result id ongoing  gets whether the game is over
+ *                         result id R reason e.g. "Checkmate checkmate"
+ *   draw id               over id Draw why   claims a draw by threefold
+ *                         error no draw id   repetition or fifty moves
+ *   seek name [tc]        game id color name waits to be paired with
+ *                         error no opponent  another player, for a minute
+ *   end id                ok id              ends a game
+ *   watch id              ok id              turns the connection into a
+ *                                            spectator of a game
+ *   quit                                     closes the connection
+ *
+ * Anything else gets "error" and a message. Replies are only flushed
+ * once there are no more commands waiting to be read, so a client may
+ * send several commands before reading the replies. After "watch" the
+ * connection only receives the game's moves, as binary frames from a
+ * Broadcaster, until the game ends.
+ *
+ * A timed game's clock starts when the game does and is charged as each
+ * move is played. Flag fall in every game is noticed by one TimerWheel,
+ * which ends the game (sending it to spectators) without waiting for
+ * the next move.
+ *
+ * Each connection is served by its own thread, which blocks while it
+ * waits for the client. On Java 21 and later these are virtual threads,
+ * which are cheap enough for one per connection even with thousands of
+ * connections; on older versions they are ordinary threads. Games are
+ * kept in a sharded GameTable and each move locks only its own game's
+ * GameSession.
+ *
+ * A GameScheduler pairs players seeking a game and ends games which
+ * are over. With a GameArchive, it also evicts idle and finished games
+ * from memory, and they are loaded again when they are next used. Games
+ * already in the archive when the server starts are kept there until
+ * they are used.
+ *
+ * With a MoveJournal, games are saved as they are played and recovered,
+ * under the same ids, when the server is started again. A move is only
+ * acknowledged once it is on disk. Moves from many connections that
+ * arrive during one fsync share the next one, so waiting costs each
+ * connection about one fsync rather than one fsync per move ahead of it.
+ */
+public class GameServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 7777;
+
+	private final ServerSocketChannel serverChannel;
+	// how long "seek" waits for an opponent
+	public static final long SEEK_TIMEOUT_MILLIS = 60000;
+
+	private final GameTable games;
+	private final GameScheduler scheduler;
+	private final Broadcaster broadcaster = new Broadcaster();
+	private final ExecutorService connections = GameServer.newConnectionExecutor();
+	private final LatencyStats moveStats = new LatencyStats();
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final MoveJournal journal;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a server listening on a port. Call start() to accept clients.
+	 * @param port The port, or 0 for any free port.
+	 * @throws IOException If the port cannot be listened on.
+	 */
+	public GameServer(int port) throws IOException {
+		this(port, null);
+	}
+
+	/**
+	 * Creates a server listening on a port, which saves its games in a
+	 * journal and first recovers the games already in it. Call start() to
+	 * accept clients.
+	 * @param port The port, or 0 for any free port.
+	 * @param journalDirectory The journal's directory, or null for none.
+	 * @throws IOException If the port cannot be listened on or the journal
+	 * cannot be opened.
+	 */
+	public GameServer(int port, File journalDirectory) throws IOException {
+		this(port, journalDirectory, null);
+	}
+
+	/**
+	 * Creates a server listening on a port, which saves its games in a
+	 * journal, evicts games from memory to an archive, and first recovers
+	 * the games already in both. Call start() to accept clients.
+	 * @param port The port, or 0 for any free port.
+	 * @param journalDirectory The journal's directory, or null for none.
+	 * @param archiveDirectory The archive's directory, or null to keep
+	 * every game in memory.
+	 * @throws IOException If the port cannot be listened on or the journal
+	 * or archive cannot be opened.
+	 */
+	public GameServer(int port, File journalDirectory, File archiveDirectory) throws IOException {
+		GameArchive archive = archiveDirectory == null ? null : new GameArchive(archiveDirectory);
+		this.games = new GameTable(GameTable.DEFAULT_SHARDS, archive);
+		if(archive != null) {
+			for(long id : archive.getIds()) {
+				this.games.putArchived(id);
+			}
+		}
+		this.journal = journalDirectory == null ? null : new MoveJournal(journalDirectory);
+		this.scheduler = new GameScheduler(this.games, this.journal);
+		this.scheduler.setStarter(new GameScheduler.Starter() {
+			@Override
+			public void started(GameSession session, Game game) throws IOException {
+				GameServer.this.startGame(session, game);
+			}
+		});
+		if(this.journal != null) {
+			this.games.skipIds(this.journal.getMaxGameId());
+			// the journal is newer than the archive for games in both
+			for(Map.Entry<Long, Game> game : this.journal.getRecoveredGames().entrySet()) {
+				GameSession session = this.games.put(game.getKey(), game.getValue());
+				synchronized(session) {
+					if(this.scheduler.adjudicate(session, game.getValue()) == null) {
+						this.startClock(session, game.getValue());
+					}
+				}
+			}
+		}
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress(port), 1024);
+	}
+
+	/**
+	 * Starts accepting clients on a background thread.
+	 */
+	public void start() {
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				GameServer.this.accept();
+			}
+		}, "game-server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		this.scheduler.start();
+	}
+
+	private void accept() {
+		while(!this.closed) {
+			try {
+				final SocketChannel channel = this.serverChannel.accept();
+				channel.socket().setTcpNoDelay(true);
+				this.connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						GameServer.this.serve(channel);
+					}
+				});
+			}
+			catch(IOException e) {
+				if(!this.closed) {
+					GameLog.log(LogLevel.WARN, "accept-failed", "error", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs on the connection's thread: answers its commands until it
+	 * quits, disconnects or becomes a spectator.
+	 */
+	private void serve(SocketChannel channel) {
+		this.openConnections.incrementAndGet();
+		boolean watching = false;
+		try {
+			Socket client = channel.socket();
+			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+			String line;
+			while((line = in.readLine()) != null && !line.trim().equals("quit")) {
+				String[] tokens = line.trim().split("\\s+");
+				GameSession watched = tokens[0].equals("watch") && tokens.length > 1 ? this.getWatchedSession(tokens[1]) : null;
+				out.write(watched != null ? "ok " + tokens[1] : this.handle(line));
+				out.write('\n');
+				if(watched != null) {
+					// from now on only the broadcaster writes to the connection
+					out.flush();
+					synchronized(watched) {
+						// locked so that the game cannot be evicted or moved in before it is watched
+						this.broadcaster.watch(watched.getId(), watched.getGame(), channel);
+					}
+					watching = true;
+					return;
+				}
+				if(!in.ready()) {
+					out.flush();
+				}
+			}
+		}
+		catch(SocketException e) {
+			// the client went away
+		}
+		catch(IOException e) {
+			GameLog.log(LogLevel.WARN, "connection-failed", "error", e);
+		}
+		finally {
+			this.openConnections.decrementAndGet();
+			if(!watching) {
+				try {
+					channel.close();
+				}
+				catch(IOException e) {
+					// already gone
+				}
+			}
+		}
+	}
+
+	private GameSession getWatchedSession(String id) {
+		try {
+			return this.games.get(Long.parseLong(id));
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Handles one command.
+	 * @param line The command.
+	 * @return The reply, without a line break.
+	 */
+	String handle(String line) {
+		String[] tokens = line.trim().split("\\s+");
+		try {
+			switch(tokens[0]) {
+				case "new": return this.newGame(line.trim().substring(3).trim());
+				case "move": return this.move(Long.parseLong(tokens[1]), tokens[2]);
+				case "fen": return this.getFen(Long.parseLong(tokens[1]));
+				case "clock": return this.getClock(Long.parseLong(tokens[1]));
+				case "result": return this.getResult(Long.parseLong(tokens[1]));
+				case "draw": return this.claimDraw(Long.parseLong(tokens[1]));
+				case "seek": return this.seek(tokens[1], tokens.length > 2 ? TimeControl.parse(tokens[2]) : null);
+				case "end": return this.endGame(Long.parseLong(tokens[1]));
+				case "watch": return "error no game " + tokens[1];
+				default: return "error unknown command " + tokens[0];
+			}
+		}
+		catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			// includes NumberFormatException and bad time controls
+			return "error bad command " + line.trim();
+		}
+		catch(UncheckedIOException e) {
+			GameLog.log(LogLevel.ERROR, "archive-read-failed", "error", e.getCause());
+			return "error cannot load " + tokens[1];
+		}
+		catch(IOException e) {
+			GameLog.log(LogLevel.ERROR, "journal-write-failed", "error", e);
+			return "error not saved";
+		}
+	}
+
+	/**
+	 * Gets a session's game, loading it if it was evicted. Called holding
+	 * the session's lock.
+	 * @throws UncheckedIOException If the game cannot be loaded.
+	 */
+	private static Game load(GameSession session) {
+		try {
+			return session.getGame();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private String newGame(String fen) throws IOException {
+		TimeControl control = null;
+		if(fen.startsWith("clock ")) {
+			String[] clock = fen.substring(6).trim().split("\\s+", 2);
+			control = TimeControl.parse(clock[0]);
+			fen = clock.length > 1 ? clock[1] : "";
+		}
+		Game game;
+		try {
+			game = fen.isEmpty() ? new Game() : new Game(fen);
+		}
+		catch(Exception e) {
+			// checkmated, drawn or malformed positions
+			return "error bad position";
+		}
+		if(control != null) {
+			game.setClock(new ChessClock(control));
+		}
+		GameSession session = this.games.add(game);
+		synchronized(session) {
+			this.startGame(session, game);
+		}
+		return "ok " + session.getId();
+	}
+
+	/**
+	 * Saves a new game and starts its clock. Called holding the session's
+	 * lock.
+	 */
+	private void startGame(GameSession session, Game game) throws IOException {
+		if(this.journal != null) {
+			this.journal.awaitDurable(this.journal.recordStart(session.getId(), game));
+		}
+		this.startClock(session, game);
+	}
+
+	private String seek(String player, TimeControl control) throws IOException {
+		GameScheduler.Seat seat = this.scheduler.seek(player, control, SEEK_TIMEOUT_MILLIS);
+		if(seat == null) {
+			return "error no opponent";
+		}
+		return "game " + seat.getSession().getId() + " " + seat.getColor().toString().toLowerCase() + " " + seat.getOpponent();
+	}
+
+	/**
+	 * Starts a game's clock, if it has one and neither side has flagged.
+	 * Called holding the session's lock.
+	 */
+	private void startClock(final GameSession session, Game game) {
+		ChessClock clock = game.getClock();
+		if(clock == null || clock.getFlagged() != null) {
+			return;
+		}
+		clock.setFlagListener(new ChessClock.FlagListener() {
+			@Override
+			public void flagFell(ChessClock clock, PieceColor color) {
+				// called on the wheel's thread, or one holding the session's lock
+				GameServer.this.connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						GameServer.this.endOnTime(session);
+					}
+				});
+			}
+		});
+		clock.start(game.getTurn());
+	}
+
+	/**
+	 * Runs on a connection thread once a game's flag has fallen: ends the
+	 * game, sends its end to spectators and saves the clock, so that a
+	 * recovered game stays lost on time.
+	 */
+	private void endOnTime(GameSession session) {
+		synchronized(session) {
+			if(this.games.get(session.getId()) != session) {
+				// already ended
+				return;
+			}
+			Game game;
+			try {
+				game = session.getGame();
+			}
+			catch(IOException e) {
+				GameLog.log(LogLevel.ERROR, "archive-read-failed", "error", e);
+				return;
+			}
+			this.scheduler.adjudicate(session, game);
+			game.publishFlagFall();
+			if(this.journal != null) {
+				try {
+					this.journal.recordStart(session.getId(), game);
+				}
+				catch(IOException e) {
+					GameLog.log(LogLevel.ERROR, "journal-write-failed", "error", e);
+				}
+			}
+		}
+	}
+
+	private String move(long id, String text) throws IOException {
+		long start = System.nanoTime();
+		GameSession session = this.games.get(id);
+		if(session == null) {
+			return "error no game " + id;
+		}
+		Move move = Uci.parseMove(text);
+		int plies;
+		long ticket = 0;
+		synchronized(session) {
+			Game game = GameServer.load(session);
+			PieceColor flagged = game.getClock() == null ? null : game.getClock().checkFlag();
+			if(flagged != null) {
+				this.scheduler.adjudicate(session, game);
+				return "flag " + id + " " + flagged.toString().toLowerCase();
+			}
+			if(session.getResult() != null) {
+				return "over " + id + " " + session.getResult() + " " + session.getReason();
+			}
+			if(!game.isGeneratedMove(move)) {
+				return "illegal " + id + " " + text;
+			}
+			game.pushMove(move);
+			session.played(move);
+			plies = game.getPreviousFenStack().size() - 1;
+			if(this.journal != null) {
+				// recorded while the game is locked, so its moves are journalled in order
+				ticket = this.journal.recordMove(id, game, move);
+			}
+			this.scheduler.adjudicate(session, game);
+		}
+		if(this.journal != null) {
+			this.journal.awaitDurable(ticket);
+		}
+		this.moveStats.recordSince(start);
+		return "ok " + id + " " + plies;
+	}
+
+	private String endGame(long id) throws IOException {
+		GameSession session = this.games.get(id);
+		if(session == null) {
+			return "error no game " + id;
+		}
+		long ticket = 0;
+		synchronized(session) {
+			// locked so that it cannot cross with endOnTime(GameSession session) or an eviction
+			if(!this.games.remove(id)) {
+				return "error no game " + id;
+			}
+			Game game = session.getResidentGame();
+			if(game != null) {
+				if(game.getClock() != null) {
+					game.getClock().stop();
+				}
+				// spectators get the last moves, then are disconnected
+				game.closeEvents();
+			}
+			if(this.journal != null) {
+				ticket = this.journal.recordEnd(id);
+			}
+			if(this.games.getArchive() != null) {
+				this.games.getArchive().delete(id);
+			}
+		}
+		if(this.journal != null) {
+			this.journal.awaitDurable(ticket);
+		}
+		return "ok " + id;
+	}
+
+	private String getClock(long id) {
+		GameSession session = this.games.get(id);
+		if(session == null) {
+			return "error no game " + id;
+		}
+		synchronized(session) {
+			ChessClock clock = GameServer.load(session).getClock();
+			if(clock == null) {
+				return "error no clock " + id;
+			}
+			PieceColor flagged = clock.checkFlag();
+			return "clock " + id + " " + clock.getRemainingNanos(PieceColor.WHITE) / 1000000 + " "
+					+ clock.getRemainingNanos(PieceColor.BLACK) / 1000000
+					+ (flagged == null ? "" : " " + flagged.toString().toLowerCase());
+		}
+	}
+
+	private String getFen(long id) {
+		GameSession session = this.games.get(id);
+		if(session == null) {
+			return "error no game " + id;
+		}
+		synchronized(session) {
+			return "fen " + id + " " + GameServer.load(session).getFEN();
+		}
+	}
+
+	private String getResult(long id) {
+		GameSession session = this.games.get(id);
+		if(session == null) {
+			return "error no game " + id;
+		}
+		synchronized(session) {
+			// loaded, as the result of a game archived before the server started is not yet known
+			String result = this.scheduler.adjudicate(session, GameServer.load(session));
+			return "result " + id + " " + (result == null ? "ongoing" : result + " " + session.getReason());
+		}
+	}
+
+	private String claimDraw(long id) {
+		GameSession session = this.games.get(id);
+		if(session == null) {
+			return "error no game " + id;
+		}
+		synchronized(session) {
+			String result = this.scheduler.claimDraw(session, GameServer.load(session));
+			return result == null ? "error no draw " + id : "over " + id + " " + result + " " + session.getReason();
+		}
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 * @return The port.
+	 */
+	public int getPort() {
+		return this.serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Gets the live games.
+	 * @return The table of games.
+	 */
+	public GameTable getGames() {
+		return this.games;
+	}
+
+	/**
+	 * Gets the scheduler pairing players and evicting games.
+	 * @return The scheduler.
+	 */
+	public GameScheduler getScheduler() {
+		return this.scheduler;
+	}
+
+	/**
+	 * Gets the journal the games are saved in.
+	 * @return The journal, or null if games are not saved.
+	 */
+	public MoveJournal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * Gets the time taken to check, play and (with a journal) save each
+	 * legal move, not counting the network.
+	 * @return The move timings.
+	 */
+	public LatencyStats getMoveStats() {
+		return this.moveStats;
+	}
+
+	/**
+	 * Gets the broadcaster sending moves to spectators.
+	 * @return The broadcaster.
+	 */
+	public Broadcaster getBroadcaster() {
+		return this.broadcaster;
+	}
+
+	/**
+	 * Gets the number of clients connected, not counting spectators.
+	 * @return The number of open connections.
+	 */
+	public int getOpenConnections() {
+		return this.openConnections.get();
+	}
+
+	/**
+	 * Stops accepting clients, disconnects spectators and closes the
+	 * journal. Other open connections are left to finish, but their moves
+	 * are no longer saved.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.serverChannel.close();
+		this.connections.shutdown();
+		this.scheduler.close();
+		this.broadcaster.close();
+		if(this.journal != null) {
+			this.journal.close();
+		}
+	}
+
+	/**
+	 * Returns an executor which starts a thread per task: a virtual thread
+	 * where the JVM has them (Java 21+), otherwise a daemon thread. Virtual
+	 * threads are looked up by reflection so that this still builds for
+	 * Java 8.
+	 */
+	static ExecutorService newConnectionExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			final AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "game-connection-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		GameServer server = new GameServer(port, args.length > 1 ? new File(args[1]) : null,
+				args.length > 2 ? new File(args[2]) : null);
+		if(args.length > 3) {
+			server.getScheduler().setTablebase(new Tablebase(args[3]));
+		}
+		server.start();
+		System.out.println("listening on port " + server.getPort());
+		if(server.getJournal() != null) {
+			System.out.printf("recovered %d games (%d records) in %.1fms%n", server.getJournal().getRecoveredGames().size(),
+					server.getJournal().getRecoveredRecords(), server.getJournal().getRecoveryNanos() / 1e6);
+		}
+		if(server.getGames().getArchive() != null) {
+			System.out.println("archived games: " + server.getGames().getArchive().getIds().size());
+		}
+		Broadcaster broadcaster = server.getBroadcaster();
+		long messages = 0, bytes = 0;
+		while(true) {
+			Thread.sleep(10000);
+			long newMessages = broadcaster.getMessagesSent(), newBytes = broadcaster.getBytesSent();
+			System.out.println("games=" + server.getGames().size() + " connections=" + server.getOpenConnections()
+					+ " moves: " + server.getMoveStats() + (server.getJournal() == null ? "" : " journal: " + server.getJournal()));
+			if(server.getGames().getArchive() != null) {
+				System.out.println("scheduler: " + server.getScheduler());
+			}
+			System.out.printf("broadcast: %s messages/s=%.0f bytes/s=%.0f%n", broadcaster,
+					(newMessages - messages) / 10.0, (newBytes - bytes) / 10.0);
+			messages = newMessages;
+			bytes = newBytes;
+		}
+	}
+}
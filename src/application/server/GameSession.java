@@ -0,0 +1,225 @@
+package application.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import application.model.Game;
+import application.model.Move;
+import application.model.MoveHistory;
+
+/**
+ * The GameSession class is one game hosted by a GameServer: the Game
+ * while it is in memory, and what is needed to put it back after it has
+ * been evicted to a GameArchive. That is the starting position, packed
+ * as by MoveHistory, and every move since, packed into 2 bytes (the
+ * from and to squares, as in a MoveJournal), which together take far less
+ * memory than the Game's history of FENs.
+ *
+ * A session is its game's lock: its game is only used, and only evicted,
+ * while holding it. getGame() loads an evicted game again, so callers
+ * never see one which has been evicted.
+ */
+public class GameSession {
+
+	// rough sizes of a game in memory, for GameScheduler's size limit
+	static final long GAME_BYTES = 1024,
+					  PLY_BYTES = 256;
+
+	private final long id;
+	private final GameArchive archive;
+	// guarded by this; game is null while evicted
+	private Game game;
+	private byte[] start;
+	private short[] moves;
+	private int plies;
+	private String result,
+				   reason;
+	// whether the archive holds everything above, so eviction need not save it
+	private boolean archived;
+	// read by the scheduler without the lock
+	private volatile boolean resident;
+	private volatile long lastAccessNanos;
+	private volatile int residentPlies;
+
+	/**
+	 * Creates a session for a game in memory, starting from its current
+	 * position.
+	 */
+	GameSession(long id, Game game, GameArchive archive) {
+		this.id = id;
+		this.archive = archive;
+		this.game = game;
+		this.start = MoveHistory.encode(game);
+		this.moves = new short[16];
+		this.resident = true;
+		this.lastAccessNanos = System.nanoTime();
+	}
+
+	/**
+	 * Creates a session for a game which is only in the archive, e.g. one
+	 * found there when the server starts.
+	 */
+	GameSession(long id, GameArchive archive) {
+		this.id = id;
+		this.archive = archive;
+		this.archived = true;
+		this.lastAccessNanos = System.nanoTime();
+	}
+
+	/**
+	 * Gets the id of the game.
+	 * @return The id.
+	 */
+	public long getId() {
+		return this.id;
+	}
+
+	/**
+	 * Gets the game, loading it from the archive if it was evicted, and
+	 * counts as a use of it for eviction. Must be called while holding the
+	 * session's lock, which must be held for as long as the game is used.
+	 * @return The game.
+	 * @throws IOException If the game cannot be loaded.
+	 */
+	Game getGame() throws IOException {
+		if(this.game == null) {
+			this.archive.load(this);
+			this.resident = true;
+		}
+		this.lastAccessNanos = System.nanoTime();
+		return this.game;
+	}
+
+	/**
+	 * Records a move which has just been played in the game.
+	 * @param move The move.
+	 */
+	void played(Move move) {
+		if(this.plies == this.moves.length) {
+			this.moves = Arrays.copyOf(this.moves, this.moves.length * 2);
+		}
+		this.moves[this.plies++] = GameSession.pack(move);
+		this.residentPlies = this.plies;
+		this.archived = false;
+	}
+
+	/**
+	 * Marks the game as over.
+	 * @param result The result, e.g. GameEvent.CHECKMATE.
+	 * @param reason Why the game ended, e.g. "stalemate".
+	 */
+	synchronized void finish(String result, String reason) {
+		if(this.result == null) {
+			this.result = result;
+			this.reason = reason;
+			this.archived = false;
+		}
+	}
+
+	/**
+	 * Gets the result of the game.
+	 * @return The result, e.g. "Checkmate" or "Draw", or null if the game
+	 * is not over (or has not been loaded since the server started).
+	 */
+	public synchronized String getResult() {
+		return this.result;
+	}
+
+	/**
+	 * Gets why the game ended.
+	 * @return The reason, e.g. "stalemate", or null if the game is not
+	 * over.
+	 */
+	public synchronized String getReason() {
+		return this.reason;
+	}
+
+	/**
+	 * Returns whether the game is in memory.
+	 * @return true if the game is in memory, false if it is evicted.
+	 */
+	public boolean isResident() {
+		return this.resident;
+	}
+
+	/**
+	 * Gets when the game was last used.
+	 * @return The time, as a value of System.nanoTime().
+	 */
+	public long getLastAccessNanos() {
+		return this.lastAccessNanos;
+	}
+
+	/**
+	 * Gets roughly how much memory the game takes while in memory, which
+	 * grows with its history.
+	 * @return The estimated size, in bytes, or 0 if it is evicted.
+	 */
+	public long getEstimatedBytes() {
+		return this.resident ? GAME_BYTES + this.residentPlies * PLY_BYTES : 0;
+	}
+
+	/**
+	 * Drops the game from memory, saving it to the archive first unless the
+	 * archive is already up to date. Called with the lock held.
+	 * @throws IOException If the game cannot be saved, in which case it is
+	 * kept.
+	 */
+	void evict() throws IOException {
+		if(!this.archived) {
+			this.archive.save(this);
+			this.archived = true;
+		}
+		this.game = null;
+		this.moves = null;
+		this.start = null;
+		this.resident = false;
+	}
+
+	// used by GameArchive, with the lock held
+
+	Game getResidentGame() {
+		return this.game;
+	}
+
+	byte[] getStart() {
+		return this.start;
+	}
+
+	short[] getMoves() {
+		return this.moves;
+	}
+
+	int getPlies() {
+		return this.plies;
+	}
+
+	void restore(Game game, byte[] start, short[] moves, int plies, String result, String reason) {
+		this.game = game;
+		this.start = start;
+		this.moves = moves;
+		this.plies = plies;
+		this.residentPlies = plies;
+		this.result = result;
+		this.reason = reason;
+	}
+
+	/**
+	 * Packs a move into 2 bytes: the from square, and the to square
+	 * shifted left by 6.
+	 */
+	static short pack(Move move) {
+		return (short) (move.getFromRow() * Game.BOARD_COLS + move.getFromCol()
+				| (move.getToRow() * Game.BOARD_COLS + move.getToCol()) << 6);
+	}
+
+	static Move unpack(short move) {
+		return new Move((move & 63) / Game.BOARD_COLS, (move & 63) % Game.BOARD_COLS,
+				(move >> 6 & 63) / Game.BOARD_COLS, (move >> 6 & 63) % Game.BOARD_COLS);
+	}
+
+	@Override
+	public String toString() {
+		return "game " + this.id + (this.resident ? "" : " (evicted)");
+	}
+}
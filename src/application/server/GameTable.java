@@ -0,0 +1,193 @@
+package application.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import application.model.Game;
+
+/**
+ * The GameTable class holds the games of a GameServer, by id, as
+ * GameSessions, whether they are in memory or evicted to a GameArchive.
+ *
+ * The games are split into shards, each a HashMap with its own lock,
+ * and a game's id picks its shard. A lookup only locks one shard, and
+ * only for as long as the map lookup, so thousands of connections can
+ * find their games without queueing on a single lock. Moves are then
+ * made while holding the lock of the game's session, so games never
+ * wait on each other.
+ */
+public class GameTable {
+
+	public static final int DEFAULT_SHARDS = 64;
+
+	private final Shard[] shards;
+	private final int shardMask;
+	private final AtomicLong nextId = new AtomicLong(1);
+	private final GameArchive archive;
+
+	public GameTable() {
+		this(DEFAULT_SHARDS, null);
+	}
+
+	/**
+	 * Creates an empty table whose games are always kept in memory.
+	 * @param shards The number of shards, rounded up to a power of two.
+	 */
+	public GameTable(int shards) {
+		this(shards, null);
+	}
+
+	/**
+	 * Creates an empty table.
+	 * @param shards The number of shards, rounded up to a power of two.
+	 * @param archive Where games are evicted to, or null if they are always
+	 * kept in memory.
+	 */
+	public GameTable(int shards, GameArchive archive) {
+		this.archive = archive;
+		int size = Integer.highestOneBit(Math.max(1, shards - 1)) << 1;
+		this.shards = new Shard[shards <= 1 ? 1 : size];
+		for(int i=0; i<this.shards.length; i++) {
+			this.shards[i] = new Shard();
+		}
+		this.shardMask = this.shards.length - 1;
+	}
+
+	/**
+	 * Adds a game under a new id.
+	 * @param game The game.
+	 * @return The game's session.
+	 */
+	public GameSession add(Game game) {
+		long id = this.nextId.getAndIncrement();
+		GameSession session = new GameSession(id, game, this.archive);
+		Shard shard = this.getShard(id);
+		synchronized(shard) {
+			shard.games.put(id, session);
+		}
+		return session;
+	}
+
+	/**
+	 * Adds a game under an id it already has, e.g. one recovered from a
+	 * MoveJournal, in place of any game with that id. Later games are
+	 * given higher ids.
+	 * @param id The id of the game.
+	 * @param game The game.
+	 * @return The game's session.
+	 */
+	public GameSession put(long id, Game game) {
+		return this.put(new GameSession(id, game, this.archive));
+	}
+
+	/**
+	 * Adds a game which is only in the archive, under its id, e.g. when the
+	 * server starts. It is loaded when it is first used.
+	 * @param id The id of the game.
+	 * @return The game's session.
+	 */
+	public GameSession putArchived(long id) {
+		return this.put(new GameSession(id, this.archive));
+	}
+
+	private GameSession put(GameSession session) {
+		this.skipIds(session.getId());
+		Shard shard = this.getShard(session.getId());
+		synchronized(shard) {
+			shard.games.put(session.getId(), session);
+		}
+		return session;
+	}
+
+	/**
+	 * Makes sure that ids up to and including an id are not given to
+	 * new games.
+	 * @param id The highest id already used.
+	 */
+	public void skipIds(long id) {
+		long next;
+		while((next = this.nextId.get()) <= id && !this.nextId.compareAndSet(next, id + 1));
+	}
+
+	/**
+	 * Gets a game's session. Lock the session to use its game.
+	 * @param id The id of the game.
+	 * @return The session, or null if there is no game with that id.
+	 */
+	public GameSession get(long id) {
+		Shard shard = this.getShard(id);
+		synchronized(shard) {
+			return shard.games.get(id);
+		}
+	}
+
+	/**
+	 * Removes a game.
+	 * @param id The id of the game.
+	 * @return true if there was a game with that id. false otherwise.
+	 */
+	public boolean remove(long id) {
+		Shard shard = this.getShard(id);
+		synchronized(shard) {
+			return shard.games.remove(id) != null;
+		}
+	}
+
+	/**
+	 * Gets the number of games. Each shard is counted in turn, so the
+	 * total may be slightly out of date while games are being added.
+	 * @return The number of games.
+	 */
+	public int size() {
+		int size = 0;
+		for(Shard shard : this.shards) {
+			synchronized(shard) {
+				size += shard.games.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Gets every session, in no particular order, e.g. for a GameScheduler
+	 * to look for games to evict. Each shard is copied in turn.
+	 * @return The sessions.
+	 */
+	public List<GameSession> getSessions() {
+		List<GameSession> sessions = new ArrayList<>();
+		for(Shard shard : this.shards) {
+			synchronized(shard) {
+				sessions.addAll(shard.games.values());
+			}
+		}
+		return sessions;
+	}
+
+	/**
+	 * Gets the archive games are evicted to.
+	 * @return The archive, or null if games are always kept in memory.
+	 */
+	public GameArchive getArchive() {
+		return this.archive;
+	}
+
+	/**
+	 * Gets the number of shards.
+	 * @return The number of shards.
+	 */
+	public int getShardCount() {
+		return this.shards.length;
+	}
+
+	private Shard getShard(long id) {
+		// ids are handed out in order, so the low bits spread them evenly
+		return this.shards[(int) id & this.shardMask];
+	}
+
+	private static class Shard {
+		private final Map<Long, GameSession> games = new HashMap<>();
+	}
+}
@@ -0,0 +1,369 @@
+package application.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import application.util.LatencyStats;
+import application.util.TimerWheel;
+
+/**
+ * The LoadGenerator class measures a GameServer under load. It opens a
+ * number of client connections, shares a number of games between them,
+ * and has every client play moves in each of its games in turn, timing
+ * each move from sending it to reading its acknowledgement.
+ *
+ * The moves are knights going out and back (Nf3 Nf6 Ng1 Ng8), which are
+ * legal in every game forever, so the clients need no chess logic of
+ * their own and all the work measured is the server's.
+ *
+ * With -spectators, that many more connections each watch one of the
+ * games (shared out in turn) and count the frames and bytes broadcast
+ * to them. The players wait until every spectator is watching.
+ *
+ * With -clock, every game is timed by that TimeControl (e.g. 300+2), so
+ * the cost of clocks can be compared with the same run without.
+ *
+ * With -archive, the server started in the same JVM evicts games to a
+ * GameArchive in that directory once they take more than -residentkb
+ * kilobytes of memory (least recently used first), so the cost of
+ * evicting and reloading games can be measured. Timed games are never
+ * evicted while their clocks run, so this is only useful without -clock.
+ *
+ * Usage: java application.server.LoadGenerator [-host h] [-port n]
+ * [-clients n] [-games n] [-moves n] [-spectators n] [-clock tc]
+ * [-archive dir] [-residentkb n].
+ * Without -host a server is started in the same JVM on a free port.
+ */
+public class LoadGenerator {
+
+	private static final String[] MOVES = {"g1f3", "g8f6", "f3g1", "f6g8"};
+	// how long to wait after the last move for spectators to get their last frames
+	private static final long SPECTATOR_TIMEOUT_SECONDS = 60;
+
+	private final String host;
+	private final int port;
+	private final int clients;
+	private final int games;
+	private final int moves;
+	private final int spectators;
+	private String timeControl;
+	private final LatencyStats moveStats = new LatencyStats();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder framesReceived = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	// the games started by the clients, for the spectators to watch
+	private final ConcurrentLinkedQueue<Long> gameIds = new ConcurrentLinkedQueue<>();
+	private CountDownLatch gamesStarted;
+	private final CountDownLatch spectatorsWatching = new CountDownLatch(1);
+	private CountDownLatch spectatorsDone = new CountDownLatch(0);
+
+	/**
+	 * Creates a load generator.
+	 * @param host The server's host.
+	 * @param port The server's port.
+	 * @param clients The number of connections.
+	 * @param games The number of games, shared out between the connections.
+	 * @param moves The number of moves to play in each game.
+	 */
+	public LoadGenerator(String host, int port, int clients, int games, int moves) {
+		this(host, port, clients, games, moves, 0);
+	}
+
+	/**
+	 * Creates a load generator with spectators.
+	 * @param host The server's host.
+	 * @param port The server's port.
+	 * @param clients The number of connections playing moves.
+	 * @param games The number of games, shared out between the connections.
+	 * @param moves The number of moves to play in each game.
+	 * @param spectators The number of connections watching games.
+	 */
+	public LoadGenerator(String host, int port, int clients, int games, int moves, int spectators) {
+		this.host = host;
+		this.port = port;
+		this.clients = clients;
+		this.games = games;
+		this.moves = moves;
+		this.spectators = spectators;
+	}
+
+	/**
+	 * Sets the time control the games are played with.
+	 * @param timeControl The time control, e.g. "300+2", or null for untimed
+	 * games.
+	 */
+	public void setTimeControl(String timeControl) {
+		this.timeControl = timeControl;
+	}
+
+	/**
+	 * Runs every client until it has played all its moves.
+	 * @throws IOException If a client cannot connect or loses its connection.
+	 * @throws InterruptedException If interrupted while waiting for the clients.
+	 */
+	public void run() throws IOException, InterruptedException {
+		ExecutorService executor = GameServer.newConnectionExecutor();
+		List<Future<Void>> results = new ArrayList<>();
+		List<Socket> watchers = new ArrayList<>();
+		this.gamesStarted = new CountDownLatch(this.clients);
+		for(int i=0; i<this.clients; i++) {
+			final int games = this.games / this.clients + (i < this.games % this.clients ? 1 : 0);
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					LoadGenerator.this.runClient(games);
+					return null;
+				}
+			}));
+		}
+		try {
+			if(this.spectators > 0) {
+				this.gamesStarted.await();
+				this.startSpectators(executor, watchers);
+			}
+			this.spectatorsWatching.countDown();
+			for(Future<Void> result : results) {
+				result.get();
+			}
+			// the games have ended, so each spectator is disconnected after its last frame
+			this.spectatorsDone.await(SPECTATOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		finally {
+			this.spectatorsWatching.countDown();
+			for(Socket watcher : watchers) {
+				watcher.close();
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Connects the spectators, each watching the next game in turn, and
+	 * starts a thread for each to read its frames.
+	 */
+	private void startSpectators(ExecutorService executor, List<Socket> watchers) throws IOException {
+		Long[] ids = this.gameIds.toArray(new Long[0]);
+		this.spectatorsDone = new CountDownLatch(ids.length == 0 ? 0 : this.spectators);
+		for(int i=0; i<this.spectators && ids.length > 0; i++) {
+			final Socket socket = new Socket(this.host, this.port);
+			watchers.add(socket);
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			out.write("watch " + ids[i % ids.length] + "\n");
+			out.flush();
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			// the reply is a line of text; the frames follow it
+			int ch;
+			while((ch = in.read()) != '\n') {
+				if(ch < 0) {
+					throw new IOException("server closed the connection");
+				}
+			}
+			executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					LoadGenerator.this.readFrames(in);
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs on a spectator's thread: counts its frames until it is
+	 * disconnected.
+	 */
+	private void readFrames(DataInputStream in) {
+		try {
+			while(true) {
+				byte type = in.readByte();
+				int length;
+				switch(type) {
+				case Broadcaster.DELTA: in.readShort(); length = 3; break;
+				case Broadcaster.KEYFRAME: length = in.readUnsignedShort(); in.readFully(new byte[length]); length += 3; break;
+				case Broadcaster.END: in.readByte(); length = 2; break;
+				default: throw new IOException("unknown frame type " + type);
+				}
+				this.framesReceived.increment();
+				this.bytesReceived.add(length);
+			}
+		}
+		catch(EOFException e) {
+			// the game ended
+		}
+		catch(IOException e) {
+			// closed at the end of the run
+		}
+		finally {
+			this.spectatorsDone.countDown();
+		}
+	}
+
+	/**
+	 * Runs on a client's thread: starts its games, then plays one move in
+	 * each game in turn until every game has had all its moves.
+	 */
+	private void runClient(int games) throws IOException {
+		try(Socket socket = new Socket(this.host, this.port);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+			socket.setTcpNoDelay(true);
+			long[] ids = new long[games];
+			for(int i=0; i<games; i++) {
+				String reply = LoadGenerator.send(in, out, this.timeControl == null ? "new" : "new clock " + this.timeControl);
+				ids[i] = Long.parseLong(reply.split(" ")[1]);
+				this.gameIds.add(ids[i]);
+			}
+			this.gamesStarted.countDown();
+			try {
+				this.spectatorsWatching.await();
+			}
+			catch(InterruptedException e) {
+				throw new IOException(e);
+			}
+			for(int move=0; move<this.moves; move++) {
+				for(long id : ids) {
+					long start = System.nanoTime();
+					String reply = LoadGenerator.send(in, out, "move " + id + " " + MOVES[move % MOVES.length]);
+					this.moveStats.recordSince(start);
+					if(!reply.startsWith("ok")) {
+						this.failures.increment();
+					}
+				}
+			}
+			for(long id : ids) {
+				LoadGenerator.send(in, out, "end " + id);
+			}
+			out.write("quit\n");
+			out.flush();
+		}
+	}
+
+	private static String send(BufferedReader in, Writer out, String command) throws IOException {
+		out.write(command);
+		out.write('\n');
+		out.flush();
+		String reply = in.readLine();
+		if(reply == null) {
+			throw new IOException("server closed the connection");
+		}
+		return reply;
+	}
+
+	/**
+	 * Gets the round-trip time of each move, as seen by the clients.
+	 * @return The move timings.
+	 */
+	public LatencyStats getMoveStats() {
+		return this.moveStats;
+	}
+
+	/**
+	 * Gets the number of moves which were not acknowledged with "ok".
+	 * @return The number of failed moves.
+	 */
+	public long getFailures() {
+		return this.failures.sum();
+	}
+
+	/**
+	 * Gets the number of frames the spectators received.
+	 * @return The number of frames.
+	 */
+	public long getFramesReceived() {
+		return this.framesReceived.sum();
+	}
+
+	/**
+	 * Gets the number of bytes of frames the spectators received.
+	 * @return The number of bytes.
+	 */
+	public long getBytesReceived() {
+		return this.bytesReceived.sum();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String host = null;
+		int port = GameServer.DEFAULT_PORT, clients = 100, games = 10000, moves = 20, spectators = 0;
+		String timeControl = null;
+		File archive = null;
+		long residentKB = GameScheduler.DEFAULT_MAX_RESIDENT_BYTES / 1024;
+		for(int i=0; i<args.length; i++) {
+			switch(args[i]) {
+			case "-host": host = args[++i]; break;
+			case "-port": port = Integer.parseInt(args[++i]); break;
+			case "-clients": clients = Integer.parseInt(args[++i]); break;
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-moves": moves = Integer.parseInt(args[++i]); break;
+			case "-spectators": spectators = Integer.parseInt(args[++i]); break;
+			case "-clock": timeControl = args[++i]; break;
+			case "-archive": archive = new File(args[++i]); break;
+			case "-residentkb": residentKB = Long.parseLong(args[++i]); break;
+			default:
+				System.out.println("Usage: java application.server.LoadGenerator [-host h] [-port n]"
+						+ " [-clients n] [-games n] [-moves n] [-spectators n] [-clock tc]"
+						+ " [-archive dir] [-residentkb n]");
+				return;
+			}
+		}
+
+		GameServer server = null;
+		if(host == null) {
+			server = new GameServer(0, null, archive);
+			server.getScheduler().setMaxResidentBytes(residentKB * 1024);
+			server.start();
+			host = "localhost";
+			port = server.getPort();
+		}
+		LoadGenerator load = new LoadGenerator(host, port, clients, games, Math.max(1, moves), spectators);
+		load.setTimeControl(timeControl);
+		long start = System.nanoTime();
+		load.run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		LatencyStats stats = load.getMoveStats();
+		System.out.printf("Clients: %d  Games: %d  Moves: %d  Failed: %d  Time: %.1fs  Moves/s: %.0f%n",
+				clients, games, stats.getCount(), load.getFailures(), seconds, stats.getCount() / seconds);
+		System.out.printf("Move ack latency: p50 %.2fms  p99 %.2fms  max %.2fms%n",
+				stats.getPercentileNanos(50) / 1e6, stats.getPercentileNanos(99) / 1e6, stats.getMaxNanos() / 1e6);
+		if(spectators > 0) {
+			System.out.printf("Spectators: %d  Frames: %d  Bytes: %d  Messages/s: %.0f  Bytes/s: %.0f%n",
+					spectators, load.getFramesReceived(), load.getBytesReceived(),
+					load.getFramesReceived() / seconds, load.getBytesReceived() / seconds);
+		}
+		if(server != null) {
+			System.out.println("Server move handling: " + server.getMoveStats());
+			System.out.println("Server broadcast: " + server.getBroadcaster());
+			if(timeControl != null) {
+				TimerWheel wheel = TimerWheel.getDefault();
+				System.out.println("Timer wheel: pending=" + wheel.getPendingCount() + " expired=" + wheel.getExpiredCount());
+			}
+			if(archive != null) {
+				System.out.println("Scheduler: " + server.getScheduler());
+			}
+			server.close();
+		}
+	}
+}
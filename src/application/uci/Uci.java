@@ -0,0 +1,453 @@
+package application.uci;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import application.engine.OpeningBook;
+import application.engine.Search;
+import application.engine.SearchInfo;
+import application.engine.SearchLimits;
+import application.engine.SearchListener;
+import application.engine.Tablebase;
+import application.model.Game;
+import application.model.Move;
+import application.model.Piece;
+import application.model.PieceColor;
+import application.model.Zobrist;
+
+/**
+ * The Uci class lets the engine be used without the GUI, by any program
+ * that speaks the Universal Chess Interface over standard input and output.
+ *
+ * Commands are read on the calling thread, and each search runs on its
+ * own thread, so that "stop" and "isready" are answered while the engine
+ * is thinking. Output is buffered and only flushed when a reply is
+ * complete, rather than after every line; each info line of a search is
+ * a reply of its own, so it is flushed as soon as it is sent.
+ *
+ * Supported commands are uci, isready, ucinewgame, setoption, position,
+ * go (with depth, movetime, nodes, infinite, ponder or the clocks: wtime,
+ * btime, winc, binc and movestogo), ponderhit, stop and quit. The options
+ * are Tablebase, the directory of a Tablebase to probe, Book, the file of
+ * an OpeningBook to play from, and BookKeys, a Polyglot Random64 table
+ * the book's keys were built with (each empty for none). Under a clock, a
+ * TimeManager decides how long to search from the side to move's time.
+ * A pondering search ignores its node and time limits until "ponderhit",
+ * and then keeps them as if it had started normally, so the time spent
+ * pondering counts towards the move. The best move is followed by the
+ * reply the engine expects, to ponder on. Other commands
+ * are ignored, as the protocol asks. Pawns always promote to a queen,
+ * as in the rest of the game, so a promotion letter in a move is ignored,
+ * and moves sent to the GUI that promote always end in "q".
+ * @see http://wbec-ridderkerk.nl/html/UCIProtocol.html
+ */
+public class Uci {
+
+	public static final String NAME = "Chess";
+
+	private final BufferedReader in;
+	private final PrintWriter out;
+	private final Search search = new Search();
+	private Game game;
+	private Thread searchThread;
+	// the limits of the current search, for "ponderhit"
+	private SearchLimits limits;
+	private boolean stopRequested;
+	private String bookPath = "",
+				   bookKeysPath = "";
+
+	public Uci(InputStream in, OutputStream out) {
+		this.in = new BufferedReader(new InputStreamReader(in));
+		this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)), false);
+		this.game = new Game();
+	}
+
+	/**
+	 * Reads and handles commands until "quit" or the end of input.
+	 * @throws IOException If reading the input fails.
+	 */
+	public void run() throws IOException {
+		String line;
+		while((line = this.in.readLine()) != null) {
+			if(!this.handle(line.trim())) {
+				break;
+			}
+		}
+		this.stopSearch();
+	}
+
+	/**
+	 * Handles a single command.
+	 * @param line The command.
+	 * @return false if the command was "quit". true otherwise.
+	 */
+	boolean handle(String line) {
+		String[] tokens = line.split("\\s+");
+		switch(tokens[0]) {
+		case "uci":
+			this.send("id name " + NAME);
+			this.send("id author " + NAME + " developers");
+			this.send("option name Tablebase type string default <empty>");
+			this.send("option name Book type string default <empty>");
+			this.send("option name BookKeys type string default <empty>");
+			this.send("uciok");
+			this.flush();
+			break;
+		case "isready":
+			this.send("readyok");
+			this.flush();
+			break;
+		case "ucinewgame":
+			this.stopSearch();
+			this.search.getTable().clear();
+			this.game = new Game();
+			break;
+		case "position":
+			this.stopSearch();
+			this.setPosition(tokens);
+			break;
+		case "go":
+			this.stopSearch();
+			this.go(tokens);
+			break;
+		case "setoption":
+			this.stopSearch();
+			this.setOption(line);
+			break;
+		case "ponderhit":
+			this.ponderHit();
+			break;
+		case "stop":
+			this.stopSearch();
+			break;
+		case "quit":
+			return false;
+		default:
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * Handles "setoption name <name> [value <value>]". The value may
+	 * contain spaces, e.g. in a directory.
+	 */
+	private void setOption(String line) {
+		int name = line.indexOf(" name "),
+			value = line.indexOf(" value ");
+		if(name < 0) {
+			return;
+		}
+		String option = (value < 0 ? line.substring(name + 6) : line.substring(name + 6, value)).trim();
+		String text = value < 0 ? "" : line.substring(value + 7).trim();
+		if(text.equals("<empty>")) {
+			text = "";
+		}
+		if(option.equalsIgnoreCase("Tablebase")) {
+			this.search.setTablebase(text.isEmpty() ? null : new Tablebase(text));
+		} else if(option.equalsIgnoreCase("Book")) {
+			this.bookPath = text;
+			this.openBook();
+		} else if(option.equalsIgnoreCase("BookKeys")) {
+			this.bookKeysPath = text;
+			this.openBook();
+		} else {
+			this.send("info string unknown option " + option);
+			this.flush();
+		}
+	}
+
+	/**
+	 * Opens the book and keys last set, closing the book before, if any.
+	 */
+	private void openBook() {
+		OpeningBook old = this.search.getOpeningBook();
+		this.search.setOpeningBook(null);
+		try {
+			if(old != null) {
+				old.close();
+			}
+			if(!this.bookPath.isEmpty()) {
+				Zobrist keys = Zobrist.DEFAULT;
+				if(!this.bookKeysPath.isEmpty()) {
+					try(FileInputStream in = new FileInputStream(this.bookKeysPath)) {
+						keys = Zobrist.load(in);
+					}
+				}
+				this.search.setOpeningBook(new OpeningBook(this.bookPath, keys));
+			}
+		}
+		catch(IOException e) {
+			this.send("info string cannot open book " + this.bookPath + ": " + e.getMessage());
+			this.flush();
+		}
+	}
+
+	/**
+	 * Handles "position [startpos | fen <fen>] [moves <move>...]". A FEN
+	 * that cannot be read is answered with "info string bad fen", and the
+	 * previous position is kept.
+	 */
+	private void setPosition(String[] tokens) {
+		int i = 1;
+		String fen = Game.STARTING_FEN;
+		if(i < tokens.length && tokens[i].equals("fen")) {
+			StringBuilder s = new StringBuilder();
+			for(i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+				s.append(s.length() == 0 ? "" : " ").append(tokens[i]);
+			}
+			fen = s.toString();
+		}
+		else if(i < tokens.length && tokens[i].equals("startpos")) {
+			i++;
+		}
+		Game game = new Game(Game.STARTING_FEN);
+		try {
+			game.loadFromFEN(fen);
+		}
+		catch(RuntimeException e) {
+			game = null;
+		}
+		// loadFromFEN gives up quietly on a bad board, leaving the one before
+		if(game == null || !game.getFEN().split(" ")[0].equals(fen.split(" ")[0])) {
+			this.send("info string bad fen " + fen);
+			this.flush();
+			return;
+		}
+		game.getPreviousFenStack().clear();
+		game.getPreviousFenStack().push(game.getFEN());
+		game.getPreviousFensFor3FoldRepetition().clear();
+		game.getPreviousFensFor3FoldRepetition().put(game.getFenFor3FoldRepetition(), 1);
+		if(i < tokens.length && tokens[i].equals("moves")) {
+			for(i++; i < tokens.length; i++) {
+				Move move = Uci.parseMove(tokens[i]);
+				if(!game.isGeneratedMove(move)) {
+					this.send("info string illegal move " + tokens[i]);
+					this.flush();
+					break;
+				}
+				game.pushMove(move);
+			}
+		}
+		this.game = game;
+	}
+
+	/**
+	 * Handles "go [depth <n>] [movetime <ms>] [nodes <n>] [infinite] [ponder]
+	 * [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>]",
+	 * starting a search on a new thread.
+	 */
+	private void go(String[] tokens) {
+		final SearchLimits limits = new SearchLimits();
+		boolean white = this.game.getTurn() == PieceColor.WHITE;
+		for(int i=1; i<tokens.length; i++) {
+			try {
+				switch(tokens[i]) {
+				case "depth": limits.setDepth(Integer.parseInt(tokens[++i])); break;
+				case "movetime": limits.setMoveTime(Long.parseLong(tokens[++i])); break;
+				case "nodes": limits.setNodes(Long.parseLong(tokens[++i])); break;
+				case "infinite": limits.setInfinite(true); break;
+				case "ponder": limits.setPonder(true); break;
+				case "wtime": case "btime":
+					long time = Long.parseLong(tokens[++i]);
+					if(tokens[i - 1].equals("wtime") == white) {
+						// a clock at or below zero still gets a minimal search
+						limits.setTimeLeft(Math.max(1, time));
+					}
+					break;
+				case "winc": case "binc":
+					long increment = Long.parseLong(tokens[++i]);
+					if(tokens[i - 1].equals("winc") == white) {
+						limits.setIncrement(increment);
+					}
+					break;
+				case "movestogo": limits.setMovesToGo(Integer.parseInt(tokens[++i])); break;
+				default: break;
+				}
+			}
+			catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				this.send("info string bad go parameter " + tokens[i - 1]);
+			}
+		}
+
+		final Game game = this.game;
+		// for writing moves out on the search's thread, which has the game
+		final Game root = game.copy();
+		synchronized(this) {
+			this.stopRequested = false;
+			this.limits = limits;
+		}
+		this.searchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final SearchInfo[] last = new SearchInfo[1];
+				Move best = Uci.this.search.search(game, limits, new SearchListener() {
+					@Override
+					public void onInfo(SearchInfo info) {
+						last[0] = info;
+						Uci.this.sendInfo(info, root);
+					}
+				});
+				// In infinite and ponder mode the best move may only be sent
+				// after "stop" (or "ponderhit").
+				Uci.this.awaitStop(limits);
+				List<Move> line = last[0] == null ? null : last[0].getPrincipalVariation();
+				if(best == null) {
+					Uci.this.send("bestmove 0000");
+				} else if(line != null && line.size() > 1 && line.get(0).equals(best)) {
+					List<String> moves = Uci.formatLine(root, line.subList(0, 2));
+					Uci.this.send("bestmove " + moves.get(0) + " ponder " + moves.get(1));
+				} else {
+					Uci.this.send("bestmove " + Uci.formatMove(root, best));
+				}
+				Uci.this.flush();
+			}
+		}, "uci-search");
+		this.searchThread.setDaemon(true);
+		this.searchThread.start();
+	}
+
+	/**
+	 * Stops the current search, if any, and waits for its best move
+	 * to be sent.
+	 */
+	private void stopSearch() {
+		if(this.searchThread == null) {
+			return;
+		}
+		synchronized(this) {
+			this.stopRequested = true;
+			this.notifyAll();
+		}
+		try {
+			// The search clears its stop flag when it starts, so keep
+			// stopping it in case it had not started yet.
+			while(this.searchThread.isAlive()) {
+				this.search.stop();
+				this.searchThread.join(10);
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.searchThread = null;
+	}
+
+	/**
+	 * Handles "ponderhit": the opponent played the move being pondered, so
+	 * the search's limits now apply, and its best move may be sent.
+	 */
+	private synchronized void ponderHit() {
+		if(this.limits != null) {
+			this.limits.setPonder(false);
+			this.notifyAll();
+		}
+	}
+
+	private synchronized void awaitStop(SearchLimits limits) {
+		while(!this.stopRequested && (limits.isInfinite() || limits.isPonder())) {
+			try {
+				this.wait();
+			}
+			catch(InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sends an info line. It is flushed at once: one is sent per
+	 * iteration, so they are few, and a GUI showing the search must not
+	 * be left waiting for one held back in the buffer.
+	 */
+	private void sendInfo(SearchInfo info, Game root) {
+		StringBuilder s = new StringBuilder("info depth ").append(info.getDepth())
+				.append(info.isMate() ? " score mate " + info.getMateIn() : " score cp " + info.getScore())
+				.append(" nodes ").append(info.getNodes())
+				.append(" nps ").append(info.getNodesPerSecond())
+				.append(" time ").append(info.getTimeMillis())
+				.append(" pv");
+		for(String move : Uci.formatLine(root, info.getPrincipalVariation())) {
+			s.append(' ').append(move);
+		}
+		this.send(s.toString());
+		this.flush();
+	}
+
+	private void send(String line) {
+		synchronized(this.out) {
+			this.out.print(line);
+			this.out.print('\n');
+		}
+	}
+
+	private void flush() {
+		synchronized(this.out) {
+			this.out.flush();
+		}
+	}
+
+	/**
+	 * Writes a move in UCI's long algebraic notation, such as "e2e4", or
+	 * "e7e8q" for a pawn reaching the last rank (which always becomes a
+	 * queen in this game).
+	 * @param game The position the move is played in.
+	 * @param move The move.
+	 * @return The move in long algebraic notation.
+	 */
+	public static String formatMove(Game game, Move move) {
+		Piece moved = game.getPieceAt(move.getFromCoordinate());
+		boolean promotion = moved == Piece.WHITE_PAWN && move.getToRow() == 0
+				|| moved == Piece.BLACK_PAWN && move.getToRow() == Game.BOARD_ROWS - 1;
+		return move.toString() + (promotion ? "q" : "");
+	}
+
+	/**
+	 * Writes a line of moves in long algebraic notation, playing each one
+	 * to know the position of the next.
+	 * @param game The position the line starts in. It is left as it was
+	 * found.
+	 * @param moves The moves.
+	 * @return The moves written out.
+	 */
+	public static List<String> formatLine(Game game, List<Move> moves) {
+		List<String> line = new ArrayList<>(moves.size());
+		for(Move move : moves) {
+			line.add(Uci.formatMove(game, move));
+			game.pushMove(move);
+		}
+		for(int i=0; i<moves.size(); i++) {
+			game.popMove();
+		}
+		return line;
+	}
+
+	/**
+	 * Parses a move in UCI's long algebraic notation, such as "e2e4"
+	 * or "e7e8q".
+	 * @param text The move.
+	 * @return The move, or null if it is malformed.
+	 */
+	public static Move parseMove(String text) {
+		if(text.length() < 4) {
+			return null;
+		}
+		Move move = new Move(
+				'8' - text.charAt(1), text.charAt(0) - 'a',
+				'8' - text.charAt(3), text.charAt(2) - 'a');
+		return move.isInBounds() ? move : null;
+	}
+
+	public static void main(String[] args) throws IOException {
+		new Uci(System.in, System.out).run();
+	}
+}
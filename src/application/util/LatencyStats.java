@@ -0,0 +1,137 @@
+package application.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyStats class records how long an operation takes.
+ * It keeps a count, a running total and a maximum, and may be
+ * updated from several threads at once without locking.
+ *
+ * Samples are also counted in a histogram, so that percentiles
+ * (e.g. the median or the 99th percentile) can be read. Each power
+ * of two is split into 8 buckets, so a percentile is accurate to
+ * within 12.5%, using 4 KB whatever the number of samples.
+ */
+public class LatencyStats {
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private static final int SUB_BUCKET_BITS = 3,
+							 SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private final AtomicLongArray histogram = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+
+	/**
+	 * Records one sample.
+	 * @param nanos The time taken by the operation, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		this.count.increment();
+		this.totalNanos.add(nanos);
+		this.histogram.incrementAndGet(LatencyStats.getBucket(nanos));
+		long max;
+		while(nanos > (max = this.maxNanos.get()) && !this.maxNanos.compareAndSet(max, nanos));
+	}
+
+	/**
+	 * Records one sample which started at the given time.
+	 * @param startNanos The value of System.nanoTime() when the
+	 * operation started.
+	 */
+	public void recordSince(long startNanos) {
+		this.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Gets the number of samples recorded.
+	 * @return The number of samples recorded.
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Gets the sum of all samples.
+	 * @return The sum of all samples, in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return this.totalNanos.sum();
+	}
+
+	/**
+	 * Gets the average sample.
+	 * @return The average sample in nanoseconds. 0 if there are no samples.
+	 */
+	public double getAverageNanos() {
+		long count = this.getCount();
+		return count == 0 ? 0 : (double) this.getTotalNanos() / count;
+	}
+
+	/**
+	 * Gets the largest sample.
+	 * @return The largest sample, in nanoseconds.
+	 */
+	public long getMaxNanos() {
+		return this.maxNanos.get();
+	}
+
+	/**
+	 * Gets a percentile of the samples, e.g. 50 for the median.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The largest sample which that percentage of samples do not
+	 * exceed, in nanoseconds, rounded up to the top of its bucket. 0 if
+	 * there are no samples.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = 0;
+		for(int i=0; i<this.histogram.length(); i++) {
+			total += this.histogram.get(i);
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for(int i=0; i<this.histogram.length(); i++) {
+			seen += this.histogram.get(i);
+			if(seen >= rank) {
+				return Math.min(LatencyStats.getBucketTop(i), this.getMaxNanos());
+			}
+		}
+		return this.getMaxNanos();
+	}
+
+	/**
+	 * Returns the count, average, median, 99th percentile and maximum,
+	 * in microseconds.
+	 */
+	public String toString() {
+		return String.format("count=%d avg=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+				this.getCount(), this.getAverageNanos() / 1e3, this.getPercentileNanos(50) / 1e3,
+				this.getPercentileNanos(99) / 1e3, this.getMaxNanos() / 1e3);
+	}
+
+	/**
+	 * Gets the histogram bucket of a sample: samples below 8 have a bucket
+	 * each; above that, a bucket is a power of two and the next 3 bits.
+	 */
+	private static int getBucket(long nanos) {
+		if(nanos < SUB_BUCKETS) {
+			return (int) Math.max(0, nanos);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Gets the largest sample in a histogram bucket.
+	 */
+	private static long getBucketTop(int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long top = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+		return top < 0 ? Long.MAX_VALUE : top;
+	}
+}
@@ -0,0 +1,284 @@
+package application.util;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The TimerWheel class runs tasks at given times, for any number of
+ * tasks, on one thread. It is used to notice flag fall in every clocked
+ * game at once (see application.model.ChessClock), rather than each game
+ * having its own scheduled task.
+ *
+ * Time is divided into ticks, and the wheel into slots, one per tick,
+ * which it visits in turn. A task is kept in the slot for the tick its
+ * time falls in, along with how many more turns of the wheel to wait,
+ * so scheduling, cancelling and running a task each take the same short
+ * time however many are waiting. A task runs at most one tick late.
+ *
+ * Tasks are scheduled and cancelled from any thread without locking:
+ * both are only queued, and done by the wheel's thread at its next tick.
+ * Tasks run on the wheel's thread, so must be quick, and should hand
+ * anything slow to another thread.
+ */
+public class TimerWheel implements Closeable {
+
+	public static final long DEFAULT_TICK_NANOS = 10_000_000;
+	public static final int DEFAULT_SLOTS = 512;
+
+	private final long tickNanos;
+	private final Timeout[] slots;
+	private final int mask;
+	private final long startNanos;
+	// done by the wheel's thread at its next tick
+	private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+	private final AtomicLong pending = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a wheel with ticks of DEFAULT_TICK_NANOS and DEFAULT_SLOTS
+	 * slots, i.e. one turn every 5.12 seconds.
+	 */
+	public TimerWheel() {
+		this(DEFAULT_TICK_NANOS, DEFAULT_SLOTS);
+	}
+
+	/**
+	 * Creates a wheel and starts its thread.
+	 * @param tickNanos The length of a tick, which is how late a task
+	 * may run.
+	 * @param slots The number of slots, rounded up to a power of two.
+	 */
+	public TimerWheel(long tickNanos, int slots) {
+		this.tickNanos = Math.max(1, tickNanos);
+		int size = Integer.highestOneBit(Math.max(1, slots) * 2 - 1);
+		this.slots = new Timeout[size];
+		this.mask = size - 1;
+		this.startNanos = System.nanoTime();
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TimerWheel.this.run();
+			}
+		}, "timer-wheel");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Gets the wheel shared by everything which does not make its own.
+	 * @return The shared wheel.
+	 */
+	public static TimerWheel getDefault() {
+		return DefaultHolder.WHEEL;
+	}
+
+	private static class DefaultHolder {
+		private static final TimerWheel WHEEL = new TimerWheel();
+	}
+
+	/**
+	 * Schedules a task.
+	 * @param task The task, which is run on the wheel's thread.
+	 * @param deadlineNanos When to run it, as a value of System.nanoTime().
+	 * A time which has passed runs it at the next tick.
+	 * @return The timeout, which may be used to cancel it.
+	 */
+	public Timeout schedule(Runnable task, long deadlineNanos) {
+		Timeout timeout = new Timeout(this, task, deadlineNanos);
+		this.pending.incrementAndGet();
+		this.added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Gets the number of tasks scheduled which have not yet run or been
+	 * cancelled.
+	 * @return The number of tasks waiting.
+	 */
+	public long getPendingCount() {
+		return this.pending.get();
+	}
+
+	/**
+	 * Gets the number of tasks run.
+	 * @return The number of tasks run.
+	 */
+	public long getExpiredCount() {
+		return this.expired.get();
+	}
+
+	/**
+	 * Gets the length of a tick.
+	 * @return The length of a tick, in nanoseconds.
+	 */
+	public long getTickNanos() {
+		return this.tickNanos;
+	}
+
+	/**
+	 * Stops the wheel's thread. Tasks not yet run are never run.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		LockSupport.unpark(this.thread);
+	}
+
+	/**
+	 * Runs on the wheel's thread: waits for the end of each tick, then
+	 * takes in the tasks added and cancelled since the last one and runs
+	 * those which are due.
+	 */
+	private void run() {
+		long tick = 0;
+		while(!this.closed) {
+			long tickEnd = this.startNanos + (tick + 1) * this.tickNanos;
+			long now;
+			while((now = System.nanoTime()) - tickEnd < 0 && !this.closed) {
+				LockSupport.parkNanos(tickEnd - now);
+			}
+			if(this.closed) {
+				break;
+			}
+			this.removeCancelled();
+			this.addScheduled(tick);
+			this.expire((int) (tick & this.mask));
+			tick++;
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while((timeout = this.cancelled.poll()) != null) {
+			if(timeout.slot >= 0) {
+				this.unlink(timeout);
+			}
+		}
+	}
+
+	private void addScheduled(long tick) {
+		Timeout timeout;
+		while((timeout = this.added.poll()) != null) {
+			if(timeout.state != Timeout.WAITING) {
+				continue;
+			}
+			// the tick during which the deadline passes; it runs at that tick's end
+			long due = Math.max(tick, (timeout.deadlineNanos - this.startNanos) / this.tickNanos);
+			timeout.rounds = (due - tick) / this.slots.length;
+			timeout.slot = (int) (due & this.mask);
+			timeout.next = this.slots[timeout.slot];
+			if(timeout.next != null) {
+				timeout.next.previous = timeout;
+			}
+			this.slots[timeout.slot] = timeout;
+		}
+	}
+
+	private void expire(int slot) {
+		Timeout timeout = this.slots[slot];
+		while(timeout != null) {
+			Timeout next = timeout.next;
+			if(timeout.rounds > 0) {
+				timeout.rounds--;
+			} else {
+				this.unlink(timeout);
+				if(Timeout.STATE.compareAndSet(timeout, Timeout.WAITING, Timeout.EXPIRED)) {
+					this.pending.decrementAndGet();
+					this.expired.incrementAndGet();
+					try {
+						timeout.task.run();
+					}
+					catch(RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			timeout = next;
+		}
+	}
+
+	private void unlink(Timeout timeout) {
+		if(timeout.previous == null) {
+			this.slots[timeout.slot] = timeout.next;
+		} else {
+			timeout.previous.next = timeout.next;
+		}
+		if(timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = timeout.next = null;
+		timeout.slot = -1;
+	}
+
+	/**
+	 * A task scheduled on a TimerWheel.
+	 */
+	public static final class Timeout {
+
+		private static final int WAITING = 0,
+								 CANCELLED = 1,
+								 EXPIRED = 2;
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimerWheel wheel;
+		private final Runnable task;
+		private final long deadlineNanos;
+		private volatile int state;
+		// only used by the wheel's thread
+		private long rounds;
+		private int slot = -1;
+		private Timeout previous,
+						next;
+
+		private Timeout(TimerWheel wheel, Runnable task, long deadlineNanos) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		/**
+		 * Cancels the task, unless it has already run.
+		 * @return true if it was cancelled, false if it had already run or
+		 * been cancelled.
+		 */
+		public boolean cancel() {
+			if(!STATE.compareAndSet(this, WAITING, CANCELLED)) {
+				return false;
+			}
+			this.wheel.pending.decrementAndGet();
+			this.wheel.cancelled.add(this);
+			return true;
+		}
+
+		/**
+		 * Returns whether the task has run (or is running).
+		 * @return true if it has run.
+		 */
+		public boolean isExpired() {
+			return this.state == EXPIRED;
+		}
+
+		/**
+		 * Returns whether the task was cancelled.
+		 * @return true if it was cancelled.
+		 */
+		public boolean isCancelled() {
+			return this.state == CANCELLED;
+		}
+
+		/**
+		 * Gets when the task is due.
+		 * @return The deadline, as a value of System.nanoTime().
+		 */
+		public long getDeadlineNanos() {
+			return this.deadlineNanos;
+		}
+	}
+}
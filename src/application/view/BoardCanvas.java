@@ -0,0 +1,244 @@
+package application.view;
+
+import application.model.Game;
+import application.model.Move;
+import application.model.Piece;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * The BoardCanvas class draws a chess board on a single Canvas: the
+ * squares, the highlighted squares and the cached piece images. It is
+ * an alternative to a grid of 64 Buttons, which costs a CSS parse for
+ * every style change and a layout pass for every graphic change.
+ *
+ * The canvas resizes with its parent and keeps its squares square.
+ * Clicks are turned into a row and column with getRow(double y) and
+ * getCol(double x). A move can be animated with animateMove(Move move),
+ * which slides the piece from its source square to its destination.
+ */
+public class BoardCanvas extends Canvas {
+
+	public static final Color LIGHT_SQUARE = Color.WHITE,
+							  DARK_SQUARE = Color.GREY,
+							  LIGHT_HIGHLIGHT = Color.LEMONCHIFFON,
+							  DARK_HIGHLIGHT = Color.KHAKI;
+	private static final long ANIMATION_NANOS = 150_000_000L;
+
+	private Game game;
+	private final double preferredSize;
+	private final double pieceScale;
+	private final boolean[][] highlighted = new boolean[Game.BOARD_ROWS][Game.BOARD_COLS];
+
+	private Move animatedMove;
+	private long animationStart;
+	private final AnimationTimer animationTimer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			BoardCanvas.this.drawAnimationFrame(now);
+		}
+	};
+
+	/**
+	 * Creates a board.
+	 * @param game The game to draw.
+	 * @param squareSize The preferred width and height of a square, in pixels.
+	 * @param pieceSize The width and height of a piece on a square of that size.
+	 */
+	public BoardCanvas(Game game, double squareSize, double pieceSize) {
+		super(squareSize * Game.BOARD_COLS, squareSize * Game.BOARD_ROWS);
+		this.game = game;
+		this.preferredSize = squareSize * Game.BOARD_COLS;
+		this.pieceScale = pieceSize / squareSize;
+	}
+
+	/**
+	 * Draws the whole board.
+	 */
+	public void draw() {
+		if(this.animatedMove == null) {
+			this.getGraphicsContext2D().clearRect(0, 0, this.getWidth(), this.getHeight());
+		}
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				this.drawSquare(r, c);
+			}
+		}
+	}
+
+	/**
+	 * Draws one square and the piece on it.
+	 * @param row The row of the square.
+	 * @param col The column of the square.
+	 */
+	public void drawSquare(int row, int col) {
+		if(this.animatedMove != null) {
+			// the next animation frame redraws the whole board anyway
+			return;
+		}
+		this.drawSquare(this.getGraphicsContext2D(), row, col, true);
+	}
+
+	private void drawSquare(GraphicsContext graphics, int row, int col, boolean drawPiece) {
+		double size = this.getSquareSize();
+		boolean light = (row + col) % 2 == 0;
+		if(this.highlighted[row][col]) {
+			graphics.setFill(light ? LIGHT_HIGHLIGHT : DARK_HIGHLIGHT);
+		} else {
+			graphics.setFill(light ? LIGHT_SQUARE : DARK_SQUARE);
+		}
+		graphics.fillRect(col * size, row * size, size, size);
+		if(drawPiece) {
+			this.drawPiece(graphics, this.game.getPieceAt(row, col), col * size, row * size);
+		}
+	}
+
+	private void drawPiece(GraphicsContext graphics, Piece piece, double x, double y) {
+		Image image = piece == null ? null : ImageCache.getImage(piece);
+		if(image == null) {
+			return;
+		}
+		double size = this.getSquareSize();
+		double pieceSize = size * this.pieceScale;
+		double offset = (size - pieceSize) / 2;
+		graphics.drawImage(image, x + offset, y + offset, pieceSize, pieceSize);
+	}
+
+	/**
+	 * Highlights a square or removes its highlight.
+	 * @param row The row of the square.
+	 * @param col The column of the square.
+	 * @param highlighted Whether the square should be highlighted.
+	 */
+	public void setHighlighted(int row, int col, boolean highlighted) {
+		if(this.highlighted[row][col] != highlighted) {
+			this.highlighted[row][col] = highlighted;
+			this.drawSquare(row, col);
+		}
+	}
+
+	/**
+	 * Returns whether a square is highlighted.
+	 * @param row The row of the square.
+	 * @param col The column of the square.
+	 * @return true if the square is highlighted. false otherwise.
+	 */
+	public boolean isHighlighted(int row, int col) {
+		return this.highlighted[row][col];
+	}
+
+	/**
+	 * Slides the piece of a move that has just been pushed from its source
+	 * square to its destination square.
+	 * @param move The move, already pushed onto the game.
+	 */
+	public void animateMove(Move move) {
+		this.animatedMove = move;
+		this.animationStart = System.nanoTime();
+		this.animationTimer.start();
+	}
+
+	private void drawAnimationFrame(long now) {
+		double progress = Math.min(1, (double) (now - this.animationStart) / ANIMATION_NANOS);
+		Move move = this.animatedMove;
+		GraphicsContext graphics = this.getGraphicsContext2D();
+		for(int r=0; r<Game.BOARD_ROWS; r++) {
+			for(int c=0; c<Game.BOARD_COLS; c++) {
+				boolean destination = r == move.getToRow() && c == move.getToCol();
+				this.drawSquare(graphics, r, c, !destination);
+			}
+		}
+		double size = this.getSquareSize();
+		double x = (move.getFromCol() + (move.getToCol() - move.getFromCol()) * progress) * size;
+		double y = (move.getFromRow() + (move.getToRow() - move.getFromRow()) * progress) * size;
+		this.drawPiece(graphics, this.game.getPieceAt(move.getToRow(), move.getToCol()), x, y);
+		if(progress >= 1) {
+			this.animationTimer.stop();
+			this.animatedMove = null;
+		}
+	}
+
+	/**
+	 * Gets the row of the square at a y coordinate.
+	 * @param y The y coordinate, relative to this canvas.
+	 * @return The row, or -1 if y is outside the board.
+	 */
+	public int getRow(double y) {
+		int row = (int) Math.floor(y / this.getSquareSize());
+		return row >= 0 && row < Game.BOARD_ROWS ? row : -1;
+	}
+
+	/**
+	 * Gets the column of the square at an x coordinate.
+	 * @param x The x coordinate, relative to this canvas.
+	 * @return The column, or -1 if x is outside the board.
+	 */
+	public int getCol(double x) {
+		int col = (int) Math.floor(x / this.getSquareSize());
+		return col >= 0 && col < Game.BOARD_COLS ? col : -1;
+	}
+
+	/**
+	 * Gets the width and height of a square.
+	 * @return The size of a square, in pixels.
+	 */
+	public double getSquareSize() {
+		return Math.min(this.getWidth() / Game.BOARD_COLS, this.getHeight() / Game.BOARD_ROWS);
+	}
+
+	/**
+	 * Sets the game to draw, and redraws the board.
+	 * @param game The game to draw.
+	 */
+	public void setGame(Game game) {
+		this.game = game;
+		this.draw();
+	}
+
+	@Override
+	public boolean isResizable() {
+		return true;
+	}
+
+	@Override
+	public double prefWidth(double height) {
+		return this.preferredSize;
+	}
+
+	@Override
+	public double prefHeight(double width) {
+		return this.preferredSize;
+	}
+
+	@Override
+	public double minWidth(double height) {
+		return Game.BOARD_COLS;
+	}
+
+	@Override
+	public double minHeight(double width) {
+		return Game.BOARD_ROWS;
+	}
+
+	@Override
+	public double maxWidth(double height) {
+		return Double.MAX_VALUE;
+	}
+
+	@Override
+	public double maxHeight(double width) {
+		return Double.MAX_VALUE;
+	}
+
+	@Override
+	public void resize(double width, double height) {
+		if(width != this.getWidth() || height != this.getHeight()) {
+			this.setWidth(width);
+			this.setHeight(height);
+			this.draw();
+		}
+	}
+}
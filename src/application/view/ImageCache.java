@@ -0,0 +1,68 @@
+package application.view;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import application.model.Piece;
+import javafx.scene.image.Image;
+
+/**
+ * The ImageCache class holds the images of the 12 pieces, so that they
+ * are read and decoded once at startup rather than every time a square
+ * is redrawn. Images are decoded straight to the size they are drawn at,
+ * so drawing them does not need any scaling.
+ *
+ * Images are looked up on the classpath first (e.g. when packaged in a
+ * jar), then as files relative to the working directory, where
+ * Piece.getImageURL() points when run from the project folder.
+ */
+public class ImageCache {
+
+	private static final Map<Piece, Image> IMAGES = new EnumMap<>(Piece.class);
+	private static double size;
+
+	private ImageCache() {
+	}
+
+	/**
+	 * Loads and scales the images of all pieces. Should be called once
+	 * at startup, before the board is shown.
+	 * @param size The width and height to scale the images to, in pixels.
+	 */
+	public static void load(double size) {
+		ImageCache.size = size;
+		IMAGES.clear();
+		for(Piece piece : Piece.ALL_PIECES) {
+			try(InputStream in = ImageCache.open(piece.getImageURL())) {
+				IMAGES.put(piece, new Image(in, size, size, true, true));
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Gets the image of a piece.
+	 * @param piece The piece.
+	 * @return The image of the piece, or null if it could not be loaded.
+	 */
+	public static Image getImage(Piece piece) {
+		return IMAGES.get(piece);
+	}
+
+	/**
+	 * Gets the size the images were scaled to.
+	 * @return The width and height of the images, in pixels.
+	 */
+	public static double getSize() {
+		return ImageCache.size;
+	}
+
+	private static InputStream open(String url) throws IOException {
+		InputStream in = ImageCache.class.getResourceAsStream("/" + url);
+		return in != null ? in : new FileInputStream(url);
+	}
+}